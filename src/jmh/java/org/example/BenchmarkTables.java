@@ -0,0 +1,68 @@
+package org.example;
+
+import org.example.component.Row;
+import org.example.component.Table;
+
+import java.util.List;
+
+/**
+ * Builds the tables the benchmarks run against.
+ */
+final class BenchmarkTables {
+
+    private BenchmarkTables() {
+    }
+
+    /** Column types of a named mix: "numeric", "text" or "all". */
+    static List<ColumnType> columnMix(String mix) {
+        return switch (mix) {
+            case "numeric" -> List.of(ColumnType.INT, ColumnType.REAL, ColumnType.MONEY);
+            case "text" -> List.of(ColumnType.STRING, ColumnType.CHAR, ColumnType.STRING);
+            case "all" -> List.of(ColumnType.INT, ColumnType.REAL, ColumnType.STRING, ColumnType.CHAR,
+                    ColumnType.MONEY, ColumnType.MONEY_INVL);
+            default -> throw new IllegalArgumentException("Unknown column mix " + mix);
+        };
+    }
+
+    /** A valid cell value of {@code type}; equal seeds give equal values. */
+    static String value(ColumnType type, int seed) {
+        return switch (type) {
+            case INT -> Integer.toString(seed);
+            case REAL -> seed + ".5";
+            case STRING -> "value-" + seed;
+            case CHAR -> String.valueOf((char) ('a' + seed % 26));
+            case MONEY -> seed + "." + (10 + seed % 90);
+            case MONEY_INVL -> (seed % 100_000) + ".25";
+            default -> throw new IllegalArgumentException("Unknown column type " + type);
+        };
+    }
+
+    static Row row(List<ColumnType> columns, int seed) {
+        Row row = new Row();
+        for (ColumnType type : columns) {
+            row.values.add(value(type, seed));
+        }
+        return row;
+    }
+
+    /**
+     * Replaces the database with one table of {@code rows} rows whose values repeat
+     * every {@code distinct} rows, and returns that table.
+     */
+    static Table create(DatabaseManager dbManager, String mix, int rows, int distinct) {
+        dbManager.createDB("bench");
+        dbManager.addTable("bench");
+        List<ColumnType> columns = columnMix(mix);
+        for (int c = 0; c < columns.size(); c++) {
+            dbManager.addColumn(0, "c" + c, columns.get(c), "0", "100000.00");
+        }
+        Table table = DatabaseManager.database.tables.get(0);
+        table.writeLocked(() -> {
+            for (int i = 0; i < rows; i++) {
+                table.addRow(row(columns, i % distinct));
+            }
+            return null;
+        });
+        return table;
+    }
+}
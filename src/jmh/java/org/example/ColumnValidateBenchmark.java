@@ -0,0 +1,60 @@
+package org.example;
+
+import org.example.component.Column;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link Column#validate} implementation over a fixed mix of valid and invalid input.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColumnValidateBenchmark {
+    private static final int INPUTS = 64;
+
+    @Param({"INT", "REAL", "STRING", "CHAR", "MONEY", "MONEY_INVL"})
+    public String type;
+
+    @Param({"valid", "mixed"})
+    public String input;
+
+    private Column column;
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+        column = org.example.component.column.ColumnType.valueOf(type).newColumn("c", "0", "100000.00");
+        String[] invalid = {"abc", "1.2.3", "", "12,345.678", "--1", "xy", "1e3", " 7 "};
+        values = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            values[i] = input.equals("mixed") && i % 4 == 0
+                    ? invalid[(i / 4) % invalid.length]
+                    : BenchmarkTables.value(ColumnType.valueOf(type), i * 37);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void validate(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(column.validate(value));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.example.component.Row;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DatabaseManager} mutations against tables of different sizes and column mixes.
+ * Operations that consume the table (deletes) run as timed batches on a table rebuilt
+ * before every iteration.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatabaseManagerBenchmark {
+    private static final int DELETE_BATCH = 500;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"numeric", "text", "all"})
+    public String mix;
+
+    private DatabaseManager dbManager;
+    private List<ColumnType> columns;
+    private Row row;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        dbManager = DatabaseManager.getInstance();
+        columns = BenchmarkTables.columnMix(mix);
+        // Half of the rows duplicate the other half
+        BenchmarkTables.create(dbManager, mix, rows, Math.max(rows / 2, 1));
+        row = BenchmarkTables.row(columns, 7);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Boolean updateCellValue() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(columns.size());
+        return dbManager.updateCellValue(BenchmarkTables.value(columns.get(column), random.nextInt(1000)),
+                0, column, random.nextInt(rows));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public Boolean addRow() {
+        Row copy = new Row();
+        copy.values.addAll(row.values);
+        return dbManager.addRow(0, copy);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 10, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 20, batchSize = DELETE_BATCH)
+    public Boolean deleteRow() {
+        return dbManager.deleteRow(0, ThreadLocalRandom.current().nextInt(rows - DELETE_BATCH));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int deleteDuplicateRows() {
+        return dbManager.deleteDuplicateRows(0, false);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int deleteDuplicateRowsParallel() {
+        return dbManager.deleteDuplicateRows(0, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public Boolean deleteColumn() {
+        return dbManager.deleteColumn(0, 0);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@code GetRows}, {@code GetColumns} and {@code Aggregate} through {@link HelloWorldServer.GreeterImpl}
+ * over an in-process channel, so the numbers include protobuf building and serialization
+ * but no network.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RpcBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"numeric", "text", "all"})
+    public String mix;
+
+    private Server server;
+    private ManagedChannel channel;
+    private RemoteDBGrpc.RemoteDBBlockingStub stub;
+
+    @Setup
+    public void setUp() throws IOException {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        BenchmarkTables.create(HelloWorldServer.dbManager, mix, rows, rows);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(new HelloWorldServer.GreeterImpl()).build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        stub = RemoteDBGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public GetRowsResponse getRowsPage() {
+        return stub.getRows(GetRowsRequest.newBuilder().setTableIndex(0).setLimit(100).build());
+    }
+
+    @Benchmark
+    public GetRowsResponse getRowsAll() {
+        return stub.getRows(GetRowsRequest.newBuilder().setTableIndex(0).build());
+    }
+
+    /** Counts a column on the server, where {@link #getRowsAll} ships every row to count it. */
+    @Benchmark
+    public AggregateResponse aggregateCount() {
+        return stub.aggregate(AggregateRequest.newBuilder().setTableIndex(0)
+                .addAggregations(Aggregation.newBuilder().setFunction(AggregateFunction.COUNT).setColumnIndex(0)).build());
+    }
+
+    @Benchmark
+    public GetColumnsResponse getColumns() {
+        return stub.getColumns(GetColumnsRequest.newBuilder().setTableIndex(0).build());
+    }
+}
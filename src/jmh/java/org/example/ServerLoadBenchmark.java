@@ -0,0 +1,131 @@
+package org.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the server's executor modes (see {@link ServerSettings}): 64 client
+ * threads call a real Netty server over loopback. Throughput mode gives calls per
+ * second; sample-time mode gives the latency percentiles, p0.99 among them. The
+ * server records its own metrics as in production.
+ * <p>
+ * The {@code read} workload only takes read locks. In the {@code write} workload every
+ * call waits for a group commit of the write-ahead log, which is what makes direct
+ * execution a bad fit for this server. The {@code fixed} pool is kept small enough to
+ * shed load; the {@code shed} counter shows how many calls it refused. Refused calls
+ * still count as operations in the score, so read the two together.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks compile exec:exec -Djmh.args="ServerLoadBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ServerLoadBenchmark {
+    private static final int ROWS = 10_000;
+
+    @Param({"cached", "virtual", "fixed", "direct"})
+    public String executor;
+
+    @Param({"read", "write"})
+    public String workload;
+
+    private Path walDir;
+    private ServerSettings settings;
+    private Server server;
+    private ManagedChannel channel;
+    private RemoteDBGrpc.RemoteDBBlockingStub stub;
+
+    /** Calls refused with RESOURCE_EXHAUSTED, reported next to the score. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long shed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            shed = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        walDir = Files.createTempDirectory("server-load");
+        HelloWorldServer.dbManager.openLog(walDir, 200, 1L << 40);
+        BenchmarkTables.create(HelloWorldServer.dbManager, "all", ROWS, ROWS);
+        int threads = Runtime.getRuntime().availableProcessors();
+        settings = new ServerSettings(new String[]{
+                "--port=0",
+                "--executor=" + executor,
+                "--executor-threads=" + threads,
+                "--max-queued-calls=" + threads * 2});
+        server = settings.build(new HelloWorldServer.GreeterImpl(), HelloWorldServer.metrics).start();
+        channel = NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        stub = RemoteDBGrpc.newBlockingStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        settings.shutdown();
+        HelloWorldServer.dbManager.closeLog();
+        DatabaseManager.database = null;
+        try (var files = Files.list(walDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(walDir);
+    }
+
+    @Benchmark
+    public Object call(Outcomes outcomes) {
+        int row = ThreadLocalRandom.current().nextInt(ROWS);
+        try {
+            if (workload.equals("read")) {
+                return stub.getRows(GetRowsRequest.newBuilder().setTableIndex(0).setOffset(row).setLimit(20).build());
+            }
+            return stub.editCell(EditCellRequest.newBuilder()
+                    .setTableIndex(0)
+                    .setRowIndex(row)
+                    .setColumnIndex(0)
+                    .setValue(Integer.toString(row))
+                    .build());
+        } catch (StatusRuntimeException e) {
+            if (e.getStatus().getCode() != Status.Code.RESOURCE_EXHAUSTED) {
+                throw e;
+            }
+            outcomes.shed++;
+            return e;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.example;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of a sharded cluster on localhost: each shard is a separate server
+ * process with its own write-ahead log, and 64 client threads call them through a
+ * {@link ShardRouter}, as the web tier does with {@code grpc.client.shards} set.
+ * It measures, and does not show, how throughput changes with {@code shards}: every
+ * process shares the machine's cores and disk, so more shards can only help where
+ * those are to spare, and on a small machine they mostly add processes competing
+ * for them. Read the scores against the cores the run had. Whether the router
+ * answers correctly is checked by {@code ShardRouterTest}, not here.
+ * <p>
+ * The {@code insert} workload adds rows, which the router places on the shards in turn.
+ * The {@code update} workload edits rows by ID, each going to the one shard that
+ * owns the row. Both wait for their shard's group commit.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks compile exec:exec -Djmh.args="ShardScalingBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShardScalingBenchmark {
+    private static final int ROWS = 10_000;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    @Param({"insert", "update"})
+    public String workload;
+
+    private final List<Process> servers = new ArrayList<>();
+    private final List<Path> walDirs = new ArrayList<>();
+    private RemoteDBClient client;
+    private RemoteDBGrpc.RemoteDBBlockingStub stub;
+    private int tableIndex;
+    private long tableId;
+    private long columnId;
+    private long[] rowIds;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        List<String> targets = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            Path walDir = Files.createTempDirectory("shard-" + shard);
+            walDirs.add(walDir);
+            servers.add(new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    HelloWorldServer.class.getName(),
+                    "--port=" + port,
+                    "--shard=" + shard,
+                    "--wal-dir=" + walDir)
+                    .redirectErrorStream(true)
+                    .redirectOutput(walDir.resolve("server.log").toFile())
+                    .start());
+            targets.add("localhost:" + port);
+        }
+        client = new RemoteDBClient(new DefaultApplicationArguments(), "", String.join(",", targets), false);
+        stub = client.blockingStub();
+        // The router fails calls until every server listens
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60); ; Thread.sleep(100)) {
+            try {
+                stub.getTablesData(GetTablesDataRequest.getDefaultInstance());
+                break;
+            } catch (StatusRuntimeException e) {
+                if (e.getStatus().getCode() != Status.Code.UNAVAILABLE || System.nanoTime() > deadline) {
+                    throw e;
+                }
+            }
+        }
+
+        stub.createTable(CreateTableRequest.newBuilder().setName("bench").build());
+        GetTablesDataResponse tables = stub.getTablesData(GetTablesDataRequest.getDefaultInstance());
+        TableData table = tables.getTablesData(tables.getTablesDataCount() - 1);
+        List<ColumnType> columns = BenchmarkTables.columnMix("all");
+        for (int c = 0; c < columns.size(); c++) {
+            stub.addColumn(AddColumnRequest.newBuilder()
+                    .setTableIndex(table.getIndex())
+                    .setName("c" + c)
+                    .setColumnType(columns.get(c))
+                    .setMin("0")
+                    .setMax("100000.00")
+                    .build());
+        }
+        tableIndex = table.getIndex();
+        tableId = table.getId();
+        columnId = stub.getColumns(GetColumnsRequest.newBuilder().setTableId(tableId).build()).getColumns(0).getId();
+        ApplyBatchRequest.Builder batch = ApplyBatchRequest.newBuilder().setTableIndex(table.getIndex());
+        for (int i = 0; i < ROWS; i++) {
+            batch.addOperations(BatchOperation.newBuilder()
+                    .setAddRow(AddRowOperation.newBuilder().addAllValues(BenchmarkTables.row(columns, i).values)));
+        }
+        stub.applyBatch(batch.build());
+        rowIds = new long[ROWS];
+        int next = 0;
+        for (var chunks = stub.streamRows(GetRowsRequest.newBuilder().setTableId(tableId).build()); chunks.hasNext(); ) {
+            for (Row row : chunks.next().getRowsList()) {
+                rowIds[next++] = row.getId();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        client.shutdown();
+        for (Process server : servers) {
+            server.destroy();
+        }
+        for (Process server : servers) {
+            server.waitFor(10, TimeUnit.SECONDS);
+        }
+        for (Path walDir : walDirs) {
+            try (Stream<Path> files = Files.walk(walDir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object call() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (workload.equals("insert")) {
+            return stub.addRow(AddRowRequest.newBuilder()
+                    .setTableIndex(tableIndex)
+                    .addAllValues(BenchmarkTables.row(BenchmarkTables.columnMix("all"), random.nextInt(1 << 20)).values)
+                    .build());
+        }
+        return stub.editCell(EditCellRequest.newBuilder()
+                .setTableId(tableId)
+                .setColumnId(columnId)
+                .setRowId(rowIds[random.nextInt(ROWS)])
+                .setValue(Integer.toString(random.nextInt(ROWS)))
+                .build());
+    }
+}
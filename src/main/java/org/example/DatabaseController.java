@@ -1,11 +1,10 @@
 package org.example;
 
 import org.example.component.Column;
-import org.example.component.Row;
+import org.example.component.RowPage;
 import org.example.ColumnType;
 import jakarta.servlet.http.HttpServletRequest;
 import org.example.component.TableData;
-import org.example.component.column.*;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
@@ -13,106 +12,68 @@ import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.validation.Valid;
-import org.springframework.transaction.annotation.Transactional;
 
-import static org.example.GrpcClientApplication.blockingStub;
+import static org.example.RemoteDBClient.toCompletable;
 
 
 @Controller
 public class DatabaseController {
 
-    private static List<TableData> getTableData() {
-        GetTablesDataRequest getTablesDataRequest = GetTablesDataRequest.newBuilder().build();
-        GetTablesDataResponse getTablesDataResponse = blockingStub.getTablesData(getTablesDataRequest);
-        List<TableData> tableData = new ArrayList<>();
-        for (int i = 0; i < getTablesDataResponse.getTablesDataCount(); i++) {
-            tableData.add(new TableData(getTablesDataResponse.getTablesData(i).getName(),getTablesDataResponse.getTablesData(i).getIndex()));
-        }
-        return tableData;
-    }
+    private final RemoteDBClient client;
+    private final TableCache tableCache;
 
-    private static List<Column> getGetColumnsResponse(int tableIndex) {
-        GetColumnsRequest getColumnsRequest = GetColumnsRequest.newBuilder().setTableIndex(tableIndex).build();
-        GetColumnsResponse getColumnsResponse = blockingStub.getColumns(getColumnsRequest);
-        List<Column> columns = new ArrayList<>();
-        for (int i = 0; i < getColumnsResponse.getColumnsCount(); i++) {
-            switch (org.example.component.column.ColumnType.valueOf(getColumnsResponse.getColumns(i).getType().name())) {
-                case INT -> {
-                    Column columnInt = new IntegerColumn(getColumnsResponse.getColumns(i).getName());
-                    columns.add(columnInt);
-                }
-                case REAL -> {
-                    Column columnReal = new RealColumn(getColumnsResponse.getColumns(i).getName());
-                    columns.add(columnReal);
-                }
-                case STRING -> {
-                    Column columnStr = new StringColumn(getColumnsResponse.getColumns(i).getName());
-                    columns.add(columnStr);
-                }
-                case CHAR -> {
-                    Column columnChar = new CharColumn(getColumnsResponse.getColumns(i).getName());
-                    columns.add(columnChar);
-                }
-                case MONEY -> {
-                    Column moneyColumn = new MoneyColumn(getColumnsResponse.getColumns(i).getName());
-                    columns.add(moneyColumn);
-                }
-                case MONEY_INVL -> {
-                    Column moneyInvlColumn = new MoneyInvlColumn(getColumnsResponse.getColumns(i).getName(), getColumnsResponse.getColumns(i).getMin(), getColumnsResponse.getColumns(i).getMax());
-                    columns.add(moneyInvlColumn);
-                }
-            }
-        }
-        return columns;
+    public DatabaseController(RemoteDBClient client, TableCache tableCache) {
+        this.client = client;
+        this.tableCache = tableCache;
     }
 
+    private static final int PAGE_SIZE = 100;
 
-    private static List<Row> getRows(int tableIndex) {
-        GetRowsRequest getRowsRequest = GetRowsRequest.newBuilder().setTableIndex(tableIndex).build();
-        GetRowsResponse getRowsResponse = blockingStub.getRows(getRowsRequest);
-        List<Row> rows = new ArrayList<>();
-        for (int i = 0; i < getRowsResponse.getRowsList().size(); i++) {
-            rows.add(new Row());
-            rows.get(i).values = getRowsResponse.getRows(i).getValuesList();
-        }
-        return rows;
-    }
     @GetMapping("/")
-    public String index(Model model) {
-        List<TableData> tableData = getTableData();
-        model.addAttribute("tables", tableData);
-        return "index";
+    public CompletableFuture<String> index(Model model) {
+        return tableCache.getCatalog().thenApply(catalog -> {
+            List<TableData> tableData = catalog.getTableData();
+            model.addAttribute("tables", tableData);
+            return "index";
+        });
     }
 
     @GetMapping("/viewTable")
-    public String viewTable(@Valid int tableIndex, Model model) {
-        List<TableData> tableData = getTableData();
-        List<Column> columns = getGetColumnsResponse(tableIndex);
-
-        model.addAttribute("tables", tableData);
-        model.addAttribute("thisTable", tableData.get(tableIndex));
-        model.addAttribute("columns", columns);
-        // Assuming tableIndex 0 is your test table
-        List<Row> rows = getRows(tableIndex);
-        System.out.println(rows.size());
-        model.addAttribute("rows", rows);
-        return "viewTable";
+    public CompletableFuture<String> viewTable(@Valid int tableIndex, @RequestParam(defaultValue = "0") int page, Model model) {
+        return tableCache.getCatalog().thenCompose(catalog -> {
+            // Columns and rows are fetched at the same time
+            CompletableFuture<List<Column>> columns = tableCache.getColumns(catalog, tableIndex);
+            CompletableFuture<RowPage> rowPage = tableCache.getRows(catalog, tableIndex, Math.max(page, 0) * PAGE_SIZE, PAGE_SIZE);
+            return columns.thenCombine(rowPage, (tableColumns, rows) -> {
+                List<TableData> tableData = catalog.getTableData();
+                model.addAttribute("tables", tableData);
+                model.addAttribute("thisTable", tableData.get(tableIndex));
+                model.addAttribute("columns", tableColumns);
+                model.addAttribute("rows", rows.rows);
+                model.addAttribute("rowOffset", rows.offset);
+                model.addAttribute("page", Math.max(page, 0));
+                model.addAttribute("pageCount", (rows.totalRows + PAGE_SIZE - 1) / PAGE_SIZE);
+                return "viewTable";
+            });
+        });
     }
 
     @GetMapping("/addTable")
-    public String addTable(Model model) {
-        GetTablesDataResponse getTablesDataResponse = blockingStub.getTablesData(GetTablesDataRequest.newBuilder().build());
-        List<TableData> tableData = getTableData();
-        model.addAttribute("tables", tableData);
-        return "addTable";
+    public CompletableFuture<String> addTable(Model model) {
+        return tableCache.getCatalog().thenApply(catalog -> {
+            List<TableData> tableData = catalog.getTableData();
+            model.addAttribute("tables", tableData);
+            return "addTable";
+        });
     }
 
     @PostMapping("/addTable")
-    public String addTable(@Valid String name, Model model) {
-        CreateTableResponse createTableResponse = blockingStub.createTable(CreateTableRequest.newBuilder().setName(name).build());
-        List<TableData> tableData = getTableData();
-        return "redirect:/viewTable?tableIndex=" + (tableData.size() - 1);
+    public CompletableFuture<String> addTable(@Valid String name, Model model) {
+        return toCompletable(client.futureStub().createTable(CreateTableRequest.newBuilder().setName(name).build()))
+                .thenCompose(createTableResponse -> tableCache.getCatalog())
+                .thenApply(catalog -> "redirect:/viewTable?tableIndex=" + (catalog.getTableData().size() - 1));
     }
 
     @GetMapping("/addColumn")
@@ -128,70 +89,72 @@ public class DatabaseController {
     }
 
     @PostMapping("/addColumn")
-    public String addColumn(@Valid String name, @Valid String columnType, @Valid String min, @Valid String max, Model model, @RequestParam int tableIndex) {
-        AddColumnResponse addColumnResponse = blockingStub.addColumn(AddColumnRequest.newBuilder()
+    public CompletableFuture<String> addColumn(@Valid String name, @Valid String columnType, @Valid String min, @Valid String max, Model model, @RequestParam int tableIndex) {
+        return toCompletable(client.futureStub().addColumn(AddColumnRequest.newBuilder()
                 .setTableIndex(tableIndex)
                 .setName(name)
                 .setColumnType(ColumnType.valueOf(columnType))
                 .setMin(min)
                 .setMax(max)
-                .build());
-        return "redirect:/viewTable?tableIndex=" + tableIndex;
+                .build()))
+                .thenApply(addColumnResponse -> "redirect:/viewTable?tableIndex=" + tableIndex);
     }
 
 
     @PostMapping("/addRow")
-    public String addRow(@RequestParam int tableIndex, HttpServletRequest request) {
-        AddRowResponse addRowResponse = blockingStub.addRow(AddRowRequest.newBuilder().setTableIndex(tableIndex).build());
-        return "redirect:" + request.getHeader("Referer");
+    public CompletableFuture<String> addRow(@RequestParam int tableIndex, HttpServletRequest request) {
+        String referer = request.getHeader("Referer");
+        return toCompletable(client.futureStub().addRow(AddRowRequest.newBuilder().setTableIndex(tableIndex).build()))
+                .thenApply(addRowResponse -> "redirect:" + referer);
     }
 
 
-    @Transactional
     @PostMapping("/deleteRow")
-    public String deleteRow(@RequestParam int tableIndex, @RequestParam int rowIndex, HttpServletRequest request) {
-        DeleteRowResponse deleteRowResponse = blockingStub.deleteRow(DeleteRowRequest.newBuilder()
+    public CompletableFuture<String> deleteRow(@RequestParam int tableIndex, @RequestParam int rowIndex, HttpServletRequest request) {
+        String referer = request.getHeader("Referer");
+        return toCompletable(client.futureStub().deleteRow(DeleteRowRequest.newBuilder()
                 .setTableIndex(tableIndex)
                 .setRowIndex(rowIndex)
-                .build());
-        return "redirect:" + request.getHeader("Referer");
+                .build()))
+                .thenApply(deleteRowResponse -> "redirect:" + referer);
     }
 
 
-    @Transactional
     @PostMapping("/deleteColumn")
-    public String deleteColumn(@RequestParam int tableIndex, @RequestParam int columnIndex, HttpServletRequest request) {
-        DeleteColumnResponse deleteColumnResponse = blockingStub.deleteColumn(DeleteColumnRequest.newBuilder()
+    public CompletableFuture<String> deleteColumn(@RequestParam int tableIndex, @RequestParam int columnIndex, HttpServletRequest request) {
+        String referer = request.getHeader("Referer");
+        return toCompletable(client.futureStub().deleteColumn(DeleteColumnRequest.newBuilder()
                 .setTableIndex(tableIndex)
                 .setColumnIndex(columnIndex)
-                .build());
-        return "redirect:" + request.getHeader("Referer");
+                .build()))
+                .thenApply(deleteColumnResponse -> "redirect:" + referer);
     }
 
 
-    @Transactional
     @PostMapping("/deleteTable")
-    public String deleteTable(@RequestParam int tableIndex, HttpServletRequest request) {
-        DeleteTableResponse deleteTableResponse = blockingStub.deleteTable(DeleteTableRequest.newBuilder().setTableIndex(tableIndex).build());
-        return "redirect:/";
+    public CompletableFuture<String> deleteTable(@RequestParam int tableIndex, HttpServletRequest request) {
+        return toCompletable(client.futureStub().deleteTable(DeleteTableRequest.newBuilder().setTableIndex(tableIndex).build()))
+                .thenApply(deleteTableResponse -> "redirect:/");
     }
 
 
     @PostMapping("/editCell")
-    public String editCell(
+    public CompletableFuture<String> editCell(
             @RequestParam Map<String, String> allParams, HttpServletRequest request) {
-        EditCellResponse editCellResponse = blockingStub.editCell(EditCellRequest.newBuilder()
+        String referer = request.getHeader("Referer");
+        return toCompletable(client.futureStub().editCell(EditCellRequest.newBuilder()
                 .setTableIndex(Integer.parseInt(allParams.get("tableIndex")))
                 .setRowIndex(Integer.parseInt(allParams.get("rowIndex")))
                 .setColumnIndex(Integer.parseInt(allParams.get("columnIndex")))
                 .setValue(allParams.get("value-" + Integer.parseInt(allParams.get("rowIndex")) + "-" + Integer.parseInt(allParams.get("columnIndex"))))
-                .build());
-        return "redirect:" + request.getHeader("Referer");
+                .build()))
+                .thenApply(editCellResponse -> "redirect:" + referer);
     }
 
     @PostMapping("/removeDuplicates")
-    public String removeDuplicates(@RequestParam int tableIndex, HttpServletRequest request) {
-        DeleteDuplicateRowsResponse deleteDuplicateRowsResponse = blockingStub.deleteDuplicateRows(DeleteDuplicateRowsRequest.newBuilder().setTableIndex(tableIndex).build());
-        return "redirect:" + request.getHeader("Referer");
+    public CompletableFuture<String> removeDuplicates(@RequestParam int tableIndex, HttpServletRequest request) {
+        String referer = request.getHeader("Referer");
+        return toCompletable(client.futureStub().deleteDuplicateRows(DeleteDuplicateRowsRequest.newBuilder().setTableIndex(tableIndex).build()))
+                .thenApply(deleteDuplicateRowsResponse -> "redirect:" + referer);
     }
 }
\ No newline at end of file
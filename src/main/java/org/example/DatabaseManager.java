@@ -3,27 +3,105 @@ package org.example;
 import org.example.component.Row;
 import org.example.component.Table;
 import org.example.component.Column;
+import org.example.component.ColumnConversion;
 import org.example.component.Database;
+import org.example.component.DuplicateScan;
 import org.example.component.column.*;
+import org.example.persistence.Mutation;
+import org.example.persistence.SnapshotFile;
+import org.example.persistence.WriteAheadLog;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.logging.Logger;
+
+/**
+ * Applies all reads and mutations to the in-memory {@link Database}.
+ * gRPC handlers call in from many threads: every table access goes through the
+ * table's read-write lock, and the table list itself is copy-on-write.
+ * <p>
+ * When a write-ahead log is open, every successful change is appended to it while
+ * its locks are still held, and the call returns only once the change is durable.
+ */
 public class DatabaseManager {
-    private static DatabaseManager instance;
+    private static final Logger logger = Logger.getLogger(DatabaseManager.class.getName());
+    static final String CHECKPOINT_FILE = "checkpoint.bin";
+    static final String LOG_FILE = "wal.log";
+    // Below this many cells a batch is validated on the calling thread
+    private static final int PARALLEL_VALIDATION_CELLS = 16_384;
+    private static final long COMPACTION_INTERVAL_MILLIS = 1000;
+    // Cells a column conversion copies per hold of the table's write lock
+    private static final int CONVERSION_CHUNK_SLOTS = 65_536;
+    // Slots a duplicate scan fingerprints per hold of the table's read lock
+    private static final int DEDUP_CHUNK_SLOTS = 65_536;
+    // Transactions left this long without a call are rolled back
+    private static final long TRANSACTION_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
 //    public static DBMS instanceCSW;
 
+    private volatile WriteAheadLog log;
+    private final Map<Long, Transaction> transactions = new ConcurrentHashMap<>();
+    private final AtomicLong nextTransactionId = new AtomicLong(1);
+    // Copies the cells of column type conversions; starting another conversion of a table abandons its queued one
+    private final ExecutorService conversions = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "schema-change");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum CommitResult {
+        COMMITTED,
+        CONFLICT,
+        UNKNOWN_TRANSACTION
+    }
+
     private DatabaseManager(){
+        Thread compactor = new Thread(this::compactLoop, "table-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    private static class Holder {
+        private static final DatabaseManager INSTANCE = new DatabaseManager();
     }
 
     public static DatabaseManager getInstance(){
-        if (instance == null){
-            instance = new DatabaseManager();
-//            instanceCSW = DBMS.getInstance();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
-    public static Database database;
+    public static volatile Database database;
 
     public void populateTable() {
+        updateDatabase(Mutation.populateTable(), () -> {
+            database.addTable(createTestTable());
+            return true;
+        });
+    }
+
+    // The table populateTable adds
+    static Table createTestTable() {
         Table table = new Table("testTable");
         table.addColumn(new IntegerColumn("column1"));
         table.addColumn(new RealColumn("column2"));
@@ -47,25 +125,40 @@ public class DatabaseManager {
         row2.values.add("15.00");
         row2.values.add("15.00");
         table.addRow(row2);
-        database.addTable(table);
+        return table;
     }
 
-//    public void openDB(String path){
-//        DatabaseImporter.importDatabase(path);
-//    }
+    /**
+     * Replaces the database with the snapshot at {@code path}. With a write-ahead log
+     * open, the loaded state is checkpointed at once so recovery starts from it.
+     */
+    public void openDB(String path) throws IOException {
+        SnapshotFile snapshot = SnapshotFile.read(Paths.get(path));
+        if (snapshot == null) {
+            throw new NoSuchFileException(path);
+        }
+        replaceDatabase(snapshot.database);
+        WriteAheadLog log = this.log;
+        if (log != null) {
+            log.checkpoint();
+        }
+    }
 
     public String renameDB(String name){
         if (name != null && !name.isEmpty()) {
-            database.setName(name);
+            updateDatabase(Mutation.renameDB(name), () -> {
+                database.setName(name);
+                return true;
+            });
 //            instanceCSW.databaseLabel.setText(database.name);
             return name;
         }
         else return null;
     }
 
-//    public void saveDB(String path) {
-//        DatabaseExporter.exportDatabase(database, path);
-//    }
+    public void saveDB(String path) throws IOException {
+        snapshot(Paths.get(path));
+    }
 
 //    public void deleteDB() {
 //        database = null;
@@ -75,10 +168,25 @@ public class DatabaseManager {
 //    }
 
     public void createDB(String name) {
-        database = new Database(name);
+        Database old = database;
+        Supplier<Long> create = () -> {
+            replaceDatabase(new Database(name));
+            return record(Mutation.createDB(name));
+        };
+        // Under the old database's write lock no change to it can be logged after the new one's creation
+        awaitDurable(old == null ? create.get() : old.writeLocked(create));
 //        instanceCSW.databaseLabel.setText(database.name);
     }
 
+    // Watchers of the old database's tables see them dropped
+    private static void replaceDatabase(Database replacement) {
+        Database old = database;
+        database = replacement;
+        if (old != null) {
+            old.dropTables();
+        }
+    }
+
 //    public boolean existDB(){
 //        return database != null;
 //    }
@@ -88,9 +196,10 @@ public class DatabaseManager {
 //            JPanel tablePanel = instanceCSW.createTablePanel();
 
 //            DBMS.getInstance().tabbedPane.addTab(name, tablePanel);
-            Table table = new Table(name);
-            database.addTable(table);
-            return true;
+            return updateDatabase(Mutation.addTable(name), () -> {
+                database.addTable(new Table(name));
+                return true;
+            });
         }
         else {
             return false;
@@ -100,8 +209,10 @@ public class DatabaseManager {
     public Boolean renameTable(int tableIndex, String name){
         if (name != null && !name.isEmpty() && tableIndex != -1) {
 //            instanceCSW.tabbedPane.setTitleAt(tableIndex,name);
-            database.tables.get(tableIndex).setName(name);
-            return true;
+            return updateTable(tableIndex, Mutation.renameTable(tableIndex, name), table -> {
+                table.setName(name);
+                return true;
+            });
         }
         else{
             return false;
@@ -113,8 +224,10 @@ public class DatabaseManager {
         if (tableIndex != -1) {
 //            instanceCSW.tabbedPane.removeTabAt(tableIndex);
 
-            database.deleteTable(tableIndex);
-            return true;
+            return updateDatabase(Mutation.deleteTable(tableIndex), () -> {
+                database.deleteTable(tableIndex);
+                return true;
+            });
         }
         else {
             return false;
@@ -128,36 +241,11 @@ public class DatabaseManager {
     public Boolean addColumn(int tableIndex, String columnName, ColumnType columnType, String min, String max) {
         if (columnName != null && !columnName.isEmpty()) {
             if (tableIndex != -1) {
-                switch (columnType) {
-                    case INT -> {
-                        Column columnInt = new IntegerColumn(columnName);
-                        database.tables.get(tableIndex).addColumn(columnInt);
-                    }
-                    case REAL -> {
-                        Column columnReal = new RealColumn(columnName);
-                        database.tables.get(tableIndex).addColumn(columnReal);
-                    }
-                    case STRING -> {
-                        Column columnStr = new StringColumn(columnName);
-                        database.tables.get(tableIndex).addColumn(columnStr);
-                    }
-                    case CHAR -> {
-                        Column columnChar = new CharColumn(columnName);
-                        database.tables.get(tableIndex).addColumn(columnChar);
-                    }
-                    case MONEY -> {
-                        Column columnMoney = new MoneyColumn(columnName);
-                        database.tables.get(tableIndex).addColumn(columnMoney);
-                    }
-                    case MONEY_INVL -> {
-                        Column columnMoneyInvl = new MoneyInvlColumn(columnName, min, max);
-                        database.tables.get(tableIndex).addColumn(columnMoneyInvl);
-                    }
-                }
-                for (Row row : database.tables.get(tableIndex).rows) {
-                    row.values.add("");
-                }
-                return true;
+                Column column = createColumn(columnName, columnType, min, max);
+                return updateTable(tableIndex, Mutation.addColumn(tableIndex, columnName, columnType, min, max), table -> {
+                    table.addColumn(column);
+                    return true;
+                });
             }
             else {
                 return false;
@@ -168,6 +256,13 @@ public class DatabaseManager {
         }
     }
 
+    private static Column createColumn(String columnName, ColumnType columnType, String min, String max) {
+        if (columnType == ColumnType.UNRECOGNIZED) {
+            throw new IllegalArgumentException("Unknown column type " + columnType);
+        }
+        return org.example.component.column.ColumnType.valueOf(columnType.name()).newColumn(columnName, min, max);
+    }
+
 
     public Boolean renameColumn(int tableIndex, int columnIndex/*, String oldColumnName*/, String newColumnName/*, JTable table*/){
         if (newColumnName != null && !newColumnName.isEmpty()) {
@@ -176,8 +271,10 @@ public class DatabaseManager {
 //                column.setHeaderValue(column.getHeaderValue().toString().replace(oldColumnName, newColumnName));
 //                table.getTableHeader().repaint();
 
-                database.tables.get(tableIndex).columns.get(columnIndex).setName(newColumnName);
-                return true;
+                return updateTable(tableIndex, Mutation.renameColumn(tableIndex, columnIndex, newColumnName), table -> {
+                    table.renameColumn(columnIndex, newColumnName);
+                    return true;
+                });
             }
             else {
                 return false;
@@ -195,7 +292,7 @@ public class DatabaseManager {
     public Boolean changeColumnType(int tableIndex, int columnIndex, ColumnType columnType/*, JTable table*/, String min, String max){
         if (tableIndex != -1 && columnIndex != -1) {
 
-//            String name = database.tables.get(tableIndex).columns.get(columnIndex).name;
+//            String name = database.tables.get(tableIndex).getColumn(columnIndex).name;
 //            TableColumn column1 = table.getColumnModel().getColumn(columnIndex);
 //            if(!min.equals("") && !max.equals("")){
 //                column1.setHeaderValue(name + " (" + columnType.name() + ")" + "(" + min + ":" + max + ")");
@@ -206,38 +303,11 @@ public class DatabaseManager {
 //            table.getTableHeader().repaint();
 
 
-            switch (columnType) {
-                case INT -> {
-                    Column columnInt = new IntegerColumn(database.tables.get(tableIndex).columns.get(columnIndex).name);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnInt);
-                }
-                case REAL -> {
-                    Column columnReal = new RealColumn(database.tables.get(tableIndex).columns.get(columnIndex).name);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnReal);
-                }
-                case STRING -> {
-                    Column columnStr = new StringColumn(database.tables.get(tableIndex).columns.get(columnIndex).name);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnStr);
-                }
-                case CHAR -> {
-                    Column columnChar = new CharColumn(database.tables.get(tableIndex).columns.get(columnIndex).name);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnChar);
-                }
-                case MONEY -> {
-                    Column columnMoney = new MoneyColumn(database.tables.get(tableIndex).columns.get(columnIndex).name);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnMoney);
-                }
-                case MONEY_INVL -> {
-                    Column column = database.tables.get(tableIndex).columns.get(columnIndex);
-//                    String name = column.name + "(" + min + ":" + max + ")";
-                    Column columnMoneyInvl = new MoneyInvlColumn(column.name, min, max);
-                    database.tables.get(tableIndex).columns.set(columnIndex, columnMoneyInvl);
-                }
-            }
-            for (Row row: database.tables.get(tableIndex).rows) {
-                row.values.set(columnIndex,"");
-            }
-            return true;
+//            String name = column.name + "(" + min + ":" + max + ")";
+            return updateTable(tableIndex, Mutation.changeColumnType(tableIndex, columnIndex, columnType, min, max), table -> {
+                table.setColumn(columnIndex, createColumn(table.getColumn(columnIndex).name, columnType, min, max));
+                return true;
+            });
 //            for (int i = 0; i < database.tables.get(tableIndex).rows.size(); i++) {
 //                table.setValueAt("", i, columnIndex);
 //            }
@@ -247,11 +317,96 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Changes a column's type like {@link #changeColumnType}, but keeps every value the
+     * new type accepts. The cells are copied on a background thread a chunk at a time,
+     * each chunk under the table's write lock, so reads and writes of the table wait for
+     * one chunk at most; the new column replaces the old one, and the change is logged,
+     * once the last chunk is copied. Conversions run one at a time on a single thread.
+     * Returns false if there is no such table or column, and as soon as the copy is queued otherwise.
+     *
+     * @throws IllegalArgumentException for MONEY_INVL without a usable min and max
+     */
+    public Boolean convertColumnType(int tableIndex, int columnIndex, ColumnType columnType, String min, String max) {
+        if (columnType == ColumnType.MONEY_INVL && !new MoneyInvlColumn("", min, max).admitsAnyAmount()) {
+            // Without a usable interval the conversion would drop every value
+            throw new IllegalArgumentException("Converting to MONEY_INVL needs a min and max amount, min not above max");
+        }
+        Database database = DatabaseManager.database;
+        ColumnConversion[] job = {null};
+        Table table = database.readLocked(() -> {
+            if (tableIndex < 0 || tableIndex >= database.tables.size()) {
+                return null;
+            }
+            Table found = database.tables.get(tableIndex);
+            return found.writeLocked(() -> {
+                if (columnIndex < 0 || columnIndex >= found.getColumnCount()) {
+                    return null;
+                }
+                job[0] = found.startConversion(columnIndex, createColumn(found.getColumn(columnIndex).name, columnType, min, max));
+                return found;
+            });
+        });
+        if (table == null) {
+            return false;
+        }
+        conversions.execute(() -> convertInBackground(database, table, job[0], columnType, min, max));
+        return true;
+    }
+
+    private void convertInBackground(Database database, Table table, ColumnConversion job, ColumnType columnType, String min, String max) {
+        try {
+            boolean more = true;
+            while (more) {
+                more = database.readLocked(() -> table.writeLocked(() -> table.convertChunk(job, CONVERSION_CHUNK_SLOTS)));
+            }
+            // The table and column may have moved while the cells were copied
+            updateTable(() -> database == DatabaseManager.database ? database.tables.indexOf(table) : -1, (t, tableIndex) ->
+                    t.finishConversion(job)
+                            ? Mutation.convertColumnType(tableIndex, t.getColumnIndex(job.column.id), columnType, min, max)
+                            : null);
+        } catch (RuntimeException e) {
+            logger.warning("Column conversion failed: " + e);
+        }
+    }
+
+    // Replay of a logged conversion, which copies every cell at once
+    private Boolean convertColumnTypeNow(int tableIndex, int columnIndex, ColumnType columnType, String min, String max) {
+        return updateTable(tableIndex, Mutation.convertColumnType(tableIndex, columnIndex, columnType, min, max), table ->
+                table.finishConversion(table.startConversion(columnIndex, createColumn(table.getColumn(columnIndex).name, columnType, min, max))));
+    }
+
+    public Boolean createIndex(int tableIndex, int columnIndex, IndexType indexType) {
+        if (tableIndex != -1 && columnIndex != -1) {
+            return updateTable(tableIndex, Mutation.createIndex(tableIndex, columnIndex, indexType), table -> {
+                table.createIndex(columnIndex, org.example.component.index.IndexType.valueOf(indexType.name()));
+                return true;
+            });
+        }
+        else {
+            return false;
+        }
+    }
+
+    public Boolean dropIndex(int tableIndex, int columnIndex) {
+        if (tableIndex != -1 && columnIndex != -1) {
+            return updateTable(tableIndex, Mutation.dropIndex(tableIndex, columnIndex), table -> {
+                table.dropIndex(columnIndex);
+                return true;
+            });
+        }
+        else {
+            return false;
+        }
+    }
+
     public Boolean deleteColumn(int tableIndex, int columnIndex/*, CustomTableModel tableModel*/){
         if (columnIndex != -1) {
 //            tableModel.removeColumn(columnIndex);
-            database.tables.get(tableIndex).deleteColumn(columnIndex);
-            return true;
+            return updateTable(tableIndex, Mutation.deleteColumn(tableIndex, columnIndex), table -> {
+                table.deleteColumn(columnIndex);
+                return true;
+            });
         } else {
             return false;
         }
@@ -259,37 +414,83 @@ public class DatabaseManager {
 
     public Boolean addRow(int tableIndex, Row row){
         if (tableIndex != -1) {
-            for (int i = 0; i < database.tables.get(tableIndex).columns.size(); i++) {
-                row.values.add("");
-            }
-            database.tables.get(tableIndex).addRow(row);
-            return true;
+            return appendRow(tableIndex, row) != 0;
         }
         else {
             return false;
         }
     }
 
+    /**
+     * Adds a row and returns its ID, or 0 if it was not added.
+     */
+    public long appendRow(int tableIndex, Row row) {
+        long[] rowId = {0};
+        updateTable(tableIndex, Mutation.addRow(tableIndex, row.values), table -> {
+            long[] keys = new long[row.values.size()];
+            if (checkValues(table, Mutation.addRow(tableIndex, row.values), keys) != null) {
+                return false;
+            }
+            rowId[0] = table.addRow(row, keys);
+            return true;
+        });
+        return rowId[0];
+    }
+
     public Boolean deleteRow(int tableIndex, int rowIndex/*, CustomTableModel tableModel*/){
         if (rowIndex != -1) {
 //            tableModel.removeRow(rowIndex);
-            database.tables.get(tableIndex).deleteRow(rowIndex);
-            return true;
+            return updateTable(tableIndex, Mutation.deleteRow(tableIndex, rowIndex), table -> {
+                table.deleteRow(rowIndex);
+                return true;
+            });
         }
         else {
             return false;
         }
     }
 
+    /**
+     * Deletes the row with {@code rowId}. The table and row are resolved under the
+     * locks, and the delete is logged by position like {@link #deleteRow}.
+     */
+    public Boolean deleteRowById(long tableId, long rowId) {
+        return updateTable(() -> database.indexOfTable(tableId), (table, tableIndex) -> {
+            int rowIndex = table.rowIndexOfRowId(rowId);
+            if (rowIndex < 0) {
+                return null;
+            }
+            table.deleteRow(rowIndex);
+            return Mutation.deleteRow(tableIndex, rowIndex);
+        });
+    }
+
+    /**
+     * Like {@link #updateCellValue}, addressing the cell by table, column and row ID.
+     */
+    public Boolean updateCellValueById(String value, long tableId, long columnId, long rowId) {
+        return updateTable(() -> database.indexOfTable(tableId), (table, tableIndex) -> {
+            int columnIndex = table.getColumnIndex(columnId);
+            int rowIndex = table.rowIndexOfRowId(rowId);
+            long key = columnIndex < 0 ? CellParser.INVALID : table.getColumn(columnIndex).parse(value);
+            if (rowIndex < 0 || key == CellParser.INVALID) {
+                return null;
+            }
+            table.setValue(rowIndex, columnIndex, value.trim(), key);
+            return Mutation.updateCell(tableIndex, rowIndex, columnIndex, value.trim());
+        });
+    }
+
     public Boolean updateCellValue(String value, int tableIndex, int columnIndex, int rowIndex/*, CustomTable table*/){
-        Table table = database.tables.get(tableIndex);
-        Column column = table.columns.get(columnIndex);
-        if (column.validate(value)){
-            Row row = table.rows.get(rowIndex);
-            row.setAt(columnIndex,value.trim());
-            return true;
-        }
-        return false;
+        return updateTable(tableIndex, Mutation.updateCell(tableIndex, rowIndex, columnIndex, value.trim()), table -> {
+            Column column = table.getColumn(columnIndex);
+            long key = column.parse(value);
+            if (key != CellParser.INVALID){
+                table.setValue(rowIndex, columnIndex, value.trim(), key);
+                return true;
+            }
+            return false;
+        });
 //        else {
 //            String data = database.tables.get(tableIndex).rows.get(rowIndex).getAt(columnIndex);
 //            if (data != null){
@@ -313,106 +514,651 @@ public class DatabaseManager {
 
   
 
-    private boolean compareIntegers(int columnValue, int inputValue, String operator) {
-        switch (operator) {
-            case ">":
-                return columnValue > inputValue;
-            case "<":
-                return columnValue < inputValue;
-            case ">=":
-                return columnValue >= inputValue;
-            case "<=":
-                return columnValue <= inputValue;
-            case "==":
-                return columnValue == inputValue;
-            default:
-                return false;
+    public Boolean deleteDuplicateRows(int tableIndex) {
+        return deleteDuplicateRows(tableIndex, false) >= 0;
+    }
+
+    /**
+     * Keeps the first occurrence of every distinct row and returns how many rows were
+     * removed, or -1 if there is no such table or it was deleted meanwhile. The rows are
+     * read in chunks under the table's read lock first, so edits only wait for the final
+     * pass, which finds the table again by ID.
+     */
+    public int deleteDuplicateRows(int tableIndex, boolean parallel) {
+        Database database = DatabaseManager.database;
+        Table scanned = database.readLocked(() ->
+                tableIndex >= 0 && tableIndex < database.tables.size() ? database.tables.get(tableIndex) : null);
+        if (scanned == null) {
+            return -1;
         }
+        long tableId = scanned.getId();
+        int[] removed = {-1};
+        try (DuplicateScan scan = scanned.readLocked(() -> new DuplicateScan(scanned))) {
+            boolean more = true;
+            while (more) {
+                more = scanned.readLocked(() -> scan.scanChunk(DEDUP_CHUNK_SLOTS, parallel));
+            }
+            // Tables before it may have been deleted during the scan, so it is logged at its index now
+            updateTable(() -> database == DatabaseManager.database ? database.indexOfTable(tableId) : -1, (table, index) -> {
+                removed[0] = scan.deleteDuplicates(parallel);
+                return Mutation.deleteDuplicates(index);
+            });
+        }
+        return removed[0];
     }
 
-    private boolean compareDoubles(double columnValue, double inputValue, String operator) {
-        switch (operator) {
-            case ">":
-                return columnValue > inputValue;
-            case "<":
-                return columnValue < inputValue;
-            case ">=":
-                return columnValue >= inputValue;
-            case "<=":
-                return columnValue <= inputValue;
-            case "==":
-                return Double.compare(columnValue, inputValue) == 0;
-            default:
-                // Handle an invalid operator
-                return false;
+    /**
+     * Deletes every row whose cells equal one of {@code rows} and returns how many were
+     * removed, or -1 if there is no such table. A router calls it with rows it keeps on
+     * another shard, so the rows are compared under the write lock and a row changed
+     * since the router read it is only removed if it still matches. The deletes are
+     * logged as one batch.
+     */
+    public int deleteCopies(int tableIndex, Collection<List<String>> rows) {
+        Set<List<String>> copies = new HashSet<>(rows);
+        Database database = DatabaseManager.database;
+        int[] removed = {-1};
+        updateTable(() -> tableIndex >= 0 && tableIndex < database.tables.size() ? tableIndex : -1, (table, index) -> {
+            List<Integer> rowIndexes = new ArrayList<>();
+            for (int slot = table.nextLiveSlot(0), rowIndex = 0; slot < table.getSlotCount(); slot = table.nextLiveSlot(slot + 1), rowIndex++) {
+                if (copies.contains(table.getSlotRow(slot).values)) {
+                    rowIndexes.add(rowIndex);
+                }
+            }
+            removed[0] = rowIndexes.size();
+            // From the last row back, so that no delete shifts the rows still to go
+            List<Mutation> deletes = new ArrayList<>(rowIndexes.size());
+            for (int i = rowIndexes.size() - 1; i >= 0; i--) {
+                table.deleteRow(rowIndexes.get(i));
+                deletes.add(Mutation.deleteRow(index, rowIndexes.get(i)));
+            }
+            return deletes.isEmpty() ? null : Mutation.applyBatch(index, deletes);
+        });
+        return removed[0];
+    }
+
+    /**
+     * Applies ADD_ROW, DELETE_ROW and UPDATE_CELL operations to one table under a single
+     * lock and a single log record. Each operation sees the row indexes left by the ones
+     * before it, and cells are checked with the column validators like
+     * {@link #updateCellValue}. Returns one error per operation, null where it was
+     * applied; if {@code atomic} is set, any error means nothing is applied.
+     */
+    public String[] applyBatch(int tableIndex, List<Mutation> operations, boolean atomic) {
+        String[] errors = new String[operations.size()];
+        updateTable(tableIndex, table -> applyBatch(table, tableIndex, operations, atomic, errors));
+        return errors;
+    }
+
+    /**
+     * Like {@link #applyBatch(int, List, boolean)} on the table with {@code tableId},
+     * found under the locks. Returns null if there is no such table.
+     */
+    public String[] applyBatchById(long tableId, List<Mutation> operations, boolean atomic) {
+        String[] errors = new String[operations.size()];
+        boolean[] found = {false};
+        updateTable(() -> database.indexOfTable(tableId), (table, tableIndex) -> {
+            found[0] = true;
+            return applyBatch(table, tableIndex, operations, atomic, errors);
+        });
+        return found[0] ? errors : null;
+    }
+
+    // Fills in errors and returns the batch to log, or null if nothing was applied
+    private static Mutation applyBatch(Table table, int tableIndex, List<Mutation> operations, boolean atomic, String[] errors) {
+        // Cell values are checked independently of each other, so large batches are
+        // validated on all cores; row bounds depend on the operations before them
+        IntStream operationIndexes = IntStream.range(0, operations.size());
+        if ((long) operations.size() * table.getColumnCount() >= PARALLEL_VALIDATION_CELLS) {
+            operationIndexes = operationIndexes.parallel();
+        }
+        // The cells as their columns parsed them, so that applying them does not parse again
+        long[][] keys = new long[operations.size()][];
+        operationIndexes.forEach(i -> {
+            Mutation operation = operations.get(i);
+            keys[i] = new long[operation.type == Mutation.Type.ADD_ROW ? operation.values.size() : 1];
+            errors[i] = checkValues(table, operation, keys[i]);
+        });
+        int rowCount = table.getRowCount();
+        boolean failed = false;
+        for (int i = 0; i < operations.size(); i++) {
+            if (errors[i] == null) {
+                errors[i] = checkRows(operations.get(i), rowCount);
+            }
+            if (errors[i] != null) {
+                failed = true;
+            } else if (operations.get(i).type == Mutation.Type.ADD_ROW) {
+                rowCount++;
+            } else if (operations.get(i).type == Mutation.Type.DELETE_ROW) {
+                rowCount--;
+            }
         }
+        if (atomic && failed) {
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] == null) {
+                    errors[i] = "Not applied: another operation in the atomic batch failed";
+                }
+            }
+            return null;
+        }
+        List<Mutation> applied = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            if (errors[i] == null) {
+                applied.add(applyOperation(table, tableIndex, operations.get(i), keys[i]));
+            }
+        }
+        return applied.isEmpty() ? null : Mutation.applyBatch(tableIndex, applied);
     }
 
-    private boolean compareStrings(String columnValue, String inputValue, String operator) {
-        switch (operator) {
-            case "==":
-                return columnValue.equals(inputValue);
-            case "!=":
-                return !columnValue.equals(inputValue);
-            case ">":
-                return columnValue.compareTo(inputValue) > 0;
-            case "<":
-                return columnValue.compareTo(inputValue) < 0;
-            case ">=":
-                return columnValue.compareTo(inputValue) >= 0;
-            case "<=":
-                return columnValue.compareTo(inputValue) <= 0;
-            default:
-                // Handle an invalid operator
-                return false;
+    /**
+     * Returns why the values or columns of {@code operation} do not fit the table, or null if they do.
+     */
+    private static String checkValues(Table table, Mutation operation) {
+        return checkValues(table, operation, null);
+    }
+
+    /**
+     * Like {@link #checkValues(Table, Mutation)}, keeping each value as its column parsed
+     * it in {@code keys}: the row's cells in order, or the single edited cell.
+     */
+    private static String checkValues(Table table, Mutation operation, long[] keys) {
+        switch (operation.type) {
+            case ADD_ROW -> {
+                if (operation.values.size() > table.getColumnCount()) {
+                    return "Row has " + operation.values.size() + " values, table has " + table.getColumnCount() + " columns";
+                }
+                for (int c = 0; c < operation.values.size(); c++) {
+                    long key = table.getColumn(c).parse(operation.values.get(c));
+                    if (key == CellParser.INVALID) {
+                        return "Value '" + operation.values.get(c) + "' is not valid for column " + table.getColumn(c).name;
+                    }
+                    if (keys != null) {
+                        keys[c] = key;
+                    }
+                }
+                return null;
+            }
+            case UPDATE_CELL -> {
+                if (operation.columnIndex < 0 || operation.columnIndex >= table.getColumnCount()) {
+                    return "Column " + operation.columnIndex + " out of bounds for length " + table.getColumnCount();
+                }
+                long key = table.getColumn(operation.columnIndex).parse(operation.text);
+                if (key == CellParser.INVALID) {
+                    return "Value '" + operation.text + "' is not valid for column " + table.getColumn(operation.columnIndex).name;
+                }
+                if (keys != null) {
+                    keys[0] = key;
+                }
+                return null;
+            }
+            case DELETE_ROW -> {
+                return null;
+            }
+            default -> {
+                return "Operation " + operation.type + " cannot be batched";
+            }
+        }
+    }
+
+    /**
+     * Returns why {@code operation} cannot address its row once the table has
+     * {@code rowCount} rows, or null if it can.
+     */
+    private static String checkRows(Mutation operation, int rowCount) {
+        if (operation.type == Mutation.Type.ADD_ROW || (operation.rowIndex >= 0 && operation.rowIndex < rowCount)) {
+            return null;
+        }
+        return "Row " + operation.rowIndex + " out of bounds for length " + rowCount;
+    }
+
+    /**
+     * Applies a checked operation and returns it as logged, with values trimmed.
+     */
+    private static Mutation applyOperation(Table table, int tableIndex, Mutation operation) {
+        return applyOperation(table, tableIndex, operation, null);
+    }
+
+    // As above, with the keys the check parsed, or null to have the stores parse the values
+    private static Mutation applyOperation(Table table, int tableIndex, Mutation operation, long[] keys) {
+        switch (operation.type) {
+            case ADD_ROW -> {
+                Row row = new Row();
+                for (String value : operation.values) {
+                    row.values.add(value.trim());
+                }
+                table.addRow(row, keys);
+                return Mutation.addRow(tableIndex, row.values);
+            }
+            case DELETE_ROW -> {
+                table.deleteRow(operation.rowIndex);
+                return Mutation.deleteRow(tableIndex, operation.rowIndex);
+            }
+            default -> {
+                String value = operation.text.trim();
+                table.setValue(operation.rowIndex, operation.columnIndex, value, keys != null ? keys[0] : CellParser.INVALID);
+                return Mutation.updateCell(tableIndex, operation.rowIndex, operation.columnIndex, value);
+            }
+        }
+    }
+
+    /** Starts a transaction and returns its ID. */
+    public long beginTransaction() {
+        Transaction transaction = new Transaction(nextTransactionId.getAndIncrement());
+        database.readLocked(() -> {
+            for (Table table : database.tables) {
+                transaction.startVersions.put(table.getId(), table.readLocked(() -> table.getChangeFeed().getVersion()));
+            }
+            return null;
+        });
+        transactions.put(transaction.id, transaction);
+        return transaction.id;
+    }
+
+    /**
+     * Checks a row to add and buffers it in the transaction. Returns why it cannot be
+     * added, or null.
+     */
+    public String addRowInTransaction(long transactionId, int tableIndex, List<String> values) {
+        return buffer(transactionId, () -> tableIndex, (table, transaction) -> {
+            Mutation operation = Mutation.addRow(-1, values);
+            String error = checkValues(table, operation);
+            if (error == null) {
+                transaction.writes.add(new Transaction.Write(table.getId(), 0, 0, operation));
+            }
+            return error;
+        });
+    }
+
+    /**
+     * Buffers the delete of a row, addressed by ID when {@code rowId} is set and by
+     * index otherwise, in the transaction. Returns why it cannot be deleted, or null.
+     */
+    public String deleteRowInTransaction(long transactionId, int tableIndex, int rowIndex, long tableId, long rowId) {
+        return buffer(transactionId, rowId != 0 ? () -> database.indexOfTable(tableId) : () -> tableIndex, (table, transaction) -> {
+            int slot = rowId != 0 ? table.slotOfRowId(rowId) : rowIndex >= 0 && rowIndex < table.getRowCount() ? table.slotOf(rowIndex) : -1;
+            String error = checkRow(table, transaction, slot);
+            if (error == null) {
+                transaction.writes.add(new Transaction.Write(table.getId(), table.getRowId(slot), 0, Mutation.deleteRow(-1, -1)));
+            }
+            return error;
+        });
+    }
+
+    /**
+     * Checks a cell edit, addressed by IDs when {@code rowId} is set and by indexes
+     * otherwise, and buffers it in the transaction. Returns why it cannot be made, or null.
+     */
+    public String updateCellInTransaction(long transactionId, String value, int tableIndex, int columnIndex, int rowIndex,
+                                          long tableId, long columnId, long rowId) {
+        return buffer(transactionId, rowId != 0 ? () -> database.indexOfTable(tableId) : () -> tableIndex, (table, transaction) -> {
+            int slot = rowId != 0 ? table.slotOfRowId(rowId) : rowIndex >= 0 && rowIndex < table.getRowCount() ? table.slotOf(rowIndex) : -1;
+            int column = rowId != 0 ? table.getColumnIndex(columnId) : columnIndex;
+            Mutation operation = Mutation.updateCell(-1, -1, column, value);
+            String error = checkRow(table, transaction, slot);
+            if (error == null) {
+                error = checkValues(table, operation);
+            }
+            if (error == null) {
+                transaction.writes.add(new Transaction.Write(table.getId(), table.getRowId(slot), table.getColumn(column).id, operation));
+            }
+            return error;
+        });
+    }
+
+    private static String checkRow(Table table, Transaction transaction, int slot) {
+        if (slot < 0) {
+            return "No such row";
         }
+        if (transaction.deletes(table.getId(), table.getRowId(slot))) {
+            return "Row " + table.getRowId(slot) + " is deleted in this transaction";
+        }
+        return null;
     }
-    private boolean compareChars(String columnValue, String inputValue, String operator) {
-        if (columnValue.length() != 1 || inputValue.length() != 1) {
-            // Handle invalid input (not single characters)
+
+    /**
+     * Runs {@code write} on the transaction under the table's read lock. It returns an
+     * error, or null once it has buffered the write.
+     */
+    private String buffer(long transactionId, IntSupplier locate, BiFunction<Table, Transaction, String> write) {
+        Transaction transaction = transactions.get(transactionId);
+        if (transaction == null) {
+            return "Unknown transaction " + transactionId;
+        }
+        synchronized (transaction) {
+            if (transaction.finished) {
+                return "Unknown transaction " + transactionId;
+            }
+            transaction.lastUsedNanos = System.nanoTime();
+            return database.readLocked(() -> {
+                int index = locate.getAsInt();
+                if (index < 0 || index >= database.tables.size()) {
+                    return "No such table";
+                }
+                Table table = database.tables.get(index);
+                return table.readLocked(() -> {
+                    transaction.startVersions.putIfAbsent(table.getId(), table.getChangeFeed().getVersion());
+                    return write.apply(table, transaction);
+                });
+            });
+        }
+    }
+
+    /**
+     * Applies the writes of a transaction, if no row they touch has changed since it
+     * began, and logs them as one record. The tables are write-locked in index
+     * order, so commits over the same tables cannot deadlock; the log's group commit
+     * makes concurrent commits durable together.
+     */
+    public CommitResult commitTransaction(long transactionId) {
+        Transaction transaction = transactions.remove(transactionId);
+        if (transaction == null) {
+            return CommitResult.UNKNOWN_TRANSACTION;
+        }
+        List<Transaction.Write> writes;
+        synchronized (transaction) {
+            if (transaction.finished) {
+                // Expired while this call was removing it
+                return CommitResult.UNKNOWN_TRANSACTION;
+            }
+            transaction.finished = true;
+            writes = transaction.writes;
+        }
+        long[] lsn = {0};
+        boolean committed = writes.isEmpty() || database.readLocked(() -> {
+            TreeMap<Integer, Table> tables = new TreeMap<>();
+            for (Transaction.Write write : writes) {
+                int index = database.indexOfTable(write.tableId);
+                if (index < 0) {
+                    return false;
+                }
+                tables.put(index, database.tables.get(index));
+            }
+            return writeLocked(new ArrayList<>(tables.values()), 0, () -> {
+                for (Transaction.Write write : writes) {
+                    Table table = database.tables.get(database.indexOfTable(write.tableId));
+                    if (!isCurrent(table, write, transaction.startVersions.get(write.tableId))) {
+                        return false;
+                    }
+                }
+                List<Mutation> batches = new ArrayList<>(tables.size());
+                for (Map.Entry<Integer, Table> entry : tables.entrySet()) {
+                    Table table = entry.getValue();
+                    List<Mutation> applied = new ArrayList<>();
+                    for (Transaction.Write write : writes) {
+                        if (write.tableId == table.getId()) {
+                            applied.add(applyOperation(table, entry.getKey(), resolve(table, entry.getKey(), write)));
+                        }
+                    }
+                    batches.add(Mutation.applyBatch(entry.getKey(), applied));
+                }
+                database.changed();
+                lsn[0] = record(batches.size() == 1 ? batches.get(0) : Mutation.commitTransaction(batches));
+                return true;
+            });
+        });
+        awaitDurable(lsn[0]);
+        return committed ? CommitResult.COMMITTED : CommitResult.CONFLICT;
+    }
+
+    // Whether the write still applies to a row nobody changed since startVersion
+    private static boolean isCurrent(Table table, Transaction.Write write, long startVersion) {
+        if (write.operation.type == Mutation.Type.ADD_ROW) {
+            return checkValues(table, write.operation) == null;
+        }
+        int slot = table.slotOfRowId(write.rowId);
+        if (slot < 0 || table.getRowVersion(slot) > startVersion) {
             return false;
         }
+        if (write.operation.type == Mutation.Type.UPDATE_CELL) {
+            int column = table.getColumnIndex(write.columnId);
+            return column >= 0 && table.getColumn(column).validate(write.operation.text);
+        }
+        return true;
+    }
+
+    // The write as a batch operation on the table as it is now
+    private static Mutation resolve(Table table, int tableIndex, Transaction.Write write) {
+        return switch (write.operation.type) {
+            case ADD_ROW -> Mutation.addRow(tableIndex, write.operation.values);
+            case DELETE_ROW -> Mutation.deleteRow(tableIndex, table.rowIndexOfRowId(write.rowId));
+            default -> Mutation.updateCell(tableIndex, table.rowIndexOfRowId(write.rowId), table.getColumnIndex(write.columnId),
+                    write.operation.text);
+        };
+    }
+
+    private static boolean writeLocked(List<Table> tables, int from, BooleanSupplier action) {
+        if (from == tables.size()) {
+            return action.getAsBoolean();
+        }
+        return tables.get(from).writeLocked(() -> writeLocked(tables, from + 1, action));
+    }
 
-        char columnChar = columnValue.charAt(0);
-        char inputChar = inputValue.charAt(0);
-
-        switch (operator) {
-            case "==":
-                return columnChar == inputChar;
-            case "!=":
-                return columnChar != inputChar;
-            case ">":
-                return columnChar > inputChar;
-            case "<":
-                return columnChar < inputChar;
-            case ">=":
-                return columnChar >= inputChar;
-            case "<=":
-                return columnChar <= inputChar;
-            default:
-                // Handle an invalid operator
+    /** Drops a transaction's writes. Returns false if there is no such transaction. */
+    public boolean rollbackTransaction(long transactionId) {
+        Transaction transaction = transactions.remove(transactionId);
+        if (transaction == null) {
+            return false;
+        }
+        synchronized (transaction) {
+            if (transaction.finished) {
                 return false;
+            }
+            transaction.finished = true;
         }
+        return true;
     }
 
+    // Marked finished under the monitor first, so a client still holding the ID cannot buffer into it
+    private void expireTransactions() {
+        long now = System.nanoTime();
+        for (Transaction transaction : transactions.values()) {
+            synchronized (transaction) {
+                if (transaction.finished || now - transaction.lastUsedNanos <= TRANSACTION_TIMEOUT_NANOS) {
+                    continue;
+                }
+                transaction.finished = true;
+            }
+            transactions.remove(transaction.id, transaction);
+        }
+    }
 
+    /**
+     * Runs a change to one table under the database read lock and the table's write
+     * lock, logs it if it succeeded, and returns once the log has made it durable.
+     */
+    private boolean updateTable(int tableIndex, Mutation mutation, Predicate<Table> action) {
+        return updateTable(tableIndex, table -> action.test(table) ? mutation : null);
+    }
 
-    public Boolean deleteDuplicateRows(int tableIndex) {
-        int i = 0;
-        boolean flag = true;
-        while(i<database.tables.get(tableIndex).rows.size()){
-            flag = true;
-            for (int j = i+1; j < database.tables.get(tableIndex).rows.size(); j++) {
-                if (database.tables.get(tableIndex).rows.get(i).values.equals(database.tables.get(tableIndex).rows.get(j).values)) {
-                    deleteRow(tableIndex, i);
-                    flag = false;
-                    break;
+    /**
+     * Variant of {@link #updateTable(int, Mutation, Predicate)} whose action returns the
+     * mutation describing what it changed, or null if it changed nothing.
+     */
+    private boolean updateTable(int tableIndex, Function<Table, Mutation> action) {
+        return updateTable(() -> tableIndex, (table, index) -> action.apply(table));
+    }
+
+    /**
+     * Variant of {@link #updateTable(int, Function)} that finds the table index under the
+     * database read lock, so that an ID resolves to the index the change is logged under.
+     * {@code locate} returns -1 if there is no such table.
+     */
+    private boolean updateTable(IntSupplier locate, BiFunction<Table, Integer, Mutation> action) {
+        long[] lsn = {0};
+        boolean success = database.readLocked(() -> {
+            int tableIndex = locate.getAsInt();
+            if (tableIndex < 0) {
+                return false;
+            }
+            Table table = database.tables.get(tableIndex);
+            return table.writeLocked(() -> {
+                Mutation applied = action.apply(table, tableIndex);
+                if (applied != null) {
+                    database.changed();
+                    lsn[0] = record(applied);
                 }
+                return applied != null;
+            });
+        });
+        awaitDurable(lsn[0]);
+        return success;
+    }
+
+    /**
+     * Like {@link #updateTable} for changes to the table list, which hold the database
+     * write lock so that no table index shifts under a concurrent change.
+     */
+    private boolean updateDatabase(Mutation mutation, BooleanSupplier action) {
+        long[] lsn = {0};
+        boolean success = database.writeLocked(() -> {
+            boolean applied = action.getAsBoolean();
+            if (applied) {
+                database.changed();
+                lsn[0] = record(mutation);
             }
-            if (flag){
-                i++;
+            return applied;
+        });
+        awaitDurable(lsn[0]);
+        return success;
+    }
+
+    private long record(Mutation mutation) {
+        WriteAheadLog log = this.log;
+        return log == null ? 0 : log.append(mutation);
+    }
+
+    private void awaitDurable(long lsn) {
+        WriteAheadLog log = this.log;
+        if (log != null && lsn > 0) {
+            log.awaitDurable(lsn);
+        }
+    }
+
+    /**
+     * Replays one logged mutation through the same code path that produced it.
+     */
+    public void apply(Mutation mutation) {
+        switch (mutation.type) {
+            case CREATE_DB -> createDB(mutation.text);
+            case RENAME_DB -> renameDB(mutation.text);
+            case ADD_TABLE -> addTable(mutation.text);
+            case RENAME_TABLE -> renameTable(mutation.tableIndex, mutation.text);
+            case DELETE_TABLE -> deleteTable(mutation.tableIndex);
+            case ADD_COLUMN -> addColumn(mutation.tableIndex, mutation.text, mutation.getColumnType(), mutation.min, mutation.max);
+            case RENAME_COLUMN -> renameColumn(mutation.tableIndex, mutation.columnIndex, mutation.text);
+            case CHANGE_COLUMN_TYPE -> changeColumnType(mutation.tableIndex, mutation.columnIndex, mutation.getColumnType(), mutation.min, mutation.max);
+            case DELETE_COLUMN -> deleteColumn(mutation.tableIndex, mutation.columnIndex);
+            case ADD_ROW -> {
+                Row row = new Row();
+                row.values.addAll(mutation.values);
+                addRow(mutation.tableIndex, row);
             }
+            case DELETE_ROW -> deleteRow(mutation.tableIndex, mutation.rowIndex);
+            case UPDATE_CELL -> updateCellValue(mutation.text, mutation.tableIndex, mutation.columnIndex, mutation.rowIndex);
+            case DELETE_DUPLICATES -> deleteDuplicateRows(mutation.tableIndex, false);
+            case POPULATE_TABLE -> populateTable();
+            case CREATE_INDEX -> createIndex(mutation.tableIndex, mutation.columnIndex, mutation.getIndexType());
+            case DROP_INDEX -> dropIndex(mutation.tableIndex, mutation.columnIndex);
+            case APPLY_BATCH -> applyBatch(mutation.tableIndex, mutation.operations, true);
+            case COMMIT_TRANSACTION -> mutation.operations.forEach(this::apply);
+            case CONVERT_COLUMN_TYPE -> convertColumnTypeNow(mutation.tableIndex, mutation.columnIndex, mutation.getColumnType(), mutation.min, mutation.max);
+        }
+    }
+
+    /**
+     * Rebuilds the database from the checkpoint and write-ahead log in {@code directory},
+     * then logs every further change there. Returns false if there was nothing to recover,
+     * in which case the caller creates the database.
+     *
+     * @param commitDelayMicros how long a group commit waits for more writers to join it
+     * @param checkpointBytes log size at which the database is checkpointed and the log truncated
+     */
+    public boolean openLog(Path directory, long commitDelayMicros, long checkpointBytes) throws IOException {
+        Files.createDirectories(directory);
+        Path checkpointPath = directory.resolve(CHECKPOINT_FILE);
+        Path logPath = directory.resolve(LOG_FILE);
+        SnapshotFile checkpoint = SnapshotFile.read(checkpointPath);
+        long lsn = 0;
+        if (checkpoint != null) {
+            replaceDatabase(checkpoint.database);
+            lsn = checkpoint.lsn;
+        }
+        long[] replayed = {0};
+        lsn = WriteAheadLog.replay(logPath, lsn, mutation -> {
+            apply(mutation);
+            replayed[0]++;
+        });
+        logger.info("Recovered " + (checkpoint != null ? "checkpoint and " : "") + replayed[0] + " mutations from " + directory);
+        log = new WriteAheadLog(logPath, lsn, commitDelayMicros, checkpointBytes, () -> snapshot(checkpointPath));
+        return checkpoint != null || replayed[0] > 0;
+    }
+
+    public void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private void compactLoop() {
+        while (true) {
+            try {
+                Thread.sleep(COMPACTION_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                expireTransactions();
+                compactTables();
+            } catch (RuntimeException e) {
+                logger.warning("Table compaction failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Drops the cell values no snapshot can read any more, and the slots of deleted rows
+     * from every table that has enough of them. Row positions and IDs do not change, so
+     * compaction is not logged.
+     */
+    public void compactTables() {
+        Database database = DatabaseManager.database;
+        if (database == null) {
+            return;
+        }
+        database.readLocked(() -> {
+            for (Table table : database.tables) {
+                table.writeLocked(() -> {
+                    table.pruneVersions();
+                    return table.needsCompaction() && table.compact();
+                });
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writes the whole database as a snapshot tagged with the last logged LSN. Holding
+     * the database write lock keeps every writer out, so the state matches that LSN exactly.
+     */
+    private long snapshot(Path path) throws IOException {
+        try {
+            return database.writeLocked(() -> {
+                WriteAheadLog log = this.log;
+                long lsn = log == null ? 0 : log.getAppendedLsn();
+                // Every table change, compaction included, holds the database read lock, so the
+                // tables hold still without their own locks. Tables are not compacted first, since
+                // an open table snapshot would prevent it; the file leaves out dead slots itself.
+                try {
+                    SnapshotFile.write(path, database, lsn);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                logger.info("Wrote snapshot " + path + " at LSN " + lsn);
+                return lsn;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return true;
     }
 }
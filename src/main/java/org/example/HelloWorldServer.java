@@ -17,17 +17,33 @@ package org.example;/*
 
 import org.example.Row;
 import org.example.ColumnType;
-import io.grpc.Grpc;
-import io.grpc.InsecureServerCredentials;
 import io.grpc.Server;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import org.example.component.Database;
 import org.example.component.Table;
+import org.example.component.query.AggregateFunction;
+import org.example.component.query.Aggregation;
+import org.example.component.query.Aggregator;
+import org.example.component.query.Condition;
+import org.example.component.query.Operator;
+import org.example.component.query.QueryExecutor;
+import org.example.component.query.RowSorter;
+import org.example.component.query.SortKey;
+import org.example.component.query.SortedRows;
+import org.example.metrics.Histogram;
+import org.example.metrics.RpcMetrics;
+import org.example.persistence.Mutation;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -37,15 +53,12 @@ public class HelloWorldServer {
   private static final Logger logger = Logger.getLogger(HelloWorldServer.class.getName());
 
   private Server server;
+  private ServerSettings settings;
 
-  private void start() throws IOException {
-    /* The port on which the server should run */
-    int port = 50051;
-    server = Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create())
-            .addService(new GreeterImpl())
-            .build()
-            .start();
-    logger.info("Server started, listening on " + port);
+  private void start(String[] args) throws IOException {
+    settings = new ServerSettings(args);
+    server = settings.build(new GreeterImpl(), metrics).start();
+    logger.info("Server started, listening on " + server.getPort());
     Runtime.getRuntime().addShutdownHook(new Thread() {
       @Override
       public void run() {
@@ -64,6 +77,12 @@ public class HelloWorldServer {
   private void stop() throws InterruptedException {
     if (server != null) {
       server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+      settings.shutdown();
+    }
+    try {
+      dbManager.closeLog();
+    } catch (IOException e) {
+      e.printStackTrace(System.err);
     }
   }
 
@@ -76,6 +95,23 @@ public class HelloWorldServer {
     }
   }
   public static DatabaseManager dbManager;
+  // Fed by the server's interceptor; empty when GreeterImpl is served some other way
+  static final RpcMetrics metrics = new RpcMetrics();
+  // Memory a SortRows call may use before it spills sorted runs to sortSpillDirectory
+  static long sortMemoryBytes = RowSorter.DEFAULT_MEMORY_BUDGET;
+  static Path sortSpillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+  /**
+   * Returns the value of a {@code --name=value} argument, or {@code defaultValue}.
+   */
+  static String option(String[] args, String name, String defaultValue) {
+    for (String arg : args) {
+      if (arg.startsWith(name + "=")) {
+        return arg.substring(name.length() + 1);
+      }
+    }
+    return defaultValue;
+  }
 
   /**
    * Main launches the server from the command line.
@@ -83,10 +119,34 @@ public class HelloWorldServer {
   public static void main(String[] args) throws IOException, InterruptedException {
     final HelloWorldServer server = new HelloWorldServer();
     dbManager = DatabaseManager.getInstance();
-    dbManager.createDB("DB");
-    dbManager.populateTable();
-    dbManager.populateTable();
-    server.start();
+    // The node's place in a ShardMap; it must stay the same across restarts, as the log replays row IDs from it
+    String shard = option(args, "--shard", null);
+    Table.setRowIdBase(ShardMap.rowIdBase(Integer.parseInt(shard != null ? shard : "0")));
+    String walDir = option(args, "--wal-dir", null);
+    boolean recovered = false;
+    if (walDir != null) {
+      recovered = dbManager.openLog(Paths.get(walDir),
+              Long.parseLong(option(args, "--wal-commit-delay-micros", "200")),
+              Long.parseLong(option(args, "--wal-checkpoint-bytes", String.valueOf(64L << 20))));
+    }
+    sortMemoryBytes = Long.parseLong(option(args, "--sort-memory-bytes", String.valueOf(sortMemoryBytes)));
+    sortSpillDirectory = Paths.get(option(args, "--sort-spill-dir", sortSpillDirectory.toString()));
+    String snapshot = option(args, "--snapshot", null);
+    if (recovered) {
+      if (snapshot != null) {
+        logger.info("Ignoring --snapshot, the database was recovered from " + walDir);
+      }
+    } else if (snapshot != null) {
+      dbManager.openDB(snapshot);
+    } else {
+      dbManager.createDB("DB");
+      // A shard starts empty; the router's CreateTestTable spreads the test rows over the shards
+      if (shard == null) {
+        dbManager.populateTable();
+        dbManager.populateTable();
+      }
+    }
+    server.start(args);
     server.blockUntilShutdown();
   }
 
@@ -94,47 +154,108 @@ public class HelloWorldServer {
 
       @Override
       public void getRows(GetRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
-          int tableIndex = request.getTableIndex();
-          List<Row> rows = new ArrayList<>();
-          List<org.example.component.Row> DBrows = dbManager.database.tables.get(tableIndex).rows;
-          for (int i = 0; i < DBrows.size(); i++) {
-              rows.add(Row.newBuilder().addAllValues(DBrows.get(i).values).build());
+          Table table = findTable(request.getTableIndex(), request.getTableId());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
           }
+          // Copy the page under the read lock, then send it without holding the lock
+          GetRowsResponse response = table.readLocked(() -> {
+              int total = table.getRowCount();
+              int from = Math.min(Math.max(request.getOffset(), 0), total);
+              int to = request.getLimit() > 0 ? (int) Math.min(total, (long) from + request.getLimit()) : total;
 
-          GetRowsResponse.Builder responseBuilder = GetRowsResponse.newBuilder();
-          // Assuming Row message has been properly defined in your .proto file
-          for (Row row : rows) {
-              responseBuilder.addRows(row); // Convert your Row object to gRPC Row message
-          }
-          responseObserver.onNext(responseBuilder.build());
+              GetRowsResponse.Builder responseBuilder = GetRowsResponse.newBuilder()
+                      .setTotalRows(total)
+                      .setOffset(from)
+                      .setVersion(table.getChangeFeed().getVersion());
+              if (request.getFormat() == RowFormat.COLUMN_BATCH) {
+                  return responseBuilder.setBatch(RowBatchEncoder.encode(table, RowBatchEncoder.slots(table, from, to), List.of())).build();
+              }
+              for (int i = from, slot = from < to ? table.slotOf(from) : 0; i < to; i++, slot = table.nextLiveSlot(slot + 1)) {
+                  responseBuilder.addRows(RowStreamer.toProto(table, slot));
+              }
+              return responseBuilder.build();
+          });
+          responseObserver.onNext(response);
           responseObserver.onCompleted();
       }
 
       @Override
-      public void getColumns(GetColumnsRequest request, StreamObserver<GetColumnsResponse> responseObserver) {
-          int tableIndex = request.getTableIndex();
-          List<Column> columns = new ArrayList<>();
-          List<org.example.component.Column> DBcolumns = dbManager.database.tables.get(tableIndex).columns;
-          for (int i = 0; i < DBcolumns.size(); i++) {
-              columns.add(Column.newBuilder().setName(DBcolumns.get(i).name).setType(ColumnType.valueOf(DBcolumns.get(i).type)).build());
+      public void streamRows(GetRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
+          Table table = findTable(request.getTableIndex(), request.getTableId());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
           }
+          ServerCallStreamObserver<GetRowsResponse> serverObserver = (ServerCallStreamObserver<GetRowsResponse>) responseObserver;
+          RowStreamer streamer = new RowStreamer(table, request, serverObserver);
+          serverObserver.setOnCancelHandler(streamer::cancel);
+          // gRPC runs the handler once the call is ready and again after every back-pressure pause
+          serverObserver.setOnReadyHandler(streamer);
+      }
 
-          GetColumnsResponse.Builder responseBuilder = GetColumnsResponse.newBuilder();
-          // Assuming Column message has been properly defined in your .proto file
-          for (Column column : columns) {
-              responseBuilder.addColumns(column); // Convert your Column object to gRPC Column message
+      @Override
+      public void watchTable(WatchTableRequest request, StreamObserver<TableUpdate> responseObserver) {
+          Database database = dbManager.database;
+          // The index the watcher reports is taken under the same lock as the table
+          TableWatcher watcher = database.readLocked(() -> {
+              int tableIndex = indexOfTable(request.getTableIndex(), request.getTableId());
+              return tableIndex < 0 ? null : new TableWatcher(database.tables.get(tableIndex), tableIndex, request,
+                      (ServerCallStreamObserver<TableUpdate>) responseObserver);
+          });
+          if (watcher == null || !watcher.start()) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
           }
-          responseObserver.onNext(responseBuilder.build());
+      }
+
+      @Override
+      public StreamObserver<InsertRowsRequest> insertRows(StreamObserver<InsertRowsResponse> responseObserver) {
+          return new RowIngester(dbManager, responseObserver);
+      }
+
+      @Override
+      public void getColumns(GetColumnsRequest request, StreamObserver<GetColumnsResponse> responseObserver) {
+          Table table = findTable(request.getTableIndex(), request.getTableId());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
+          }
+          GetColumnsResponse response = table.readLocked(() -> {
+              GetColumnsResponse.Builder responseBuilder = GetColumnsResponse.newBuilder().setSchemaVersion(table.getSchemaVersion());
+              for (org.example.component.Column column : table.getColumns()) {
+                  responseBuilder.addColumns(RowStreamer.toProto(column));
+              }
+              return responseBuilder.build();
+          });
+          responseObserver.onNext(response);
           responseObserver.onCompleted();
       }
 
       @Override
       public void getTablesData(GetTablesDataRequest request, StreamObserver<GetTablesDataResponse> responseObserver) {
-          List<Table> tables = dbManager.database.tables;
-          GetTablesDataResponse.Builder responseBuilder = GetTablesDataResponse.newBuilder();
+          Database database = dbManager.database;
+          // Read before the tables: a change made meanwhile shows up as a newer version next time
+          long version = database.getVersion();
+          GetTablesDataResponse.Builder responseBuilder = GetTablesDataResponse.newBuilder()
+                  .setGeneration(database.getGeneration())
+                  .setVersion(version);
+          if (request.hasIfChangedSinceVersion() && request.getGeneration() == database.getGeneration()
+                  && request.getIfChangedSinceVersion() == version) {
+              responseObserver.onNext(responseBuilder.setNotModified(true).build());
+              responseObserver.onCompleted();
+              return;
+          }
 
-          for (Table table : tables) {
-              TableData tableData = TableData.newBuilder().setName(table.name).setIndex(tables.indexOf(table)).build();
+          int index = 0;
+          for (Table table : database.tables) {
+              TableData tableData = table.readLocked(() -> TableData.newBuilder()
+                      .setName(table.name)
+                      .setId(table.getId())
+                      .setVersion(table.getChangeFeed().getVersion())
+                      .setSchemaVersion(table.getSchemaVersion()))
+                      .setIndex(index++)
+                      .build();
               responseBuilder.addTablesData(tableData); // Convert your TableData object to gRPC TableData message
           }
           responseObserver.onNext(responseBuilder.build());
@@ -153,8 +274,16 @@ public class HelloWorldServer {
       @Override
       public void addRow(AddRowRequest request, StreamObserver<AddRowResponse> responseObserver) {
           int tableIndex = request.getTableIndex();
-          boolean success = dbManager.addRow(tableIndex, new org.example.component.Row());
-          AddRowResponse response = AddRowResponse.newBuilder().setSuccess(success).build();
+          if (request.getTransactionId() != 0) {
+              String error = dbManager.addRowInTransaction(request.getTransactionId(), tableIndex, request.getValuesList());
+              responseObserver.onNext(AddRowResponse.newBuilder().setSuccess(error == null).build());
+              responseObserver.onCompleted();
+              return;
+          }
+          org.example.component.Row row = new org.example.component.Row();
+          row.values.addAll(request.getValuesList());
+          long rowId = dbManager.appendRow(tableIndex, row);
+          AddRowResponse response = AddRowResponse.newBuilder().setSuccess(rowId != 0).setRowId(rowId).build();
           responseObserver.onNext(response);
           responseObserver.onCompleted();
       }
@@ -202,7 +331,11 @@ public class HelloWorldServer {
       public void deleteRow(DeleteRowRequest request, StreamObserver<DeleteRowResponse> responseObserver) {
           int tableIndex = request.getTableIndex();
           int rowIndex = request.getRowIndex();
-          boolean success = dbManager.deleteRow(tableIndex, rowIndex);
+          boolean success = request.getTransactionId() != 0
+                  ? dbManager.deleteRowInTransaction(request.getTransactionId(), tableIndex, rowIndex, request.getTableId(), request.getRowId()) == null
+                  : request.getRowId() != 0
+                  ? dbManager.deleteRowById(request.getTableId(), request.getRowId())
+                  : dbManager.deleteRow(tableIndex, rowIndex);
           DeleteRowResponse response = DeleteRowResponse.newBuilder().setSuccess(success).build();
           responseObserver.onNext(response);
           responseObserver.onCompleted();
@@ -234,7 +367,15 @@ public class HelloWorldServer {
           int tableIndex = request.getTableIndex();
           int columnIndex = request.getColumnIndex();
           ColumnType columnType = request.getColumnType(); // Make sure this matches your enum
-          boolean success = dbManager.changeColumnType(tableIndex, columnIndex, columnType);
+          boolean success;
+          try {
+              success = request.getConvert()
+                      ? dbManager.convertColumnType(tableIndex, columnIndex, columnType, request.getMin(), request.getMax())
+                      : dbManager.changeColumnType(tableIndex, columnIndex, columnType, request.getMin(), request.getMax());
+          } catch (IllegalArgumentException e) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+              return;
+          }
           ChangeColumnTypeResponse response = ChangeColumnTypeResponse.newBuilder().setSuccess(success).build();
           responseObserver.onNext(response);
           responseObserver.onCompleted();
@@ -246,7 +387,12 @@ public class HelloWorldServer {
           int rowIndex = request.getRowIndex();
           int columnIndex = request.getColumnIndex();
           String newValue = request.getValue();
-          boolean success = dbManager.updateCellValue(newValue, tableIndex, columnIndex, rowIndex);
+          boolean success = request.getTransactionId() != 0
+                  ? dbManager.updateCellInTransaction(request.getTransactionId(), newValue, tableIndex, columnIndex, rowIndex,
+                          request.getTableId(), request.getColumnId(), request.getRowId()) == null
+                  : request.getRowId() != 0
+                  ? dbManager.updateCellValueById(newValue, request.getTableId(), request.getColumnId(), request.getRowId())
+                  : dbManager.updateCellValue(newValue, tableIndex, columnIndex, rowIndex);
           EditCellResponse response = EditCellResponse.newBuilder().setSuccess(success).build();
           responseObserver.onNext(response);
           responseObserver.onCompleted();
@@ -268,11 +414,319 @@ public class HelloWorldServer {
       @Override
       public void deleteDuplicateRows(DeleteDuplicateRowsRequest request, StreamObserver<DeleteDuplicateRowsResponse> responseObserver) {
           int tableIndex = request.getTableIndex();
-          boolean success = dbManager.deleteDuplicateRows(tableIndex);
-          DeleteDuplicateRowsResponse response = DeleteDuplicateRowsResponse.newBuilder().setSuccess(success).build();
+          int removed;
+          if (request.getCopiesOfCount() > 0) {
+              List<List<String>> copies = new ArrayList<>(request.getCopiesOfCount());
+              for (Row row : request.getCopiesOfList()) {
+                  copies.add(row.getValuesList());
+              }
+              removed = dbManager.deleteCopies(tableIndex, copies);
+          } else {
+              removed = dbManager.deleteDuplicateRows(tableIndex, request.getParallel());
+          }
+          if (removed < 0) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
+          }
+          DeleteDuplicateRowsResponse response = DeleteDuplicateRowsResponse.newBuilder()
+                  .setSuccess(true)
+                  .setRemovedRows(removed)
+                  .build();
+          responseObserver.onNext(response);
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void queryRows(QueryRowsRequest request, StreamObserver<QueryRowsResponse> responseObserver) {
+          Table table = findTable(request.getTableIndex());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
+          }
+          QueryRowsResponse response;
+          try {
+              List<Condition> conditions = toConditions(request.getPredicatesList());
+              response = table.readLocked(() -> {
+                  List<Integer> projection = request.getProjectionList();
+                  for (int columnIndex : projection) {
+                      if (columnIndex < 0 || columnIndex >= table.getColumnCount()) {
+                          throw new IllegalArgumentException("Unknown column " + columnIndex);
+                      }
+                  }
+                  int limit = request.getLimit() > 0 ? request.getLimit() : Integer.MAX_VALUE;
+                  QueryRowsResponse.Builder responseBuilder = QueryRowsResponse.newBuilder();
+                  int[] slots = QueryExecutor.findRows(table, conditions, limit);
+                  if (request.getFormat() == RowFormat.COLUMN_BATCH) {
+                      for (int slot : slots) {
+                          responseBuilder.addRowIndexes(table.rowIndexOf(slot));
+                      }
+                      return responseBuilder.setBatch(RowBatchEncoder.encode(table, slots, projection)).build();
+                  }
+                  for (int slot : slots) {
+                      Row.Builder row = Row.newBuilder().setId(table.getRowId(slot));
+                      if (projection.isEmpty()) {
+                          for (int c = 0; c < table.getColumnCount(); c++) {
+                              row.addValues(table.getStore(c).get(slot));
+                          }
+                      } else {
+                          for (int columnIndex : projection) {
+                              row.addValues(table.getStore(columnIndex).get(slot));
+                          }
+                      }
+                      responseBuilder.addRows(row).addRowIndexes(table.rowIndexOf(slot));
+                  }
+                  return responseBuilder.build();
+              });
+          } catch (IllegalArgumentException e) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+              return;
+          }
+          responseObserver.onNext(response);
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void getMetrics(GetMetricsRequest request, StreamObserver<GetMetricsResponse> responseObserver) {
+          GetMetricsResponse.Builder responseBuilder = GetMetricsResponse.newBuilder();
+          for (RpcMetrics.MethodMetrics method : metrics.getMethods()) {
+              org.example.MethodMetrics.Builder methodMetrics = org.example.MethodMetrics.newBuilder()
+                      .setMethod(method.method)
+                      .setStarted(method.getStarted())
+                      .setInFlight(method.getInFlight())
+                      .setLatencyMicros(toProto(method.latencyNanos.snapshot(), 1000))
+                      .setRequestBytes(toProto(method.requestBytes.snapshot(), 1))
+                      .setResponseBytes(toProto(method.responseBytes.snapshot(), 1));
+              for (Status.Code code : Status.Code.values()) {
+                  long count = method.getStatusCount(code);
+                  if (count > 0) {
+                      methodMetrics.putStatusCounts(code.name(), count);
+                  }
+              }
+              responseBuilder.addMethods(methodMetrics);
+          }
+          if (!request.getSkipTables()) {
+              int index = 0;
+              for (Table table : dbManager.database.tables) {
+                  int tableIndex = index++;
+                  responseBuilder.addTables(table.readLocked(() -> TableMetrics.newBuilder()
+                          .setIndex(tableIndex)
+                          .setId(table.getId())
+                          .setName(table.name)
+                          .setRows(table.getRowCount())
+                          .setColumns(table.getColumnCount())
+                          .setSlots(table.getSlotCount())
+                          .setEstimatedBytes(table.estimatedBytes())
+                          .setVersion(table.getChangeFeed().getVersion())
+                          .build()));
+              }
+          }
+          responseObserver.onNext(responseBuilder.build());
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void sortRows(SortRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
+          Table table = findTable(request.getTableIndex(), request.getTableId());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
+          }
+          SortedRows sorted;
+          try {
+              List<Condition> conditions = toConditions(request.getPredicatesList());
+              List<SortKey> keys = new ArrayList<>(request.getKeysCount());
+              for (org.example.SortKey key : request.getKeysList()) {
+                  keys.add(new SortKey(key.getColumnIndex(), key.getDescending()));
+              }
+              sorted = table.readLocked(() -> {
+                  try {
+                      return RowSorter.sort(table, conditions, keys, sortMemoryBytes, sortSpillDirectory);
+                  } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                  }
+              });
+          } catch (IllegalArgumentException e) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+              return;
+          } catch (UncheckedIOException e) {
+              logger.log(Level.WARNING, "Failed to spill sort runs", e);
+              responseObserver.onError(Status.INTERNAL.withDescription("Failed to sort rows").asRuntimeException());
+              return;
+          }
+          ServerCallStreamObserver<GetRowsResponse> serverObserver = (ServerCallStreamObserver<GetRowsResponse>) responseObserver;
+          SortedRowStreamer streamer = new SortedRowStreamer(table, sorted, request, serverObserver);
+          serverObserver.setOnCancelHandler(streamer::cancel);
+          serverObserver.setOnReadyHandler(streamer);
+      }
+
+      @Override
+      public void beginTransaction(BeginTransactionRequest request, StreamObserver<BeginTransactionResponse> responseObserver) {
+          responseObserver.onNext(BeginTransactionResponse.newBuilder().setTransactionId(dbManager.beginTransaction()).build());
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void commit(CommitRequest request, StreamObserver<CommitResponse> responseObserver) {
+          switch (dbManager.commitTransaction(request.getTransactionId())) {
+              case COMMITTED -> {
+                  responseObserver.onNext(CommitResponse.newBuilder().setSuccess(true).build());
+                  responseObserver.onCompleted();
+              }
+              case CONFLICT -> responseObserver.onError(Status.ABORTED
+                      .withDescription("A row written by the transaction was changed by another client").asRuntimeException());
+              case UNKNOWN_TRANSACTION -> responseObserver.onError(Status.NOT_FOUND
+                      .withDescription("Unknown transaction " + request.getTransactionId()).asRuntimeException());
+          }
+      }
+
+      @Override
+      public void rollback(RollbackRequest request, StreamObserver<RollbackResponse> responseObserver) {
+          boolean success = dbManager.rollbackTransaction(request.getTransactionId());
+          responseObserver.onNext(RollbackResponse.newBuilder().setSuccess(success).build());
+          responseObserver.onCompleted();
+      }
+
+      private static Distribution toProto(Histogram.Snapshot snapshot, long unit) {
+          return Distribution.newBuilder()
+                  .setCount(snapshot.count)
+                  .setSum(snapshot.sum / unit)
+                  .setMax(snapshot.max / unit)
+                  .setP50(snapshot.valueAt(0.5) / unit)
+                  .setP90(snapshot.valueAt(0.9) / unit)
+                  .setP99(snapshot.valueAt(0.99) / unit)
+                  .setP999(snapshot.valueAt(0.999) / unit)
+                  .build();
+      }
+
+      // Position of the table addressed by ID when tableId is nonzero, otherwise by index; -1 if there is none.
+      // Only stays valid while the database lock is held.
+      private static int indexOfTable(int tableIndex, long tableId) {
+          if (tableId != 0) {
+              return dbManager.database.indexOfTable(tableId);
+          }
+          return tableIndex >= 0 && tableIndex < dbManager.database.tables.size() ? tableIndex : -1;
+      }
+
+      // The table at tableIndex, looked up under the database lock so a concurrent delete cannot shift it; null if there is none
+      private static Table findTable(int tableIndex) {
+          return findTable(tableIndex, 0);
+      }
+
+      // Like findTable(int), addressing the table by ID when tableId is nonzero
+      private static Table findTable(int tableIndex, long tableId) {
+          Database database = dbManager.database;
+          return database.readLocked(() -> {
+              int index = indexOfTable(tableIndex, tableId);
+              return index < 0 ? null : database.tables.get(index);
+          });
+      }
+
+      private static List<Condition> toConditions(List<Predicate> predicates) {
+          List<Condition> conditions = new ArrayList<>(predicates.size());
+          for (Predicate predicate : predicates) {
+              conditions.add(new Condition(predicate.getColumnIndex(), Operator.fromSymbol(predicate.getOperator()), predicate.getValue()));
+          }
+          return conditions;
+      }
+
+      @Override
+      public void aggregate(AggregateRequest request, StreamObserver<AggregateResponse> responseObserver) {
+          Table table = findTable(request.getTableIndex());
+          if (table == null) {
+              responseObserver.onError(Status.NOT_FOUND.withDescription("Unknown table").asRuntimeException());
+              return;
+          }
+          AggregateResponse response;
+          try {
+              List<Condition> conditions = toConditions(request.getPredicatesList());
+              List<Aggregation> aggregations = new ArrayList<>(request.getAggregationsCount());
+              for (org.example.Aggregation aggregation : request.getAggregationsList()) {
+                  if (aggregation.getFunction() == org.example.AggregateFunction.UNRECOGNIZED) {
+                      throw new IllegalArgumentException("Unknown aggregate function");
+                  }
+                  aggregations.add(new Aggregation(AggregateFunction.valueOf(aggregation.getFunction().name()), aggregation.getColumnIndex()));
+              }
+              int groupBy = request.getGrouped() ? request.getGroupByColumnIndex() : -1;
+              // Only the small per-group results are built under the read lock
+              List<Aggregator.Group> groups = table.readLocked(() -> Aggregator.aggregate(table, conditions, groupBy, aggregations));
+              AggregateResponse.Builder responseBuilder = AggregateResponse.newBuilder();
+              for (Aggregator.Group group : groups) {
+                  responseBuilder.addGroups(AggregateGroup.newBuilder()
+                          .setKey(group.key)
+                          .setRowCount(group.rowCount)
+                          .addAllValues(List.of(group.values)));
+              }
+              response = responseBuilder.build();
+          } catch (IllegalArgumentException e) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+              return;
+          }
+          responseObserver.onNext(response);
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void createIndex(CreateIndexRequest request, StreamObserver<CreateIndexResponse> responseObserver) {
+          boolean success;
+          try {
+              success = dbManager.createIndex(request.getTableIndex(), request.getColumnIndex(), request.getIndexType());
+          } catch (IllegalArgumentException e) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+              return;
+          }
+          CreateIndexResponse response = CreateIndexResponse.newBuilder().setSuccess(success).build();
           responseObserver.onNext(response);
           responseObserver.onCompleted();
       }
 
+      @Override
+      public void dropIndex(DropIndexRequest request, StreamObserver<DropIndexResponse> responseObserver) {
+          boolean success = dbManager.dropIndex(request.getTableIndex(), request.getColumnIndex());
+          DropIndexResponse response = DropIndexResponse.newBuilder().setSuccess(success).build();
+          responseObserver.onNext(response);
+          responseObserver.onCompleted();
+      }
+
+      @Override
+      public void applyBatch(ApplyBatchRequest request, StreamObserver<ApplyBatchResponse> responseObserver) {
+          int tableIndex = request.getTableIndex();
+          Table table = findTable(tableIndex);
+          if (table == null) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Unknown table " + tableIndex).asRuntimeException());
+              return;
+          }
+          List<Mutation> operations = new ArrayList<>(request.getOperationsCount());
+          for (BatchOperation operation : request.getOperationsList()) {
+              switch (operation.getOperationCase()) {
+                  case ADDROW -> operations.add(Mutation.addRow(tableIndex, operation.getAddRow().getValuesList()));
+                  case EDITCELL -> operations.add(Mutation.updateCell(tableIndex, operation.getEditCell().getRowIndex(),
+                          operation.getEditCell().getColumnIndex(), operation.getEditCell().getValue()));
+                  case DELETEROW -> operations.add(Mutation.deleteRow(tableIndex, operation.getDeleteRow().getRowIndex()));
+                  default -> {
+                      responseObserver.onError(Status.INVALID_ARGUMENT
+                              .withDescription("Operation " + operations.size() + " is empty").asRuntimeException());
+                      return;
+                  }
+              }
+          }
+          // Applied by ID, so that the batch cannot land on a table that moved into this index meanwhile
+          String[] errors = dbManager.applyBatchById(table.getId(), operations, request.getAtomic());
+          if (errors == null) {
+              responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Unknown table " + tableIndex).asRuntimeException());
+              return;
+          }
+          ApplyBatchResponse.Builder response = ApplyBatchResponse.newBuilder().setSuccess(true);
+          for (String error : errors) {
+              OperationResult.Builder result = OperationResult.newBuilder().setSuccess(error == null);
+              if (error != null) {
+                  result.setError(error);
+                  response.setSuccess(false);
+              }
+              response.addResults(result);
+          }
+          responseObserver.onNext(response.build());
+          responseObserver.onCompleted();
+      }
+
   }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package org.example;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Admission control for a bounded call pool: a new call is rejected with
+ * RESOURCE_EXHAUSTED when the pool already has {@code maxQueued} tasks waiting, rather
+ * than joining the queue and answering after the client gave up.
+ * <p>
+ * The decision is made on the transport thread before the call is dispatched, so a
+ * rejection costs no pool thread. The pool's own queue is unbounded: callbacks of calls
+ * already admitted are never refused.
+ */
+class LoadShedder implements ServerCallExecutorSupplier, ServerInterceptor {
+    // Set by the supplier on the headers of calls to reject, which the interceptor sees next
+    private static final Metadata.Key<String> SHED = Metadata.Key.of("x-load-shed", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final ThreadPoolExecutor pool;
+    private final int maxQueued;
+
+    LoadShedder(ThreadPoolExecutor pool, int maxQueued) {
+        this.pool = pool;
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata headers) {
+        headers.discardAll(SHED);
+        if (pool.getQueue().size() >= maxQueued) {
+            headers.put(SHED, "1");
+            // Stay on the transport thread, where the interceptor rejects the call
+            return null;
+        }
+        return pool;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!headers.containsKey(SHED)) {
+            return next.startCall(call, headers);
+        }
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription("Server overloaded, " + maxQueued + " calls queued"), new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package org.example;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.example.RemoteDBClient.toCompletable;
+
+/**
+ * Serves the database server's metrics as JSON at {@code /metrics}. Nothing is
+ * collected for this endpoint: each request asks the server for its counters. With
+ * {@code grpc.client.shards} set, {@code shard} picks the server.
+ */
+@RestController
+public class MetricsController {
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().includingDefaultValueFields();
+
+    private final RemoteDBClient client;
+
+    public MetricsController(RemoteDBClient client) {
+        this.client = client;
+    }
+
+    @GetMapping(value = "/metrics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<String> metrics(@RequestParam(defaultValue = "false") boolean skipTables,
+                                             @RequestParam(defaultValue = "0") int shard) {
+        GetMetricsRequest request = GetMetricsRequest.newBuilder().setSkipTables(skipTables).setShard(shard).build();
+        return toCompletable(client.futureStub().getMetrics(request)).thenApply(response -> {
+            try {
+                return PRINTER.print(response);
+            } catch (InvalidProtocolBufferException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package org.example;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * The web tier's connection to the database server: one channel shared by every
+ * request, with stubs for blocking, future and streaming calls.
+ * <p>
+ * Page handlers use the future and streaming stubs, so independent calls run at the
+ * same time and no servlet thread waits on the network. With {@code grpc.client.virtual-threads}
+ * set, call callbacks run on virtual threads.
+ * <p>
+ * With {@code grpc.client.shards} set to the targets of a {@link ShardMap}, the stubs
+ * call a {@link ShardRouter} running in this process, which spreads the calls over
+ * those servers; {@code grpc.client.target} is then ignored.
+ */
+@Component
+public class RemoteDBClient {
+    // Attempts inTransaction makes at most, and its pause before the first retry, which doubles up to the last
+    static final int MAX_TRANSACTION_ATTEMPTS = 10;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 5;
+    private static final long MAX_RETRY_DELAY_MILLIS = 500;
+
+    private final ManagedChannel channel;
+    private final ExecutorService executor;
+    private final RemoteDBGrpc.RemoteDBBlockingStub blockingStub;
+    private final RemoteDBGrpc.RemoteDBFutureStub futureStub;
+    private final RemoteDBGrpc.RemoteDBStub asyncStub;
+    // Only set when routing over shards
+    private final ShardRouter router;
+    private final Server routerServer;
+
+    public RemoteDBClient(ApplicationArguments arguments,
+                          @Value("${grpc.client.target:localhost:50051}") String target,
+                          @Value("${grpc.client.shards:}") String shards,
+                          @Value("${grpc.client.virtual-threads:false}") boolean virtualThreads) {
+        // The target may also be given as the second command line argument, not counting --options
+        List<String> args = arguments.getNonOptionArgs();
+        if (args.size() > 1) {
+            target = args.get(1);
+        }
+        this.executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        ManagedChannelBuilder<?> builder;
+        if (shards.isBlank()) {
+            this.router = null;
+            this.routerServer = null;
+            builder = Grpc.newChannelBuilder(target, InsecureChannelCredentials.create());
+        } else {
+            String name = InProcessServerBuilder.generateName();
+            this.router = new ShardRouter(ShardMap.parse(shards), executor);
+            InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(name).addService(router);
+            if (executor != null) {
+                serverBuilder.executor(executor);
+            }
+            try {
+                this.routerServer = serverBuilder.build().start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            builder = InProcessChannelBuilder.forName(name);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.channel = builder.build();
+        this.blockingStub = RemoteDBGrpc.newBlockingStub(channel);
+        this.futureStub = RemoteDBGrpc.newFutureStub(channel);
+        this.asyncStub = RemoteDBGrpc.newStub(channel);
+    }
+
+    public RemoteDBGrpc.RemoteDBBlockingStub blockingStub() {
+        return blockingStub;
+    }
+
+    public RemoteDBGrpc.RemoteDBFutureStub futureStub() {
+        return futureStub;
+    }
+
+    public RemoteDBGrpc.RemoteDBStub asyncStub() {
+        return asyncStub;
+    }
+
+    /**
+     * Runs {@code work} in a server transaction and commits it, like
+     * {@link #inTransaction(Runnable, LongConsumer, int)} with nothing to reset.
+     */
+    public boolean inTransaction(LongConsumer work, int maxAttempts) {
+        return inTransaction(() -> {
+        }, work, maxAttempts);
+    }
+
+    /**
+     * Runs {@code work} in a server transaction and commits it. {@code work} gets the
+     * transaction ID to put on its EditCell, AddRow and DeleteRow calls. When the
+     * transaction is aborted, as a commit is when it conflicts with another client, it is
+     * rolled back and runs again after a random pause that doubles each time, up to
+     * {@code maxAttempts} times in all but never more than {@link #MAX_TRANSACTION_ATTEMPTS}.
+     * {@code reset} runs before every attempt, to clear what {@code work} kept from an
+     * attempt that did not commit. Returns whether it committed; false also when the
+     * thread is interrupted while it waits to retry.
+     */
+    public boolean inTransaction(Runnable reset, LongConsumer work, int maxAttempts) {
+        long delayMillis = FIRST_RETRY_DELAY_MILLIS;
+        for (int attempt = 0; attempt < Math.min(maxAttempts, MAX_TRANSACTION_ATTEMPTS); attempt++) {
+            if (attempt > 0) {
+                try {
+                    // Jittered, so that clients which conflicted do not run into each other again
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(delayMillis / 2, delayMillis + 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                delayMillis = Math.min(delayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+            reset.run();
+            long transactionId = blockingStub.beginTransaction(BeginTransactionRequest.getDefaultInstance()).getTransactionId();
+            try {
+                work.accept(transactionId);
+                blockingStub.commit(CommitRequest.newBuilder().setTransactionId(transactionId).build());
+                return true;
+            } catch (RuntimeException e) {
+                rollback(transactionId, e);
+                if (!(e instanceof StatusRuntimeException status) || status.getStatus().getCode() != Status.Code.ABORTED) {
+                    throw e;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Drops a transaction that did not commit; one whose commit was aborted is already gone, and this does nothing
+    private void rollback(long transactionId, RuntimeException cause) {
+        try {
+            blockingStub.rollback(RollbackRequest.newBuilder().setTransactionId(transactionId).build());
+        } catch (StatusRuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /** Adapts a future stub call to a {@link CompletableFuture}. */
+    public static <T> CompletableFuture<T> toCompletable(ListenableFuture<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                call.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(call, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Collects every message of a server-streaming call; pass the returned observer to
+     * the async stub.
+     */
+    public static <T> StreamCollector<T> collect() {
+        return new StreamCollector<>();
+    }
+
+    public static final class StreamCollector<T> implements StreamObserver<T> {
+        private final List<T> messages = new ArrayList<>();
+        private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+        private StreamCollector() {
+        }
+
+        public CompletableFuture<List<T>> result() {
+            return result;
+        }
+
+        @Override
+        public void onNext(T message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            result.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            result.complete(messages);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!channel.isShutdown()) {
+            try {
+                channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                if (routerServer != null) {
+                    routerServer.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                    router.shutdown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
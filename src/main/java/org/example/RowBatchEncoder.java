@@ -0,0 +1,129 @@
+package org.example;
+
+import com.google.protobuf.UnsafeByteOperations;
+import org.example.component.Table;
+import org.example.component.TableSnapshot;
+import org.example.component.storage.CharColumnStore;
+import org.example.component.storage.ColumnStore;
+import org.example.component.storage.IntColumnStore;
+import org.example.component.storage.MoneyColumnStore;
+import org.example.component.storage.RealColumnStore;
+import org.example.component.storage.StringColumnStore;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Encodes table rows as a {@link RowBatch}, reading the typed column stores directly
+ * so no cell is formatted as text on the way out. Call under the table's read lock.
+ * <p>
+ * Read through a {@link TableSnapshot}, the cells of rows changed since the snapshot
+ * are sent as text, the way cells kept verbatim are.
+ */
+class RowBatchEncoder {
+    private RowBatchEncoder() {
+    }
+
+    /** Slots of the rows with index {@code from} up to {@code to}, in order. */
+    static int[] slots(Table table, int from, int to) {
+        int[] slots = new int[Math.max(to - from, 0)];
+        for (int i = 0, slot = from < to ? table.slotOf(from) : 0; i < slots.length; i++, slot = table.nextLiveSlot(slot + 1)) {
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    /**
+     * @param projection column indexes to encode, empty for every column
+     */
+    static RowBatch encode(Table table, int[] slots, List<Integer> projection) {
+        return encode(table, null, slots, projection);
+    }
+
+    static RowBatch encode(TableSnapshot snapshot, int[] slots) {
+        return encode(null, snapshot, slots, List.of());
+    }
+
+    // Reads the snapshot if there is one, otherwise the table
+    private static RowBatch encode(Table table, TableSnapshot snapshot, int[] slots, List<Integer> projection) {
+        RowBatch.Builder batch = RowBatch.newBuilder().setRowCount(slots.length);
+        for (int slot : slots) {
+            batch.addIds(snapshot != null ? snapshot.getRowId(slot) : table.getRowId(slot));
+        }
+        if (projection.isEmpty()) {
+            int columnCount = snapshot != null ? snapshot.getColumnCount() : table.getColumnCount();
+            for (int c = 0; c < columnCount; c++) {
+                batch.addColumns(encodeColumn(table, snapshot, c, slots));
+            }
+        } else {
+            for (int columnIndex : projection) {
+                batch.addColumns(encodeColumn(table, snapshot, columnIndex, slots));
+            }
+        }
+        return batch.build();
+    }
+
+    private static ColumnVector encodeColumn(Table table, TableSnapshot snapshot, int columnIndex, int[] slots) {
+        ColumnStore store = snapshot != null ? snapshot.getStore(columnIndex) : table.getStore(columnIndex);
+        String type = (snapshot != null ? snapshot.getColumn(columnIndex) : table.getColumn(columnIndex)).type;
+        ColumnVector.Builder vector = ColumnVector.newBuilder().setType(ColumnType.valueOf(type));
+        IntConsumer addValue;
+        if (store instanceof IntColumnStore ints) {
+            addValue = slot -> vector.addInts(ints.getInt(slot));
+        } else if (store instanceof RealColumnStore reals) {
+            addValue = slot -> vector.addReals(reals.getDouble(slot));
+        } else if (store instanceof MoneyColumnStore money) {
+            addValue = slot -> vector.addCents(money.getCents(slot));
+        } else if (store instanceof CharColumnStore chars) {
+            addValue = slot -> vector.addChars(chars.getChar(slot));
+        } else {
+            addValue = addStringFunction((StringColumnStore) store, vector, slots);
+        }
+        byte[] nulls = null;
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            String text = snapshot != null && snapshot.isChanged(slot) ? snapshot.getValue(slot, columnIndex)
+                    : store.isNull(slot) ? "" : store.getVerbatim(slot);
+            if (text == null) {
+                addValue.accept(slot);
+                continue;
+            }
+            if (nulls == null) {
+                nulls = new byte[(slots.length + 7) >>> 3];
+            }
+            nulls[i >>> 3] |= (byte) (1 << (i & 7));
+            if (!text.isEmpty()) {
+                vector.addTextRows(i).addTexts(text);
+            }
+        }
+        if (nulls != null) {
+            vector.setNulls(UnsafeByteOperations.unsafeWrap(nulls));
+        }
+        return vector.build();
+    }
+
+    /**
+     * Writes the distinct strings of the batch to its dictionary, in the column's own
+     * code order, and returns the function that adds the batch-local code of a cell.
+     */
+    private static IntConsumer addStringFunction(StringColumnStore store, ColumnVector.Builder vector, int[] slots) {
+        int[] codes = new int[slots.length];
+        int count = 0;
+        for (int slot : slots) {
+            if (!store.isNull(slot)) {
+                codes[count++] = store.getCode(slot);
+            }
+        }
+        Arrays.sort(codes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || codes[distinct - 1] != codes[i]) {
+                codes[distinct++] = codes[i];
+                vector.addDictionary(store.getDictionary().decode(codes[i]));
+            }
+        }
+        int distinctCount = distinct;
+        return slot -> vector.addCodes(Arrays.binarySearch(codes, 0, distinctCount, store.getCode(slot)));
+    }
+}
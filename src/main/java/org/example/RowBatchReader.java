@@ -0,0 +1,122 @@
+package org.example;
+
+import com.google.protobuf.ByteString;
+import org.example.component.storage.MoneyColumnStore;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Random access to the cells of a {@link RowBatch}. The typed getters read the packed
+ * values in place; {@link #getString} formats a cell the way the server would send
+ * it as text, only when it is asked for.
+ */
+public final class RowBatchReader {
+    private static final int EMPTY = -1;
+
+    private final RowBatch batch;
+    // Per column and row: the index into the column's typed values, EMPTY, or -2 - i for texts(i)
+    private final int[][] positions;
+
+    public RowBatchReader(RowBatch batch) {
+        this.batch = batch;
+        this.positions = new int[batch.getColumnsCount()][];
+        for (int c = 0; c < positions.length; c++) {
+            positions[c] = positions(batch.getColumns(c), batch.getRowCount());
+        }
+    }
+
+    private static int[] positions(ColumnVector column, int rowCount) {
+        int[] positions = new int[rowCount];
+        ByteString nulls = column.getNulls();
+        int next = 0;
+        for (int row = 0; row < rowCount; row++) {
+            boolean typed = nulls.isEmpty() || (nulls.byteAt(row >>> 3) & (1 << (row & 7))) == 0;
+            positions[row] = typed ? next++ : EMPTY;
+        }
+        for (int i = 0; i < column.getTextRowsCount(); i++) {
+            positions[column.getTextRows(i)] = -2 - i;
+        }
+        return positions;
+    }
+
+    public int getRowCount() {
+        return batch.getRowCount();
+    }
+
+    public int getColumnCount() {
+        return positions.length;
+    }
+
+    public long getRowId(int row) {
+        return batch.getIds(row);
+    }
+
+    public ColumnType getType(int column) {
+        return batch.getColumns(column).getType();
+    }
+
+    /** Whether the cell has a typed value; empty cells and cells kept as text do not. */
+    public boolean hasValue(int row, int column) {
+        return positions[column][row] >= 0;
+    }
+
+    public boolean isEmpty(int row, int column) {
+        return positions[column][row] == EMPTY;
+    }
+
+    public int getInt(int row, int column) {
+        return batch.getColumns(column).getInts(positions[column][row]);
+    }
+
+    public double getReal(int row, int column) {
+        return batch.getColumns(column).getReals(positions[column][row]);
+    }
+
+    public long getCents(int row, int column) {
+        return batch.getColumns(column).getCents(positions[column][row]);
+    }
+
+    public char getChar(int row, int column) {
+        return (char) batch.getColumns(column).getChars(positions[column][row]);
+    }
+
+    public String getString(int row, int column) {
+        int position = positions[column][row];
+        ColumnVector vector = batch.getColumns(column);
+        if (position == EMPTY) {
+            return "";
+        }
+        if (position < EMPTY) {
+            return vector.getTexts(-2 - position);
+        }
+        return switch (vector.getType()) {
+            case INT -> Integer.toString(vector.getInts(position));
+            case REAL -> Double.toString(vector.getReals(position));
+            case MONEY, MONEY_INVL -> MoneyColumnStore.formatCents(vector.getCents(position));
+            case CHAR -> String.valueOf((char) vector.getChars(position));
+            case STRING -> vector.getDictionary(vector.getCodes(position));
+            case UNRECOGNIZED -> throw new IllegalStateException("Unknown column type");
+        };
+    }
+
+    /** The cells of one row as text, formatted on every access rather than copied out. */
+    public List<String> row(int row) {
+        return new AbstractList<>() {
+            @Override
+            public String get(int column) {
+                return getString(row, column);
+            }
+
+            @Override
+            public int size() {
+                return positions.length;
+            }
+        };
+    }
+
+    /** Serialized size of the batch, a rough measure of the memory it holds. */
+    public int getSerializedSize() {
+        return batch.getSerializedSize();
+    }
+}
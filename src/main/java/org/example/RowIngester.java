@@ -0,0 +1,139 @@
+package org.example;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.example.component.Database;
+import org.example.persistence.Mutation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the client stream of an {@code InsertRows} call. Rows are buffered and
+ * appended a batch at a time through {@link DatabaseManager#applyBatch}, so each batch
+ * costs one table lock and one log record and its cells are validated in parallel.
+ * <p>
+ * gRPC delivers messages one at a time and only asks for the next one after
+ * {@link #onNext} returns, so a batch being applied holds back a fast client.
+ * <p>
+ * The table is resolved to its ID from the first message and found again by ID for
+ * every batch, so deleting another table, which shifts table indexes, does not
+ * redirect the rows.
+ */
+class RowIngester implements StreamObserver<InsertRowsRequest> {
+    static final int BATCH_SIZE = 4096;
+    // Rejected rows reported in one response
+    static final int MAX_REJECTED_REPORTED = 100;
+
+    private final DatabaseManager dbManager;
+    private final StreamObserver<InsertRowsResponse> responseObserver;
+    private final List<Mutation> batch = new ArrayList<>(BATCH_SIZE);
+    private final List<RejectedRow> rejected = new ArrayList<>();
+    private long tableId;
+    private int ackInterval;
+    private long received;
+    private long inserted;
+    private long rejectedCount;
+    private long acknowledged;
+    private boolean failed;
+
+    RowIngester(DatabaseManager dbManager, StreamObserver<InsertRowsResponse> responseObserver) {
+        this.dbManager = dbManager;
+        this.responseObserver = responseObserver;
+    }
+
+    @Override
+    public void onNext(InsertRowsRequest request) {
+        if (failed) {
+            return;
+        }
+        if (tableId == 0) {
+            tableId = idOfTable(request.getTableIndex(), request.getTableId());
+            ackInterval = Math.max(request.getAckInterval(), 0);
+            if (tableId == 0) {
+                fail(Status.INVALID_ARGUMENT.withDescription("Unknown table"));
+                return;
+            }
+        }
+        for (Row row : request.getRowsList()) {
+            batch.add(Mutation.addRow(-1, row.getValuesList()));
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+        if (!failed && ackInterval > 0 && received + batch.size() - acknowledged >= ackInterval) {
+            flush();
+            if (!failed) {
+                respond(false);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // Batches already applied stay; rows still buffered are dropped
+        failed = true;
+        batch.clear();
+    }
+
+    @Override
+    public void onCompleted() {
+        if (failed) {
+            return;
+        }
+        flush();
+        if (!failed) {
+            respond(true);
+            responseObserver.onCompleted();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty() || failed) {
+            return;
+        }
+        String[] errors = dbManager.applyBatchById(tableId, batch, false);
+        if (errors == null) {
+            fail(Status.FAILED_PRECONDITION.withDescription("The table was deleted during the insert"));
+            return;
+        }
+        for (String error : errors) {
+            if (error == null) {
+                inserted++;
+            } else {
+                rejectedCount++;
+                if (rejected.size() < MAX_REJECTED_REPORTED) {
+                    rejected.add(RejectedRow.newBuilder().setRowNumber(received).setError(error).build());
+                }
+            }
+            received++;
+        }
+        batch.clear();
+    }
+
+    private void respond(boolean done) {
+        responseObserver.onNext(InsertRowsResponse.newBuilder()
+                .setInsertedRows(inserted)
+                .setRejectedRows(rejectedCount)
+                .addAllRejected(rejected)
+                .setDone(done)
+                .build());
+        rejected.clear();
+        acknowledged = received;
+    }
+
+    // ID of the table addressed by tableId when it is set, otherwise by tableIndex; 0 if there is none
+    private long idOfTable(int tableIndex, long tableId) {
+        Database database = dbManager.database;
+        return database.readLocked(() -> {
+            int index = tableId != 0 ? database.indexOfTable(tableId) : tableIndex;
+            return index >= 0 && index < database.tables.size() ? database.tables.get(index).getId() : 0L;
+        });
+    }
+
+    private void fail(Status status) {
+        failed = true;
+        batch.clear();
+        responseObserver.onError(status.asRuntimeException());
+    }
+}
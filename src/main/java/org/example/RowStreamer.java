@@ -0,0 +1,115 @@
+package org.example;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import org.example.component.Table;
+import org.example.component.TableSnapshot;
+import org.example.component.column.MoneyInvlColumn;
+
+
+/**
+ * Sends a range of table rows as a stream of {@link GetRowsResponse} chunks.
+ * Chunks are only built while the transport reports the call as ready, so a slow
+ * client never makes the server buffer more than one chunk for it.
+ * <p>
+ * The rows come from a {@link TableSnapshot} opened with the call, so the whole
+ * stream shows the table at one version even though each chunk holds the table's
+ * read lock only while it is built.
+ */
+class RowStreamer implements Runnable {
+    static final int DEFAULT_CHUNK_SIZE = 256;
+    static final int MAX_CHUNK_SIZE = 4096;
+
+    private final ServerCallStreamObserver<GetRowsResponse> observer;
+    private final Table table;
+    private final TableSnapshot snapshot;
+    private final int end;
+    private final int chunkSize;
+    private final RowFormat format;
+    private int next;
+    private int nextSlot;
+    private boolean done;
+
+    RowStreamer(Table table, GetRowsRequest request, ServerCallStreamObserver<GetRowsResponse> observer) {
+        this.observer = observer;
+        this.table = table;
+        this.next = Math.max(request.getOffset(), 0);
+        this.end = request.getLimit() > 0 ? (int) Math.min((long) next + request.getLimit(), Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        int chunk = request.getChunkSize() > 0 ? request.getChunkSize() : DEFAULT_CHUNK_SIZE;
+        this.chunkSize = Math.min(chunk, MAX_CHUNK_SIZE);
+        this.format = request.getFormat();
+        this.snapshot = table.readLocked(() -> {
+            TableSnapshot opened = table.openSnapshot();
+            nextSlot = next < opened.getRowCount() ? table.slotOf(next) : opened.getSlotCount();
+            return opened;
+        });
+    }
+
+    @Override
+    public void run() {
+        // Invoked by gRPC every time the call turns ready again after back-pressure.
+        while (!done && observer.isReady()) {
+            GetRowsResponse chunk = table.readLocked(this::nextChunk);
+            if (chunk == null) {
+                cancel();
+                observer.onCompleted();
+                return;
+            }
+            observer.onNext(chunk);
+        }
+    }
+
+    private GetRowsResponse nextChunk() {
+        int total = snapshot.getRowCount();
+        int to = Math.min(Math.min(end, total), next + chunkSize);
+        if (next >= to) {
+            return null;
+        }
+        int[] slots = new int[to - next];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = snapshot.nextVisibleSlot(nextSlot);
+            nextSlot = slots[i] + 1;
+        }
+        GetRowsResponse.Builder chunk = GetRowsResponse.newBuilder()
+                .setTotalRows(total)
+                .setOffset(next)
+                .setVersion(snapshot.getVersion());
+        if (format == RowFormat.COLUMN_BATCH) {
+            chunk.setBatch(RowBatchEncoder.encode(snapshot, slots));
+        } else {
+            for (int slot : slots) {
+                chunk.addRows(toProto(snapshot, slot));
+            }
+        }
+        next = to;
+        return chunk.build();
+    }
+
+    static Row toProto(TableSnapshot snapshot, int slot) {
+        Row.Builder row = Row.newBuilder().setId(snapshot.getRowId(slot));
+        for (int c = 0; c < snapshot.getColumnCount(); c++) {
+            row.addValues(snapshot.getValue(slot, c));
+        }
+        return row.build();
+    }
+
+    static Row toProto(Table table, int slot) {
+        Row.Builder row = Row.newBuilder().setId(table.getRowId(slot));
+        for (int c = 0; c < table.getColumnCount(); c++) {
+            row.addValues(table.getStore(c).get(slot));
+        }
+        return row.build();
+    }
+
+    static Column toProto(org.example.component.Column column) {
+        Column.Builder builder = Column.newBuilder().setName(column.name).setType(ColumnType.valueOf(column.type)).setId(column.id);
+        if (column instanceof MoneyInvlColumn money) {
+            builder.setMin(money.getMin()).setMax(money.getMax());
+        }
+        return builder.build();
+    }
+
+    void cancel() {
+        done = true;
+        snapshot.close();
+    }
+}
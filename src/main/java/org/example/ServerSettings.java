@@ -0,0 +1,142 @@
+package org.example;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.example.HelloWorldServer.option;
+
+/**
+ * How the server runs calls and tunes its transport, read from {@code --name=value}
+ * command line arguments. Anything not given keeps gRPC's default.
+ * <ul>
+ * <li>{@code --port}, 50051 by default.
+ * <li>{@code --executor}: {@code cached} (gRPC's default unbounded pool), {@code virtual}
+ * (a virtual thread per call), {@code fixed} (a pool of
+ * {@code --executor-threads} that rejects new calls once {@code --max-queued-calls} tasks
+ * wait, see {@link LoadShedder}) or {@code direct} (calls run on the event loops, only
+ * for handlers that never block, so not with a write-ahead log).
+ * <li>{@code --event-loop-threads}: Netty worker threads.
+ * <li>{@code --max-inbound-message-bytes}, {@code --keepalive-seconds},
+ * {@code --keepalive-timeout-seconds} and {@code --flow-control-window-bytes}.
+ * </ul>
+ */
+class ServerSettings {
+    private static final Logger logger = Logger.getLogger(ServerSettings.class.getName());
+
+    enum ExecutorMode {
+        CACHED,
+        VIRTUAL,
+        FIXED,
+        DIRECT
+    }
+
+    final int port;
+    final ExecutorMode executorMode;
+    final int executorThreads;
+    final int maxQueuedCalls;
+    final int eventLoopThreads;
+    final int maxInboundMessageBytes;
+    final long keepAliveSeconds;
+    final long keepAliveTimeoutSeconds;
+    final int flowControlWindowBytes;
+
+    // Created by build and released by shutdown
+    private ExecutorService executor;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+
+    ServerSettings(String[] args) {
+        port = Integer.parseInt(option(args, "--port", "50051"));
+        executorMode = ExecutorMode.valueOf(option(args, "--executor", "cached").toUpperCase());
+        executorThreads = Integer.parseInt(option(args, "--executor-threads", String.valueOf(Runtime.getRuntime().availableProcessors() * 2)));
+        maxQueuedCalls = Integer.parseInt(option(args, "--max-queued-calls", "1000"));
+        eventLoopThreads = Integer.parseInt(option(args, "--event-loop-threads", "0"));
+        maxInboundMessageBytes = Integer.parseInt(option(args, "--max-inbound-message-bytes", "0"));
+        keepAliveSeconds = Long.parseLong(option(args, "--keepalive-seconds", "0"));
+        keepAliveTimeoutSeconds = Long.parseLong(option(args, "--keepalive-timeout-seconds", "0"));
+        flowControlWindowBytes = Integer.parseInt(option(args, "--flow-control-window-bytes", "0"));
+    }
+
+    /**
+     * Builds a server for {@code service} on {@link #port}, 0 picking a free one. The
+     * {@code interceptors} see every call, including those shed by a fixed pool.
+     */
+    Server build(BindableService service, ServerInterceptor... interceptors) {
+        NettyServerBuilder builder = NettyServerBuilder.forAddress(new InetSocketAddress(port));
+        ServerServiceDefinition definition = service.bindService();
+        switch (executorMode) {
+            case VIRTUAL -> {
+                executor = Executors.newVirtualThreadPerTaskExecutor();
+                builder.executor(executor);
+            }
+            case FIXED -> {
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(executorThreads, executorThreads, 0, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), threadFactory("grpc-call"));
+                executor = pool;
+                LoadShedder shedder = new LoadShedder(pool, maxQueuedCalls);
+                // Calls are looked up on the transport thread, then moved to the pool unless shed
+                builder.directExecutor().callExecutor(shedder);
+                definition = ServerInterceptors.intercept(definition, shedder);
+            }
+            case DIRECT -> builder.directExecutor();
+            default -> {
+            }
+        }
+        builder.addService(ServerInterceptors.intercept(definition, interceptors));
+        if (eventLoopThreads > 0) {
+            bossGroup = new NioEventLoopGroup(1, threadFactory("grpc-boss"));
+            workerGroup = new NioEventLoopGroup(eventLoopThreads, threadFactory("grpc-worker"));
+            builder.bossEventLoopGroup(bossGroup)
+                    .workerEventLoopGroup(workerGroup)
+                    .channelType(NioServerSocketChannel.class);
+        }
+        if (maxInboundMessageBytes > 0) {
+            builder.maxInboundMessageSize(maxInboundMessageBytes);
+        }
+        if (keepAliveSeconds > 0) {
+            builder.keepAliveTime(keepAliveSeconds, TimeUnit.SECONDS);
+        }
+        if (keepAliveTimeoutSeconds > 0) {
+            builder.keepAliveTimeout(keepAliveTimeoutSeconds, TimeUnit.SECONDS);
+        }
+        if (flowControlWindowBytes > 0) {
+            builder.flowControlWindow(flowControlWindowBytes);
+        }
+        logger.info("Executor " + executorMode.name().toLowerCase()
+                + (executorMode == ExecutorMode.FIXED ? " with " + executorThreads + " threads, " + maxQueuedCalls + " queued calls" : "")
+                + (eventLoopThreads > 0 ? ", " + eventLoopThreads + " event loop threads" : ""));
+        return builder.build();
+    }
+
+    /** Releases the threads of {@link #build}, once the server has terminated. */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        return new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build();
+    }
+}
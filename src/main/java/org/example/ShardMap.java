@@ -0,0 +1,61 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where the rows of a sharded database live. Every server of the cluster holds all
+ * tables with the same columns, and a share of their rows. Shard {@code i} is the
+ * server at the {@code i}-th target, started with {@code --shard=i}.
+ * <p>
+ * A server puts its shard number in the top bits of the row IDs it hands out, so the
+ * owner of a row is known from its ID alone. A router places new rows on the shards
+ * in turn, whatever their values, except that the rows of an atomic batch all go
+ * where its first row goes. The global order of a table's rows is shard 0's rows,
+ * then shard 1's, and so on.
+ */
+public final class ShardMap {
+    static final int SHARD_SHIFT = 48;
+    static final int MAX_SHARDS = 1 << (Long.SIZE - 1 - SHARD_SHIFT);
+
+    private final List<String> targets;
+
+    public ShardMap(List<String> targets) {
+        if (targets.isEmpty() || targets.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("A shard map needs 1 to " + MAX_SHARDS + " targets, not " + targets.size());
+        }
+        this.targets = List.copyOf(targets);
+    }
+
+    /** Parses a comma-separated list of {@code host:port} targets, shard 0 first. */
+    public static ShardMap parse(String targets) {
+        List<String> parsed = new ArrayList<>();
+        for (String target : targets.split(",")) {
+            if (!target.isBlank()) {
+                parsed.add(target.trim());
+            }
+        }
+        return new ShardMap(parsed);
+    }
+
+    public int size() {
+        return targets.size();
+    }
+
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    /** The base a server of {@code shard} passes to {@link org.example.component.Table#setRowIdBase}. */
+    static long rowIdBase(int shard) {
+        if (shard < 0 || shard >= MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard " + shard + " is out of range");
+        }
+        return (long) shard << SHARD_SHIFT;
+    }
+
+    /** The shard that handed out {@code rowId}; may be beyond the map for an unknown ID. */
+    static int shardOfRowId(long rowId) {
+        return (int) (rowId >>> SHARD_SHIFT);
+    }
+}
@@ -0,0 +1,903 @@
+package org.example;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.example.component.column.CellParser;
+import org.example.component.storage.MoneyColumnStore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Serves the RemoteDB API over the servers of a {@link ShardMap}, so that callers
+ * use a cluster through the same stubs as a single server. {@link RemoteDBClient}
+ * runs it in process when {@code grpc.client.shards} is set.
+ * <p>
+ * Changes to tables and columns go to every shard in turn, one change at a time, so
+ * the shards keep the same tables at the same indexes and with the same IDs. New
+ * rows go to the shards in turn, so they spread evenly even when many are equal, like
+ * the empty rows the web pages add; {@link ShardedRowIngester} deals out the rows of
+ * a bulk insert the same way. A row addressed by ID goes to the shard that owns the
+ * ID. A row addressed by index is first looked up at that position in the global
+ * order, and then changed by its ID, so that rows moving on other shards cannot
+ * redirect the change to another row. Row reads go to the shards holding the range,
+ * and queries and aggregates go to all shards; the router merges the results. Reads
+ * are not one snapshot across shards: rows that move between the row count probe and
+ * the read may shift a page by a few rows, as on a single server between two pages.
+ * <p>
+ * Duplicate rows are removed by every shard, then the router streams the shards in
+ * order and has each remove the rows that repeat a row of a shard before it. It holds
+ * the distinct rows of the earlier shards in memory to compare with, and when there are
+ * more than {@link #DEDUP_ROWS_PER_PASS} of them it splits the rows by hash and makes
+ * one pass over the shards per share, holding one share at a time.
+ * <p>
+ * The test table of {@code CreateTestTable} is created on every shard and its rows
+ * are placed like any new rows; servers started with {@code --shard} start empty.
+ * <p>
+ * Watches, sorts, transactions and batches that edit or delete rows by index are not
+ * spread over shards. They fail with FAILED_PRECONDITION unless the map has a single
+ * shard, to which every call passes through.
+ */
+class ShardRouter extends RemoteDBGrpc.RemoteDBImplBase {
+    private static final Logger logger = Logger.getLogger(ShardRouter.class.getName());
+    // Times a row position is looked up before giving up on rows that keep moving
+    private static final int LOOKUP_ATTEMPTS = 5;
+    // Rows per call when removing copies, to stay well under the message size limit
+    private static final int COPIES_PER_CALL = 1000;
+    static final int DEDUP_ROWS_PER_PASS = 100_000;
+
+    private final ShardMap map;
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final List<RemoteDBGrpc.RemoteDBBlockingStub> blockingStubs = new ArrayList<>();
+    private final List<RemoteDBGrpc.RemoteDBFutureStub> futureStubs = new ArrayList<>();
+    private final List<RemoteDBGrpc.RemoteDBStub> asyncStubs = new ArrayList<>();
+    // Makes every shard apply changes to tables and columns in the same order
+    private final Object schemaLock = new Object();
+    // Counts the new rows placed, to place each on the next shard
+    private final AtomicInteger placed = new AtomicInteger();
+    // About the most rows of earlier shards that removing duplicates holds in memory at once
+    int dedupRowsPerPass = DEDUP_ROWS_PER_PASS;
+
+    /** @param executor runs the callbacks of calls to the shards; null for gRPC's default */
+    ShardRouter(ShardMap map, Executor executor) {
+        this.map = map;
+        for (String target : map.getTargets()) {
+            var builder = Grpc.newChannelBuilder(target, InsecureChannelCredentials.create());
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            ManagedChannel channel = builder.build();
+            channels.add(channel);
+            blockingStubs.add(RemoteDBGrpc.newBlockingStub(channel));
+            futureStubs.add(RemoteDBGrpc.newFutureStub(channel));
+            asyncStubs.add(RemoteDBGrpc.newStub(channel));
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        for (ManagedChannel channel : channels) {
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void getTablesData(GetTablesDataRequest request, StreamObserver<GetTablesDataResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            List<GetTablesDataResponse> shards = fanOut(stub -> stub.getTablesData(GetTablesDataRequest.getDefaultInstance()));
+            // Versions only grow, so their sum changes whenever any shard changes
+            long generation = 17;
+            long version = 0;
+            for (GetTablesDataResponse shard : shards) {
+                generation = 31 * generation + shard.getGeneration();
+                version += shard.getVersion();
+            }
+            GetTablesDataResponse.Builder responseBuilder = GetTablesDataResponse.newBuilder()
+                    .setGeneration(generation)
+                    .setVersion(version);
+            if (request.hasIfChangedSinceVersion() && request.getGeneration() == generation
+                    && request.getIfChangedSinceVersion() == version) {
+                return responseBuilder.setNotModified(true).build();
+            }
+            List<TableData> tables = shards.get(0).getTablesDataList();
+            for (int index = 0; index < tables.size(); index++) {
+                long tableVersion = 0;
+                long schemaVersion = 0;
+                for (GetTablesDataResponse shard : shards) {
+                    if (index < shard.getTablesDataCount() && shard.getTablesData(index).getId() == tables.get(index).getId()) {
+                        tableVersion += shard.getTablesData(index).getVersion();
+                        schemaVersion += shard.getTablesData(index).getSchemaVersion();
+                    }
+                }
+                responseBuilder.addTablesData(tables.get(index).toBuilder().setVersion(tableVersion).setSchemaVersion(schemaVersion));
+            }
+            return responseBuilder.build();
+        });
+    }
+
+    @Override
+    public void getColumns(GetColumnsRequest request, StreamObserver<GetColumnsResponse> responseObserver) {
+        reply(responseObserver, () -> columns(request));
+    }
+
+    // The columns of a table, which must be the same on every shard; the schema version is the sum of the shards', as in the table list
+    private GetColumnsResponse columns(GetColumnsRequest request) {
+        List<GetColumnsResponse> shards = fanOut(stub -> stub.getColumns(request));
+        long schemaVersion = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (!shards.get(shard).getColumnsList().equals(shards.get(0).getColumnsList())) {
+                throw Status.FAILED_PRECONDITION.withDescription("The table's columns on shard " + shard
+                        + " differ from those on shard 0; a change to them failed part way").asRuntimeException();
+            }
+            schemaVersion += shards.get(shard).getSchemaVersion();
+        }
+        return shards.get(0).toBuilder().setSchemaVersion(schemaVersion).build();
+    }
+
+    @Override
+    public void getRows(GetRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            List<GetRowsResponse> counts = probe(request.getTableIndex(), request.getTableId());
+            int total = totalRows(counts);
+            int from = Math.min(Math.max(request.getOffset(), 0), total);
+            int to = request.getLimit() > 0 ? (int) Math.min(total, (long) from + request.getLimit()) : total;
+            List<Integer> shards = new ArrayList<>();
+            List<GetRowsRequest> requests = new ArrayList<>();
+            for (int shard = 0, start = 0; shard < counts.size(); start += counts.get(shard++).getTotalRows()) {
+                int lo = Math.max(from, start);
+                int hi = Math.min(to, start + counts.get(shard).getTotalRows());
+                if (lo < hi) {
+                    shards.add(shard);
+                    requests.add(request.toBuilder().setOffset(lo - start).setLimit(hi - lo).build());
+                }
+            }
+            if (request.getFormat() == RowFormat.COLUMN_BATCH && requests.size() > 1) {
+                throw Status.UNIMPLEMENTED.withDescription("Column batches are not merged across shards; use StreamRows").asRuntimeException();
+            }
+            List<ListenableFuture<GetRowsResponse>> parts = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                parts.add(futureStubs.get(shards.get(i)).getRows(requests.get(i)));
+            }
+            GetRowsResponse.Builder responseBuilder = GetRowsResponse.newBuilder()
+                    .setTotalRows(total)
+                    .setOffset(from);
+            long version = totalVersion(counts);
+            List<GetRowsResponse> responses = awaitAll(parts);
+            for (int i = 0; i < responses.size(); i++) {
+                GetRowsResponse part = responses.get(i);
+                version += part.getVersion() - counts.get(shards.get(i)).getVersion();
+                if (request.getFormat() == RowFormat.COLUMN_BATCH) {
+                    responseBuilder.setBatch(part.getBatch());
+                } else {
+                    responseBuilder.addAllRows(part.getRowsList());
+                }
+            }
+            return responseBuilder.setVersion(version).build();
+        });
+    }
+
+    @Override
+    public void streamRows(GetRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
+        List<GetRowsResponse> counts;
+        try {
+            counts = probe(request.getTableIndex(), request.getTableId());
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        new ShardedRowStreamer(asyncStubs, request, counts, (ServerCallStreamObserver<GetRowsResponse>) responseObserver).start();
+    }
+
+    @Override
+    public void sortRows(SortRowsRequest request, StreamObserver<GetRowsResponse> responseObserver) {
+        if (!refusedAcrossShards("Sorts", responseObserver)) {
+            asyncStubs.get(0).sortRows(request, new Relay<>(responseObserver));
+        }
+    }
+
+    @Override
+    public void watchTable(WatchTableRequest request, StreamObserver<TableUpdate> responseObserver) {
+        if (!refusedAcrossShards("Watches", responseObserver)) {
+            asyncStubs.get(0).watchTable(request, new Relay<>(responseObserver));
+        }
+    }
+
+    @Override
+    public StreamObserver<InsertRowsRequest> insertRows(StreamObserver<InsertRowsResponse> responseObserver) {
+        return new ShardedRowIngester(asyncStubs, nextShard(), (ServerCallStreamObserver<InsertRowsResponse>) responseObserver);
+    }
+
+    @Override
+    public void createTable(CreateTableRequest request, StreamObserver<CreateTableResponse> responseObserver) {
+        reply(responseObserver, () -> CreateTableResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.createTable(request)), CreateTableResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void addColumn(AddColumnRequest request, StreamObserver<AddColumnResponse> responseObserver) {
+        reply(responseObserver, () -> AddColumnResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.addColumn(request)), AddColumnResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void deleteTable(DeleteTableRequest request, StreamObserver<DeleteTableResponse> responseObserver) {
+        reply(responseObserver, () -> DeleteTableResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.deleteTable(request)), DeleteTableResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void deleteColumn(DeleteColumnRequest request, StreamObserver<DeleteColumnResponse> responseObserver) {
+        reply(responseObserver, () -> DeleteColumnResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.deleteColumn(request)), DeleteColumnResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void renameTable(RenameTableRequest request, StreamObserver<RenameTableResponse> responseObserver) {
+        reply(responseObserver, () -> RenameTableResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.renameTable(request)), RenameTableResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void renameColumn(RenameColumnRequest request, StreamObserver<RenameColumnResponse> responseObserver) {
+        reply(responseObserver, () -> RenameColumnResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.renameColumn(request)), RenameColumnResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void changeColumnType(ChangeColumnTypeRequest request, StreamObserver<ChangeColumnTypeResponse> responseObserver) {
+        reply(responseObserver, () -> ChangeColumnTypeResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.changeColumnType(request)), ChangeColumnTypeResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void createIndex(CreateIndexRequest request, StreamObserver<CreateIndexResponse> responseObserver) {
+        reply(responseObserver, () -> CreateIndexResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.createIndex(request)), CreateIndexResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void dropIndex(DropIndexRequest request, StreamObserver<DropIndexResponse> responseObserver) {
+        reply(responseObserver, () -> DropIndexResponse.newBuilder()
+                .setSuccess(allSucceeded(broadcast(stub -> stub.dropIndex(request)), DropIndexResponse::getSuccess))
+                .build());
+    }
+
+    @Override
+    public void createTestTable(CreateTestTableRequest request, StreamObserver<CreateTestTableResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).createTestTable(request);
+            }
+            // Every shard gets the table and its columns, and the rows are placed like any new rows
+            org.example.component.Table sample = DatabaseManager.createTestTable();
+            synchronized (schemaLock) {
+                int tableIndex = blockingStubs.get(0).getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataCount();
+                CreateTableRequest table = CreateTableRequest.newBuilder().setName(sample.name).build();
+                boolean success = allSucceeded(broadcast(stub -> stub.createTable(table)), CreateTableResponse::getSuccess);
+                for (org.example.component.Column column : sample.getColumns()) {
+                    Column proto = RowStreamer.toProto(column);
+                    AddColumnRequest add = AddColumnRequest.newBuilder()
+                            .setTableIndex(tableIndex)
+                            .setName(proto.getName())
+                            .setColumnType(proto.getType())
+                            .setMin(proto.getMin())
+                            .setMax(proto.getMax())
+                            .build();
+                    success &= allSucceeded(broadcast(stub -> stub.addColumn(add)), AddColumnResponse::getSuccess);
+                }
+                for (int row = 0; row < sample.getRowCount(); row++) {
+                    AddRowRequest.Builder add = AddRowRequest.newBuilder().setTableIndex(tableIndex);
+                    for (int c = 0; c < sample.getColumnCount(); c++) {
+                        add.addValues(sample.getValue(row, c));
+                    }
+                    int shard = nextShard();
+                    AddRowResponse response = blockingStubs.get(shard).addRow(add.build());
+                    checkOwner(shard, response.getRowId());
+                    success &= response.getSuccess();
+                }
+                return CreateTestTableResponse.newBuilder().setSuccess(success).build();
+            }
+        });
+    }
+
+    @Override
+    public void addRow(AddRowRequest request, StreamObserver<AddRowResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).addRow(request);
+            }
+            if (request.getTransactionId() != 0) {
+                throw acrossShards("Transactions");
+            }
+            int shard = nextShard();
+            AddRowResponse response = blockingStubs.get(shard).addRow(request);
+            checkOwner(shard, response.getRowId());
+            return response;
+        });
+    }
+
+    @Override
+    public void editCell(EditCellRequest request, StreamObserver<EditCellResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).editCell(request);
+            }
+            if (request.getTransactionId() != 0) {
+                throw acrossShards("Transactions");
+            }
+            if (request.getRowId() != 0) {
+                int shard = ShardMap.shardOfRowId(request.getRowId());
+                return shard < map.size() ? blockingStubs.get(shard).editCell(request) : EditCellResponse.getDefaultInstance();
+            }
+            RowAddress row = lookUp(request.getTableIndex(), request.getRowIndex());
+            if (row == null) {
+                return EditCellResponse.getDefaultInstance();
+            }
+            List<Column> columns = blockingStubs.get(row.shard())
+                    .getColumns(GetColumnsRequest.newBuilder().setTableId(row.tableId()).build()).getColumnsList();
+            if (request.getColumnIndex() < 0 || request.getColumnIndex() >= columns.size()) {
+                return EditCellResponse.getDefaultInstance();
+            }
+            return blockingStubs.get(row.shard()).editCell(EditCellRequest.newBuilder()
+                    .setTableId(row.tableId())
+                    .setColumnId(columns.get(request.getColumnIndex()).getId())
+                    .setRowId(row.rowId())
+                    .setValue(request.getValue())
+                    .build());
+        });
+    }
+
+    @Override
+    public void deleteRow(DeleteRowRequest request, StreamObserver<DeleteRowResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).deleteRow(request);
+            }
+            if (request.getTransactionId() != 0) {
+                throw acrossShards("Transactions");
+            }
+            if (request.getRowId() != 0) {
+                int shard = ShardMap.shardOfRowId(request.getRowId());
+                return shard < map.size() ? blockingStubs.get(shard).deleteRow(request) : DeleteRowResponse.getDefaultInstance();
+            }
+            RowAddress row = lookUp(request.getTableIndex(), request.getRowIndex());
+            return row == null ? DeleteRowResponse.getDefaultInstance()
+                    : blockingStubs.get(row.shard()).deleteRow(DeleteRowRequest.newBuilder()
+                            .setTableId(row.tableId())
+                            .setRowId(row.rowId())
+                            .build());
+        });
+    }
+
+    @Override
+    public void deleteDuplicateRows(DeleteDuplicateRowsRequest request, StreamObserver<DeleteDuplicateRowsResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).deleteDuplicateRows(request);
+            }
+            if (request.getCopiesOfCount() > 0) {
+                throw Status.INVALID_ARGUMENT.withDescription("copiesOf is for a single shard, not the router").asRuntimeException();
+            }
+            // Table indexes must not shift between the steps
+            synchronized (schemaLock) {
+                int removed = 0;
+                for (DeleteDuplicateRowsResponse shard : fanOut(stub -> stub.deleteDuplicateRows(request))) {
+                    removed += shard.getRemovedRows();
+                }
+                // Only the rows of shards before the last are kept to compare with; each pass keeps one share of them
+                List<GetRowsResponse> counts = probe(request.getTableIndex(), 0);
+                long compared = totalRows(counts) - counts.get(counts.size() - 1).getTotalRows();
+                int passes = (int) Math.max(1, (compared + dedupRowsPerPass - 1) / dedupRowsPerPass);
+                for (int pass = 0; pass < passes; pass++) {
+                    removed += deleteCopiesAcrossShards(request.getTableIndex(), pass, passes);
+                }
+                return DeleteDuplicateRowsResponse.newBuilder().setSuccess(true).setRemovedRows(removed).build();
+            }
+        });
+    }
+
+    // Has every shard delete its rows that repeat a row of a shard before it, among the rows whose hash falls in one
+    // of `passes` shares. The first occurrence of a row is on the first shard that has it
+    private int deleteCopiesAcrossShards(int tableIndex, int pass, int passes) {
+        int removed = 0;
+        Set<List<String>> kept = new HashSet<>();
+        for (int shard = 0; shard < map.size(); shard++) {
+            Set<List<String>> copies = new LinkedHashSet<>();
+            List<List<String>> own = new ArrayList<>();
+            Iterator<GetRowsResponse> chunks = blockingStubs.get(shard)
+                    .streamRows(GetRowsRequest.newBuilder().setTableIndex(tableIndex).build());
+            while (chunks.hasNext()) {
+                for (Row row : chunks.next().getRowsList()) {
+                    List<String> values = row.getValuesList();
+                    if (Math.floorMod(values.hashCode(), passes) == pass) {
+                        (kept.contains(values) ? copies : own).add(values);
+                    }
+                }
+            }
+            removed += deleteCopies(shard, tableIndex, copies);
+            if (shard < map.size() - 1) {
+                kept.addAll(own);
+            }
+        }
+        return removed;
+    }
+
+    // Has a shard delete its rows equal to any of these, a bounded number of them per call
+    private int deleteCopies(int shard, int tableIndex, Collection<List<String>> copies) {
+        int removed = 0;
+        DeleteDuplicateRowsRequest.Builder request = DeleteDuplicateRowsRequest.newBuilder().setTableIndex(tableIndex);
+        for (Iterator<List<String>> rows = copies.iterator(); rows.hasNext(); ) {
+            request.addCopiesOf(Row.newBuilder().addAllValues(rows.next()));
+            if (request.getCopiesOfCount() == COPIES_PER_CALL || !rows.hasNext()) {
+                removed += blockingStubs.get(shard).deleteDuplicateRows(request.build()).getRemovedRows();
+                request.clearCopiesOf();
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void queryRows(QueryRowsRequest request, StreamObserver<QueryRowsResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).queryRows(request);
+            }
+            if (request.getFormat() == RowFormat.COLUMN_BATCH) {
+                throw Status.UNIMPLEMENTED.withDescription("Column batches are not merged across shards").asRuntimeException();
+            }
+            // Row counts are read alongside, to turn each shard's row indexes into global ones
+            List<ListenableFuture<GetRowsResponse>> counts = probeCalls(request.getTableIndex(), 0);
+            List<QueryRowsResponse> shards = fanOut(stub -> stub.queryRows(request));
+            List<GetRowsResponse> rowCounts = awaitAll(counts);
+            int limit = request.getLimit() > 0 ? request.getLimit() : Integer.MAX_VALUE;
+            QueryRowsResponse.Builder responseBuilder = QueryRowsResponse.newBuilder();
+            for (int shard = 0, start = 0; shard < shards.size(); start += rowCounts.get(shard++).getTotalRows()) {
+                QueryRowsResponse part = shards.get(shard);
+                for (int i = 0; i < part.getRowsCount() && responseBuilder.getRowsCount() < limit; i++) {
+                    responseBuilder.addRows(part.getRows(i)).addRowIndexes(start + part.getRowIndexes(i));
+                }
+            }
+            return responseBuilder.build();
+        });
+    }
+
+    @Override
+    public void aggregate(AggregateRequest request, StreamObserver<AggregateResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).aggregate(request);
+            }
+            // Each shard returns the sum and count of an average's values instead of the average
+            List<Aggregation> aggregations = request.getAggregationsList();
+            AggregateRequest.Builder shardRequest = request.toBuilder().clearAggregations();
+            for (Aggregation aggregation : aggregations) {
+                if (aggregation.getFunction() == AggregateFunction.AVG) {
+                    shardRequest.addAggregations(aggregation.toBuilder().setFunction(AggregateFunction.SUM))
+                            .addAggregations(aggregation.toBuilder().setFunction(AggregateFunction.COUNT));
+                } else {
+                    shardRequest.addAggregations(aggregation);
+                }
+            }
+            List<Column> columnList = columns(GetColumnsRequest.newBuilder().setTableIndex(request.getTableIndex()).build()).getColumnsList();
+            List<AggregateResponse> shards = fanOut(stub -> stub.aggregate(shardRequest.build()));
+
+            Map<String, AggregateGroup.Builder> groups = new LinkedHashMap<>();
+            for (AggregateResponse shard : shards) {
+                for (AggregateGroup group : shard.getGroupsList()) {
+                    AggregateGroup.Builder merged = groups.get(group.getKey());
+                    if (merged == null) {
+                        groups.put(group.getKey(), group.toBuilder());
+                        continue;
+                    }
+                    merged.setRowCount(merged.getRowCount() + group.getRowCount());
+                    for (int a = 0; a < shardRequest.getAggregationsCount(); a++) {
+                        Aggregation aggregation = shardRequest.getAggregations(a);
+                        ColumnType type = columnList.get(aggregation.getColumnIndex()).getType();
+                        merged.setValues(a, combine(aggregation.getFunction(), type, merged.getValues(a), group.getValues(a)));
+                    }
+                }
+            }
+            AggregateResponse.Builder responseBuilder = AggregateResponse.newBuilder();
+            for (AggregateGroup.Builder group : groups.values()) {
+                List<String> values = new ArrayList<>(aggregations.size());
+                for (int a = 0, s = 0; a < aggregations.size(); a++, s++) {
+                    if (aggregations.get(a).getFunction() == AggregateFunction.AVG) {
+                        ColumnType type = columnList.get(aggregations.get(a).getColumnIndex()).getType();
+                        values.add(average(type, group.getValues(s), group.getValues(++s)));
+                    } else {
+                        values.add(group.getValues(s));
+                    }
+                }
+                responseBuilder.addGroups(group.clearValues().addAllValues(values));
+            }
+            return responseBuilder.build();
+        });
+    }
+
+    @Override
+    public void applyBatch(ApplyBatchRequest request, StreamObserver<ApplyBatchResponse> responseObserver) {
+        reply(responseObserver, () -> {
+            if (map.size() == 1) {
+                return blockingStubs.get(0).applyBatch(request);
+            }
+            int count = request.getOperationsCount();
+            for (BatchOperation operation : request.getOperationsList()) {
+                if (operation.getOperationCase() != BatchOperation.OperationCase.ADDROW) {
+                    throw acrossShards("Batches that edit or delete rows by index");
+                }
+            }
+            // An atomic batch stays whole on the shard its first row goes to
+            int[] shardOf = new int[count];
+            for (int i = 0; i < count; i++) {
+                shardOf[i] = request.getAtomic() && i > 0 ? shardOf[0] : nextShard();
+            }
+            List<ListenableFuture<ApplyBatchResponse>> parts = new ArrayList<>();
+            for (int shard = 0; shard < map.size(); shard++) {
+                ApplyBatchRequest.Builder part = request.toBuilder().clearOperations();
+                for (int i = 0; i < count; i++) {
+                    if (shardOf[i] == shard) {
+                        part.addOperations(request.getOperations(i));
+                    }
+                }
+                parts.add(part.getOperationsCount() == 0 ? Futures.immediateFuture(ApplyBatchResponse.newBuilder().setSuccess(true).build())
+                        : futureStubs.get(shard).applyBatch(part.build()));
+            }
+            List<ApplyBatchResponse> responses = awaitAll(parts);
+            ApplyBatchResponse.Builder responseBuilder = ApplyBatchResponse.newBuilder().setSuccess(true);
+            int[] next = new int[map.size()];
+            for (int i = 0; i < count; i++) {
+                responseBuilder.addResults(responses.get(shardOf[i]).getResults(next[shardOf[i]]++));
+            }
+            for (ApplyBatchResponse response : responses) {
+                responseBuilder.setSuccess(responseBuilder.getSuccess() && response.getSuccess());
+            }
+            return responseBuilder.build();
+        });
+    }
+
+    @Override
+    public void beginTransaction(BeginTransactionRequest request, StreamObserver<BeginTransactionResponse> responseObserver) {
+        if (!refusedAcrossShards("Transactions", responseObserver)) {
+            reply(responseObserver, () -> blockingStubs.get(0).beginTransaction(request));
+        }
+    }
+
+    @Override
+    public void commit(CommitRequest request, StreamObserver<CommitResponse> responseObserver) {
+        if (!refusedAcrossShards("Transactions", responseObserver)) {
+            reply(responseObserver, () -> blockingStubs.get(0).commit(request));
+        }
+    }
+
+    @Override
+    public void rollback(RollbackRequest request, StreamObserver<RollbackResponse> responseObserver) {
+        if (!refusedAcrossShards("Transactions", responseObserver)) {
+            reply(responseObserver, () -> blockingStubs.get(0).rollback(request));
+        }
+    }
+
+    @Override
+    public void getMetrics(GetMetricsRequest request, StreamObserver<GetMetricsResponse> responseObserver) {
+        if (request.getShard() < 0 || request.getShard() >= map.size()) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Unknown shard " + request.getShard()).asRuntimeException());
+            return;
+        }
+        reply(responseObserver, () -> blockingStubs.get(request.getShard()).getMetrics(request));
+    }
+
+    // The shard the next new row goes to
+    private int nextShard() {
+        return Math.floorMod(placed.getAndIncrement(), map.size());
+    }
+
+    private StatusRuntimeException acrossShards(String calls) {
+        return Status.FAILED_PRECONDITION.withDescription(calls + " are not supported across shards, and grpc.client.shards lists "
+                + map.size() + " servers").asRuntimeException();
+    }
+
+    // Fails a call that only a map of one shard can pass through; returns whether it did
+    private boolean refusedAcrossShards(String calls, StreamObserver<?> responseObserver) {
+        if (map.size() == 1) {
+            return false;
+        }
+        responseObserver.onError(acrossShards(calls));
+        return true;
+    }
+
+    private record Position(int shard, int rowIndex) {
+    }
+
+    private record RowAddress(int shard, long tableId, long rowId) {
+    }
+
+    // The shard and local index of a row in the global order, or null if there is no such row
+    private static Position locate(List<GetRowsResponse> counts, int rowIndex) {
+        for (int shard = 0, start = 0; shard < counts.size(); start += counts.get(shard++).getTotalRows()) {
+            if (rowIndex >= start && rowIndex < start + counts.get(shard).getTotalRows()) {
+                return new Position(shard, rowIndex - start);
+            }
+        }
+        return null;
+    }
+
+    // The shard and IDs of the row at a position in the global order, or null if there is no such row. The shards up to
+    // the row's are probed again once it is read: as versions only grow, equal versions mean no row before it moved
+    // meanwhile. Otherwise the lookup is repeated, and fails with ABORTED if rows keep moving
+    private RowAddress lookUp(int tableIndex, int rowIndex) {
+        List<TableData> tables = blockingStubs.get(0).getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataList();
+        if (tableIndex < 0 || tableIndex >= tables.size()) {
+            return null;
+        }
+        long tableId = tables.get(tableIndex).getId();
+        for (int attempt = 0; attempt < LOOKUP_ATTEMPTS; attempt++) {
+            List<GetRowsResponse> counts = probe(0, tableId);
+            Position position = locate(counts, rowIndex);
+            if (position == null) {
+                return null;
+            }
+            GetRowsResponse row = blockingStubs.get(position.shard()).getRows(GetRowsRequest.newBuilder()
+                    .setTableId(tableId)
+                    .setOffset(position.rowIndex())
+                    .setLimit(1)
+                    .build());
+            List<GetRowsResponse> recounts = probe(0, tableId);
+            boolean moved = row.getRowsCount() == 0;
+            for (int shard = 0; shard <= position.shard(); shard++) {
+                moved |= recounts.get(shard).getVersion() != counts.get(shard).getVersion();
+            }
+            if (!moved) {
+                return new RowAddress(position.shard(), tableId, row.getRows(0).getId());
+            }
+        }
+        throw Status.ABORTED.withDescription("Rows kept moving while row " + rowIndex + " was looked up; try again").asRuntimeException();
+    }
+
+    // The row count and version of a table on every shard: a GetRows past the last row
+    private List<GetRowsResponse> probe(int tableIndex, long tableId) {
+        return awaitAll(probeCalls(tableIndex, tableId));
+    }
+
+    private List<ListenableFuture<GetRowsResponse>> probeCalls(int tableIndex, long tableId) {
+        GetRowsRequest request = GetRowsRequest.newBuilder()
+                .setTableIndex(tableIndex)
+                .setTableId(tableId)
+                .setOffset(Integer.MAX_VALUE)
+                .setLimit(1)
+                .build();
+        List<ListenableFuture<GetRowsResponse>> calls = new ArrayList<>(futureStubs.size());
+        for (RemoteDBGrpc.RemoteDBFutureStub stub : futureStubs) {
+            calls.add(stub.getRows(request));
+        }
+        return calls;
+    }
+
+    static int totalRows(List<GetRowsResponse> counts) {
+        long total = 0;
+        for (GetRowsResponse count : counts) {
+            total += count.getTotalRows();
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw Status.OUT_OF_RANGE.withDescription("The table has more rows than an index can address").asRuntimeException();
+        }
+        return (int) total;
+    }
+
+    static long totalVersion(List<GetRowsResponse> counts) {
+        long version = 0;
+        for (GetRowsResponse count : counts) {
+            version += count.getVersion();
+        }
+        return version;
+    }
+
+    // Catches a server started with a --shard other than its place in the map, whose rows could not be found again
+    private void checkOwner(int shard, long rowId) {
+        if (rowId != 0 && ShardMap.shardOfRowId(rowId) != shard) {
+            throw Status.FAILED_PRECONDITION.withDescription("The server at " + map.getTargets().get(shard)
+                    + " gave row ID " + rowId + ", which is not from shard " + shard + "; start it with --shard=" + shard).asRuntimeException();
+        }
+    }
+
+    // Calls every shard at once and returns their responses in shard order
+    private <T> List<T> fanOut(Function<RemoteDBGrpc.RemoteDBFutureStub, ListenableFuture<T>> call) {
+        List<ListenableFuture<T>> calls = new ArrayList<>(futureStubs.size());
+        for (RemoteDBGrpc.RemoteDBFutureStub stub : futureStubs) {
+            calls.add(call.apply(stub));
+        }
+        return awaitAll(calls);
+    }
+
+    // Makes a change on every shard in turn, stopping at the first that fails
+    private <T> List<T> broadcast(Function<RemoteDBGrpc.RemoteDBBlockingStub, T> call) {
+        synchronized (schemaLock) {
+            List<T> responses = new ArrayList<>(blockingStubs.size());
+            for (int shard = 0; shard < blockingStubs.size(); shard++) {
+                try {
+                    responses.add(call.apply(blockingStubs.get(shard)));
+                } catch (StatusRuntimeException e) {
+                    if (shard > 0) {
+                        logger.severe("Shard " + shard + " failed a change that shards before it made; the shards' tables now differ: " + e.getStatus());
+                    }
+                    throw e;
+                }
+            }
+            return responses;
+        }
+    }
+
+    private static <T> boolean allSucceeded(List<T> responses, java.util.function.Predicate<T> success) {
+        return responses.stream().allMatch(success);
+    }
+
+    // The results in order; on the first failure the calls still running are cancelled
+    private static <T> List<T> awaitAll(List<ListenableFuture<T>> calls) {
+        List<T> results = new ArrayList<>(calls.size());
+        try {
+            for (ListenableFuture<T> call : calls) {
+                results.add(await(call));
+            }
+        } catch (StatusRuntimeException e) {
+            for (ListenableFuture<T> call : calls) {
+                call.cancel(true);
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private static <T> T await(ListenableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StatusRuntimeException statusException) {
+                throw statusException;
+            }
+            throw Status.INTERNAL.withCause(e.getCause()).asRuntimeException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw Status.CANCELLED.withDescription("Interrupted").asRuntimeException();
+        }
+    }
+
+    // Answers a unary call, passing on the status of a shard that failed
+    private static <T> void reply(StreamObserver<T> responseObserver, Supplier<T> call) {
+        T response;
+        try {
+            response = call.get();
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e.getStatus().asRuntimeException());
+            return;
+        } catch (ArithmeticException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Sum is out of range").asRuntimeException());
+            return;
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    // Passes on the messages of a call to the only shard, asking for each once the caller is ready for it
+    private static final class Relay<ReqT, RespT> implements ClientResponseObserver<ReqT, RespT> {
+        private final ServerCallStreamObserver<RespT> observer;
+        private ClientCallStreamObserver<ReqT> call;
+        private boolean requested;
+
+        Relay(StreamObserver<RespT> observer) {
+            this.observer = (ServerCallStreamObserver<RespT>) observer;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+            requestStream.disableAutoRequestWithInitial(1);
+            synchronized (this) {
+                call = requestStream;
+                requested = true;
+            }
+            observer.setOnCancelHandler(() -> requestStream.cancel("Cancelled by the caller", null));
+            observer.setOnReadyHandler(this::onReady);
+        }
+
+        private synchronized void onReady() {
+            if (!requested && observer.isReady()) {
+                requested = true;
+                call.request(1);
+            }
+        }
+
+        @Override
+        public synchronized void onNext(RespT message) {
+            observer.onNext(message);
+            requested = false;
+            onReady();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            observer.onError(Status.fromThrowable(t).asRuntimeException());
+        }
+
+        @Override
+        public void onCompleted() {
+            observer.onCompleted();
+        }
+    }
+
+    /** Merges the results of one aggregation on two shards; an empty result means the shard had no values. */
+    static String combine(AggregateFunction function, ColumnType type, String a, String b) {
+        if (a.isEmpty()) {
+            return b;
+        }
+        if (b.isEmpty()) {
+            return a;
+        }
+        return switch (function) {
+            case COUNT -> Long.toString(Long.parseLong(a) + Long.parseLong(b));
+            case SUM -> switch (type) {
+                case INT -> Long.toString(Math.addExact(Long.parseLong(a), Long.parseLong(b)));
+                case REAL -> Double.toString(Double.parseDouble(a) + Double.parseDouble(b));
+                default -> MoneyColumnStore.formatCents(Math.addExact(CellParser.parseMoney(a), CellParser.parseMoney(b)));
+            };
+            case MIN -> compare(type, a, b) <= 0 ? a : b;
+            case MAX -> compare(type, a, b) >= 0 ? a : b;
+            default -> throw new IllegalArgumentException("Cannot merge " + function);
+        };
+    }
+
+    private static int compare(ColumnType type, String a, String b) {
+        return switch (type) {
+            case INT -> Long.compare(Long.parseLong(a), Long.parseLong(b));
+            case REAL -> Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+            case CHAR -> Character.compare(a.charAt(0), b.charAt(0));
+            default -> Long.compare(CellParser.parseMoney(a), CellParser.parseMoney(b));
+        };
+    }
+
+    /** The average from the merged sum and count of its values, formatted as the server would. */
+    static String average(ColumnType type, String sum, String count) {
+        if (sum.isEmpty()) {
+            return "";
+        }
+        long n = Long.parseLong(count);
+        return switch (type) {
+            case INT -> Double.toString((double) Long.parseLong(sum) / n);
+            case REAL -> Double.toString(Double.parseDouble(sum) / n);
+            default -> MoneyColumnStore.formatCents(BigDecimal.valueOf(CellParser.parseMoney(sum))
+                    .divide(BigDecimal.valueOf(n), 0, RoundingMode.HALF_EVEN).longValueExact());
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package org.example;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Receives the client stream of an {@code InsertRows} call for {@link ShardRouter}:
+ * deals the rows out to the shards in turn, each over its own InsertRows call, and
+ * merges the shards' acknowledgements. Row {@code n} of the stream goes to shard
+ * {@code (first + n) % shards}, so a row number a shard reports is turned back into
+ * the stream's without remembering where each row went.
+ * <p>
+ * The caller is asked for its next message only once every shard's call is ready
+ * for more, so the router holds back a fast client as a single server does. When any
+ * shard fails the call, the rows the others already took stay.
+ */
+class ShardedRowIngester implements StreamObserver<InsertRowsRequest> {
+    private final ServerCallStreamObserver<InsertRowsResponse> observer;
+    private final int first;
+    private final List<ClientCallStreamObserver<InsertRowsRequest>> calls = new ArrayList<>();
+    // The latest running totals of every shard, and whether it sent its final response
+    private final long[] inserted;
+    private final long[] rejected;
+    private final boolean[] finished;
+    // Rejected rows not yet passed on
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+    private long received;
+    private boolean started;
+    private boolean ackEachShard;
+    private boolean waiting;
+    private boolean done;
+
+    ShardedRowIngester(List<RemoteDBGrpc.RemoteDBStub> stubs, int first, ServerCallStreamObserver<InsertRowsResponse> observer) {
+        this.observer = observer;
+        this.first = first;
+        this.inserted = new long[stubs.size()];
+        this.rejected = new long[stubs.size()];
+        this.finished = new boolean[stubs.size()];
+        observer.disableAutoRequest();
+        observer.setOnCancelHandler(this::cancel);
+        for (int shard = 0; shard < stubs.size(); shard++) {
+            stubs.get(shard).insertRows(new Shard(shard));
+        }
+        observer.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(InsertRowsRequest request) {
+        if (done) {
+            return;
+        }
+        int shards = calls.size();
+        List<InsertRowsRequest.Builder> parts = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            InsertRowsRequest.Builder part = InsertRowsRequest.newBuilder();
+            if (!started) {
+                // Every shard gets the table and the share of the acknowledgement interval from the first message
+                int ackInterval = request.getAckInterval() > 0 ? Math.max(1, request.getAckInterval() / shards) : 0;
+                part.setTableIndex(request.getTableIndex()).setTableId(request.getTableId()).setAckInterval(ackInterval);
+            }
+            parts.add(part);
+        }
+        for (Row row : request.getRowsList()) {
+            parts.get((int) ((first + received++) % shards)).addRows(row);
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            if (!started || parts.get(shard).getRowsCount() > 0) {
+                calls.get(shard).onNext(parts.get(shard).build());
+            }
+        }
+        if (!started) {
+            ackEachShard = request.getAckInterval() > 0;
+            started = true;
+        }
+        waiting = true;
+        pull();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        cancel();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+        if (done) {
+            return;
+        }
+        for (ClientCallStreamObserver<InsertRowsRequest> call : calls) {
+            call.onCompleted();
+        }
+    }
+
+    // Asks the caller for its next message once every shard can take more
+    private synchronized void pull() {
+        if (waiting && !done && calls.stream().allMatch(ClientCallStreamObserver::isReady)) {
+            waiting = false;
+            observer.request(1);
+        }
+    }
+
+    private synchronized void cancel() {
+        done = true;
+        for (ClientCallStreamObserver<InsertRowsRequest> call : calls) {
+            call.cancel("Cancelled by the caller", null);
+        }
+    }
+
+    private final class Shard implements ClientResponseObserver<InsertRowsRequest, InsertRowsResponse> {
+        private final int shard;
+
+        Shard(int shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<InsertRowsRequest> requestStream) {
+            requestStream.setOnReadyHandler(ShardedRowIngester.this::pull);
+            calls.add(requestStream);
+        }
+
+        @Override
+        public void onNext(InsertRowsResponse response) {
+            synchronized (ShardedRowIngester.this) {
+                if (done) {
+                    return;
+                }
+                inserted[shard] = response.getInsertedRows();
+                rejected[shard] = response.getRejectedRows();
+                finished[shard] |= response.getDone();
+                int shards = calls.size();
+                for (RejectedRow row : response.getRejectedList()) {
+                    if (rejectedRows.size() < RowIngester.MAX_REJECTED_REPORTED) {
+                        long n = row.getRowNumber() * shards + Math.floorMod(shard - first, shards);
+                        rejectedRows.add(row.toBuilder().setRowNumber(n).build());
+                    }
+                }
+                boolean allFinished = true;
+                for (boolean shardFinished : finished) {
+                    allFinished &= shardFinished;
+                }
+                // Without an interval the caller only hears of the end, once every shard is done
+                if (!allFinished && (!ackEachShard || response.getDone())) {
+                    return;
+                }
+                InsertRowsResponse.Builder merged = InsertRowsResponse.newBuilder().setDone(allFinished);
+                for (int i = 0; i < shards; i++) {
+                    merged.setInsertedRows(merged.getInsertedRows() + inserted[i])
+                            .setRejectedRows(merged.getRejectedRows() + rejected[i]);
+                }
+                rejectedRows.sort(Comparator.comparingLong(RejectedRow::getRowNumber));
+                observer.onNext(merged.addAllRejected(rejectedRows).build());
+                rejectedRows.clear();
+                if (allFinished) {
+                    done = true;
+                    observer.onCompleted();
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            synchronized (ShardedRowIngester.this) {
+                if (done) {
+                    return;
+                }
+                cancel();
+                observer.onError(Status.fromThrowable(t).asRuntimeException());
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
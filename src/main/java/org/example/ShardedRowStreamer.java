@@ -0,0 +1,143 @@
+package org.example;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a range of a sharded table's rows for {@link ShardRouter}: streams each
+ * shard's part of the range in turn and passes its chunks on, renumbered into the
+ * global order. A shard is asked for its next chunk only once the caller's call is
+ * ready for it, so the router holds no more than one chunk per call.
+ * <p>
+ * Chunks carry the sum of the shards' table versions, as the router's table list
+ * does, with the version each shard actually streamed at in place of the one seen by
+ * the row count probe.
+ */
+class ShardedRowStreamer {
+    private final List<RemoteDBGrpc.RemoteDBStub> stubs;
+    private final ServerCallStreamObserver<GetRowsResponse> observer;
+    private final List<GetRowsResponse> counts;
+    private final int totalRows;
+    private final long version;
+    // Per part of the range: its shard, the shard's first global row index, and the request for it
+    private final List<Integer> shards = new ArrayList<>();
+    private final List<Integer> starts = new ArrayList<>();
+    private final List<GetRowsRequest> requests = new ArrayList<>();
+    private int next;
+    private ClientCallStreamObserver<GetRowsRequest> call;
+    private boolean requested;
+    private boolean done;
+
+    ShardedRowStreamer(List<RemoteDBGrpc.RemoteDBStub> stubs, GetRowsRequest request, List<GetRowsResponse> counts,
+                       ServerCallStreamObserver<GetRowsResponse> observer) {
+        this.stubs = stubs;
+        this.observer = observer;
+        this.counts = counts;
+        this.totalRows = ShardRouter.totalRows(counts);
+        this.version = ShardRouter.totalVersion(counts);
+        int from = Math.min(Math.max(request.getOffset(), 0), totalRows);
+        int to = request.getLimit() > 0 ? (int) Math.min(totalRows, (long) from + request.getLimit()) : totalRows;
+        for (int shard = 0, start = 0; shard < counts.size(); start += counts.get(shard++).getTotalRows()) {
+            int lo = Math.max(from, start);
+            int hi = Math.min(to, start + counts.get(shard).getTotalRows());
+            if (lo < hi) {
+                shards.add(shard);
+                starts.add(start);
+                requests.add(request.toBuilder().setOffset(lo - start).setLimit(hi - lo).build());
+            }
+        }
+    }
+
+    synchronized void start() {
+        observer.setOnCancelHandler(this::cancel);
+        observer.setOnReadyHandler(this::onReady);
+        streamNextPart();
+    }
+
+    private synchronized void onReady() {
+        if (call != null && !requested && observer.isReady()) {
+            requested = true;
+            call.request(1);
+        }
+    }
+
+    private synchronized void cancel() {
+        done = true;
+        if (call != null) {
+            call.cancel("Cancelled by the caller", null);
+        }
+    }
+
+    // Called with the lock held
+    private void streamNextPart() {
+        if (done) {
+            return;
+        }
+        if (next == requests.size()) {
+            done = true;
+            observer.onCompleted();
+            return;
+        }
+        int part = next++;
+        stubs.get(shards.get(part)).streamRows(requests.get(part), new Part(part));
+    }
+
+    private final class Part implements ClientResponseObserver<GetRowsRequest, GetRowsResponse> {
+        private final int part;
+
+        Part(int part) {
+            this.part = part;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<GetRowsRequest> requestStream) {
+            requestStream.disableAutoRequestWithInitial(1);
+            synchronized (ShardedRowStreamer.this) {
+                call = requestStream;
+                requested = true;
+            }
+        }
+
+        @Override
+        public void onNext(GetRowsResponse chunk) {
+            synchronized (ShardedRowStreamer.this) {
+                if (done) {
+                    return;
+                }
+                int shard = shards.get(part);
+                observer.onNext(chunk.toBuilder()
+                        .setTotalRows(totalRows)
+                        .setOffset(starts.get(part) + chunk.getOffset())
+                        .setVersion(version - counts.get(shard).getVersion() + chunk.getVersion())
+                        .build());
+                requested = false;
+                onReady();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            synchronized (ShardedRowStreamer.this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                call = null;
+                observer.onError(Status.fromThrowable(t).asRuntimeException());
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (ShardedRowStreamer.this) {
+                call = null;
+                streamNextPart();
+            }
+        }
+    }
+}
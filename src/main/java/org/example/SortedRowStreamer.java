@@ -0,0 +1,113 @@
+package org.example;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.example.component.Table;
+import org.example.component.query.SortedRows;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends a sort result as a stream of {@link GetRowsResponse} chunks, with the same
+ * back-pressure as {@link RowStreamer}. Each chunk looks its rows up by ID under the
+ * table's read lock, so rows deleted since the sort are skipped and edited rows are
+ * sent as they are now.
+ */
+class SortedRowStreamer implements Runnable {
+    private static final Logger logger = Logger.getLogger(SortedRowStreamer.class.getName());
+
+    private final ServerCallStreamObserver<GetRowsResponse> observer;
+    private final Table table;
+    private final SortedRows sorted;
+    private final RowFormat format;
+    private final long[] rowIds;
+    private int toSkip;
+    private int next;
+    private int remaining;
+    private boolean done;
+
+    SortedRowStreamer(Table table, SortedRows sorted, SortRowsRequest request, ServerCallStreamObserver<GetRowsResponse> observer) {
+        this.observer = observer;
+        this.table = table;
+        this.sorted = sorted;
+        this.format = request.getFormat();
+        int chunk = request.getChunkSize() > 0 ? request.getChunkSize() : RowStreamer.DEFAULT_CHUNK_SIZE;
+        this.rowIds = new long[Math.min(chunk, RowStreamer.MAX_CHUNK_SIZE)];
+        this.toSkip = Math.max(request.getOffset(), 0);
+        this.next = toSkip;
+        this.remaining = request.getLimit() > 0 ? request.getLimit() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void run() {
+        // Invoked by gRPC every time the call turns ready again after back-pressure.
+        try {
+            while (!done && toSkip > 0) {
+                int count = sorted.next(toSkip < rowIds.length ? Arrays.copyOf(rowIds, toSkip) : rowIds);
+                if (count == 0) {
+                    finish();
+                    return;
+                }
+                toSkip -= count;
+            }
+            while (!done && observer.isReady()) {
+                long[] ids = remaining < rowIds.length ? Arrays.copyOf(rowIds, remaining) : rowIds;
+                int count = remaining > 0 ? sorted.next(ids) : 0;
+                if (count == 0) {
+                    finish();
+                    return;
+                }
+                observer.onNext(table.readLocked(() -> chunk(ids, count)));
+                next += count;
+                remaining -= count;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read sorted rows", e);
+            cancel();
+            observer.onError(Status.INTERNAL.withDescription("Failed to read sorted rows").asRuntimeException());
+        }
+    }
+
+    private GetRowsResponse chunk(long[] ids, int count) {
+        int[] slots = new int[count];
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = table.slotOfRowId(ids[i]);
+            if (slot >= 0) {
+                slots[live++] = slot;
+            }
+        }
+        GetRowsResponse.Builder chunk = GetRowsResponse.newBuilder()
+                .setTotalRows(sorted.size())
+                .setOffset(next)
+                .setVersion(table.getChangeFeed().getVersion());
+        if (format == RowFormat.COLUMN_BATCH) {
+            return chunk.setBatch(RowBatchEncoder.encode(table, Arrays.copyOf(slots, live), List.of())).build();
+        }
+        for (int i = 0; i < live; i++) {
+            chunk.addRows(RowStreamer.toProto(table, slots[i]));
+        }
+        return chunk.build();
+    }
+
+    private void finish() {
+        cancel();
+        observer.onCompleted();
+    }
+
+    void cancel() {
+        if (done) {
+            return;
+        }
+        done = true;
+        try {
+            sorted.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to delete sort spill files", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.example.component.Column;
+import org.example.component.Row;
+import org.example.component.RowPage;
+import org.example.component.column.*;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.example.RemoteDBClient.toCompletable;
+
+/**
+ * Web-tier cache of what the pages read from the server: the table list, column
+ * schemas and pages of rows.
+ * <p>
+ * Entries are keyed by the versions the server reports, so they never go stale and
+ * are never invalidated: a changed table simply has a new version, and the entries
+ * of its old versions age out of the bounded caches. Each page view costs one
+ * conditional table-list request, answered with a bare "not modified" while nothing
+ * changed; schemas and rows of the versions it names are then read locally, or
+ * fetched at the same time on a miss.
+ * <p>
+ * Rows are fetched as typed {@link RowBatch}es and cached in that form; a row's cells
+ * are only formatted as text while a page is rendered.
+ */
+@Component
+public class TableCache {
+    private static final int MAX_SCHEMAS = 1024;
+    // Rough bytes of cached row pages
+    private static final long MAX_ROW_WEIGHT = 32L << 20;
+
+    /** The table list as of one database version. */
+    public static final class Catalog {
+        private final long generation;
+        private final long version;
+        private final List<org.example.TableData> tables;
+        private final List<org.example.component.TableData> tableData;
+
+        private Catalog(long generation, long version, List<org.example.TableData> tables) {
+            this.generation = generation;
+            this.version = version;
+            this.tables = tables;
+            List<org.example.component.TableData> tableData = new ArrayList<>(tables.size());
+            for (org.example.TableData table : tables) {
+                tableData.add(new org.example.component.TableData(table.getName(), table.getIndex()));
+            }
+            this.tableData = Collections.unmodifiableList(tableData);
+        }
+
+        public List<org.example.component.TableData> getTableData() {
+            return tableData;
+        }
+    }
+
+    private record SchemaKey(long generation, long tableId, long schemaVersion) {
+    }
+
+    private record PageKey(long generation, long tableId, long version, int offset, int limit) {
+    }
+
+    private record CachedPage(RowPage page, int weight) {
+    }
+
+    private final RemoteDBClient client;
+    private volatile Catalog catalog;
+    private final Cache<SchemaKey, List<Column>> schemas = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SCHEMAS)
+            .build();
+    private final Cache<PageKey, CachedPage> pages = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_ROW_WEIGHT)
+            .weigher((PageKey key, CachedPage page) -> page.weight)
+            .build();
+
+    public TableCache(RemoteDBClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Returns the current table list, asking the server for it only if the database
+     * changed since the list was cached.
+     */
+    public CompletableFuture<Catalog> getCatalog() {
+        Catalog cached = catalog;
+        GetTablesDataRequest.Builder request = GetTablesDataRequest.newBuilder();
+        if (cached != null) {
+            request.setGeneration(cached.generation).setIfChangedSinceVersion(cached.version);
+        }
+        return toCompletable(client.futureStub().getTablesData(request.build())).thenApply(response -> {
+            if (response.getNotModified()) {
+                return cached;
+            }
+            Catalog fresh = new Catalog(response.getGeneration(), response.getVersion(), response.getTablesDataList());
+            catalog = fresh;
+            return fresh;
+        });
+    }
+
+    public CompletableFuture<List<Column>> getColumns(Catalog catalog, int tableIndex) {
+        org.example.TableData table = catalog.tables.get(tableIndex);
+        List<Column> cached = schemas.getIfPresent(new SchemaKey(catalog.generation, table.getId(), table.getSchemaVersion()));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        GetColumnsRequest request = GetColumnsRequest.newBuilder().setTableId(table.getId()).build();
+        return toCompletable(client.futureStub().getColumns(request)).thenApply(response -> {
+            List<Column> columns = Collections.unmodifiableList(toColumns(response));
+            // Keyed by the version actually read, which is newer than the catalog's if the columns changed since
+            schemas.put(new SchemaKey(catalog.generation, table.getId(), response.getSchemaVersion()), columns);
+            return columns;
+        });
+    }
+
+    public CompletableFuture<RowPage> getRows(Catalog catalog, int tableIndex, int offset, int limit) {
+        org.example.TableData table = catalog.tables.get(tableIndex);
+        CachedPage cached = pages.getIfPresent(new PageKey(catalog.generation, table.getId(), table.getVersion(), offset, limit));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.page);
+        }
+        GetRowsRequest getRowsRequest = GetRowsRequest.newBuilder()
+                .setTableId(table.getId())
+                .setOffset(offset)
+                .setLimit(limit)
+                .setFormat(RowFormat.COLUMN_BATCH)
+                .build();
+        RemoteDBClient.StreamCollector<GetRowsResponse> chunks = RemoteDBClient.collect();
+        client.asyncStub().streamRows(getRowsRequest, chunks);
+        return chunks.result().thenApply(responses -> toPage(catalog, table.getId(), offset, limit, responses));
+    }
+
+    private RowPage toPage(Catalog catalog, long tableId, int offset, int limit, List<GetRowsResponse> chunks) {
+        RowPage page = new RowPage(offset);
+        // Chunks are read one at a time, so the page is only consistent if they share a version
+        long version = -1;
+        boolean consistent = true;
+        // Rough bytes: the batches plus a view object per row
+        long weight = 64;
+        for (GetRowsResponse chunk : chunks) {
+            consistent &= version == -1 || version == chunk.getVersion();
+            version = chunk.getVersion();
+            page.totalRows = chunk.getTotalRows();
+            RowBatchReader batch = new RowBatchReader(chunk.getBatch());
+            weight += 2L * batch.getSerializedSize() + 4L * batch.getRowCount() * (batch.getColumnCount() + 12);
+            for (int i = 0; i < batch.getRowCount(); i++) {
+                Row row = new Row();
+                row.values = batch.row(i);
+                page.rows.add(row);
+            }
+        }
+        if (consistent && version != -1) {
+            pages.put(new PageKey(catalog.generation, tableId, version, offset, limit), new CachedPage(page, (int) Math.min(weight, Integer.MAX_VALUE)));
+        }
+        return page;
+    }
+
+    private static List<Column> toColumns(GetColumnsResponse getColumnsResponse) {
+        List<Column> columns = new ArrayList<>();
+        for (int i = 0; i < getColumnsResponse.getColumnsCount(); i++) {
+            switch (org.example.component.column.ColumnType.valueOf(getColumnsResponse.getColumns(i).getType().name())) {
+                case INT -> {
+                    Column columnInt = new IntegerColumn(getColumnsResponse.getColumns(i).getName());
+                    columns.add(columnInt);
+                }
+                case REAL -> {
+                    Column columnReal = new RealColumn(getColumnsResponse.getColumns(i).getName());
+                    columns.add(columnReal);
+                }
+                case STRING -> {
+                    Column columnStr = new StringColumn(getColumnsResponse.getColumns(i).getName());
+                    columns.add(columnStr);
+                }
+                case CHAR -> {
+                    Column columnChar = new CharColumn(getColumnsResponse.getColumns(i).getName());
+                    columns.add(columnChar);
+                }
+                case MONEY -> {
+                    Column moneyColumn = new MoneyColumn(getColumnsResponse.getColumns(i).getName());
+                    columns.add(moneyColumn);
+                }
+                case MONEY_INVL -> {
+                    Column moneyInvlColumn = new MoneyInvlColumn(getColumnsResponse.getColumns(i).getName(), getColumnsResponse.getColumns(i).getMin(), getColumnsResponse.getColumns(i).getMax());
+                    columns.add(moneyInvlColumn);
+                }
+            }
+        }
+        return columns;
+    }
+}
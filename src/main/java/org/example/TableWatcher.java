@@ -0,0 +1,221 @@
+package org.example;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import org.example.component.ChangeFeed;
+import org.example.component.Table;
+import org.example.component.TableEvent;
+import org.example.component.TableSnapshot;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves one WatchTable call: a copy of the table in chunks of rows, then its
+ * changes from the table's {@link ChangeFeed}, several to a message.
+ * <p>
+ * The copy is read from a {@link TableSnapshot} opened at the feed version it starts
+ * from, one chunk each time the call can take one, as {@link RowStreamer} does, so a
+ * large table is never held in memory as messages.
+ * <p>
+ * Writers only wake the watcher; messages are built and sent on the watch pool, one
+ * drain at a time per watcher, and only while the transport reports the call as
+ * ready. Changes that pile up while the client is slow stay in the feed, and a client
+ * that falls further behind than the feed keeps gets a fresh copy instead.
+ */
+class TableWatcher {
+    private static final ExecutorService WATCH_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "table-watch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ServerCallStreamObserver<TableUpdate> observer;
+    private final Table table;
+    private final int tableIndex;
+    private final int chunkSize;
+    private final Runnable wakeup = this::wake;
+    private final AtomicInteger wakeups = new AtomicInteger();
+    // The copy being sent and the slot it continues from; null once it is sent
+    private TableSnapshot copy;
+    private int copySlot;
+    // The first message of the copy, with the table and its columns, until it is sent
+    private TableUpdate.Builder copyStart;
+    // Version of the last message queued
+    private long version;
+    private volatile boolean cancelled;
+    private boolean done;
+
+    TableWatcher(Table table, int tableIndex, WatchTableRequest request, ServerCallStreamObserver<TableUpdate> observer) {
+        this.observer = observer;
+        this.table = table;
+        this.tableIndex = tableIndex;
+        int chunk = request.getChunkSize() > 0 ? request.getChunkSize() : RowStreamer.DEFAULT_CHUNK_SIZE;
+        this.chunkSize = Math.min(chunk, RowStreamer.MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Copies the table and starts following its feed. Done under the table's read lock
+     * so that no change falls between the copy and the first event watched. Returns
+     * false if the table was deleted already.
+     */
+    boolean start() {
+        // A table is dropped under its write lock after leaving the database
+        boolean started = table.readLocked(() -> {
+            if (!DatabaseManager.database.tables.contains(table)) {
+                return false;
+            }
+            copyTable();
+            table.getChangeFeed().addWatcher(wakeup);
+            return true;
+        });
+        if (!started) {
+            return false;
+        }
+        observer.setOnCancelHandler(() -> {
+            cancelled = true;
+            wake();
+        });
+        // gRPC runs the handler once the call is ready and again after every back-pressure pause
+        observer.setOnReadyHandler(wakeup);
+        return true;
+    }
+
+    private void wake() {
+        if (wakeups.getAndIncrement() == 0) {
+            WATCH_POOL.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        int seen = wakeups.get();
+        do {
+            send();
+            seen = wakeups.addAndGet(-seen);
+        } while (seen != 0);
+    }
+
+    private void send() {
+        if (done) {
+            return;
+        }
+        if (cancelled) {
+            finish();
+            return;
+        }
+        while (observer.isReady()) {
+            TableUpdate update = copy != null ? nextCopyChunk() : nextChanges();
+            if (update == null) {
+                return;
+            }
+            observer.onNext(update);
+            if (update.getDropped()) {
+                finish();
+                observer.onCompleted();
+                return;
+            }
+        }
+    }
+
+    private void finish() {
+        done = true;
+        closeCopy();
+        table.getChangeFeed().removeWatcher(wakeup);
+    }
+
+    // Null when caught up
+    private TableUpdate nextChanges() {
+        List<TableEvent> events = table.readLocked(() -> {
+            List<TableEvent> after = table.getChangeFeed().eventsAfter(version, chunkSize);
+            if (after == null) {
+                copyTable();
+            }
+            return after;
+        });
+        if (events == null) {
+            return nextCopyChunk();
+        }
+        if (events.isEmpty()) {
+            return null;
+        }
+        TableUpdate.Builder update = TableUpdate.newBuilder();
+        for (TableEvent event : events) {
+            if (event.type == TableEvent.Type.TABLE_DROPPED) {
+                update.setDropped(true);
+            } else {
+                update.addChanges(toProto(event));
+            }
+        }
+        version = events.get(events.size() - 1).getVersion();
+        return update.setVersion(version).build();
+    }
+
+    // Starts a copy at the current version; the caller holds the table's read lock
+    private void copyTable() {
+        closeCopy();
+        version = table.getChangeFeed().getVersion();
+        copy = table.openSnapshot();
+        copySlot = 0;
+        copyStart = TableUpdate.newBuilder()
+                .setVersion(version)
+                .setReset(true)
+                .setTable(TableData.newBuilder().setName(table.name).setIndex(tableIndex).setId(table.getId()));
+        for (org.example.component.Column column : table.getColumns()) {
+            copyStart.addColumns(RowStreamer.toProto(column));
+        }
+    }
+
+    // The next chunk of the copy; the last one is marked complete and ends the copy
+    private TableUpdate nextCopyChunk() {
+        TableUpdate update = table.readLocked(() -> {
+            TableUpdate.Builder chunk = copyStart != null ? copyStart : TableUpdate.newBuilder().setVersion(version);
+            copyStart = null;
+            int slotCount = copy.getSlotCount();
+            for (int rows = 0; rows < chunkSize && (copySlot = copy.nextVisibleSlot(copySlot)) < slotCount; rows++) {
+                chunk.addRows(RowStreamer.toProto(copy, copySlot++));
+            }
+            return chunk.setComplete(copy.nextVisibleSlot(copySlot) >= slotCount).build();
+        });
+        if (update.getComplete()) {
+            closeCopy();
+        }
+        return update;
+    }
+
+    private void closeCopy() {
+        if (copy != null) {
+            copy.close();
+            copy = null;
+            copyStart = null;
+        }
+    }
+
+    private static TableChange toProto(TableEvent event) {
+        TableChange.Builder change = TableChange.newBuilder().setVersion(event.getVersion());
+        switch (event.type) {
+            case ROW_INSERTED -> change.setRowInserted(Row.newBuilder().setId(event.rowId).addAllValues(event.values));
+            case ROW_DELETED -> change.setRowDeleted(event.rowId);
+            case CELL_UPDATED -> change.setCellUpdated(CellUpdate.newBuilder()
+                    .setRowId(event.rowId).setColumnId(event.columnId).setValue(event.text));
+            case COLUMN_ADDED -> change.setColumnAdded(toColumnChange(event));
+            case COLUMN_DELETED -> change.setColumnDeleted(event.columnId);
+            case COLUMN_CHANGED -> change.setColumnChanged(toColumnChange(event));
+            case TABLE_RENAMED -> change.setTableRenamed(event.text);
+            default -> throw new IllegalArgumentException("Unexpected event " + event.type);
+        }
+        return change.build();
+    }
+
+    private static ColumnChange toColumnChange(TableEvent event) {
+        Column column = Column.newBuilder()
+                .setName(event.text)
+                .setType(ColumnType.valueOf(event.columnType))
+                .setMin(event.min)
+                .setMax(event.max)
+                .setId(event.columnId)
+                .build();
+        return ColumnChange.newBuilder().setColumn(column).setCellsCleared(event.cellsCleared).build();
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+import org.example.persistence.Mutation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The writes of one client transaction, buffered on the server until it commits.
+ * Writes hold their table, row and column by ID. The transaction also keeps the
+ * version each table had when it began; the commit fails if a row it writes has
+ * changed since. So a transaction holds no lock while the client works, and of two
+ * transactions writing the same row the first to commit wins.
+ */
+class Transaction {
+    final long id;
+    final List<Write> writes = new ArrayList<>();
+    // By table ID; tables created later are added when the transaction first uses them
+    final Map<Long, Long> startVersions = new HashMap<>();
+    // Both guarded by the transaction's monitor, like writes; the expiry thread reads them under it too
+    boolean finished;
+    long lastUsedNanos = System.nanoTime();
+
+    Transaction(long id) {
+        this.id = id;
+    }
+
+    /** Whether the transaction already deletes the row. */
+    boolean deletes(long tableId, long rowId) {
+        for (Write write : writes) {
+            if (write.tableId == tableId && write.rowId == rowId && write.operation.type == Mutation.Type.DELETE_ROW) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One buffered ADD_ROW, DELETE_ROW or UPDATE_CELL. The operation's indexes are
+     * resolved from the IDs when the transaction commits.
+     */
+    static final class Write {
+        final long tableId;
+        final long rowId;
+        final long columnId;
+        final Mutation operation;
+
+        Write(long tableId, long rowId, long columnId, Mutation operation) {
+            this.tableId = tableId;
+            this.rowId = rowId;
+            this.columnId = columnId;
+            this.operation = operation;
+        }
+    }
+}
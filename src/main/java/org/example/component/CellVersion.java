@@ -0,0 +1,22 @@
+package org.example.component;
+
+import org.example.component.storage.ColumnStore;
+
+/**
+ * The value a cell held until the change at {@code version} overwrote it, kept for
+ * the snapshots opened before that change. Versions of one row are chained newest
+ * first.
+ */
+final class CellVersion {
+    final long version;
+    final ColumnStore store;
+    final String value;
+    CellVersion older;
+
+    CellVersion(long version, ColumnStore store, String value, CellVersion older) {
+        this.version = version;
+        this.store = store;
+        this.value = value;
+        this.older = older;
+    }
+}
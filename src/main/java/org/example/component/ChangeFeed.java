@@ -0,0 +1,85 @@
+package org.example.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Numbers the changes of one {@link Table} and keeps the most recent ones for the
+ * clients watching it.
+ * <p>
+ * Every change, watched or not, advances the table's version. Events are only
+ * built and retained while at least one watcher is registered, in a ring of
+ * {@link #RETAINED_EVENTS}; a watcher that falls further behind than that has to
+ * start over from a fresh copy of the table. Watchers are plain wake-up callbacks,
+ * run by the writer under the table's write lock, so they must only schedule work.
+ * <p>
+ * Versions and events are guarded by the table's lock: they change under the write
+ * lock and are read under the read lock.
+ */
+public class ChangeFeed {
+    static final int RETAINED_EVENTS = 16_384;
+
+    private final List<Runnable> watchers = new CopyOnWriteArrayList<>();
+    private final TableEvent[] ring = new TableEvent[RETAINED_EVENTS];
+    private long version;
+    // Version of the oldest event still in the ring; above version when it is empty
+    private long oldest = 1;
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void addWatcher(Runnable watcher) {
+        watchers.add(watcher);
+    }
+
+    public void removeWatcher(Runnable watcher) {
+        watchers.remove(watcher);
+    }
+
+    boolean isWatched() {
+        return !watchers.isEmpty();
+    }
+
+    /** Advances the version without keeping an event, since nobody is watching. */
+    void skip() {
+        if (oldest <= version) {
+            Arrays.fill(ring, null);
+        }
+        version++;
+        oldest = version + 1;
+    }
+
+    void publish(TableEvent event) {
+        event.version = ++version;
+        ring[(int) (version % RETAINED_EVENTS)] = event;
+        if (version - oldest >= RETAINED_EVENTS) {
+            oldest = version - RETAINED_EVENTS + 1;
+        }
+        for (Runnable watcher : watchers) {
+            watcher.run();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} events after {@code afterVersion}, or null if some of
+     * them are no longer retained.
+     */
+    public List<TableEvent> eventsAfter(long afterVersion, int limit) {
+        if (afterVersion >= version) {
+            return Collections.emptyList();
+        }
+        if (afterVersion + 1 < oldest) {
+            return null;
+        }
+        int count = (int) Math.min(limit, version - afterVersion);
+        List<TableEvent> events = new ArrayList<>(count);
+        for (long v = afterVersion + 1; v <= afterVersion + count; v++) {
+            events.add(ring[(int) (v % RETAINED_EVENTS)]);
+        }
+        return events;
+    }
+}
@@ -1,10 +1,15 @@
 package org.example.component;
 
+import org.example.component.column.CellParser;
+import org.example.component.storage.ColumnStore;
+
 import java.io.Serializable;
 
 public abstract class Column  implements Serializable {
     public String name;
     public String type;
+    // Assigned by the owning table; stays the same across renames and type changes
+    public long id;
 
     public Column(String name){
         this.name = name;
@@ -22,5 +27,15 @@ public abstract class Column  implements Serializable {
         this.name = name;
     }
 
-    public abstract boolean validate(String data);
+    public boolean validate(String data) {
+        return parse(data) != CellParser.INVALID;
+    }
+
+    /**
+     * Parses a cell into the key its {@link ColumnStore} keeps for it, which
+     * {@link ColumnStore#set(int, String, long)} takes so the cell is not parsed twice.
+     * Returns {@link CellParser#INVALID} if the column does not accept the cell, and 0
+     * for an empty cell or one the store keeps as text.
+     */
+    public abstract long parse(String data);
 }
@@ -0,0 +1,37 @@
+package org.example.component;
+
+import org.example.component.column.CellParser;
+import org.example.component.storage.Bitmap;
+import org.example.component.storage.ColumnStore;
+
+/**
+ * A column type change in progress: the new column and the store its cells are copied
+ * into. Cells the new type does not accept are left empty. Slots below
+ * {@code convertedSlots} have been copied.
+ */
+public class ColumnConversion {
+    public final Column column;
+    public final ColumnStore target;
+    public int convertedSlots;
+
+    ColumnConversion(Column column) {
+        this.column = column;
+        this.target = ColumnStore.forColumn(column);
+    }
+
+    void copy(ColumnStore source, int slot) {
+        String value = source.isNull(slot) ? "" : source.get(slot);
+        long key = column.parse(value);
+        target.set(slot, key != CellParser.INVALID ? value : "", key);
+    }
+
+    /** Drops the slots set in {@code dead}, as the table does when it compacts. */
+    void removeAll(long[] dead) {
+        int below = 0;
+        for (int slot = Bitmap.nextSet(dead, 0, convertedSlots); slot < convertedSlots; slot = Bitmap.nextSet(dead, slot + 1, convertedSlots)) {
+            below++;
+        }
+        target.removeAll(dead);
+        convertedSlots -= below;
+    }
+}
@@ -1,25 +1,119 @@
 package org.example.component;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 public class Database {
-    public String name;
-    public List<Table> tables = new ArrayList<>();
+    public volatile String name;
+    // Copy-on-write: tables are added and removed rarely but looked up on every call
+    public final List<Table> tables = new CopyOnWriteArrayList<>();
+
+    // Shared by changes inside one table, exclusive for changes to the table list
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by the write lock, like every change to the table list
+    private long nextTableId = 1;
+    // Tells clients caching by version apart from an earlier database or server run
+    private final long generation = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong version = new AtomicLong();
 
     public Database(String name){
         this.name = name;
     }
 
+    public <T> T readLocked(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public <T> T writeLocked(Supplier<T> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /** Advanced after every change to any table or to the table list. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Marks the database changed. Called once a change is applied, so that tables read
+     * after reading the version are never older than that version.
+     */
+    public void changed() {
+        version.incrementAndGet();
+    }
+
     public void setName(String name) {
         this.name = name;
     }
 
+    /**
+     * Adds a table, giving it the next table ID unless it already has one.
+     */
     public void addTable(Table table){
+        if (table.getId() == 0) {
+            table.assignId(nextTableId++);
+        } else {
+            nextTableId = Math.max(nextTableId, table.getId() + 1);
+        }
         tables.add(table);
     }
 
+    /** Position of the table with {@code tableId}, or -1. */
+    public int indexOfTable(long tableId) {
+        for (int i = 0; i < tables.size(); i++) {
+            if (tables.get(i).getId() == tableId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getNextTableId() {
+        return nextTableId;
+    }
+
+    /** Restores the table ID counter from a snapshot, so IDs of deleted tables are not reused. */
+    public void setNextTableId(long nextTableId) {
+        this.nextTableId = nextTableId;
+    }
+
     public void deleteTable(int index) {
-        tables.remove(index);
+        Table table = tables.remove(index);
+        table.writeLocked(() -> {
+            table.drop();
+            return null;
+        });
+    }
+
+    /**
+     * Drops every table, for when the whole database is replaced by another one.
+     */
+    public void dropTables() {
+        writeLocked(() -> {
+            for (Table table : tables) {
+                table.writeLocked(() -> {
+                    table.drop();
+                    return null;
+                });
+            }
+            return null;
+        });
     }
 }
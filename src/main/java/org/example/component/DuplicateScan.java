@@ -0,0 +1,53 @@
+package org.example.component;
+
+/**
+ * Deletes duplicate rows like {@link Table#deleteDuplicateRows} while holding the
+ * write lock only for the last step. The rows are fingerprinted a chunk at a time
+ * under the read lock, so writers can go on between chunks; the final step
+ * fingerprints again only the rows they changed, then finds and deletes the
+ * duplicates. An open scan keeps a {@link TableSnapshot} so that no slot moves.
+ */
+public class DuplicateScan implements AutoCloseable {
+    private final Table table;
+    private final TableSnapshot snapshot;
+    private final RowDeduplicator deduplicator;
+    private final long schemaVersion;
+    private int scannedSlots;
+
+    /** Starts a scan; call under the table's read lock. */
+    public DuplicateScan(Table table) {
+        this.table = table;
+        this.snapshot = table.openSnapshot();
+        this.deduplicator = new RowDeduplicator(table);
+        this.schemaVersion = table.getSchemaVersion();
+    }
+
+    /**
+     * Fingerprints up to {@code maxSlots} more slots and returns whether any are left.
+     * Call under the table's read lock.
+     */
+    public boolean scanChunk(int maxSlots, boolean parallel) {
+        int end = (int) Math.min(snapshot.getSlotCount(), (long) scannedSlots + maxSlots);
+        deduplicator.fingerprint(scannedSlots, end, parallel && end - scannedSlots >= RowDeduplicator.PARALLEL_THRESHOLD);
+        scannedSlots = end;
+        return end < snapshot.getSlotCount();
+    }
+
+    /**
+     * Deletes the duplicates and returns how many rows were removed. Call under the
+     * table's write lock, after the last chunk.
+     */
+    public int deleteDuplicates(boolean parallel) {
+        if (table.getSchemaVersion() != schemaVersion) {
+            // Columns changed under the scan, so no fingerprint can be trusted
+            return table.deleteDuplicateRows(parallel);
+        }
+        deduplicator.refresh(scannedSlots, snapshot.getVersion());
+        return table.deleteRows(deduplicator.groupDuplicates(parallel));
+    }
+
+    @Override
+    public void close() {
+        snapshot.close();
+    }
+}
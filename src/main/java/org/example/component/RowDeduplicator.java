@@ -0,0 +1,199 @@
+package org.example.component;
+
+import org.example.component.storage.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds rows that repeat an earlier row of the same table in O(rows).
+ * <p>
+ * Every row gets a 64-bit fingerprint built from its typed cells. Rows are then
+ * inserted into an open-addressing table keyed by fingerprint, and a fingerprint
+ * match is only treated as a duplicate after a full {@link Table#rowEquals} check,
+ * so hash collisions never drop a distinct row. In parallel mode the rows are split
+ * by fingerprint into partitions that are deduplicated independently on the
+ * fork-join pool: equal rows always share a fingerprint and therefore a partition.
+ * Rows are addressed by slot; dead slots are fingerprinted with the rest but never
+ * take part in the comparison.
+ * <p>
+ * Fingerprinting reads every cell, so a {@link DuplicateScan} may do it a chunk at a
+ * time and {@link #refresh} the rows changed meanwhile before the duplicates are found.
+ */
+class RowDeduplicator {
+    static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int FINGERPRINT_GRAIN = 16_384;
+
+    private final Table table;
+    private int slotCount;
+    private long[] fingerprints;
+
+    RowDeduplicator(Table table) {
+        this.table = table;
+        this.slotCount = table.getSlotCount();
+        this.fingerprints = new long[slotCount];
+    }
+
+    /**
+     * Returns a bitmap of the slots to delete; the first occurrence of each row is kept.
+     */
+    long[] findDuplicates(boolean parallel) {
+        fingerprint(0, slotCount, parallel && table.getRowCount() >= PARALLEL_THRESHOLD);
+        return groupDuplicates(parallel);
+    }
+
+    /**
+     * Fingerprints the slots from {@code from} to {@code to} as the table is now, on the
+     * fork-join pool if {@code parallel} is set.
+     */
+    void fingerprint(int from, int to, boolean parallel) {
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new FingerprintTask(from, to));
+        } else {
+            fingerprint(from, to);
+        }
+    }
+
+    /**
+     * Brings fingerprints taken below {@code fingerprintedSlots} as of {@code version} up
+     * to date: the rows changed since then, and the slots added, are fingerprinted again.
+     */
+    void refresh(int fingerprintedSlots, long version) {
+        slotCount = table.getSlotCount();
+        fingerprints = Arrays.copyOf(fingerprints, slotCount);
+        for (int slot = table.nextLiveSlot(0); slot < fingerprintedSlots; slot = table.nextLiveSlot(slot + 1)) {
+            if (table.getRowVersion(slot) > version) {
+                fingerprint(slot, slot + 1);
+            }
+        }
+        fingerprint(fingerprintedSlots, slotCount);
+    }
+
+    /** Finds the duplicates once every live slot is fingerprinted. */
+    long[] groupDuplicates(boolean parallel) {
+        long[] duplicates = new long[Bitmap.words(slotCount) + 1];
+        int rowCount = table.getRowCount();
+        if (!parallel || rowCount < PARALLEL_THRESHOLD) {
+            int[] rows = new int[rowCount];
+            for (int i = 0, slot = table.nextLiveSlot(0); i < rowCount; i++, slot = table.nextLiveSlot(slot + 1)) {
+                rows[i] = slot;
+            }
+            for (int row : dedupPartition(rows, 0, rowCount)) {
+                Bitmap.set(duplicates, row, true);
+            }
+            return duplicates;
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // Counting sort of row numbers by partition keeps every partition in row order
+        int partitions = Integer.highestOneBit(Math.max(1, pool.getParallelism()) * 4 - 1) << 1;
+        int shift = 64 - Integer.numberOfTrailingZeros(partitions);
+        int[] starts = new int[partitions + 1];
+        for (int slot = table.nextLiveSlot(0); slot < slotCount; slot = table.nextLiveSlot(slot + 1)) {
+            starts[(int) (fingerprints[slot] >>> shift) + 1]++;
+        }
+        for (int p = 0; p < partitions; p++) {
+            starts[p + 1] += starts[p];
+        }
+        int[] fill = starts.clone();
+        int[] rows = new int[rowCount];
+        for (int slot = table.nextLiveSlot(0); slot < slotCount; slot = table.nextLiveSlot(slot + 1)) {
+            rows[fill[(int) (fingerprints[slot] >>> shift)]++] = slot;
+        }
+
+        int[][] partitionDuplicates = new int[partitions][];
+        List<RecursiveAction> tasks = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            int partition = p;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    partitionDuplicates[partition] = dedupPartition(rows, starts[partition], starts[partition + 1]);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        for (int[] partition : partitionDuplicates) {
+            for (int row : partition) {
+                Bitmap.set(duplicates, row, true);
+            }
+        }
+        return duplicates;
+    }
+
+    private void fingerprint(int from, int to) {
+        Arrays.fill(fingerprints, from, to, 0);
+        for (int c = 0; c < table.getColumnCount(); c++) {
+            table.getStore(c).mixHashes(fingerprints, from, to);
+        }
+        for (int row = from; row < to; row++) {
+            fingerprints[row] = mix(fingerprints[row]);
+        }
+    }
+
+    private int[] dedupPartition(int[] rows, int from, int to) {
+        int count = to - from;
+        int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        int[] duplicates = new int[count];
+        int duplicateCount = 0;
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            long fingerprint = fingerprints[row];
+            int slot = (int) fingerprint & mask;
+            boolean duplicate = false;
+            while (slots[slot] != -1) {
+                int seen = slots[slot];
+                if (fingerprints[seen] == fingerprint && table.rowEquals(seen, row)) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (duplicate) {
+                duplicates[duplicateCount++] = row;
+            } else {
+                slots[slot] = row;
+            }
+        }
+        return Arrays.copyOf(duplicates, duplicateCount);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private class FingerprintTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        FingerprintTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FINGERPRINT_GRAIN) {
+                fingerprint(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FingerprintTask(from, middle), new FingerprintTask(middle, to));
+        }
+    }
+}
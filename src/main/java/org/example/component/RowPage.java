@@ -0,0 +1,27 @@
+package org.example.component;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RowPage implements Serializable {
+    public List<Row> rows = new ArrayList<>();
+    public int offset;
+    public int totalRows;
+
+    public RowPage(int offset) {
+        this.offset = offset;
+    }
+
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+}
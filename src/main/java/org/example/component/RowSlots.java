@@ -0,0 +1,221 @@
+package org.example.component;
+
+import org.example.component.storage.Bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Maps the rows of a {@link Table} to the slots of its column stores.
+ * <p>
+ * Every row gets a 64-bit ID when it is added, and IDs are never reused. A deleted
+ * row only clears its bit in the live bitmap, leaving a tombstone in its slot until
+ * {@link Table#compact} drops the dead slots. Rows are only ever appended and
+ * compaction keeps their order, so the ID array stays sorted and an ID is found by
+ * binary search.
+ * <p>
+ * A row's position is its rank among live rows. While there are no tombstones,
+ * position and slot are the same; otherwise a Fenwick tree over the live count of
+ * each bitmap word converts between them in O(log n).
+ * <p>
+ * Each slot also keeps the change feed version of the last change to its row: the
+ * insert, the latest edit or the delete.
+ */
+class RowSlots {
+    private long[] ids = new long[16];
+    private long[] versions = new long[16];
+    private long[] live = new long[1];
+    private int slotCount;
+    private int liveCount;
+    private long nextId;
+    // Fenwick tree over bitCount(live[w]); only kept while there are tombstones
+    private int[] tree;
+
+    RowSlots(long firstId) {
+        nextId = firstId;
+    }
+
+    int slotCount() {
+        return slotCount;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    int tombstoneCount() {
+        return slotCount - liveCount;
+    }
+
+    long nextId() {
+        return nextId;
+    }
+
+    boolean isLive(int slot) {
+        return slot >= 0 && slot < slotCount && Bitmap.get(live, slot);
+    }
+
+    long idOf(int slot) {
+        return ids[slot];
+    }
+
+    long versionOf(int slot) {
+        return versions[slot];
+    }
+
+    void touch(int slot, long version) {
+        versions[slot] = version;
+    }
+
+    /** First live slot at or after {@code slot}, or {@link #slotCount()} if none. */
+    int nextLive(int slot) {
+        return Bitmap.nextSet(live, slot, slotCount);
+    }
+
+    /** Slot of the live row with {@code id}, or -1. */
+    int slotOfId(long id) {
+        int slot = Arrays.binarySearch(ids, 0, slotCount, id);
+        return slot >= 0 && Bitmap.get(live, slot) ? slot : -1;
+    }
+
+    int slotOf(int position) {
+        if (position < 0 || position >= liveCount) {
+            throw new IndexOutOfBoundsException("Row " + position + " out of bounds for length " + liveCount);
+        }
+        if (tree == null) {
+            return position;
+        }
+        // Descend the tree to the word holding the row, then scan that word
+        int word = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>>= 1) {
+            int next = word + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                word = next;
+                remaining -= tree[next];
+            }
+        }
+        long bits = live[word];
+        for (int i = 0; i < remaining; i++) {
+            bits &= bits - 1;
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /** Position of the live row in {@code slot}. */
+    int positionOf(int slot) {
+        if (tree == null) {
+            return slot;
+        }
+        int word = slot >>> 6;
+        int position = Long.bitCount(live[word] & ((1L << slot) - 1));
+        for (int i = word; i > 0; i -= i & -i) {
+            position += tree[i];
+        }
+        return position;
+    }
+
+    /** Adds a live row in a new slot at the end and returns its ID. */
+    long append() {
+        if (slotCount == ids.length) {
+            ids = Arrays.copyOf(ids, slotCount + (slotCount >> 1));
+            versions = Arrays.copyOf(versions, ids.length);
+        }
+        live = Bitmap.ensureCapacity(live, slotCount + 1);
+        ids[slotCount] = nextId;
+        versions[slotCount] = 0;
+        Bitmap.set(live, slotCount, true);
+        if (tree != null) {
+            if (Bitmap.words(slotCount + 1) >= tree.length) {
+                buildTree();
+            } else {
+                update(slotCount >>> 6, 1);
+            }
+        }
+        slotCount++;
+        liveCount++;
+        return nextId++;
+    }
+
+    void delete(int slot) {
+        if (!isLive(slot)) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " holds no row");
+        }
+        Bitmap.set(live, slot, false);
+        liveCount--;
+        if (tree == null) {
+            buildTree();
+        } else {
+            update(slot >>> 6, -1);
+        }
+    }
+
+    /** Rough heap size in bytes of the IDs, versions, the live bitmap and the position tree. */
+    long estimatedBytes() {
+        return ids.length * 16L + live.length * 8L + (tree == null ? 0 : tree.length * 4L);
+    }
+
+    /** Copy of the live bitmap, one bit per slot. */
+    long[] liveBitmap() {
+        return Arrays.copyOf(live, Bitmap.words(slotCount) + 1);
+    }
+
+    /** Bitmap of the dead slots, in the form {@code ColumnStore.removeAll} takes. */
+    long[] tombstones() {
+        long[] dead = new long[Bitmap.words(slotCount) + 1];
+        for (int w = 0; w < Bitmap.words(slotCount); w++) {
+            dead[w] = ~live[w];
+        }
+        if ((slotCount & 63) != 0) {
+            dead[slotCount >>> 6] &= (1L << slotCount) - 1;
+        }
+        return dead;
+    }
+
+    /** Drops the dead slots; the column stores must be compacted with {@link #tombstones()} first. */
+    void compact() {
+        int write = 0;
+        for (int slot = nextLive(0); slot < slotCount; slot = nextLive(slot + 1)) {
+            ids[write] = ids[slot];
+            versions[write++] = versions[slot];
+        }
+        Arrays.fill(live, 0);
+        Bitmap.setRange(live, 0, write);
+        slotCount = write;
+        liveCount = write;
+        tree = null;
+    }
+
+    /**
+     * Replaces an empty map with rows restored from a snapshot.
+     */
+    void restore(long[] rowIds, long nextRowId) {
+        ids = Arrays.copyOf(rowIds, Math.max(rowIds.length, 16));
+        versions = new long[ids.length];
+        live = new long[Bitmap.words(ids.length) + 1];
+        Bitmap.setRange(live, 0, rowIds.length);
+        slotCount = rowIds.length;
+        liveCount = rowIds.length;
+        nextId = nextRowId;
+        tree = null;
+    }
+
+    private void buildTree() {
+        int words = Bitmap.words(Math.max(ids.length, slotCount + 1));
+        tree = new int[words + 1];
+        for (int w = 0; w < words && w < live.length; w++) {
+            tree[w + 1] = Long.bitCount(live[w]);
+        }
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int word, int delta) {
+        for (int i = word + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+}
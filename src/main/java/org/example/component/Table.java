@@ -1,40 +1,641 @@
 package org.example.component;
 
-import org.example.component.Row;
-import org.example.component.column.ColumnType;
+import org.example.component.column.CellParser;
+import org.example.component.index.ColumnIndex;
+import org.example.component.index.IndexType;
+import org.example.component.storage.Bitmap;
+import org.example.component.storage.ColumnStore;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
-import org.example.component.column.*;
-
+/**
+ * A table whose cells live column by column in typed {@link ColumnStore}s.
+ * Callers read and write cells through the accessors below; {@link Row} is only
+ * used to move whole rows in and out.
+ * <p>
+ * Rows have two addresses. The <em>position</em> ({@code rowIndex}) is the row's
+ * place among the current rows and shifts when an earlier row is deleted; the
+ * <em>row ID</em> never changes. Internally each row occupies a <em>slot</em> of the
+ * column stores: a delete only marks its slot dead, and {@link #compact} later
+ * drops dead slots in one pass. Methods named after slots are for code that scans
+ * the stores directly and must skip dead slots.
+ * <p>
+ * A table is not thread-safe by itself: callers hold {@link #readLocked} or
+ * {@link #writeLocked} around every access.
+ * <p>
+ * Every change bumps the version of the table's {@link ChangeFeed} and, while
+ * someone watches the table, publishes a {@link TableEvent} there. Compaction is
+ * not a change: it moves no row and renames nothing.
+ * <p>
+ * Each slot remembers the version of the last change to its row. While a
+ * {@link TableSnapshot} is open, an edit also keeps the value it overwrites, so the
+ * snapshot can read every row as of its own version; {@link #pruneVersions} drops
+ * the values no open snapshot can read any more.
+ */
 public class Table {
-    public String name;
-    public List<Row> rows = new ArrayList<>();
-    public List<Column> columns = new ArrayList<>();
+    // Compact once at least this many slots, and an eighth of all slots, are dead
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+    // Row IDs of new tables start just above it; see setRowIdBase
+    private static volatile long rowIdBase;
+
+    public volatile String name;
+    private long id;
+    private long nextColumnId = 1;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<ColumnStore> stores = new ArrayList<>();
+    // Parallel to stores; null where the column has no index
+    private final List<ColumnIndex> indexes = new ArrayList<>();
+    private final RowSlots slots = new RowSlots(rowIdBase + 1);
+    private final ChangeFeed changeFeed = new ChangeFeed();
+    private long schemaVersion;
+    // The type change being copied over in the background, if any
+    private ColumnConversion conversion;
+    // Opened under the read lock, closed at any time
+    private final Set<TableSnapshot> snapshots = ConcurrentHashMap.newKeySet();
+    // Overwritten cell values by row ID, for the snapshots opened before they changed
+    private final Map<Long, CellVersion> oldVersions = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public Table(String name){
         this.name = name;
     }
-    public void addRow(Row row) {
-        rows.add(row);
+
+    /**
+     * Creates a table that keeps an ID it was given before, as when loading a snapshot.
+     */
+    public Table(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Makes the rows of tables created from now on take IDs above {@code base}, so
+     * that servers holding shards of the same table hand out different IDs. Tables
+     * loaded from a snapshot keep the IDs they had.
+     */
+    public static void setRowIdBase(long base) {
+        rowIdBase = base;
+    }
+
+    public <T> T readLocked(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public <T> T writeLocked(Supplier<T> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    void assignId(long id) {
+        this.id = id;
+    }
+
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /** Version of the change feed at the last change to the columns. */
+    public long getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    // Whether to build an event for the change being made; unwatched changes only bump the version
+    private boolean watched() {
+        if (changeFeed.isWatched()) {
+            return true;
+        }
+        changeFeed.skip();
+        return false;
+    }
+
+    public int getRowCount() {
+        return slots.liveCount();
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public Column getColumn(int columnIndex) {
+        return columns.get(columnIndex);
+    }
+
+    /** Position of the column with {@code columnId}, or -1. */
+    public int getColumnIndex(long columnId) {
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).id == columnId) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** The column's cells by slot, dead slots included. */
+    public ColumnStore getStore(int columnIndex) {
+        return stores.get(columnIndex);
+    }
+
+    public int getSlotCount() {
+        return slots.slotCount();
+    }
+
+    public boolean isLiveSlot(int slot) {
+        return slots.isLive(slot);
+    }
+
+    /** A new bitmap with the bit of every live slot set. */
+    public long[] liveSlots() {
+        return slots.liveBitmap();
+    }
+
+    /** A new bitmap with the bit of every dead slot set, as {@link ColumnStore#removeAll} takes it. */
+    public long[] deadSlots() {
+        return slots.tombstones();
+    }
+
+    /** First live slot at or after {@code slot}, or {@link #getSlotCount()} if none. */
+    public int nextLiveSlot(int slot) {
+        return slots.nextLive(slot);
+    }
+
+    public int slotOf(int rowIndex) {
+        return slots.slotOf(rowIndex);
+    }
+
+    public int rowIndexOf(int slot) {
+        return slots.positionOf(slot);
+    }
+
+    public long getRowId(int slot) {
+        return slots.idOf(slot);
+    }
+
+    /** Slot of the row with {@code rowId}, or -1 if there is no such row. */
+    public int slotOfRowId(long rowId) {
+        return slots.slotOfId(rowId);
+    }
+
+    /** Position of the row with {@code rowId}, or -1 if there is no such row. */
+    public int rowIndexOfRowId(long rowId) {
+        int slot = slots.slotOfId(rowId);
+        return slot < 0 ? -1 : slots.positionOf(slot);
+    }
+
+    public String getValue(int rowIndex, int columnIndex) {
+        return stores.get(columnIndex).get(slots.slotOf(rowIndex));
+    }
+
+    public void setValue(int rowIndex, int columnIndex, String value) {
+        setValue(rowIndex, columnIndex, value, CellParser.INVALID);
+    }
+
+    /**
+     * Sets a cell the column has already parsed into {@code key}; see
+     * {@link ColumnStore#set(int, String, long)}.
+     */
+    public void setValue(int rowIndex, int columnIndex, String value, long key) {
+        int slot = slots.slotOf(rowIndex);
+        ColumnStore store = stores.get(columnIndex);
+        String oldValue = snapshots.isEmpty() ? null : store.get(slot);
+        ColumnIndex index = indexes.get(columnIndex);
+        if (index != null) {
+            index.remove(slot);
+        }
+        store.set(slot, value, key);
+        if (index != null) {
+            index.insert(slot);
+        }
+        if (conversion != null && conversion.column.id == columns.get(columnIndex).id && slot < conversion.convertedSlots) {
+            conversion.copy(stores.get(columnIndex), slot);
+        }
+        if (watched()) {
+            changeFeed.publish(TableEvent.cellUpdated(slots.idOf(slot), columns.get(columnIndex).id, stores.get(columnIndex).get(slot)));
+        }
+        slots.touch(slot, changeFeed.getVersion());
+        if (oldValue != null) {
+            long rowId = slots.idOf(slot);
+            oldVersions.put(rowId, new CellVersion(changeFeed.getVersion(), store, oldValue, oldVersions.get(rowId)));
+        }
+    }
+
+    /** Version of the last change to the row in {@code slot}: its insert, latest edit or delete. */
+    public long getRowVersion(int slot) {
+        return slots.versionOf(slot);
+    }
+
+    /**
+     * Opens a snapshot of the table as it is now. Call under the read lock, and close
+     * the snapshot when done with it.
+     */
+    public TableSnapshot openSnapshot() {
+        TableSnapshot snapshot = new TableSnapshot(this, changeFeed.getVersion(), columns, stores, slots.slotCount(), slots.liveCount());
+        snapshots.add(snapshot);
+        return snapshot;
+    }
+
+    void closeSnapshot(TableSnapshot snapshot) {
+        snapshots.remove(snapshot);
+    }
+
+    // The cell of store in slot as of version, for a row changed since
+    String valueAsOf(int slot, ColumnStore store, long version) {
+        String value = null;
+        for (CellVersion old = oldVersions.get(slots.idOf(slot)); old != null && old.version > version; old = old.older) {
+            if (old.store == store) {
+                value = old.value;
+            }
+        }
+        return value != null ? value : store.get(slot);
+    }
+
+    /**
+     * Drops the overwritten values that no open snapshot can read any more: all of
+     * them once every snapshot is closed.
+     */
+    public void pruneVersions() {
+        if (oldVersions.isEmpty()) {
+            return;
+        }
+        long oldest = Long.MAX_VALUE;
+        for (TableSnapshot snapshot : snapshots) {
+            oldest = Math.min(oldest, snapshot.getVersion());
+        }
+        for (Iterator<CellVersion> it = oldVersions.values().iterator(); it.hasNext(); ) {
+            CellVersion newest = it.next();
+            if (newest.version <= oldest) {
+                it.remove();
+                continue;
+            }
+            CellVersion keep = newest;
+            while (keep.older != null && keep.older.version > oldest) {
+                keep = keep.older;
+            }
+            keep.older = null;
+        }
+    }
+
+    public ColumnIndex getIndex(int columnIndex) {
+        return indexes.get(columnIndex);
+    }
+
+    /**
+     * Builds an index over the column, replacing any existing one.
+     */
+    public void createIndex(int columnIndex, IndexType type) {
+        ColumnIndex index = new ColumnIndex(type, stores.get(columnIndex));
+        index.build(slots.slotCount(), slots::isLive);
+        indexes.set(columnIndex, index);
+    }
+
+    public void dropIndex(int columnIndex) {
+        indexes.set(columnIndex, null);
+    }
+
+    public Row getRow(int rowIndex) {
+        return getSlotRow(slots.slotOf(rowIndex));
+    }
+
+    public Row getSlotRow(int slot) {
+        Row row = new Row();
+        for (ColumnStore store : stores) {
+            row.values.add(store.get(slot));
+        }
+        return row;
+    }
+
+    /** Whether the rows in two slots hold equal cells. */
+    public boolean rowEquals(int slotA, int slotB) {
+        for (ColumnStore store : stores) {
+            if (!store.cellEquals(slotA, slotB)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends a row and returns its ID.
+     */
+    public long addRow(Row row) {
+        return addRow(row, null);
+    }
+
+    /**
+     * Like {@link #addRow(Row)}, with the cells already parsed into {@code keys} by
+     * their columns.
+     */
+    public long addRow(Row row, long[] keys) {
+        int slot = slots.slotCount();
+        for (int i = 0; i < stores.size(); i++) {
+            // Empty cells past the end of a store need no room
+            stores.get(i).set(slot, i < row.values.size() ? row.values.get(i) : "", keys != null && i < keys.length ? keys[i] : CellParser.INVALID);
+        }
+        long rowId = slots.append();
+        for (ColumnIndex index : indexes) {
+            if (index != null) {
+                index.insert(slot);
+            }
+        }
+        if (watched()) {
+            changeFeed.publish(TableEvent.rowInserted(rowId, getSlotRow(slot).values));
+        }
+        slots.touch(slot, changeFeed.getVersion());
+        return rowId;
     }
 
+    /**
+     * Deletes the row at {@code rowIndex}. Only its slot is marked dead, so no other
+     * row moves in memory; later rows still move down one position.
+     */
     public void deleteRow(int rowIndex) {
-        rows.remove(rowIndex);
+        deleteSlot(slots.slotOf(rowIndex));
+    }
+
+    private void deleteSlot(int slot) {
+        for (ColumnIndex index : indexes) {
+            if (index != null) {
+                index.remove(slot);
+            }
+        }
+        long rowId = slots.idOf(slot);
+        slots.delete(slot);
+        if (watched()) {
+            changeFeed.publish(TableEvent.rowDeleted(rowId));
+        }
+        slots.touch(slot, changeFeed.getVersion());
+    }
+
+    /**
+     * Deletes the rows of every live slot whose bit is set in {@code removed}.
+     */
+    public int deleteRows(long[] removed) {
+        int removedCount = 0;
+        for (int slot = Bitmap.nextSet(removed, 0, slots.slotCount()); slot < slots.slotCount();
+             slot = Bitmap.nextSet(removed, slot + 1, slots.slotCount())) {
+            if (slots.isLive(slot)) {
+                deleteSlot(slot);
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * Deletes rows equal to an earlier row and returns how many were removed.
+     * Large tables are deduplicated on the fork-join pool when {@code parallel} is set.
+     */
+    public int deleteDuplicateRows(boolean parallel) {
+        long[] duplicates = new RowDeduplicator(this).findDuplicates(parallel);
+        return deleteRows(duplicates);
+    }
+
+    /**
+     * Rough heap size of the table's cells and row bookkeeping in bytes, not counting
+     * indexes. Meant for occasional monitoring.
+     */
+    public long estimatedBytes() {
+        long bytes = slots.estimatedBytes();
+        for (ColumnStore store : stores) {
+            bytes += store.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether enough slots are dead for {@link #compact} to be worth its pass over every column.
+     */
+    public boolean needsCompaction() {
+        int dead = slots.tombstoneCount();
+        return dead >= MIN_TOMBSTONES_TO_COMPACT && dead >= slots.slotCount() / 8;
+    }
+
+    /**
+     * Drops dead slots from every column store, moving each run of live rows with one
+     * array copy. Positions and row IDs are unchanged; indexes are rebuilt since they
+     * refer to slots. Returns whether there was anything to drop; never while a snapshot
+     * is open, since its readers address rows by slot.
+     */
+    public boolean compact() {
+        if (slots.tombstoneCount() == 0 || !snapshots.isEmpty()) {
+            return false;
+        }
+        long[] dead = slots.tombstones();
+        for (ColumnStore store : stores) {
+            store.removeAll(dead);
+        }
+        if (conversion != null) {
+            conversion.removeAll(dead);
+        }
+        slots.compact();
+        for (ColumnIndex index : indexes) {
+            if (index != null) {
+                index.build(slots.slotCount(), slots::isLive);
+            }
+        }
+        return true;
+    }
+
+    public long getNextRowId() {
+        return slots.nextId();
+    }
+
+    public long getNextColumnId() {
+        return nextColumnId;
+    }
+
+    /**
+     * Fills an empty table with rows restored from a snapshot: their IDs in slot order
+     * and the ID counters to continue from. Columns are added afterwards with
+     * {@link #addColumn(Column, ColumnStore)}.
+     */
+    public void restoreRows(long[] rowIds, long nextRowId, long nextColumnId) {
+        if (!columns.isEmpty() || slots.slotCount() != 0) {
+            throw new IllegalStateException("Table " + name + " is not empty");
+        }
+        slots.restore(rowIds, nextRowId);
+        this.nextColumnId = nextColumnId;
     }
 
     public void deleteColumn(int columnIndex) {
-        columns.remove(columnIndex);
-        for (Row row: rows) {
-            row.values.remove(columnIndex);
+        abandonConversion(columnIndex);
+        Column column = columns.remove(columnIndex);
+        stores.remove(columnIndex);
+        indexes.remove(columnIndex);
+        if (watched()) {
+            changeFeed.publish(TableEvent.columnDeleted(column.id));
         }
+        schemaVersion = changeFeed.getVersion();
     }
 
+    /**
+     * Adds an empty column. Its store starts out with no rows, so this takes the same
+     * time however large the table is.
+     */
     public void addColumn(Column column) {
+        addColumn(column, ColumnStore.forColumn(column));
+    }
+
+    /**
+     * Adds a column whose store already holds the cells of the table's slots, as when
+     * loading a snapshot. A column that has no ID yet gets the next one.
+     */
+    public void addColumn(Column column, ColumnStore store) {
+        if (store.size() > slots.slotCount()) {
+            throw new IllegalArgumentException("Column " + column.name + " has " + store.size() + " rows, table has " + slots.slotCount());
+        }
+        if (column.id == 0) {
+            column.id = nextColumnId++;
+        } else {
+            nextColumnId = Math.max(nextColumnId, column.id + 1);
+        }
         columns.add(column);
+        stores.add(store);
+        indexes.add(null);
+        if (watched()) {
+            changeFeed.publish(TableEvent.columnAdded(column));
+        }
+        schemaVersion = changeFeed.getVersion();
+    }
+
+    /**
+     * Replaces the column at {@code columnIndex}, keeping its ID; its cells start out
+     * empty. An index on the column is kept, falling back to a hash index if the new
+     * type has no order.
+     */
+    public void setColumn(int columnIndex, Column column) {
+        abandonConversion(columnIndex);
+        ColumnStore store = ColumnStore.forColumn(column);
+        column.id = columns.get(columnIndex).id;
+        columns.set(columnIndex, column);
+        stores.set(columnIndex, store);
+        ColumnIndex index = indexes.get(columnIndex);
+        if (index != null) {
+            createIndex(columnIndex, store.isOrdered() ? index.getType() : IndexType.HASH);
+        }
+        if (watched()) {
+            changeFeed.publish(TableEvent.columnChanged(column, true));
+        }
+        schemaVersion = changeFeed.getVersion();
+    }
+
+    /**
+     * Starts changing the column at {@code columnIndex} to the type of {@code column}
+     * while keeping every cell the new type accepts. {@link #convertChunk} copies the
+     * cells a chunk at a time and {@link #finishConversion} swaps the columns; until
+     * then the table reads and writes the old column, and writes to cells already
+     * copied are copied again. Starting another conversion, or replacing or deleting
+     * the column, abandons this one.
+     */
+    public ColumnConversion startConversion(int columnIndex, Column column) {
+        column.id = columns.get(columnIndex).id;
+        conversion = new ColumnConversion(column);
+        return conversion;
+    }
+
+    /**
+     * Copies up to {@code maxSlots} more cells of {@code job}. Returns whether any slot
+     * is left to copy; false too if the conversion was abandoned.
+     */
+    public boolean convertChunk(ColumnConversion job, int maxSlots) {
+        int columnIndex = job == conversion ? getColumnIndex(job.column.id) : -1;
+        if (columnIndex < 0) {
+            return false;
+        }
+        ColumnStore source = stores.get(columnIndex);
+        int end = (int) Math.min(slots.slotCount(), (long) job.convertedSlots + maxSlots);
+        for (int slot = job.convertedSlots; slot < end; slot++) {
+            job.copy(source, slot);
+        }
+        job.convertedSlots = end;
+        return end < slots.slotCount();
+    }
+
+    /**
+     * Copies the cells left and replaces the old column with the converted one, which
+     * keeps the column's ID, name and index. Returns false if the conversion was abandoned.
+     */
+    public boolean finishConversion(ColumnConversion job) {
+        int columnIndex = job == conversion ? getColumnIndex(job.column.id) : -1;
+        if (columnIndex < 0) {
+            return false;
+        }
+        convertChunk(job, Integer.MAX_VALUE);
+        conversion = null;
+        ColumnStore source = stores.get(columnIndex);
+        job.column.name = columns.get(columnIndex).name;
+        columns.set(columnIndex, job.column);
+        stores.set(columnIndex, job.target);
+        ColumnIndex index = indexes.get(columnIndex);
+        if (index != null) {
+            createIndex(columnIndex, job.target.isOrdered() ? index.getType() : IndexType.HASH);
+        }
+        if (watched()) {
+            changeFeed.publish(TableEvent.columnChanged(job.column, false));
+            for (int slot = slots.nextLive(0); slot < slots.slotCount(); slot = slots.nextLive(slot + 1)) {
+                if (!source.isNull(slot) && job.target.isNull(slot)) {
+                    changeFeed.publish(TableEvent.cellUpdated(slots.idOf(slot), job.column.id, ""));
+                }
+            }
+        }
+        schemaVersion = changeFeed.getVersion();
+        return true;
+    }
+
+    private void abandonConversion(int columnIndex) {
+        if (conversion != null && conversion.column.id == columns.get(columnIndex).id) {
+            conversion = null;
+        }
+    }
+
+    public void renameColumn(int columnIndex, String name) {
+        Column column = columns.get(columnIndex);
+        column.setName(name);
+        if (watched()) {
+            changeFeed.publish(TableEvent.columnChanged(column, false));
+        }
+        schemaVersion = changeFeed.getVersion();
     }
 
     public void setName(String name) {
         this.name = name;
+        if (watched()) {
+            changeFeed.publish(TableEvent.tableRenamed(name));
+        }
+    }
+
+    /**
+     * Tells the table's watchers that it is gone. Called by {@link Database} when the
+     * table is removed, under the table's write lock.
+     */
+    void drop() {
+        if (watched()) {
+            changeFeed.publish(TableEvent.tableDropped());
+        }
     }
 }
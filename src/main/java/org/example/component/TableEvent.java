@@ -0,0 +1,95 @@
+package org.example.component;
+
+import org.example.component.column.MoneyInvlColumn;
+
+import java.util.List;
+
+/**
+ * One change to a {@link Table} as seen by its watchers, addressed by row and
+ * column IDs so that a client can apply it to its own copy of the table.
+ * Events are published through the table's {@link ChangeFeed}, which numbers them.
+ */
+public class TableEvent {
+
+    public enum Type {
+        ROW_INSERTED,
+        ROW_DELETED,
+        CELL_UPDATED,
+        COLUMN_ADDED,
+        COLUMN_DELETED,
+        // Name, type or bounds changed; the cells were cleared if the type changed
+        COLUMN_CHANGED,
+        TABLE_RENAMED,
+        TABLE_DROPPED
+    }
+
+    public final Type type;
+    public final long rowId;
+    public final long columnId;
+    // Cell value, column name or table name
+    public final String text;
+    public final String columnType;
+    public final String min;
+    public final String max;
+    // Cells of an inserted row, in column order
+    public final List<String> values;
+    public final boolean cellsCleared;
+    long version;
+
+    private TableEvent(Type type, long rowId, long columnId, String text, String columnType, String min, String max,
+                       List<String> values, boolean cellsCleared) {
+        this.type = type;
+        this.rowId = rowId;
+        this.columnId = columnId;
+        this.text = text;
+        this.columnType = columnType;
+        this.min = min;
+        this.max = max;
+        this.values = values;
+        this.cellsCleared = cellsCleared;
+    }
+
+    /** Table version this event brings a copy of the table to. */
+    public long getVersion() {
+        return version;
+    }
+
+    static TableEvent rowInserted(long rowId, List<String> values) {
+        return new TableEvent(Type.ROW_INSERTED, rowId, 0, null, null, null, null, values, false);
+    }
+
+    static TableEvent rowDeleted(long rowId) {
+        return new TableEvent(Type.ROW_DELETED, rowId, 0, null, null, null, null, null, false);
+    }
+
+    static TableEvent cellUpdated(long rowId, long columnId, String value) {
+        return new TableEvent(Type.CELL_UPDATED, rowId, columnId, value, null, null, null, null, false);
+    }
+
+    static TableEvent columnAdded(Column column) {
+        return column(Type.COLUMN_ADDED, column, false);
+    }
+
+    static TableEvent columnDeleted(long columnId) {
+        return new TableEvent(Type.COLUMN_DELETED, 0, columnId, null, null, null, null, null, false);
+    }
+
+    static TableEvent columnChanged(Column column, boolean cellsCleared) {
+        return column(Type.COLUMN_CHANGED, column, cellsCleared);
+    }
+
+    static TableEvent tableRenamed(String name) {
+        return new TableEvent(Type.TABLE_RENAMED, 0, 0, name, null, null, null, null, false);
+    }
+
+    static TableEvent tableDropped() {
+        return new TableEvent(Type.TABLE_DROPPED, 0, 0, null, null, null, null, null, false);
+    }
+
+    // Columns are mutable, so the event keeps a copy of what the column looked like
+    private static TableEvent column(Type type, Column column, boolean cellsCleared) {
+        String min = column instanceof MoneyInvlColumn money ? money.getMin() : "";
+        String max = column instanceof MoneyInvlColumn money ? money.getMax() : "";
+        return new TableEvent(type, 0, column.id, column.name, column.type, min, max, null, cellsCleared);
+    }
+}
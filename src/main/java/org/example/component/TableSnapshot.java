@@ -0,0 +1,91 @@
+package org.example.component;
+
+import org.example.component.storage.ColumnStore;
+
+import java.util.List;
+
+/**
+ * The rows and columns of a {@link Table} as they were at one version of its change
+ * feed. Reads still go through the table's read lock, but only for as long as each
+ * read takes: writers can change the table between two reads, and the snapshot keeps
+ * answering as of its version.
+ * <p>
+ * Slots keep their place while a snapshot is open, since the table does not compact
+ * then. A row is visible if it had a slot when the snapshot was opened and was live
+ * at its version, which for a dead slot means it was deleted later. The cells of a
+ * row changed since are looked up in the values the table keeps for open snapshots.
+ * Close the snapshot when done, or the table keeps those values and its dead slots.
+ */
+public final class TableSnapshot implements AutoCloseable {
+    private final Table table;
+    private final long version;
+    private final List<Column> columns;
+    private final List<ColumnStore> stores;
+    private final int slotCount;
+    private final int rowCount;
+
+    TableSnapshot(Table table, long version, List<Column> columns, List<ColumnStore> stores, int slotCount, int rowCount) {
+        this.table = table;
+        this.version = version;
+        this.columns = List.copyOf(columns);
+        this.stores = List.copyOf(stores);
+        this.slotCount = slotCount;
+        this.rowCount = rowCount;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public Column getColumn(int columnIndex) {
+        return columns.get(columnIndex);
+    }
+
+    /** The column's cells as they are now; see {@link #isChanged} before reading them directly. */
+    public ColumnStore getStore(int columnIndex) {
+        return stores.get(columnIndex);
+    }
+
+    public boolean isVisible(int slot) {
+        return slot < slotCount && (table.isLiveSlot(slot) || table.getRowVersion(slot) > version);
+    }
+
+    /** First visible slot at or after {@code slot}, or {@link #getSlotCount()} if none. */
+    public int nextVisibleSlot(int slot) {
+        while (slot < slotCount && !isVisible(slot)) {
+            slot++;
+        }
+        return Math.min(slot, slotCount);
+    }
+
+    /** Whether the row in {@code slot} changed after the snapshot, so its cells may differ from the stores. */
+    public boolean isChanged(int slot) {
+        return table.getRowVersion(slot) > version;
+    }
+
+    public long getRowId(int slot) {
+        return table.getRowId(slot);
+    }
+
+    public String getValue(int slot, int columnIndex) {
+        ColumnStore store = stores.get(columnIndex);
+        return isChanged(slot) ? table.valueAsOf(slot, store, version) : store.get(slot);
+    }
+
+    @Override
+    public void close() {
+        table.closeSnapshot(this);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.component.column;
+
+/**
+ * Hand-written scanners for the text of typed cells. They walk the characters once,
+ * never throw and never allocate, so validating or storing a cell costs no garbage;
+ * a value that is not valid comes back as {@link #INVALID} or {@code false}.
+ */
+public final class CellParser {
+    /** Returned by the {@code long} scanners when the text is not a valid value. */
+    public static final long INVALID = Long.MIN_VALUE;
+    /** Largest amount a MONEY column accepts, 10 trillion, in cents. */
+    public static final long MAX_MONEY_CENTS = 1_000_000_000_000_000L;
+
+    private CellParser() {
+    }
+
+    /**
+     * Parses a decimal {@code int} as {@link Integer#parseInt} does for ASCII digits:
+     * an optional sign, then at least one digit, with no surrounding whitespace.
+     */
+    public static long parseInt(String value) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            i++;
+        }
+        if (i == length) {
+            return INVALID;
+        }
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            result = result * 10 + (c - '0');
+            if (result > limit) {
+                return INVALID;
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Whether {@link Double#parseDouble} accepts {@code value} as a decimal number:
+     * surrounding whitespace, an optional sign, digits with an optional point, an
+     * optional exponent and an optional {@code f}/{@code d} suffix, or {@code NaN} and
+     * {@code Infinity}. Hexadecimal floating-point literals are not accepted.
+     */
+    public static boolean isReal(String value) {
+        int end = value.length();
+        int i = 0;
+        while (i < end && value.charAt(i) <= ' ') {
+            i++;
+        }
+        while (end > i && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        if (value.startsWith("NaN", i) || value.startsWith("Infinity", i)) {
+            return end - i == (value.charAt(i) == 'N' ? 3 : 8);
+        }
+        int digits = 0;
+        while (i < end && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && value.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        if (i < end && "fFdD".indexOf(value.charAt(i)) >= 0) {
+            i++;
+        }
+        return i == end;
+    }
+
+    /**
+     * Parses an amount in the form a money column accepts: surrounding whitespace, an
+     * optional sign, digits with group commas anywhere, a point and exactly two decimal
+     * digits, as in {@code "1,234.50"} or {@code ".99"}. Returns the amount in cents.
+     */
+    public static long parseMoney(String value) {
+        int end = value.length();
+        int i = 0;
+        while (i < end && value.charAt(i) <= ' ') {
+            i++;
+        }
+        while (end > i && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        boolean negative = false;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+        long cents = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == ',') {
+                continue;
+            }
+            if (c == '.') {
+                if (fractionDigits >= 0) {
+                    return INVALID;
+                }
+                fractionDigits = 0;
+                continue;
+            }
+            if (!isDigit(c) || cents > (Long.MAX_VALUE - 9) / 10) {
+                return INVALID;
+            }
+            cents = cents * 10 + (c - '0');
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits != 2) {
+            return INVALID;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
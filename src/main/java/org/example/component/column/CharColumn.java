@@ -10,7 +10,10 @@ public class CharColumn extends Column {
     }
 
     @Override
-    public boolean validate(String data){
-        return data.length() == 1 || data.length() == 0;
+    public long parse(String data){
+        if (data == null || data.isEmpty()) {
+            return 0;
+        }
+        return data.length() == 1 ? data.charAt(0) : CellParser.INVALID;
     }
 }
@@ -1,5 +1,7 @@
 package org.example.component.column;
 
+import org.example.component.Column;
+
 public enum ColumnType {
     INT,
     CHAR,
@@ -7,6 +9,19 @@ public enum ColumnType {
     STRING,
 
     MONEY,
-    MONEY_INVL
+    MONEY_INVL;
 
-}
\ No newline at end of file
+    /**
+     * Creates a column of this type; {@code min} and {@code max} only apply to MONEY_INVL.
+     */
+    public Column newColumn(String name, String min, String max) {
+        return switch (this) {
+            case INT -> new IntegerColumn(name);
+            case REAL -> new RealColumn(name);
+            case STRING -> new StringColumn(name);
+            case CHAR -> new CharColumn(name);
+            case MONEY -> new MoneyColumn(name);
+            case MONEY_INVL -> new MoneyInvlColumn(name, min, max);
+        };
+    }
+}
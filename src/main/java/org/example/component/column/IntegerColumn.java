@@ -10,15 +10,10 @@ public class IntegerColumn extends Column {
     }
 
     @Override
-    public boolean validate(String data) {
+    public long parse(String data) {
         if (data == null || data.isEmpty()){
-            return true;
-        }
-        try {
-            Integer.parseInt(data);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+            return 0;
         }
+        return CellParser.parseInt(data);
     }
 }
@@ -10,37 +10,20 @@ public class MoneyColumn extends Column {
     }
 
     @Override
-    public boolean validate(String data) {
+    public long parse(String data) {
         if (data == null || data.isEmpty()) {
-            return true;
+            return 0;
         }
 
-        data = data.replace(",", "");
-
-        try {
-            double amount = Double.parseDouble(data);
-
-            if (amount >= 0 && amount <= 10_000_000_000_000.00) {
-                String[] parts = data.split("\\.");
-                if (parts.length == 2 && parts[1].length() == 2) {
-                    return true;
-                }
-            }
-        } catch (NumberFormatException ignored) {
-        }
-
-        return false;
+        long cents = CellParser.parseMoney(data);
+        return cents >= 0 && cents <= CellParser.MAX_MONEY_CENTS ? cents : CellParser.INVALID;
     }
 
-    public static double toDouble(String value){
-        value = value.replace(",", "");
-
-        double amount = 0;
-        try {
-            amount = Double.parseDouble(value);
-        } catch (NumberFormatException ignored) {
-        }
-
-        return amount;
+    /**
+     * Exact amount of a money cell in cents, or 0 if it is empty or not an amount.
+     */
+    public static long toCents(String value){
+        long cents = CellParser.parseMoney(value);
+        return cents == CellParser.INVALID ? 0 : cents;
     }
 }
\ No newline at end of file
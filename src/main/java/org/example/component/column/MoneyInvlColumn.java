@@ -2,40 +2,52 @@ package org.example.component.column;
 
 import org.example.component.Column;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 public class MoneyInvlColumn extends Column {
 
     String min;
     String max;
+    // The bounds in cents, parsed once; an unparsable bound rejects every amount
+    private long minCents;
+    private long maxCents;
 
     public MoneyInvlColumn(String name, String min, String max) {
         super(name);
         this.type = ColumnType.MONEY_INVL.name();
-        this.min = min;
-        this.max = max;
+        setMin(min);
+        setMax(max);
     }
 
-    public boolean validate(String data) {
+    @Override
+    public long parse(String data) {
         if (data == null || data.isEmpty()) {
-            return true;
+            return 0;
         }
+        long cents = CellParser.parseMoney(data);
+        return cents != CellParser.INVALID && cents >= minCents && cents <= maxCents ? cents : CellParser.INVALID;
+    }
 
-        data = data.replace(",", "");
-        String min = this.min.replace(",", "");
-        String max = this.max.replace(",", "");
-
+    /**
+     * Converts a bound to whole cents, rounding towards the inside of the interval so
+     * that a bound with more than two decimals still admits exactly the amounts within it.
+     */
+    private static long boundCents(String bound, RoundingMode rounding) {
+        if (bound == null) {
+            return CellParser.INVALID;
+        }
         try {
-            double amount = Double.parseDouble(data);
-            System.out.println(amount);
-
-            if (amount >= Double.parseDouble(min) && amount <= Double.parseDouble(max)) {
-                String[] parts = data.split("\\.");
-                return parts.length == 2 && parts[1].length() == 2;
-            }
-        } catch (NumberFormatException e) {
-            System.out.println("Exception");
+            return new BigDecimal(bound.replace(",", "").trim()).movePointRight(2)
+                    .setScale(0, rounding).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return CellParser.INVALID;
         }
+    }
 
-        return false;
+    /** Whether both bounds are amounts and min is not above max, so some amount fits. */
+    public boolean admitsAnyAmount() {
+        return minCents <= maxCents;
     }
 
     public String getMin() {
@@ -44,6 +56,8 @@ public class MoneyInvlColumn extends Column {
 
     public void setMin(String min) {
         this.min = min;
+        long cents = boundCents(min, RoundingMode.CEILING);
+        this.minCents = cents == CellParser.INVALID ? Long.MAX_VALUE : cents;
     }
 
     public String getMax() {
@@ -52,5 +66,7 @@ public class MoneyInvlColumn extends Column {
 
     public void setMax(String max) {
         this.max = max;
+        long cents = boundCents(max, RoundingMode.FLOOR);
+        this.maxCents = cents == CellParser.INVALID ? Long.MIN_VALUE : cents;
     }
 }
@@ -2,6 +2,7 @@ package org.example.component.column;
 
 
 import org.example.component.Column;
+import org.example.component.storage.RealColumnStore;
 
 public class RealColumn extends Column {
 
@@ -11,15 +12,10 @@ public class RealColumn extends Column {
     }
 
     @Override
-    public boolean validate(String data) {
+    public long parse(String data) {
         if (data == null || data.isEmpty()){
-            return true;
-        }
-        try {
-            Double.parseDouble(data);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+            return 0;
         }
+        return CellParser.isReal(data) ? RealColumnStore.sortableKey(Double.parseDouble(data)) : CellParser.INVALID;
     }
 }
@@ -9,7 +9,7 @@ public class StringColumn extends Column {
         this.type = ColumnType.STRING.name();
     }
     @Override
-    public boolean validate(String data) {
-        return true;
+    public long parse(String data) {
+        return 0;
     }
 }
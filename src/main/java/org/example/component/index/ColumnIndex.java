@@ -0,0 +1,152 @@
+package org.example.component.index;
+
+import org.example.component.query.Operator;
+import org.example.component.storage.ColumnStore;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Secondary index over the typed keys of one column store.
+ * <p>
+ * A {@link IndexType#HASH} index answers equality lookups in constant time; a
+ * {@link IndexType#SORTED} index keeps its keys in a red-black tree and also answers
+ * range lookups in logarithmic time. Entries are store slots, which do not move when
+ * other rows are deleted. Empty cells are not indexed. The owning
+ * {@link org.example.component.Table} keeps the index in step with every change
+ * to the column.
+ */
+public class ColumnIndex {
+    private final IndexType type;
+    private final ColumnStore store;
+    private final Map<Long, RowList> entries;
+
+    public ColumnIndex(IndexType type, ColumnStore store) {
+        if (type == IndexType.SORTED && !store.isOrdered()) {
+            throw new IllegalArgumentException("Sorted indexes need an INT, REAL, MONEY or CHAR column");
+        }
+        this.type = type;
+        this.store = store;
+        this.entries = type == IndexType.SORTED ? new TreeMap<>() : new HashMap<>();
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+
+    public ColumnStore getStore() {
+        return store;
+    }
+
+    /**
+     * Rebuilds the index from the live slots. Rows are grouped by key with primitive sorts and
+     * a counting pass, so only one map entry is allocated per distinct key.
+     */
+    public void build(int slotCount, IntPredicate isLive) {
+        entries.clear();
+        int[] rows = new int[slotCount];
+        long[] keys = new long[slotCount];
+        int count = 0;
+        for (int row = 0; row < slotCount; row++) {
+            if (isLive.test(row) && !store.isNull(row)) {
+                rows[count] = row;
+                keys[count++] = store.key(row);
+            }
+        }
+        long[] distinct = Arrays.copyOf(keys, count);
+        Arrays.sort(distinct);
+        int distinctCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                distinct[distinctCount++] = distinct[i];
+            }
+        }
+        int[] group = new int[count];
+        int[] starts = new int[distinctCount + 1];
+        for (int i = 0; i < count; i++) {
+            group[i] = Arrays.binarySearch(distinct, 0, distinctCount, keys[i]);
+            starts[group[i] + 1]++;
+        }
+        for (int g = 0; g < distinctCount; g++) {
+            starts[g + 1] += starts[g];
+        }
+        // Rows were collected in ascending order, so each group comes out sorted
+        int[] grouped = new int[count];
+        int[] next = Arrays.copyOf(starts, distinctCount);
+        for (int i = 0; i < count; i++) {
+            grouped[next[group[i]]++] = rows[i];
+        }
+        for (int g = 0; g < distinctCount; g++) {
+            entries.put(distinct[g], RowList.of(grouped, starts[g], starts[g + 1]));
+        }
+    }
+
+    public void insert(int row) {
+        if (!store.isNull(row)) {
+            entries.computeIfAbsent(store.key(row), key -> new RowList()).add(row);
+        }
+    }
+
+    /**
+     * Forgets {@code row}; must be called before the cell changes.
+     */
+    public void remove(int row) {
+        if (store.isNull(row)) {
+            return;
+        }
+        Long key = store.key(row);
+        RowList rows = entries.get(key);
+        if (rows != null) {
+            rows.remove(row);
+            if (rows.isEmpty()) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Whether {@link #lookup} can serve {@code operator}.
+     */
+    public boolean supports(Operator operator) {
+        return switch (operator) {
+            case EQ -> true;
+            case NE -> false;
+            default -> type == IndexType.SORTED;
+        };
+    }
+
+    /**
+     * Returns the ascending slots whose cell satisfies {@code cell operator key}.
+     */
+    public int[] lookup(Operator operator, long key) {
+        if (operator == Operator.EQ) {
+            RowList rows = key == ColumnStore.NO_KEY ? null : entries.get(key);
+            return rows == null ? new int[0] : rows.toArray();
+        }
+        NavigableMap<Long, RowList> sorted = (NavigableMap<Long, RowList>) entries;
+        Collection<RowList> matching = switch (operator) {
+            case LT -> sorted.headMap(key, false).values();
+            case LE -> sorted.headMap(key, true).values();
+            case GT -> sorted.tailMap(key, false).values();
+            case GE -> sorted.tailMap(key, true).values();
+            default -> throw new IllegalArgumentException("Index cannot serve " + operator.getSymbol());
+        };
+        int count = 0;
+        for (RowList rows : matching) {
+            count += rows.size();
+        }
+        int[] result = new int[count];
+        int offset = 0;
+        for (RowList rows : matching) {
+            rows.copyTo(result, offset);
+            offset += rows.size();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
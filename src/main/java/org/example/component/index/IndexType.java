@@ -0,0 +1,6 @@
+package org.example.component.index;
+
+public enum IndexType {
+    HASH,
+    SORTED
+}
@@ -0,0 +1,65 @@
+package org.example.component.index;
+
+import java.util.Arrays;
+
+/**
+ * Ascending list of row numbers that share one index key.
+ */
+public class RowList {
+    private int[] rows = new int[2];
+    private int size;
+
+    /**
+     * Creates a list holding the ascending rows {@code rows[from..to)}.
+     */
+    public static RowList of(int[] rows, int from, int to) {
+        RowList list = new RowList();
+        list.rows = Arrays.copyOfRange(rows, from, Math.max(to, from + 2));
+        list.size = to - from;
+        return list;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return rows[i];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(int row) {
+        int position = size == 0 || rows[size - 1] < row ? size : Arrays.binarySearch(rows, 0, size, row);
+        if (position >= 0 && position < size) {
+            return;
+        }
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        System.arraycopy(rows, position, rows, position + 1, size - position);
+        rows[position] = row;
+        size++;
+    }
+
+    public void remove(int row) {
+        int position = Arrays.binarySearch(rows, 0, size, row);
+        if (position >= 0) {
+            System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+            size--;
+        }
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(rows, size);
+    }
+
+    public void copyTo(int[] target, int offset) {
+        System.arraycopy(rows, 0, target, offset, size);
+    }
+}
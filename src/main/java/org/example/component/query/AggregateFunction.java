@@ -0,0 +1,9 @@
+package org.example.component.query;
+
+public enum AggregateFunction {
+    COUNT,
+    SUM,
+    MIN,
+    MAX,
+    AVG
+}
@@ -0,0 +1,14 @@
+package org.example.component.query;
+
+/**
+ * One {@code function(column)} term of an aggregate query, as sent by a client.
+ */
+public class Aggregation {
+    public final AggregateFunction function;
+    public final int columnIndex;
+
+    public Aggregation(AggregateFunction function, int columnIndex) {
+        this.function = function;
+        this.columnIndex = columnIndex;
+    }
+}
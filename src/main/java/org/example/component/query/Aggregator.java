@@ -0,0 +1,320 @@
+package org.example.component.query;
+
+import org.example.component.Table;
+import org.example.component.storage.Bitmap;
+import org.example.component.storage.CharColumnStore;
+import org.example.component.storage.ColumnStore;
+import org.example.component.storage.IntColumnStore;
+import org.example.component.storage.MoneyColumnStore;
+import org.example.component.storage.RealColumnStore;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongFunction;
+
+/**
+ * Computes COUNT, SUM, MIN, MAX and AVG over the typed column stores, optionally
+ * grouped by the values of one column.
+ * <p>
+ * The selected rows are a bitmap of slots; for each aggregated column the bits of
+ * its empty cells are cleared, and a single loop over the remaining bits folds the
+ * primitive values into per-group accumulators. INT, MONEY and CHAR values are
+ * accumulated as {@code long}s, so money sums and averages are exact to the cent.
+ * Empty cells are skipped, and a function over no values yields an empty string.
+ */
+public final class Aggregator {
+
+    private Aggregator() {
+    }
+
+    /** One result row: the grouping value, the number of rows and one value per aggregation. */
+    public static final class Group {
+        public final String key;
+        public final long rowCount;
+        public final String[] values;
+
+        Group(String key, long rowCount, String[] values) {
+            this.key = key;
+            this.rowCount = rowCount;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Aggregates the rows matching {@code conditions}. With {@code groupByColumn} of -1
+     * there is a single group with an empty key; otherwise there is one group per
+     * distinct value, in order of first appearance. Must be called while holding the
+     * table's read lock.
+     *
+     * @throws IllegalArgumentException if a column is unknown or does not support its function
+     */
+    public static List<Group> aggregate(Table table, List<Condition> conditions, int groupByColumn, List<Aggregation> aggregations) {
+        for (Aggregation aggregation : aggregations) {
+            checkColumn(table, aggregation.columnIndex);
+            ColumnStore store = table.getStore(aggregation.columnIndex);
+            boolean numeric = store instanceof IntColumnStore || store instanceof RealColumnStore || store instanceof MoneyColumnStore;
+            boolean supported = switch (aggregation.function) {
+                case COUNT -> true;
+                case SUM, AVG -> numeric;
+                case MIN, MAX -> numeric || store instanceof CharColumnStore;
+            };
+            if (!supported) {
+                throw new IllegalArgumentException(aggregation.function + " is not supported on " + table.getColumn(aggregation.columnIndex).type
+                        + " column " + table.getColumn(aggregation.columnIndex).name);
+            }
+        }
+        if (groupByColumn != -1) {
+            checkColumn(table, groupByColumn);
+        }
+
+        long[] rows = select(table, conditions);
+        Grouping grouping = groupByColumn == -1 ? Grouping.single() : Grouping.of(table.getStore(groupByColumn), rows);
+        long[] rowCounts = new long[grouping.count];
+        forEach(rows, slot -> rowCounts[grouping.groupOf(slot)]++);
+
+        String[][] values = new String[grouping.count][aggregations.size()];
+        for (int a = 0; a < aggregations.size(); a++) {
+            Aggregation aggregation = aggregations.get(a);
+            ColumnStore store = table.getStore(aggregation.columnIndex);
+            String[] results = aggregate(store, aggregation.function, store.clearNulls(rows), grouping);
+            for (int g = 0; g < grouping.count; g++) {
+                values[g][a] = results[g];
+            }
+        }
+        List<Group> groups = new ArrayList<>(grouping.count);
+        for (int g = 0; g < grouping.count; g++) {
+            String key = groupByColumn == -1 ? "" : table.getStore(groupByColumn).get(grouping.firstSlots[g]);
+            groups.add(new Group(key, rowCounts[g], values[g]));
+        }
+        return groups;
+    }
+
+    private static void checkColumn(Table table, int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= table.getColumnCount()) {
+            throw new IllegalArgumentException("Unknown column " + columnIndex);
+        }
+    }
+
+    private static long[] select(Table table, List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return table.liveSlots();
+        }
+        long[] rows = new long[Bitmap.words(table.getSlotCount()) + 1];
+        for (int slot : QueryExecutor.findRows(table, conditions, Integer.MAX_VALUE)) {
+            Bitmap.set(rows, slot, true);
+        }
+        return rows;
+    }
+
+    private static String[] aggregate(ColumnStore store, AggregateFunction function, long[] cells, Grouping grouping) {
+        if (function == AggregateFunction.COUNT) {
+            long[] counts = new long[grouping.count];
+            forEach(cells, slot -> counts[grouping.groupOf(slot)]++);
+            String[] results = new String[grouping.count];
+            for (int g = 0; g < counts.length; g++) {
+                results[g] = Long.toString(counts[g]);
+            }
+            return results;
+        }
+        if (store instanceof RealColumnStore reals) {
+            return aggregateDoubles(reals, function, cells, grouping);
+        }
+        if (store instanceof IntColumnStore ints) {
+            return aggregateLongs(ints::getInt, Long::toString, false, function, cells, grouping);
+        }
+        if (store instanceof MoneyColumnStore money) {
+            return aggregateLongs(money::getCents, MoneyColumnStore::formatCents, true, function, cells, grouping);
+        }
+        CharColumnStore chars = (CharColumnStore) store;
+        return aggregateLongs(chars::getChar, value -> String.valueOf((char) value), false, function, cells, grouping);
+    }
+
+    /**
+     * @param wholeAverage whether AVG is rounded to a whole value of the column, as for
+     *                     cents, instead of being reported as a real number
+     */
+    private static String[] aggregateLongs(IntToLongFunction values, LongFunction<String> format, boolean wholeAverage,
+                                           AggregateFunction function, long[] cells, Grouping grouping) {
+        long[] counts = new long[grouping.count];
+        long[] accumulators = new long[grouping.count];
+        Arrays.fill(accumulators, function == AggregateFunction.MIN ? Long.MAX_VALUE : function == AggregateFunction.MAX ? Long.MIN_VALUE : 0);
+        for (int w = 0; w < cells.length; w++) {
+            long bits = cells[w];
+            if (bits == -1L && grouping.groupOf == null) {
+                // A run of 64 selected cells folds straight into the single group
+                int base = w << 6;
+                long accumulator = accumulators[0];
+                for (int slot = base; slot < base + 64; slot++) {
+                    long value = values.applyAsLong(slot);
+                    accumulator = function == AggregateFunction.MIN ? Math.min(accumulator, value)
+                            : function == AggregateFunction.MAX ? Math.max(accumulator, value)
+                            : addExact(accumulator, value);
+                }
+                accumulators[0] = accumulator;
+                counts[0] += 64;
+                continue;
+            }
+            for (; bits != 0; bits &= bits - 1) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int g = grouping.groupOf(slot);
+                long value = values.applyAsLong(slot);
+                counts[g]++;
+                switch (function) {
+                    case MIN -> accumulators[g] = Math.min(accumulators[g], value);
+                    case MAX -> accumulators[g] = Math.max(accumulators[g], value);
+                    default -> accumulators[g] = addExact(accumulators[g], value);
+                }
+            }
+        }
+        String[] results = new String[grouping.count];
+        for (int g = 0; g < results.length; g++) {
+            if (counts[g] == 0) {
+                results[g] = "";
+            } else if (function == AggregateFunction.AVG && wholeAverage) {
+                results[g] = format.apply(BigDecimal.valueOf(accumulators[g])
+                        .divide(BigDecimal.valueOf(counts[g]), 0, RoundingMode.HALF_EVEN).longValueExact());
+            } else if (function == AggregateFunction.AVG) {
+                results[g] = Double.toString((double) accumulators[g] / counts[g]);
+            } else {
+                results[g] = format.apply(accumulators[g]);
+            }
+        }
+        return results;
+    }
+
+    private static String[] aggregateDoubles(RealColumnStore reals, AggregateFunction function, long[] cells, Grouping grouping) {
+        long[] counts = new long[grouping.count];
+        double[] accumulators = new double[grouping.count];
+        Arrays.fill(accumulators, function == AggregateFunction.MIN ? Double.POSITIVE_INFINITY
+                : function == AggregateFunction.MAX ? Double.NEGATIVE_INFINITY : 0);
+        for (int w = 0; w < cells.length; w++) {
+            for (long bits = cells[w]; bits != 0; bits &= bits - 1) {
+                int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int g = grouping.groupOf(slot);
+                double value = reals.getDouble(slot);
+                counts[g]++;
+                switch (function) {
+                    case MIN -> accumulators[g] = Double.compare(value, accumulators[g]) < 0 ? value : accumulators[g];
+                    case MAX -> accumulators[g] = Double.compare(value, accumulators[g]) > 0 ? value : accumulators[g];
+                    default -> accumulators[g] += value;
+                }
+            }
+        }
+        String[] results = new String[grouping.count];
+        for (int g = 0; g < results.length; g++) {
+            results[g] = counts[g] == 0 ? ""
+                    : Double.toString(function == AggregateFunction.AVG ? accumulators[g] / counts[g] : accumulators[g]);
+        }
+        return results;
+    }
+
+    private static long addExact(long a, long b) {
+        long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            throw new IllegalArgumentException("Sum is out of range");
+        }
+        return sum;
+    }
+
+    private static void forEach(long[] bitmap, SlotConsumer action) {
+        for (int w = 0; w < bitmap.length; w++) {
+            for (long bits = bitmap[w]; bits != 0; bits &= bits - 1) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+    }
+
+    private interface SlotConsumer {
+        void accept(int slot);
+    }
+
+    /**
+     * Assigns every selected slot a dense group number through an open-addressing
+     * table keyed by {@link ColumnStore#key}; empty cells form a group of their own.
+     */
+    private static final class Grouping {
+        final int count;
+        final int[] groupOf;
+        final int[] firstSlots;
+
+        private Grouping(int count, int[] groupOf, int[] firstSlots) {
+            this.count = count;
+            this.groupOf = groupOf;
+            this.firstSlots = firstSlots;
+        }
+
+        static Grouping single() {
+            return new Grouping(1, null, null);
+        }
+
+        int groupOf(int slot) {
+            return groupOf == null ? 0 : groupOf[slot];
+        }
+
+        static Grouping of(ColumnStore store, long[] rows) {
+            int[] groupOf = new int[rows.length << 6];
+            int[] firstSlots = new int[16];
+            int count = 0;
+            int nullGroup = -1;
+            long[] keys = new long[64];
+            int[] groups = new int[64];
+            Arrays.fill(groups, -1);
+            for (int w = 0; w < rows.length; w++) {
+                for (long bits = rows[w]; bits != 0; bits &= bits - 1) {
+                    int slot = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    int group;
+                    if (store.isNull(slot)) {
+                        if (nullGroup == -1) {
+                            nullGroup = count;
+                        }
+                        group = nullGroup;
+                    } else {
+                        long key = store.key(slot);
+                        int i = probe(keys, groups, key);
+                        if (groups[i] == -1) {
+                            keys[i] = key;
+                            groups[i] = count;
+                        }
+                        group = groups[i];
+                    }
+                    if (group == count) {
+                        if (count == firstSlots.length) {
+                            firstSlots = Arrays.copyOf(firstSlots, count * 2);
+                        }
+                        firstSlots[count++] = slot;
+                        if (count * 2 > keys.length) {
+                            long[] oldKeys = keys;
+                            int[] oldGroups = groups;
+                            keys = new long[oldKeys.length * 2];
+                            groups = new int[oldGroups.length * 2];
+                            Arrays.fill(groups, -1);
+                            for (int j = 0; j < oldKeys.length; j++) {
+                                if (oldGroups[j] != -1) {
+                                    int k = probe(keys, groups, oldKeys[j]);
+                                    keys[k] = oldKeys[j];
+                                    groups[k] = oldGroups[j];
+                                }
+                            }
+                        }
+                    }
+                    groupOf[slot] = group;
+                }
+            }
+            return new Grouping(count, groupOf, firstSlots);
+        }
+
+        /** Index of {@code key} in the table, or of the free entry where it belongs. */
+        private static int probe(long[] keys, int[] groups, long key) {
+            int mask = keys.length - 1;
+            int i = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+            while (groups[i] != -1 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+    }
+}
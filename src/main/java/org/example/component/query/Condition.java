@@ -0,0 +1,16 @@
+package org.example.component.query;
+
+/**
+ * One {@code column operator value} filter term, as sent by a client.
+ */
+public class Condition {
+    public final int columnIndex;
+    public final Operator operator;
+    public final String value;
+
+    public Condition(int columnIndex, Operator operator, String value) {
+        this.columnIndex = columnIndex;
+        this.operator = operator;
+        this.value = value;
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.component.query;
+
+import org.example.component.Table;
+import org.example.component.storage.CharColumnStore;
+import org.example.component.storage.ColumnStore;
+import org.example.component.storage.IntColumnStore;
+import org.example.component.storage.MoneyColumnStore;
+import org.example.component.storage.RealColumnStore;
+import org.example.component.storage.StringColumnStore;
+import org.example.component.storage.StringDictionary;
+
+import java.util.List;
+
+/**
+ * Turns filter conditions into typed {@link RowPredicate}s that read the column
+ * stores directly. The operand is parsed and the operator resolved once per
+ * query, so the per-row test is a primitive comparison.
+ * <p>
+ * Empty cells never match a comparison; {@code == ""} and {@code != ""} test
+ * for empty and non-empty cells. REAL values are ordered by {@link Double#compare},
+ * the same order sorted indexes use.
+ */
+public final class PredicateCompiler {
+
+    private PredicateCompiler() {
+    }
+
+    /**
+     * Compiles the conjunction of {@code conditions}. Must be called, and the result
+     * used, while holding the table's read lock.
+     */
+    public static RowPredicate compile(Table table, List<Condition> conditions) {
+        RowPredicate predicate = RowPredicate.ALWAYS;
+        for (Condition condition : conditions) {
+            predicate = predicate.and(compile(table, condition));
+        }
+        return predicate;
+    }
+
+    public static RowPredicate compile(Table table, Condition condition) {
+        if (condition.columnIndex < 0 || condition.columnIndex >= table.getColumnCount()) {
+            throw new IllegalArgumentException("Unknown column " + condition.columnIndex);
+        }
+        ColumnStore store = table.getStore(condition.columnIndex);
+        Operator operator = condition.operator;
+        String value = condition.value;
+        if (value == null || value.isEmpty()) {
+            return switch (operator) {
+                case EQ -> store::isNull;
+                case NE -> row -> !store.isNull(row);
+                default -> throw new IllegalArgumentException("Only == and != can compare with an empty value");
+            };
+        }
+        if (store instanceof StringColumnStore strings) {
+            return compileString(strings, operator, value);
+        }
+        // The operand is parsed as an index lookup parses it, so a query fails or not whatever is indexed
+        long key = store.keyOf(value);
+        if (store instanceof IntColumnStore ints) {
+            return compileInt(ints, operator, (int) key);
+        }
+        if (store instanceof RealColumnStore reals) {
+            return compileReal(reals, operator, key);
+        }
+        if (store instanceof MoneyColumnStore money) {
+            return compileMoney(money, operator, key);
+        }
+        return compileChar((CharColumnStore) store, operator, (char) key);
+    }
+
+    private static RowPredicate compileInt(IntColumnStore store, Operator operator, int value) {
+        return switch (operator) {
+            case EQ -> row -> !store.isNull(row) && store.getInt(row) == value;
+            case NE -> row -> !store.isNull(row) && store.getInt(row) != value;
+            case LT -> row -> !store.isNull(row) && store.getInt(row) < value;
+            case LE -> row -> !store.isNull(row) && store.getInt(row) <= value;
+            case GT -> row -> !store.isNull(row) && store.getInt(row) > value;
+            case GE -> row -> !store.isNull(row) && store.getInt(row) >= value;
+        };
+    }
+
+    // Sortable keys order as Double.compare does
+    private static RowPredicate compileReal(RealColumnStore store, Operator operator, long key) {
+        return switch (operator) {
+            case EQ -> row -> !store.isNull(row) && store.key(row) == key;
+            case NE -> row -> !store.isNull(row) && store.key(row) != key;
+            case LT -> row -> !store.isNull(row) && store.key(row) < key;
+            case LE -> row -> !store.isNull(row) && store.key(row) <= key;
+            case GT -> row -> !store.isNull(row) && store.key(row) > key;
+            case GE -> row -> !store.isNull(row) && store.key(row) >= key;
+        };
+    }
+
+    private static RowPredicate compileMoney(MoneyColumnStore store, Operator operator, long cents) {
+        return switch (operator) {
+            case EQ -> row -> !store.isNull(row) && store.getCents(row) == cents;
+            case NE -> row -> !store.isNull(row) && store.getCents(row) != cents;
+            case LT -> row -> !store.isNull(row) && store.getCents(row) < cents;
+            case LE -> row -> !store.isNull(row) && store.getCents(row) <= cents;
+            case GT -> row -> !store.isNull(row) && store.getCents(row) > cents;
+            case GE -> row -> !store.isNull(row) && store.getCents(row) >= cents;
+        };
+    }
+
+    private static RowPredicate compileChar(CharColumnStore store, Operator operator, char value) {
+        return switch (operator) {
+            case EQ -> row -> !store.isNull(row) && store.getChar(row) == value;
+            case NE -> row -> !store.isNull(row) && store.getChar(row) != value;
+            case LT -> row -> !store.isNull(row) && store.getChar(row) < value;
+            case LE -> row -> !store.isNull(row) && store.getChar(row) <= value;
+            case GT -> row -> !store.isNull(row) && store.getChar(row) > value;
+            case GE -> row -> !store.isNull(row) && store.getChar(row) >= value;
+        };
+    }
+
+    /**
+     * String cells are dictionary codes, so the operator is evaluated once per distinct
+     * value and each row only looks up its code.
+     */
+    private static RowPredicate compileString(StringColumnStore store, Operator operator, String value) {
+        StringDictionary dictionary = store.getDictionary();
+        if (operator == Operator.EQ || operator == Operator.NE) {
+            int code = dictionary.find(value);
+            if (code < 0) {
+                return operator == Operator.EQ ? RowPredicate.NEVER : row -> !store.isNull(row);
+            }
+            return operator == Operator.EQ
+                    ? row -> !store.isNull(row) && store.getCode(row) == code
+                    : row -> !store.isNull(row) && store.getCode(row) != code;
+        }
+        boolean[] matches = new boolean[dictionary.size()];
+        for (int code = 0; code < matches.length; code++) {
+            matches[code] = operator.test(dictionary.decode(code).compareTo(value));
+        }
+        return row -> !store.isNull(row) && matches[store.getCode(row)];
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.component.query;
+
+import org.example.component.Table;
+import org.example.component.index.ColumnIndex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the rows matching a conjunction of conditions. When a condition can be
+ * answered by a column index, only the rows the index returns are tested;
+ * otherwise every row is scanned with the compiled predicate.
+ */
+public final class QueryExecutor {
+
+    private QueryExecutor() {
+    }
+
+    /**
+     * Returns the slots of up to {@code limit} matching rows in ascending order; see
+     * {@link Table#rowIndexOf} for their positions. Must be called while holding the
+     * table's read lock.
+     */
+    public static int[] findRows(Table table, List<Condition> conditions, int limit) {
+        RowPredicate filter = PredicateCompiler.compile(table, conditions);
+        int[] candidates = indexCandidates(table, conditions);
+        int[] result = new int[Math.min(limit, candidates == null ? table.getRowCount() : candidates.length)];
+        int count = 0;
+        if (candidates == null) {
+            int slotCount = table.getSlotCount();
+            for (int slot = table.nextLiveSlot(0); slot < slotCount && count < limit; slot = table.nextLiveSlot(slot + 1)) {
+                if (filter.test(slot)) {
+                    result[count++] = slot;
+                }
+            }
+        } else {
+            for (int i = 0; i < candidates.length && count < limit; i++) {
+                if (filter.test(candidates[i])) {
+                    result[count++] = candidates[i];
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Picks the indexed condition with the fewest matching rows, preferring equality
+     * lookups, or returns null if no condition has a usable index.
+     */
+    private static int[] indexCandidates(Table table, List<Condition> conditions) {
+        int[] best = null;
+        boolean bestIsEquality = false;
+        for (Condition condition : conditions) {
+            ColumnIndex index = table.getIndex(condition.columnIndex);
+            if (index == null || condition.value == null || condition.value.isEmpty() || !index.supports(condition.operator)) {
+                continue;
+            }
+            boolean equality = condition.operator == Operator.EQ;
+            if (bestIsEquality && !equality) {
+                continue;
+            }
+            int[] rows = index.lookup(condition.operator, index.getStore().keyOf(condition.value));
+            if (best == null || (equality && !bestIsEquality) || rows.length < best.length) {
+                best = rows;
+                bestIsEquality = equality;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.component.query;
+
+@FunctionalInterface
+public interface RowPredicate {
+    RowPredicate ALWAYS = row -> true;
+    RowPredicate NEVER = row -> false;
+
+    boolean test(int row);
+
+    default RowPredicate and(RowPredicate other) {
+        if (this == ALWAYS) {
+            return other;
+        }
+        if (other == ALWAYS) {
+            return this;
+        }
+        if (this == NEVER || other == NEVER) {
+            return NEVER;
+        }
+        return row -> test(row) && other.test(row);
+    }
+}
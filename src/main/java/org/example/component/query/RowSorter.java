@@ -0,0 +1,378 @@
+package org.example.component.query;
+
+import org.example.component.Table;
+import org.example.component.storage.ColumnStore;
+import org.example.component.storage.StringColumnStore;
+import org.example.component.storage.StringDictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Sorts the rows of a table by one or more columns, each ascending or descending.
+ * <p>
+ * Every row becomes a record of primitive {@code long} keys that order the same way as
+ * its cells: the store's own key for INT, REAL, MONEY and CHAR columns, and the rank of
+ * the value in the sorted dictionary for STRING columns. Empty cells count as smaller
+ * than any value, and a descending column stores the complement of its key, so records
+ * compare as plain tuples of longs. The row ID closes each record and breaks ties, which
+ * keeps equal rows in table order.
+ * <p>
+ * Records are sorted in memory, on the fork-join pool for large tables, when they fit
+ * in the memory budget. Otherwise they are cut into runs that do; each run is sorted and
+ * written to a temporary file, and the runs are merged k ways as the result is read.
+ */
+public final class RowSorter {
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    static final int PARALLEL_THRESHOLD = 50_000;
+    static final int MAX_MERGE_WAYS = 64;
+    private static final int MIN_RUN_ROWS = 1024;
+    private static final int SEQUENTIAL_GRAIN = 8192;
+    private static final int INSERTION_THRESHOLD = 24;
+    private static final int IO_BUFFER_BYTES = 64 << 10;
+
+    private final long[] records;
+    private final int width;
+    private final int[] order;
+    private final int[] buffer;
+
+    private RowSorter(long[] records, int width) {
+        this.records = records;
+        this.width = width;
+        this.order = new int[records.length / width];
+        this.buffer = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+    }
+
+    /**
+     * Sorts the rows matching {@code conditions}. The memory budget bounds the records
+     * held at once, about {@code 8 * (keys + 2)} bytes per row; spill files go to
+     * {@code spillDirectory}. Must be called while holding the table's read lock; the
+     * result does not depend on the table afterwards.
+     */
+    public static SortedRows sort(Table table, List<Condition> conditions, List<SortKey> keys,
+                                  long memoryBudget, Path spillDirectory) throws IOException {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("No sort columns");
+        }
+        IntToLongFunction[] keyFunctions = new IntToLongFunction[keys.size()];
+        for (int k = 0; k < keyFunctions.length; k++) {
+            SortKey key = keys.get(k);
+            if (key.columnIndex < 0 || key.columnIndex >= table.getColumnCount()) {
+                throw new IllegalArgumentException("Unknown column " + key.columnIndex);
+            }
+            keyFunctions[k] = keyFunction(table.getStore(key.columnIndex), key.descending);
+        }
+        int[] slots = QueryExecutor.findRows(table, conditions, Integer.MAX_VALUE);
+        int width = keyFunctions.length + 1;
+        int runRows = (int) Math.min(Integer.MAX_VALUE / width, Math.max(MIN_RUN_ROWS, memoryBudget / (8L * width + 8)));
+        if (slots.length <= runRows) {
+            RowSorter sorter = new RowSorter(extract(table, slots, 0, slots.length, keyFunctions), width);
+            sorter.sort();
+            return sorter.toSortedRows();
+        }
+
+        List<Path> runs = new ArrayList<>();
+        try {
+            for (int from = 0; from < slots.length; from += runRows) {
+                int to = (int) Math.min(slots.length, (long) from + runRows);
+                RowSorter sorter = new RowSorter(extract(table, slots, from, to, keyFunctions), width);
+                sorter.sort();
+                runs.add(sorter.writeRun(spillDirectory));
+            }
+            // Merges the oldest runs into one until a single pass can merge the rest
+            while (runs.size() > MAX_MERGE_WAYS) {
+                List<Path> group = new ArrayList<>(runs.subList(0, MAX_MERGE_WAYS));
+                Path merged = Files.createTempFile(spillDirectory, "sort-", ".run");
+                runs.add(merged);
+                try (MergedRows rows = new MergedRows(group, width, 0);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged), IO_BUFFER_BYTES))) {
+                    long[] record = new long[width];
+                    while (rows.nextRecord(record)) {
+                        for (long value : record) {
+                            out.writeLong(value);
+                        }
+                    }
+                }
+                runs.subList(0, MAX_MERGE_WAYS).clear();
+            }
+            return new MergedRows(runs, width, slots.length);
+        } catch (IOException | RuntimeException e) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            throw e;
+        }
+    }
+
+    private static IntToLongFunction keyFunction(ColumnStore store, boolean descending) {
+        IntToLongFunction key;
+        if (store.isOrdered()) {
+            key = store::key;
+        } else {
+            StringColumnStore strings = (StringColumnStore) store;
+            long[] ranks = ranks(strings.getDictionary());
+            key = slot -> ranks[strings.getCode(slot)];
+        }
+        IntToLongFunction cell = slot -> store.isNull(slot) ? Long.MIN_VALUE : key.applyAsLong(slot);
+        return descending ? slot -> ~cell.applyAsLong(slot) : cell;
+    }
+
+    /** Position of each dictionary value in string order, by code. */
+    private static long[] ranks(StringDictionary dictionary) {
+        String[] sorted = new String[dictionary.size()];
+        for (int code = 0; code < sorted.length; code++) {
+            sorted[code] = dictionary.decode(code);
+        }
+        Arrays.parallelSort(sorted);
+        long[] ranks = new long[sorted.length];
+        for (int code = 0; code < ranks.length; code++) {
+            ranks[code] = Arrays.binarySearch(sorted, dictionary.decode(code));
+        }
+        return ranks;
+    }
+
+    private static long[] extract(Table table, int[] slots, int from, int to, IntToLongFunction[] keyFunctions) {
+        int width = keyFunctions.length + 1;
+        long[] records = new long[(to - from) * width];
+        for (int k = 0; k < keyFunctions.length; k++) {
+            IntToLongFunction key = keyFunctions[k];
+            for (int i = from, r = k; i < to; i++, r += width) {
+                records[r] = key.applyAsLong(slots[i]);
+            }
+        }
+        for (int i = from, r = width - 1; i < to; i++, r += width) {
+            records[r] = table.getRowId(slots[i]);
+        }
+        return records;
+    }
+
+    private void sort() {
+        if (order.length >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new SortTask(0, order.length));
+        } else {
+            mergeSort(0, order.length);
+        }
+    }
+
+    private class SortTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        SortTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_GRAIN) {
+                mergeSort(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(from, mid), new SortTask(mid, to));
+            merge(from, mid, to);
+        }
+    }
+
+    private void mergeSort(int from, int to) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int record = order[i];
+                int j = i - 1;
+                for (; j >= from && compare(order[j], record) > 0; j--) {
+                    order[j + 1] = order[j];
+                }
+                order[j + 1] = record;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        merge(from, mid, to);
+    }
+
+    // Merges the sorted halves through the same range of the buffer, so disjoint ranges can merge in parallel
+    private void merge(int from, int mid, int to) {
+        if (compare(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, mid - from);
+        int i = from;
+        int j = mid;
+        int out = from;
+        while (i < mid && j < to) {
+            order[out++] = compare(buffer[i], order[j]) <= 0 ? buffer[i++] : order[j++];
+        }
+        System.arraycopy(buffer, i, order, out, mid - i);
+    }
+
+    private int compare(int a, int b) {
+        return compareRecords(records, a * width, records, b * width, width);
+    }
+
+    private static int compareRecords(long[] a, int aFrom, long[] b, int bFrom, int width) {
+        for (int i = 0; i < width; i++) {
+            int c = Long.compare(a[aFrom + i], b[bFrom + i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private SortedRows toSortedRows() {
+        long[] rowIds = new long[order.length];
+        for (int i = 0; i < rowIds.length; i++) {
+            rowIds[i] = records[order[i] * width + width - 1];
+        }
+        return new SortedRows() {
+            private int next;
+
+            @Override
+            public int size() {
+                return rowIds.length;
+            }
+
+            @Override
+            public int next(long[] out) {
+                int count = Math.min(out.length, rowIds.length - next);
+                System.arraycopy(rowIds, next, out, 0, count);
+                next += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private Path writeRun(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "sort-", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_BYTES))) {
+            for (int record : order) {
+                for (int i = record * width, end = i + width; i < end; i++) {
+                    out.writeLong(records[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /** One sorted run file, read a record at a time. */
+    private static final class RunReader {
+        final long[] record;
+        private final DataInputStream in;
+        private long remaining;
+
+        RunReader(Path file, int width) throws IOException {
+            this.record = new long[width];
+            this.remaining = Files.size(file) / (8L * width);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_BYTES));
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            for (int i = 0; i < record.length; i++) {
+                record[i] = in.readLong();
+            }
+            remaining--;
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** K-way merge of sorted run files, which it deletes when closed. */
+    private static final class MergedRows implements SortedRows {
+        private final List<Path> files;
+        private final int width;
+        private final int size;
+        private final List<RunReader> readers = new ArrayList<>();
+        private final PriorityQueue<RunReader> queue;
+        private final long[] record;
+
+        MergedRows(List<Path> files, int width, int size) throws IOException {
+            this.files = files;
+            this.width = width;
+            this.size = size;
+            this.record = new long[width];
+            this.queue = new PriorityQueue<>(files.size(), (a, b) -> compareRecords(a.record, 0, b.record, 0, width));
+            try {
+                for (Path file : files) {
+                    RunReader reader = new RunReader(file, width);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /** Copies the smallest remaining record into {@code out}, or returns false when none is left. */
+        boolean nextRecord(long[] out) throws IOException {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                return false;
+            }
+            System.arraycopy(reader.record, 0, out, 0, width);
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int next(long[] rowIds) throws IOException {
+            int count = 0;
+            while (count < rowIds.length && nextRecord(record)) {
+                rowIds[count++] = record[width - 1];
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            queue.clear();
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            readers.clear();
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
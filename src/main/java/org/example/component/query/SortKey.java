@@ -0,0 +1,14 @@
+package org.example.component.query;
+
+/**
+ * One column of an ORDER BY, as sent by a client.
+ */
+public class SortKey {
+    public final int columnIndex;
+    public final boolean descending;
+
+    public SortKey(int columnIndex, boolean descending) {
+        this.columnIndex = columnIndex;
+        this.descending = descending;
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.component.query;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The row IDs of a sort result, read front to back. Close it to release any files
+ * the sort spilled to.
+ */
+public interface SortedRows extends Closeable {
+    /** Number of rows in the result. */
+    int size();
+
+    /** Fills {@code rowIds} with the next IDs in order and returns how many; 0 at the end. */
+    int next(long[] rowIds) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
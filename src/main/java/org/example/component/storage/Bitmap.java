@@ -0,0 +1,99 @@
+package org.example.component.storage;
+
+import java.util.Arrays;
+
+/**
+ * Static helpers for bit sets packed into {@code long[]} words.
+ * Bits at or above the logical size are always kept cleared.
+ */
+public final class Bitmap {
+
+    private Bitmap() {
+    }
+
+    public static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    public static long[] ensureCapacity(long[] bits, int size) {
+        int needed = words(size);
+        if (needed <= bits.length) {
+            return bits;
+        }
+        return Arrays.copyOf(bits, Math.max(needed, bits.length + (bits.length >> 1) + 1));
+    }
+
+    public static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public static void set(long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index >>> 6] |= 1L << index;
+        } else {
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    public static void setRange(long[] bits, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bits[i >>> 6] |= 1L << i;
+        }
+    }
+
+    public static int cardinality(long[] bits, int size) {
+        int count = 0;
+        for (int i = 0, n = words(size); i < n; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        return count;
+    }
+
+    /** Returns the index of the first set bit at or after {@code from}, or {@code size} if none. */
+    public static int nextSet(long[] bits, int from, int size) {
+        if (from >= size) {
+            return size;
+        }
+        int w = from >>> 6;
+        long word = bits[w] & (-1L << from);
+        while (word == 0) {
+            if (++w >= words(size)) {
+                return size;
+            }
+            word = bits[w];
+        }
+        return Math.min(size, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /** Returns the index of the first cleared bit at or after {@code from}, or {@code size} if none. */
+    public static int nextClear(long[] bits, int from, int size) {
+        if (from >= size) {
+            return size;
+        }
+        int w = from >>> 6;
+        long word = ~bits[w] & (-1L << from);
+        while (word == 0) {
+            if (++w >= words(size)) {
+                return size;
+            }
+            word = ~bits[w];
+        }
+        return Math.min(size, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Removes the bit at {@code index}, shifting every higher bit down by one.
+     */
+    public static void remove(long[] bits, int index, int size) {
+        int last = (size - 1) >>> 6;
+        int w = index >>> 6;
+        long low = (1L << (index & 63)) - 1;
+        long word = bits[w];
+        bits[w] = (word & low) | ((word >>> 1) & ~low);
+        for (int i = w; i < last; i++) {
+            bits[i] |= bits[i + 1] << 63;
+            bits[i + 1] >>>= 1;
+        }
+        set(bits, size - 1, false);
+    }
+}
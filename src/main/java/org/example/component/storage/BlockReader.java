@@ -0,0 +1,66 @@
+package org.example.component.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads blocks written by {@link BlockWriter}, typically straight out of a memory-mapped
+ * file, so primitive columns are bulk-copied into their arrays without any parsing.
+ */
+public class BlockReader {
+    private final ByteBuffer buffer;
+
+    public BlockReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getInt() {
+        return buffer.getInt();
+    }
+
+    public long getLong() {
+        return buffer.getLong();
+    }
+
+    public String getString() {
+        int length = buffer.getInt();
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Reads {@code count} ints into a new array of {@code length >= count}. */
+    public int[] getInts(int count, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    public long[] getLongs(int count, int length) {
+        long[] values = new long[length];
+        buffer.asLongBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        return values;
+    }
+
+    public double[] getDoubles(int count, int length) {
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+
+    public char[] getChars(int count, int length) {
+        char[] values = new char[length];
+        buffer.asCharBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + count * Character.BYTES);
+        return values;
+    }
+}
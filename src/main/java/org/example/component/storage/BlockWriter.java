@@ -0,0 +1,102 @@
+package org.example.component.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered little-endian writer for snapshot blocks. Primitive arrays are copied in
+ * bulk so a column of millions of values costs a handful of channel writes.
+ */
+public class BlockWriter {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    public BlockWriter(WritableByteChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    /** Offset in the channel of the next byte written. */
+    public long position() {
+        return position + buffer.position();
+    }
+
+    public void putInt(int value) throws IOException {
+        reserve(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void putLong(long value) throws IOException {
+        reserve(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        for (int offset = 0; offset < bytes.length; ) {
+            reserve(1);
+            int chunk = Math.min(bytes.length - offset, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    public void putInts(int[] values, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(Integer.BYTES);
+            int chunk = Math.min(count - offset, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void putLongs(long[] values, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(Long.BYTES);
+            int chunk = Math.min(count - offset, buffer.remaining() / Long.BYTES);
+            buffer.asLongBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Long.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void putDoubles(double[] values, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(Double.BYTES);
+            int chunk = Math.min(count - offset, buffer.remaining() / Double.BYTES);
+            buffer.asDoubleBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Double.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void putChars(char[] values, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(Character.BYTES);
+            int chunk = Math.min(count - offset, buffer.remaining() / Character.BYTES);
+            buffer.asCharBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Character.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
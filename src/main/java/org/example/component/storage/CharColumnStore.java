@@ -0,0 +1,77 @@
+package org.example.component.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class CharColumnStore extends ColumnStore {
+    private char[] values = new char[INITIAL_CAPACITY];
+
+    public char getChar(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected boolean parse(int row, String value) {
+        values[row] = value.charAt(0);
+        return value.length() == 1;
+    }
+
+    @Override
+    protected boolean setKey(int row, String value, long key) {
+        values[row] = (char) key;
+        return true;
+    }
+
+    @Override
+    protected String format(int row) {
+        return String.valueOf(values[row]);
+    }
+
+    @Override
+    protected boolean isCanonical(int row, String value) {
+        return true;
+    }
+
+    @Override
+    protected boolean typedEquals(int a, int b) {
+        return values[a] == values[b];
+    }
+
+    @Override
+    public long key(int row) {
+        return values[row];
+    }
+
+    @Override
+    public long keyOf(String operand) {
+        if (operand.length() != 1) {
+            throw new IllegalArgumentException("Not a single character: " + operand);
+        }
+        return operand.charAt(0);
+    }
+
+    @Override
+    protected int valueBytes() {
+        return 2;
+    }
+
+    @Override
+    protected void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void shift(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+    }
+
+    @Override
+    protected void writeValues(BlockWriter out) throws IOException {
+        out.putChars(values, size);
+    }
+
+    @Override
+    protected void readValues(BlockReader in, int count, int capacity) {
+        values = in.getChars(count, capacity);
+    }
+}
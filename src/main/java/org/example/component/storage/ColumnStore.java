@@ -0,0 +1,377 @@
+package org.example.component.storage;
+
+import org.example.component.Column;
+import org.example.component.column.CellParser;
+import org.example.component.column.ColumnType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Primitive-specialized storage for the cells of one {@link Column}.
+ * Empty cells are tracked in a null bitmap instead of being stored. A cell whose
+ * text does not round-trip through the typed value (for example "1,000.00" in a
+ * money column) keeps its original text in a lazily allocated side array, so
+ * clients always read back exactly what they wrote.
+ * <p>
+ * A store may hold fewer rows than its table: the cells of every row from
+ * {@link #size} on are empty. A column added to a full table therefore starts out
+ * with no rows at all, and only grows once a cell past its end is given a value.
+ */
+public abstract class ColumnStore implements Cloneable {
+    protected static final int INITIAL_CAPACITY = 16;
+    /** Returned by {@link #keyOf} when no cell can hold the operand. */
+    public static final long NO_KEY = Long.MIN_VALUE;
+    private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+    private static final long VERBATIM_SALT = 0xc2b2ae3d27d4eb4fL;
+    private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    protected int size;
+    protected int capacity;
+    protected long[] nulls = new long[1];
+    protected String[] verbatim;
+
+    protected ColumnStore() {
+        this.capacity = INITIAL_CAPACITY;
+    }
+
+    public static ColumnStore forColumn(Column column) {
+        return switch (ColumnType.valueOf(column.getType())) {
+            case INT -> new IntColumnStore();
+            case REAL -> new RealColumnStore();
+            case CHAR -> new CharColumnStore();
+            case STRING -> new StringColumnStore();
+            case MONEY, MONEY_INVL -> new MoneyColumnStore();
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return row >= size || Bitmap.get(nulls, row);
+    }
+
+    /**
+     * The text of a non-empty cell that is kept as written, or {@code null} when the
+     * cell reads back as its formatted typed value.
+     */
+    public String getVerbatim(int row) {
+        return verbatim != null && row < size ? verbatim[row] : null;
+    }
+
+    public String get(int row) {
+        if (isNull(row)) {
+            return "";
+        }
+        if (verbatim != null && verbatim[row] != null) {
+            return verbatim[row];
+        }
+        return format(row);
+    }
+
+    public void set(int row, String value) {
+        set(row, value, CellParser.INVALID);
+    }
+
+    /**
+     * Sets a cell the column has already parsed: {@code key} is what
+     * {@link Column#parse} returned for it, and the store takes the typed value from it
+     * instead of parsing the text again. With {@link CellParser#INVALID} the store parses
+     * the text itself.
+     */
+    public void set(int row, String value, long key) {
+        if (row >= size) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            appendNulls(row + 1 - size);
+        }
+        checkIndex(row);
+        if (value == null || value.isEmpty()) {
+            Bitmap.set(nulls, row, true);
+            clearVerbatim(row);
+            return;
+        }
+        Bitmap.set(nulls, row, false);
+        if ((key != CellParser.INVALID ? setKey(row, value, key) : parse(row, value)) && isCanonical(row, value)) {
+            clearVerbatim(row);
+        } else {
+            if (verbatim == null) {
+                verbatim = new String[capacity];
+            }
+            verbatim[row] = value;
+        }
+    }
+
+    public void append(String value) {
+        appendNulls(1);
+        set(size - 1, value);
+    }
+
+    public void appendNulls(int count) {
+        ensureCapacity(size + count);
+        Bitmap.setRange(nulls, size, size + count);
+        size += count;
+    }
+
+    public void remove(int row) {
+        if (row >= size) {
+            return;
+        }
+        checkIndex(row);
+        int tail = size - row - 1;
+        shift(row + 1, row, tail);
+        if (verbatim != null) {
+            System.arraycopy(verbatim, row + 1, verbatim, row, tail);
+            verbatim[size - 1] = null;
+        }
+        Bitmap.remove(nulls, row, size);
+        size--;
+    }
+
+    /**
+     * Removes every row whose bit is set in {@code removed} in a single pass,
+     * moving each run of surviving rows with one array copy.
+     */
+    public void removeAll(long[] removed) {
+        long[] keptNulls = new long[Bitmap.words(capacity) + 1];
+        int write = 0;
+        int read = Bitmap.nextClear(removed, 0, size);
+        while (read < size) {
+            int runEnd = Bitmap.nextSet(removed, read, size);
+            int length = runEnd - read;
+            if (write != read) {
+                shift(read, write, length);
+                if (verbatim != null) {
+                    System.arraycopy(verbatim, read, verbatim, write, length);
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                if (Bitmap.get(nulls, read + i)) {
+                    Bitmap.set(keptNulls, write + i, true);
+                }
+            }
+            write += length;
+            read = Bitmap.nextClear(removed, runEnd, size);
+        }
+        if (verbatim != null) {
+            Arrays.fill(verbatim, write, size, null);
+        }
+        nulls = keptNulls;
+        size = write;
+    }
+
+    /**
+     * A copy of the store as {@link #removeAll} would leave it, for writing out only the
+     * live rows of a table that cannot be compacted. The dictionary of a string store is
+     * shared, since removing rows does not change it.
+     */
+    public ColumnStore withoutRows(long[] removed) {
+        ColumnStore copy;
+        try {
+            copy = (ColumnStore) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.nulls = nulls.clone();
+        copy.verbatim = verbatim == null ? null : verbatim.clone();
+        // Reallocates the copy's typed values at the same capacity
+        copy.resize(capacity);
+        copy.removeAll(removed);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the row bitmap {@code rows} without the rows whose cell is empty.
+     */
+    public long[] clearNulls(long[] rows) {
+        long[] cells = new long[rows.length];
+        int fullWords = Math.min(size >>> 6, rows.length);
+        for (int w = 0; w < fullWords; w++) {
+            cells[w] = rows[w] & ~nulls[w];
+        }
+        if (fullWords < rows.length && (size & 63) != 0) {
+            // Rows from size on have no cells
+            cells[fullWords] = rows[fullWords] & ~nulls[fullWords] & ((1L << size) - 1);
+        }
+        return cells;
+    }
+
+    /**
+     * Hash of the cell at {@code row}, consistent with {@link #cellEquals}.
+     */
+    public long hash(int row) {
+        if (isNull(row)) {
+            return NULL_HASH;
+        }
+        if (verbatim != null && verbatim[row] != null) {
+            return verbatim[row].hashCode() * VERBATIM_SALT;
+        }
+        return key(row);
+    }
+
+    /**
+     * Folds the hash of every cell in {@code [from, to)} into {@code hashes}.
+     */
+    public void mixHashes(long[] hashes, int from, int to) {
+        for (int row = from; row < to; row++) {
+            hashes[row] = hashes[row] * HASH_MULTIPLIER + hash(row);
+        }
+    }
+
+    /**
+     * Rough heap size of the column in bytes: the typed values, the null bitmap and any
+     * verbatim text. Walks the verbatim cells, so it is meant for occasional monitoring.
+     */
+    public long estimatedBytes() {
+        long bytes = (long) capacity * valueBytes() + nulls.length * 8L;
+        if (verbatim != null) {
+            bytes += verbatim.length * 4L;
+            for (String text : verbatim) {
+                if (text != null) {
+                    bytes += stringBytes(text);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // Object header, array header and one byte per Latin-1 character
+    static long stringBytes(String value) {
+        return 40 + value.length();
+    }
+
+    /**
+     * Whether {@link #key} orders rows the same way as their values, so a sorted
+     * index over the keys can answer range queries.
+     */
+    public boolean isOrdered() {
+        return true;
+    }
+
+    public boolean cellEquals(int a, int b) {
+        boolean nullA = isNull(a);
+        if (nullA || isNull(b)) {
+            return nullA == isNull(b);
+        }
+        if (verbatim != null && (verbatim[a] != null || verbatim[b] != null)) {
+            return get(a).equals(get(b));
+        }
+        return typedEquals(a, b);
+    }
+
+    /**
+     * Writes the column as one snapshot block: the row count, the null bitmap, the
+     * typed values and finally the cells kept verbatim.
+     */
+    public void writeTo(BlockWriter out) throws IOException {
+        out.putInt(size);
+        out.putLongs(nulls, Bitmap.words(size));
+        writeValues(out);
+        int overrides = 0;
+        for (int row = 0; verbatim != null && row < size; row++) {
+            if (verbatim[row] != null) {
+                overrides++;
+            }
+        }
+        out.putInt(overrides);
+        for (int row = 0; overrides > 0 && row < size; row++) {
+            if (verbatim[row] != null) {
+                out.putInt(row);
+                out.putString(verbatim[row]);
+            }
+        }
+    }
+
+    /**
+     * Fills this empty store from a block written by {@link #writeTo}.
+     */
+    public void readFrom(BlockReader in) {
+        int count = in.getInt();
+        capacity = Math.max(count, INITIAL_CAPACITY);
+        nulls = in.getLongs(Bitmap.words(count), Bitmap.words(capacity));
+        readValues(in, count, capacity);
+        int overrides = in.getInt();
+        if (overrides > 0) {
+            verbatim = new String[capacity];
+            for (int i = 0; i < overrides; i++) {
+                int row = in.getInt();
+                verbatim[row] = in.getString();
+            }
+        }
+        size = count;
+    }
+
+    protected void ensureCapacity(int needed) {
+        nulls = Bitmap.ensureCapacity(nulls, needed);
+        if (needed <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(needed, capacity + (capacity >> 1));
+        resize(newCapacity);
+        if (verbatim != null) {
+            verbatim = Arrays.copyOf(verbatim, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private void clearVerbatim(int row) {
+        if (verbatim != null) {
+            verbatim[row] = null;
+        }
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for length " + size);
+        }
+    }
+
+    /** Parses {@code value} into the typed slot, returning false if it has no typed form. */
+    protected abstract boolean parse(int row, String value);
+
+    /**
+     * Puts the typed value whose {@link #key} is {@code key} into the slot. Stores whose
+     * key cannot be turned back into a value parse {@code value} instead.
+     */
+    protected boolean setKey(int row, String value, long key) {
+        return parse(row, value);
+    }
+
+    protected abstract String format(int row);
+
+    /**
+     * Whether {@code value}, just parsed into {@code row}, is exactly what {@link #format}
+     * would produce for it. Stores override this to check the characters in place
+     * instead of formatting a new string for every cell.
+     */
+    protected boolean isCanonical(int row, String value) {
+        return format(row).equals(value);
+    }
+
+    protected abstract boolean typedEquals(int a, int b);
+
+    /** 64-bit key of the typed value of a non-empty cell. */
+    public abstract long key(int row);
+
+    /**
+     * Key a cell holding {@code operand} would have.
+     *
+     * @throws IllegalArgumentException if the operand is not a value of this column's type
+     */
+    public abstract long keyOf(String operand);
+
+    protected abstract void resize(int capacity);
+
+    /** Bytes taken by each slot of the typed values. */
+    protected abstract int valueBytes();
+
+    protected abstract void shift(int from, int to, int length);
+
+    protected abstract void writeValues(BlockWriter out) throws IOException;
+
+    /** Replaces the typed values with {@code count} read from {@code in}, sized to {@code capacity}. */
+    protected abstract void readValues(BlockReader in, int count, int capacity);
+}
@@ -0,0 +1,83 @@
+package org.example.component.storage;
+
+import org.example.component.column.CellParser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class IntColumnStore extends ColumnStore {
+    private int[] values = new int[INITIAL_CAPACITY];
+
+    public int getInt(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected boolean parse(int row, String value) {
+        long parsed = CellParser.parseInt(value);
+        values[row] = parsed == CellParser.INVALID ? 0 : (int) parsed;
+        return parsed != CellParser.INVALID;
+    }
+
+    @Override
+    protected boolean setKey(int row, String value, long key) {
+        values[row] = (int) key;
+        return true;
+    }
+
+    @Override
+    protected boolean isCanonical(int row, String value) {
+        // Integer.toString writes no plus sign, no leading zeros and no "-0"
+        int digits = value.charAt(0) == '-' ? 1 : 0;
+        return value.charAt(0) != '+' && (value.length() == 1 || value.charAt(digits) != '0');
+    }
+
+    @Override
+    protected String format(int row) {
+        return Integer.toString(values[row]);
+    }
+
+    @Override
+    protected boolean typedEquals(int a, int b) {
+        return values[a] == values[b];
+    }
+
+    @Override
+    public long key(int row) {
+        return values[row];
+    }
+
+    @Override
+    public long keyOf(String operand) {
+        long parsed = CellParser.parseInt(operand.trim());
+        if (parsed == CellParser.INVALID) {
+            throw new IllegalArgumentException("Not an integer: " + operand);
+        }
+        return parsed;
+    }
+
+    @Override
+    protected int valueBytes() {
+        return 4;
+    }
+
+    @Override
+    protected void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void shift(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+    }
+
+    @Override
+    protected void writeValues(BlockWriter out) throws IOException {
+        out.putInts(values, size);
+    }
+
+    @Override
+    protected void readValues(BlockReader in, int count, int capacity) {
+        values = in.getInts(count, capacity);
+    }
+}
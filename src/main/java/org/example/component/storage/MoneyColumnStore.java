@@ -0,0 +1,114 @@
+package org.example.component.storage;
+
+import org.example.component.column.CellParser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stores MONEY and MONEY_INVL cells as exact {@code long} cents, parsed with
+ * {@link CellParser#parseMoney} like the columns validate them.
+ */
+public class MoneyColumnStore extends ColumnStore {
+    private long[] cents = new long[INITIAL_CAPACITY];
+
+    public long getCents(int row) {
+        return cents[row];
+    }
+
+    @Override
+    protected boolean parse(int row, String value) {
+        long parsed = CellParser.parseMoney(value);
+        cents[row] = parsed == CellParser.INVALID ? 0 : parsed;
+        return parsed != CellParser.INVALID;
+    }
+
+    @Override
+    protected boolean setKey(int row, String value, long key) {
+        cents[row] = key;
+        return true;
+    }
+
+    @Override
+    protected String format(int row) {
+        return formatCents(cents[row]);
+    }
+
+    @Override
+    protected boolean isCanonical(int row, String value) {
+        // The shape formatCents writes: a minus only for negative amounts, digits
+        // without commas or leading zeros, a point and two decimals
+        int length = value.length();
+        int from = value.charAt(0) == '-' ? 1 : 0;
+        int point = length - 3;
+        if (point <= from || value.charAt(point) != '.' || (cents[row] < 0) != (from == 1)
+                || (value.charAt(from) == '0' && point - from > 1)) {
+            return false;
+        }
+        for (int i = from; i < length; i++) {
+            char c = value.charAt(i);
+            if (i != point && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean typedEquals(int a, int b) {
+        return cents[a] == cents[b];
+    }
+
+    @Override
+    public long key(int row) {
+        return cents[row];
+    }
+
+    @Override
+    public long keyOf(String operand) {
+        long parsed = CellParser.parseMoney(operand);
+        if (parsed == CellParser.INVALID) {
+            throw new IllegalArgumentException("Not a money amount: " + operand);
+        }
+        return parsed;
+    }
+
+    @Override
+    protected int valueBytes() {
+        return 8;
+    }
+
+    @Override
+    protected void resize(int capacity) {
+        cents = Arrays.copyOf(cents, capacity);
+    }
+
+    @Override
+    protected void shift(int from, int to, int length) {
+        System.arraycopy(cents, from, cents, to, length);
+    }
+
+    public static String formatCents(long cents) {
+        StringBuilder sb = new StringBuilder(24);
+        if (cents < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(cents);
+        sb.append(abs / 100).append('.');
+        long fraction = abs % 100;
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    @Override
+    protected void writeValues(BlockWriter out) throws IOException {
+        out.putLongs(cents, size);
+    }
+
+    @Override
+    protected void readValues(BlockReader in, int count, int capacity) {
+        cents = in.getLongs(count, capacity);
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.component.storage;
+
+import org.example.component.column.CellParser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class RealColumnStore extends ColumnStore {
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    protected boolean parse(int row, String value) {
+        boolean valid = CellParser.isReal(value);
+        values[row] = valid ? Double.parseDouble(value) : 0;
+        return valid;
+    }
+
+    @Override
+    protected boolean setKey(int row, String value, long key) {
+        values[row] = Double.longBitsToDouble(key >= 0 ? key : key ^ Long.MAX_VALUE);
+        return true;
+    }
+
+    @Override
+    protected String format(int row) {
+        return Double.toString(values[row]);
+    }
+
+    @Override
+    protected boolean typedEquals(int a, int b) {
+        return Double.doubleToLongBits(values[a]) == Double.doubleToLongBits(values[b]);
+    }
+
+    @Override
+    public long key(int row) {
+        return sortableKey(values[row]);
+    }
+
+    @Override
+    public long keyOf(String operand) {
+        if (!CellParser.isReal(operand)) {
+            throw new IllegalArgumentException("Not a real number: " + operand);
+        }
+        return sortableKey(Double.parseDouble(operand));
+    }
+
+    @Override
+    protected int valueBytes() {
+        return 8;
+    }
+
+    @Override
+    protected void resize(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void shift(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+    }
+
+    /**
+     * Maps a double to a long whose signed order matches {@link Double#compare}.
+     */
+    public static long sortableKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits >= 0 ? bits : bits ^ Long.MAX_VALUE;
+    }
+
+    @Override
+    protected void writeValues(BlockWriter out) throws IOException {
+        out.putDoubles(values, size);
+    }
+
+    @Override
+    protected void readValues(BlockReader in, int count, int capacity) {
+        values = in.getDoubles(count, capacity);
+    }
+}
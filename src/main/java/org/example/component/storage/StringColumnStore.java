@@ -0,0 +1,97 @@
+package org.example.component.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dictionary-encoded string storage: one int code per cell plus a shared dictionary.
+ */
+public class StringColumnStore extends ColumnStore {
+    private final StringDictionary dictionary = new StringDictionary();
+    private int[] codes = new int[INITIAL_CAPACITY];
+
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /** Dictionary codes are assigned in insertion order, not in string order. */
+    @Override
+    public boolean isOrdered() {
+        return false;
+    }
+
+    @Override
+    protected boolean parse(int row, String value) {
+        codes[row] = dictionary.encode(value);
+        return true;
+    }
+
+    @Override
+    protected String format(int row) {
+        return dictionary.decode(codes[row]);
+    }
+
+    @Override
+    protected boolean isCanonical(int row, String value) {
+        return true;
+    }
+
+    @Override
+    protected boolean typedEquals(int a, int b) {
+        return codes[a] == codes[b];
+    }
+
+    @Override
+    public long key(int row) {
+        return codes[row];
+    }
+
+    @Override
+    public long keyOf(String operand) {
+        int code = dictionary.find(operand);
+        return code < 0 ? NO_KEY : code;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return super.estimatedBytes() + dictionary.estimatedBytes();
+    }
+
+    @Override
+    protected int valueBytes() {
+        return 4;
+    }
+
+    @Override
+    protected void resize(int capacity) {
+        codes = Arrays.copyOf(codes, capacity);
+    }
+
+    @Override
+    protected void shift(int from, int to, int length) {
+        System.arraycopy(codes, from, codes, to, length);
+    }
+
+    /** The dictionary goes first so codes keep their meaning when read back. */
+    @Override
+    protected void writeValues(BlockWriter out) throws IOException {
+        out.putInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            out.putString(dictionary.decode(code));
+        }
+        out.putInts(codes, size);
+    }
+
+    @Override
+    protected void readValues(BlockReader in, int count, int capacity) {
+        int distinct = in.getInt();
+        for (int code = 0; code < distinct; code++) {
+            dictionary.encode(in.getString());
+        }
+        codes = in.getInts(count, capacity);
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.component.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the distinct values of a string column so each cell only stores an int code.
+ */
+public class StringDictionary {
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            values.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /** Returns the code of {@code value}, or -1 if no cell holds it. */
+    public int find(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code) {
+        return values.get(code);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /** Rough heap size in bytes: each value, its map entry and its boxed code. */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (String value : values) {
+            bytes += ColumnStore.stringBytes(value) + 4 + 48 + 16;
+        }
+        return bytes;
+    }
+}
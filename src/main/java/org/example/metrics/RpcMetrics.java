@@ -0,0 +1,158 @@
+package org.example.metrics;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records, per gRPC method, how many calls started, are in flight and ended with each
+ * status, how long they took and how large their messages were.
+ * <p>
+ * Counters are updated in place on the calling threads and only summed up when read,
+ * so a server that nobody monitors pays a few uncontended atomic adds per call and
+ * message. Message sizes come from {@link MessageLite#getSerializedSize}, which the
+ * message caches for its own serialization anyway.
+ */
+public class RpcMetrics implements ServerInterceptor {
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    public static class MethodMetrics {
+        public final String method;
+        private final LongAdder started = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final AtomicLongArray statusCounts = new AtomicLongArray(CODES.length);
+        public final Histogram latencyNanos = new Histogram();
+        public final Histogram requestBytes = new Histogram();
+        public final Histogram responseBytes = new Histogram();
+
+        MethodMetrics(String method) {
+            this.method = method;
+        }
+
+        public long getStarted() {
+            return started.sum();
+        }
+
+        public long getInFlight() {
+            return inFlight.sum();
+        }
+
+        public long getStatusCount(Status.Code code) {
+            return statusCounts.get(code.ordinal());
+        }
+    }
+
+    /** Metrics of every method called so far, in no particular order. */
+    public List<MethodMetrics> getMethods() {
+        return new ArrayList<>(methods.values());
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String name = call.getMethodDescriptor().getFullMethodName();
+        MethodMetrics metrics = methods.get(name);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(name, MethodMetrics::new);
+        }
+        MeteredCall<ReqT, RespT> metered = new MeteredCall<>(call, metrics);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(metered, headers);
+        } catch (RuntimeException e) {
+            metered.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new MeteredListener<>(listener, metered);
+    }
+
+    private static int sizeOf(Object message) {
+        return message instanceof MessageLite protobuf ? protobuf.getSerializedSize() : 0;
+    }
+
+    private static final class MeteredCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private final MethodMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        // Set by whichever of close and cancellation comes first
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        MeteredCall(ServerCall<ReqT, RespT> call, MethodMetrics metrics) {
+            super(call);
+            this.metrics = metrics;
+            metrics.started.increment();
+            metrics.inFlight.increment();
+        }
+
+        @Override
+        public void sendMessage(RespT message) {
+            metrics.responseBytes.record(sizeOf(message));
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        void finish(Status.Code code) {
+            if (finished.compareAndSet(false, true)) {
+                metrics.latencyNanos.record(System.nanoTime() - startNanos);
+                metrics.statusCounts.incrementAndGet(code.ordinal());
+                metrics.inFlight.decrement();
+            }
+        }
+    }
+
+    private static final class MeteredListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+        private final MeteredCall<ReqT, ?> call;
+
+        MeteredListener(ServerCall.Listener<ReqT> listener, MeteredCall<ReqT, ?> call) {
+            super(listener);
+            this.call = call;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            call.metrics.requestBytes.record(sizeOf(message));
+            try {
+                super.onMessage(message);
+            } catch (RuntimeException e) {
+                // gRPC closes the call itself, past MeteredCall
+                call.finish(Status.Code.UNKNOWN);
+                throw e;
+            }
+        }
+
+        @Override
+        public void onHalfClose() {
+            try {
+                super.onHalfClose();
+            } catch (RuntimeException e) {
+                call.finish(Status.Code.UNKNOWN);
+                throw e;
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            call.finish(Status.Code.CANCELLED);
+            super.onCancel();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.example.persistence;
+
+import org.example.ColumnType;
+import org.example.IndexType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One change to the database, as applied by {@link org.example.DatabaseManager}.
+ * Mutations are what the write-ahead log records and what recovery replays,
+ * so each one carries exactly the arguments of the manager call that made it.
+ * <p>
+ * The binary form is a type byte followed by the type's fields; ints are
+ * zig-zag varints and strings are a varint byte length plus UTF-8.
+ */
+public class Mutation {
+
+    public enum Type {
+        CREATE_DB,
+        RENAME_DB,
+        ADD_TABLE,
+        RENAME_TABLE,
+        DELETE_TABLE,
+        ADD_COLUMN,
+        RENAME_COLUMN,
+        CHANGE_COLUMN_TYPE,
+        DELETE_COLUMN,
+        ADD_ROW,
+        DELETE_ROW,
+        UPDATE_CELL,
+        DELETE_DUPLICATES,
+        POPULATE_TABLE,
+        CREATE_INDEX,
+        DROP_INDEX,
+        APPLY_BATCH,
+        CONVERT_COLUMN_TYPE,
+        COMMIT_TRANSACTION
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    public final Type type;
+    public final int tableIndex;
+    public final int columnIndex;
+    public final int rowIndex;
+    // Table, column or database name, or the new cell value
+    public final String text;
+    // ColumnType or IndexType number, depending on the mutation type
+    public final int kind;
+    public final String min;
+    public final String max;
+    public final List<String> values;
+    // Row operations of an APPLY_BATCH, or the APPLY_BATCHes of a COMMIT_TRANSACTION,
+    // applied and logged together
+    public final List<Mutation> operations;
+
+    private Mutation(Type type, int tableIndex, int columnIndex, int rowIndex, String text, int kind, String min, String max, List<String> values) {
+        this(type, tableIndex, columnIndex, rowIndex, text, kind, min, max, values, Collections.emptyList());
+    }
+
+    private Mutation(Type type, int tableIndex, int columnIndex, int rowIndex, String text, int kind, String min, String max,
+                     List<String> values, List<Mutation> operations) {
+        this.type = type;
+        this.tableIndex = tableIndex;
+        this.columnIndex = columnIndex;
+        this.rowIndex = rowIndex;
+        this.text = text;
+        this.kind = kind;
+        this.min = min;
+        this.max = max;
+        this.values = values;
+        this.operations = operations;
+    }
+
+    private static Mutation of(Type type, int tableIndex, int columnIndex, int rowIndex, String text) {
+        return new Mutation(type, tableIndex, columnIndex, rowIndex, text, 0, "", "", Collections.emptyList());
+    }
+
+    public static Mutation createDB(String name) {
+        return of(Type.CREATE_DB, -1, -1, -1, name);
+    }
+
+    public static Mutation renameDB(String name) {
+        return of(Type.RENAME_DB, -1, -1, -1, name);
+    }
+
+    public static Mutation addTable(String name) {
+        return of(Type.ADD_TABLE, -1, -1, -1, name);
+    }
+
+    public static Mutation renameTable(int tableIndex, String name) {
+        return of(Type.RENAME_TABLE, tableIndex, -1, -1, name);
+    }
+
+    public static Mutation deleteTable(int tableIndex) {
+        return of(Type.DELETE_TABLE, tableIndex, -1, -1, "");
+    }
+
+    public static Mutation addColumn(int tableIndex, String name, ColumnType columnType, String min, String max) {
+        return new Mutation(Type.ADD_COLUMN, tableIndex, -1, -1, name, columnType.getNumber(), nonNull(min), nonNull(max), Collections.emptyList());
+    }
+
+    public static Mutation renameColumn(int tableIndex, int columnIndex, String name) {
+        return of(Type.RENAME_COLUMN, tableIndex, columnIndex, -1, name);
+    }
+
+    public static Mutation changeColumnType(int tableIndex, int columnIndex, ColumnType columnType, String min, String max) {
+        return new Mutation(Type.CHANGE_COLUMN_TYPE, tableIndex, columnIndex, -1, "", columnType.getNumber(), nonNull(min), nonNull(max), Collections.emptyList());
+    }
+
+    public static Mutation convertColumnType(int tableIndex, int columnIndex, ColumnType columnType, String min, String max) {
+        return new Mutation(Type.CONVERT_COLUMN_TYPE, tableIndex, columnIndex, -1, "", columnType.getNumber(), nonNull(min), nonNull(max), Collections.emptyList());
+    }
+
+    public static Mutation deleteColumn(int tableIndex, int columnIndex) {
+        return of(Type.DELETE_COLUMN, tableIndex, columnIndex, -1, "");
+    }
+
+    public static Mutation addRow(int tableIndex, List<String> values) {
+        return new Mutation(Type.ADD_ROW, tableIndex, -1, -1, "", 0, "", "", List.copyOf(values));
+    }
+
+    public static Mutation deleteRow(int tableIndex, int rowIndex) {
+        return of(Type.DELETE_ROW, tableIndex, -1, rowIndex, "");
+    }
+
+    public static Mutation updateCell(int tableIndex, int rowIndex, int columnIndex, String value) {
+        return of(Type.UPDATE_CELL, tableIndex, columnIndex, rowIndex, value);
+    }
+
+    public static Mutation deleteDuplicates(int tableIndex) {
+        return of(Type.DELETE_DUPLICATES, tableIndex, -1, -1, "");
+    }
+
+    public static Mutation populateTable() {
+        return of(Type.POPULATE_TABLE, -1, -1, -1, "");
+    }
+
+    public static Mutation createIndex(int tableIndex, int columnIndex, IndexType indexType) {
+        return new Mutation(Type.CREATE_INDEX, tableIndex, columnIndex, -1, "", indexType.getNumber(), "", "", Collections.emptyList());
+    }
+
+    public static Mutation dropIndex(int tableIndex, int columnIndex) {
+        return of(Type.DROP_INDEX, tableIndex, columnIndex, -1, "");
+    }
+
+    /**
+     * ADD_ROW, DELETE_ROW and UPDATE_CELL mutations of one table that must be replayed as a unit.
+     */
+    public static Mutation applyBatch(int tableIndex, List<Mutation> operations) {
+        return new Mutation(Type.APPLY_BATCH, tableIndex, -1, -1, "", 0, "", "", Collections.emptyList(), List.copyOf(operations));
+    }
+
+    /**
+     * A transaction's changes to several tables, one APPLY_BATCH per table.
+     */
+    public static Mutation commitTransaction(List<Mutation> batches) {
+        return new Mutation(Type.COMMIT_TRANSACTION, -1, -1, -1, "", 0, "", "", Collections.emptyList(), List.copyOf(batches));
+    }
+
+    public ColumnType getColumnType() {
+        return ColumnType.forNumber(kind);
+    }
+
+    public IndexType getIndexType() {
+        return IndexType.forNumber(kind);
+    }
+
+    public byte[] encode() {
+        Encoder out = new Encoder();
+        encodeTo(out);
+        return out.toByteArray();
+    }
+
+    private void encodeTo(Encoder out) {
+        out.write(type.ordinal());
+        switch (type) {
+            case CREATE_DB, RENAME_DB, ADD_TABLE -> out.writeString(text);
+            case RENAME_TABLE -> {
+                out.writeInt(tableIndex);
+                out.writeString(text);
+            }
+            case DELETE_TABLE, DELETE_DUPLICATES -> out.writeInt(tableIndex);
+            case ADD_COLUMN -> {
+                out.writeInt(tableIndex);
+                out.writeString(text);
+                out.writeInt(kind);
+                out.writeString(min);
+                out.writeString(max);
+            }
+            case RENAME_COLUMN -> {
+                out.writeInt(tableIndex);
+                out.writeInt(columnIndex);
+                out.writeString(text);
+            }
+            case CHANGE_COLUMN_TYPE, CONVERT_COLUMN_TYPE -> {
+                out.writeInt(tableIndex);
+                out.writeInt(columnIndex);
+                out.writeInt(kind);
+                out.writeString(min);
+                out.writeString(max);
+            }
+            case DELETE_COLUMN, DROP_INDEX -> {
+                out.writeInt(tableIndex);
+                out.writeInt(columnIndex);
+            }
+            case ADD_ROW -> {
+                out.writeInt(tableIndex);
+                out.writeInt(values.size());
+                for (String value : values) {
+                    out.writeString(value);
+                }
+            }
+            case DELETE_ROW -> {
+                out.writeInt(tableIndex);
+                out.writeInt(rowIndex);
+            }
+            case UPDATE_CELL -> {
+                out.writeInt(tableIndex);
+                out.writeInt(rowIndex);
+                out.writeInt(columnIndex);
+                out.writeString(text);
+            }
+            case CREATE_INDEX -> {
+                out.writeInt(tableIndex);
+                out.writeInt(columnIndex);
+                out.writeInt(kind);
+            }
+            case APPLY_BATCH, COMMIT_TRANSACTION -> {
+                out.writeInt(tableIndex);
+                out.writeInt(operations.size());
+                for (Mutation operation : operations) {
+                    operation.encodeTo(out);
+                }
+            }
+            case POPULATE_TABLE -> {
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code buffer} does not hold a complete mutation
+     */
+    public static Mutation decode(ByteBuffer buffer) {
+        try {
+            int ordinal = buffer.get();
+            if (ordinal < 0 || ordinal >= TYPES.length) {
+                throw new IllegalArgumentException("Unknown mutation type " + ordinal);
+            }
+            Type type = TYPES[ordinal];
+            return switch (type) {
+                case CREATE_DB -> createDB(readString(buffer));
+                case RENAME_DB -> renameDB(readString(buffer));
+                case ADD_TABLE -> addTable(readString(buffer));
+                case RENAME_TABLE -> renameTable(readInt(buffer), readString(buffer));
+                case DELETE_TABLE -> deleteTable(readInt(buffer));
+                case DELETE_DUPLICATES -> deleteDuplicates(readInt(buffer));
+                case ADD_COLUMN -> new Mutation(type, readInt(buffer), -1, -1, readString(buffer), readInt(buffer),
+                        readString(buffer), readString(buffer), Collections.emptyList());
+                case RENAME_COLUMN -> renameColumn(readInt(buffer), readInt(buffer), readString(buffer));
+                case CHANGE_COLUMN_TYPE, CONVERT_COLUMN_TYPE -> new Mutation(type, readInt(buffer), readInt(buffer), -1, "", readInt(buffer),
+                        readString(buffer), readString(buffer), Collections.emptyList());
+                case DELETE_COLUMN -> deleteColumn(readInt(buffer), readInt(buffer));
+                case DROP_INDEX -> dropIndex(readInt(buffer), readInt(buffer));
+                case ADD_ROW -> {
+                    int tableIndex = readInt(buffer);
+                    int count = readInt(buffer);
+                    List<String> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        values.add(readString(buffer));
+                    }
+                    yield new Mutation(type, tableIndex, -1, -1, "", 0, "", "", Collections.unmodifiableList(values));
+                }
+                case DELETE_ROW -> deleteRow(readInt(buffer), readInt(buffer));
+                case UPDATE_CELL -> {
+                    int tableIndex = readInt(buffer);
+                    int rowIndex = readInt(buffer);
+                    int columnIndex = readInt(buffer);
+                    yield updateCell(tableIndex, rowIndex, columnIndex, readString(buffer));
+                }
+                case CREATE_INDEX -> new Mutation(type, readInt(buffer), readInt(buffer), -1, "", readInt(buffer),
+                        "", "", Collections.emptyList());
+                case APPLY_BATCH, COMMIT_TRANSACTION -> {
+                    int tableIndex = readInt(buffer);
+                    int count = readInt(buffer);
+                    if (count < 0 || count > buffer.remaining()) {
+                        throw new IllegalArgumentException("Malformed batch size " + count);
+                    }
+                    List<Mutation> operations = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        operations.add(decode(buffer));
+                    }
+                    yield new Mutation(type, tableIndex, -1, -1, "", 0, "", "", Collections.emptyList(), Collections.unmodifiableList(operations));
+                }
+                case POPULATE_TABLE -> populateTable();
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated mutation", e);
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    static int readInt(ByteBuffer buffer) {
+        int shift = 0;
+        int raw = 0;
+        byte b;
+        do {
+            if (shift > 28) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            b = buffer.get();
+            raw |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = readInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    static class Encoder extends ByteArrayOutputStream {
+        Encoder() {
+            super(32);
+        }
+
+        void writeInt(int value) {
+            int raw = (value << 1) ^ (value >> 31);
+            while ((raw & ~0x7f) != 0) {
+                write((raw & 0x7f) | 0x80);
+                raw >>>= 7;
+            }
+            write(raw);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package org.example.persistence;
+
+import org.example.component.Column;
+import org.example.component.Database;
+import org.example.component.Table;
+import org.example.component.column.ColumnType;
+import org.example.component.column.MoneyInvlColumn;
+import org.example.component.index.ColumnIndex;
+import org.example.component.index.IndexType;
+import org.example.component.storage.BlockReader;
+import org.example.component.storage.BlockWriter;
+import org.example.component.storage.ColumnStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Column-oriented binary image of a whole {@link Database}.
+ * <p>
+ * The file is {@code [header][column blocks...][table of contents][footer]}. Each
+ * column is one block written by {@link ColumnStore#writeTo}, holding its primitive
+ * values exactly as they sit in memory, so loading maps the file and bulk-copies
+ * every block into its arrays, on all cores, without parsing a single cell. The table
+ * of contents at the end records the schema, indexes and block offsets; the footer
+ * points at it. Each table also has a block of its row IDs in slot order, and the
+ * table, column and row ID counters are kept so that IDs are never reused.
+ */
+public final class SnapshotFile {
+    private static final int MAGIC = 0x52444253; // "RDBS"
+    private static final int VERSION = 2;
+    private static final int HEADER = 16;
+    private static final int FOOTER = 12;
+    private static final int NO_INDEX = -1;
+
+    public final Database database;
+    /** LSN of the last logged mutation the snapshot contains, 0 if it was not taken from a log. */
+    public final long lsn;
+
+    private SnapshotFile(Database database, long lsn) {
+        this.database = database;
+        this.lsn = lsn;
+    }
+
+    /**
+     * Writes {@code database} and atomically replaces {@code path}, syncing the file
+     * and then its directory, so the new snapshot survives a crash once this returns.
+     * The caller keeps writers out for the duration. Only live rows are written: the dead
+     * slots of a table that has not been compacted are left out of every block.
+     */
+    public static void write(Path path, Database database, long lsn) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockWriter writer = new BlockWriter(out, 0);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLong(lsn);
+
+            List<Table> tables = new ArrayList<>(database.tables);
+            long[][] offsets = new long[tables.size()][];
+            long[] rowIdOffsets = new long[tables.size()];
+            for (int t = 0; t < tables.size(); t++) {
+                Table table = tables.get(t);
+                long[] dead = table.getSlotCount() != table.getRowCount() ? table.deadSlots() : null;
+                long[] rowIds = new long[table.getRowCount()];
+                for (int row = 0, slot = table.nextLiveSlot(0); row < rowIds.length; row++, slot = table.nextLiveSlot(slot + 1)) {
+                    rowIds[row] = table.getRowId(slot);
+                }
+                rowIdOffsets[t] = writer.position();
+                writer.putLongs(rowIds, rowIds.length);
+                offsets[t] = new long[table.getColumnCount() + 1];
+                for (int c = 0; c < table.getColumnCount(); c++) {
+                    offsets[t][c] = writer.position();
+                    // A copy without the dead slots is made one column at a time
+                    ColumnStore store = table.getStore(c);
+                    (dead == null ? store : store.withoutRows(dead)).writeTo(writer);
+                }
+                offsets[t][table.getColumnCount()] = writer.position();
+            }
+
+            long contents = writer.position();
+            writer.putString(database.name);
+            writer.putLong(database.getNextTableId());
+            writer.putInt(tables.size());
+            for (int t = 0; t < tables.size(); t++) {
+                Table table = tables.get(t);
+                writer.putLong(table.getId());
+                writer.putString(table.name);
+                writer.putLong(table.getNextRowId());
+                writer.putLong(table.getNextColumnId());
+                writer.putInt(table.getRowCount());
+                writer.putLong(rowIdOffsets[t]);
+                writer.putInt(table.getColumnCount());
+                for (int c = 0; c < table.getColumnCount(); c++) {
+                    Column column = table.getColumn(c);
+                    ColumnIndex index = table.getIndex(c);
+                    writer.putLong(column.id);
+                    writer.putString(column.name);
+                    writer.putString(column.type);
+                    writer.putString(column instanceof MoneyInvlColumn money ? money.getMin() : "");
+                    writer.putString(column instanceof MoneyInvlColumn money ? money.getMax() : "");
+                    writer.putInt(index == null ? NO_INDEX : index.getType().ordinal());
+                    writer.putLong(offsets[t][c]);
+                    writer.putLong(offsets[t][c + 1] - offsets[t][c]);
+                }
+            }
+            writer.putLong(contents);
+            writer.putInt(MAGIC);
+            writer.flush();
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Makes the directory entries in {@code directory}, such as a file just renamed
+     * into it, durable. Without this a crash can bring back the old entry even though
+     * the file's data was synced. Windows cannot open a directory as a channel; NTFS
+     * journals the rename itself, so there is nothing to do there.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * Loads the snapshot at {@code path}, or returns null if there is none.
+     *
+     * @throws IOException if the file is not a snapshot or is damaged
+     */
+    public static SnapshotFile read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER + FOOTER) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            ByteBuffer header = read(in, 0, HEADER);
+            ByteBuffer footer = read(in, size - FOOTER, FOOTER);
+            if (header.getInt() != MAGIC || footer.getInt(8) != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+            long lsn = header.getLong();
+            long contents = footer.getLong(0);
+            if (contents < HEADER || contents > size - FOOTER) {
+                throw new IOException("Snapshot " + path + " is damaged");
+            }
+
+            List<ColumnBlock> blocks = new ArrayList<>();
+            Database database;
+            try {
+                BlockReader reader = new BlockReader(in.map(FileChannel.MapMode.READ_ONLY, contents, size - FOOTER - contents));
+                database = new Database(reader.getString());
+                long nextTableId = reader.getLong();
+                int tableCount = reader.getInt();
+                for (int t = 0; t < tableCount; t++) {
+                    Table table = new Table(reader.getLong(), reader.getString());
+                    long nextRowId = reader.getLong();
+                    long nextColumnId = reader.getLong();
+                    int rowCount = reader.getInt();
+                    long rowIdOffset = reader.getLong();
+                    if (rowIdOffset < HEADER || rowIdOffset + (long) rowCount * Long.BYTES > contents) {
+                        throw new IOException("Snapshot row IDs of table " + table.name + " are out of range");
+                    }
+                    BlockReader rowIds = new BlockReader(in.map(FileChannel.MapMode.READ_ONLY, rowIdOffset, (long) rowCount * Long.BYTES));
+                    table.restoreRows(rowIds.getLongs(rowCount, rowCount), nextRowId, nextColumnId);
+                    int columnCount = reader.getInt();
+                    for (int c = 0; c < columnCount; c++) {
+                        long columnId = reader.getLong();
+                        String columnName = reader.getString();
+                        ColumnType type = ColumnType.valueOf(reader.getString());
+                        Column column = type.newColumn(columnName, reader.getString(), reader.getString());
+                        column.id = columnId;
+                        blocks.add(new ColumnBlock(t, column, reader.getInt(), reader.getLong(), reader.getLong(), rowCount));
+                    }
+                    database.addTable(table);
+                }
+                database.setNextTableId(Math.max(nextTableId, database.getNextTableId()));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Snapshot " + path + " is damaged", e);
+            }
+
+            // Columns are independent, so their blocks are copied in parallel
+            ColumnStore[] stores = new ColumnStore[blocks.size()];
+            try {
+                IntStream.range(0, blocks.size()).parallel().forEach(i -> stores[i] = blocks.get(i).load(in, size));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            int[] columnIndexes = new int[blocks.size()];
+            for (int i = 0; i < blocks.size(); i++) {
+                Table table = database.tables.get(blocks.get(i).table);
+                table.addColumn(blocks.get(i).column, stores[i]);
+                columnIndexes[i] = table.getColumnCount() - 1;
+            }
+            // Each task replaces a different slot of its table's index list, and nothing
+            // else can see the tables until the stream has joined
+            IntStream.range(0, blocks.size()).parallel()
+                    .filter(i -> blocks.get(i).index != NO_INDEX)
+                    .forEach(i -> database.tables.get(blocks.get(i).table)
+                            .createIndex(columnIndexes[i], IndexType.values()[blocks.get(i).index]));
+            return new SnapshotFile(database, lsn);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static final class ColumnBlock {
+        final int table;
+        final Column column;
+        final int index;
+        final long offset;
+        final long length;
+        final int rowCount;
+
+        ColumnBlock(int table, Column column, int index, long offset, long length, int rowCount) {
+            this.table = table;
+            this.column = column;
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+            this.rowCount = rowCount;
+        }
+
+        ColumnStore load(FileChannel in, long size) {
+            try {
+                if (offset < HEADER || length < 0 || offset + length > size || length > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot block of column " + column.name + " is out of range");
+                }
+                ColumnStore store = ColumnStore.forColumn(column);
+                try {
+                    store.readFrom(new BlockReader(in.map(FileChannel.MapMode.READ_ONLY, offset, length)));
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    throw new IOException("Snapshot block of column " + column.name + " is damaged", e);
+                }
+                if (store.size() > rowCount) {
+                    throw new IOException("Snapshot block of column " + column.name + " has " + store.size() + " rows, expected " + rowCount);
+                }
+                return store;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
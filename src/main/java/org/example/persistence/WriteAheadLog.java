@@ -0,0 +1,348 @@
+package org.example.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of {@link Mutation}s with group commit.
+ * <p>
+ * Writers call {@link #append} while they still hold the lock that ordered their
+ * change, then {@link #awaitDurable} after releasing it. A single flusher thread
+ * writes everything appended since its last pass and issues one {@code fsync} for
+ * the whole batch, so concurrent writers share the cost of a sync.
+ * <p>
+ * Each frame is {@code [int length][long lsn][payload][int crc32c]}; a frame with a
+ * bad checksum or cut short by a crash ends the log on recovery.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final int FRAME_OVERHEAD = 16;
+    private static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long commitDelayNanos;
+    private final long checkpointBytes;
+    private final Checkpointer checkpointer;
+    private final Thread flusher;
+
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private long appendedLsn;
+    private long durableLsn;
+    private boolean checkpointRequested;
+    private long checkpointsStarted;
+    private long checkpointsDone;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Opens the log for appending after {@code lastLsn}.
+     *
+     * @param commitDelayMicros how long the flusher waits for more commits to join a batch
+     * @param checkpointBytes log size that triggers {@code checkpointer}, 0 to never checkpoint
+     * @param checkpointer called on the flusher thread to persist the whole database,
+     *                     after which the log is truncated
+     */
+    public WriteAheadLog(Path path, long lastLsn, long commitDelayMicros, long checkpointBytes, Checkpointer checkpointer) throws IOException {
+        boolean created = !Files.exists(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) {
+            SnapshotFile.syncDirectory(path.toAbsolutePath().getParent());
+        }
+        this.channel.position(channel.size());
+        this.appendedLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.commitDelayNanos = TimeUnit.MICROSECONDS.toNanos(commitDelayMicros);
+        this.checkpointBytes = checkpointBytes;
+        this.checkpointer = checkpointer;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Buffers the mutation and returns its log sequence number.
+     */
+    public long append(Mutation mutation) {
+        byte[] payload = mutation.encode();
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            long lsn = ++appendedLsn;
+            if (pending.remaining() < payload.length + FRAME_OVERHEAD) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + payload.length + FRAME_OVERHEAD));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            writeFrame(pending, lsn, payload);
+            lock.notifyAll();
+            return lsn;
+        }
+    }
+
+    /**
+     * Blocks until every mutation up to {@code lsn} has been synced to disk.
+     */
+    public void awaitDurable(long lsn) {
+        synchronized (lock) {
+            while (durableLsn < lsn && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the write-ahead log", e);
+                }
+            }
+            if (durableLsn < lsn) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+        }
+    }
+
+    public long getAppendedLsn() {
+        synchronized (lock) {
+            return appendedLsn;
+        }
+    }
+
+    /**
+     * Asks the flusher to run the checkpointer after its next batch.
+     */
+    public void requestCheckpoint() {
+        synchronized (lock) {
+            checkpointRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Runs a checkpoint on the flusher and waits for it, for callers that replaced the
+     * database wholesale and need the log to start from the new state.
+     */
+    public void checkpoint() throws IOException {
+        if (checkpointer == null) {
+            throw new IllegalStateException("Write-ahead log has no checkpointer");
+        }
+        synchronized (lock) {
+            long target = checkpointsStarted + 1;
+            checkpointRequested = true;
+            lock.notifyAll();
+            while (checkpointsDone < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a checkpoint", e);
+                }
+            }
+            if (checkpointsDone < target) {
+                throw new IOException("Write-ahead log failed", failure);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            flushBatches();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Write-ahead log failed", e);
+            synchronized (lock) {
+                failure = e instanceof IOException io ? io : new IOException("Write-ahead log failed", e);
+            }
+        } finally {
+            // However the flusher stopped, nobody may keep waiting for it
+            synchronized (lock) {
+                if (failure == null) {
+                    failure = new IOException("Write-ahead log flusher stopped");
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void flushBatches() throws IOException {
+        ByteBuffer writing = ByteBuffer.allocate(pending.capacity());
+        while (true) {
+            long batchLsn;
+            boolean checkpoint;
+            synchronized (lock) {
+                try {
+                    while (pending.position() == 0 && !checkpointRequested && !closed) {
+                        lock.wait();
+                    }
+                    long deadline = System.nanoTime() + commitDelayNanos;
+                    for (long left = commitDelayNanos; left > 0 && !closed; left = deadline - System.nanoTime()) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, left);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.position() == 0 && !checkpointRequested && closed) {
+                    return;
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                batchLsn = appendedLsn;
+                checkpoint = checkpointRequested;
+                checkpointRequested = false;
+            }
+            writing.flip();
+            while (writing.hasRemaining()) {
+                channel.write(writing);
+            }
+            channel.force(false);
+            writing.clear();
+            synchronized (lock) {
+                durableLsn = batchLsn;
+                lock.notifyAll();
+            }
+            if (checkpointer != null && (checkpoint || (checkpointBytes > 0 && channel.size() >= checkpointBytes))) {
+                runCheckpoint();
+            }
+        }
+    }
+
+    private void runCheckpoint() throws IOException {
+        synchronized (lock) {
+            checkpointsStarted++;
+        }
+        // The checkpointer blocks writers while it snapshots, so every frame already in
+        // the file is covered by the checkpoint; frames still pending are written after it
+        long lsn = checkpointer.checkpoint();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        synchronized (lock) {
+            durableLsn = Math.max(durableLsn, lsn);
+            checkpointsDone++;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private static void writeFrame(ByteBuffer buffer, long lsn, byte[] payload) {
+        int start = buffer.position();
+        buffer.putInt(payload.length).putLong(lsn).put(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + 4, 8 + payload.length);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Replays every intact frame with an LSN above {@code afterLsn} and truncates a torn
+     * tail left by a crash. Returns the highest LSN found, or {@code afterLsn} if none.
+     */
+    public static long replay(Path path, long afterLsn, Consumer<Mutation> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return afterLsn;
+        }
+        long[] lastLsn = {afterLsn};
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long validEnd = readFrames(in, (lsn, mutation) -> {
+                if (lsn > afterLsn) {
+                    consumer.accept(mutation);
+                }
+                lastLsn[0] = Math.max(lastLsn[0], lsn);
+            });
+            if (validEnd < in.size()) {
+                logger.warning("Truncating torn write-ahead log tail at byte " + validEnd);
+                in.truncate(validEnd);
+                in.force(true);
+            }
+        }
+        return lastLsn[0];
+    }
+
+    /**
+     * Persists the whole database and returns the LSN of the last mutation it includes.
+     * Must keep writers out while it reads the LSN and the state, and return only once
+     * the state is durable, directory entry included, since the log is truncated next.
+     */
+    public interface Checkpointer {
+        long checkpoint() throws IOException;
+    }
+
+    private interface FrameConsumer {
+        void accept(long lsn, Mutation mutation);
+    }
+
+    /**
+     * Reads frames from the channel's current position until the first damaged one.
+     * Returns the offset just past the last intact frame.
+     */
+    private static long readFrames(FileChannel in, FrameConsumer consumer) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        long offset = in.position();
+        while (true) {
+            header.clear();
+            if (readFully(in, header) < 12) {
+                return offset;
+            }
+            header.flip();
+            int length = header.getInt();
+            long lsn = header.getLong();
+            if (length < 0 || length > MAX_PAYLOAD) {
+                return offset;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length + 4);
+            if (readFully(in, body) < length + 4) {
+                return offset;
+            }
+            body.flip();
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 4, 8);
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != body.getInt(length)) {
+                return offset;
+            }
+            body.limit(length);
+            Mutation mutation;
+            try {
+                mutation = Mutation.decode(body);
+            } catch (IllegalArgumentException e) {
+                return offset;
+            }
+            consumer.accept(lsn, mutation);
+            offset += FRAME_OVERHEAD + length;
+        }
+    }
+
+    private static int readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,213 @@
+package org.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.example.component.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs AddRow, EditCell, DeleteRow and GetRows from many threads against one table
+ * of an in-process server. Any exception in a handler, such as a
+ * ConcurrentModificationException, reaches the client as a failed call and fails
+ * the test.
+ */
+class ConcurrencyStressTest {
+    private static final int THREADS = 16;
+    private static final int ROWS_PER_THREAD = 200;
+    private static final int EDITS_PER_ROW = 5;
+
+    private Server server;
+    private ManagedChannel channel;
+    private RemoteDBGrpc.RemoteDBBlockingStub stub;
+    private ExecutorService workers;
+    private long tableId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        HelloWorldServer.dbManager.createDB("stress");
+        HelloWorldServer.dbManager.addTable("stress");
+        HelloWorldServer.dbManager.addColumn(0, "owner", ColumnType.INT);
+        HelloWorldServer.dbManager.addColumn(0, "value", ColumnType.INT);
+        tableId = DatabaseManager.database.tables.get(0).getId();
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .executor(Executors.newFixedThreadPool(8))
+                .addService(new HelloWorldServer.GreeterImpl())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        stub = RemoteDBGrpc.newBlockingStub(channel);
+        workers = Executors.newFixedThreadPool(THREADS + 2);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        workers.shutdownNow();
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void concurrentWritesAndReadsLoseNothing() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Map<Long, String> expected = new ConcurrentHashMap<>();
+        Set<Long> deleted = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int owner = t;
+            writers.add(workers.submit((Callable<Void>) () -> {
+                start.await();
+                List<Long> own = new ArrayList<>();
+                for (int i = 0; i < ROWS_PER_THREAD; i++) {
+                    AddRowResponse added = stub.addRow(AddRowRequest.newBuilder()
+                            .setTableIndex(0)
+                            .addValues(Integer.toString(owner))
+                            .addValues("0")
+                            .build());
+                    assertTrue(added.getSuccess());
+                    own.add(added.getRowId());
+                }
+                // Every row gets a series of edits; the last one must survive
+                long valueColumn = columnId(1);
+                for (int edit = 1; edit <= EDITS_PER_ROW; edit++) {
+                    for (long rowId : own) {
+                        assertTrue(stub.editCell(EditCellRequest.newBuilder()
+                                .setTableId(tableId)
+                                .setColumnId(valueColumn)
+                                .setRowId(rowId)
+                                .setValue(Integer.toString(edit))
+                                .build()).getSuccess());
+                    }
+                }
+                // Every fourth row is deleted again
+                for (int i = 0; i < own.size(); i++) {
+                    if (i % 4 == 0) {
+                        assertTrue(stub.deleteRow(DeleteRowRequest.newBuilder()
+                                .setTableId(tableId)
+                                .setRowId(own.get(i))
+                                .build()).getSuccess());
+                        deleted.add(own.get(i));
+                    } else {
+                        expected.put(own.get(i), Integer.toString(EDITS_PER_ROW));
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(workers.submit(() -> {
+                start.await();
+                int reads = 0;
+                while (writing.get()) {
+                    GetRowsResponse page = stub.getRows(GetRowsRequest.newBuilder().setTableId(tableId).build());
+                    // A page is a consistent copy: its rows match its count, and no row is half-written
+                    assertEquals(page.getTotalRows(), page.getRowsCount());
+                    for (Row row : page.getRowsList()) {
+                        assertEquals(2, row.getValuesCount());
+                    }
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(2, TimeUnit.MINUTES);
+        }
+        writing.set(false);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get(1, TimeUnit.MINUTES) > 0);
+        }
+
+        GetRowsResponse rows = stub.getRows(GetRowsRequest.newBuilder().setTableId(tableId).build());
+        assertEquals(THREADS * ROWS_PER_THREAD - deleted.size(), rows.getTotalRows());
+        assertEquals(rows.getTotalRows(), rows.getRowsCount());
+        Map<Long, String> actual = new HashMap<>();
+        for (Row row : rows.getRowsList()) {
+            actual.put(row.getId(), row.getValues(1));
+        }
+        assertEquals(expected, actual);
+        Set<Long> ids = new HashSet<>(actual.keySet());
+        ids.retainAll(deleted);
+        assertTrue(ids.isEmpty());
+    }
+
+    @Test
+    void concurrentPositionalEditsLandOnLiveRows() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            stub.addRow(AddRowRequest.newBuilder().setTableIndex(0).addValues("0").addValues("0").build());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            tasks.add(workers.submit((Callable<Void>) () -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    int rowIndex = (seed * 31 + i * 7) % 500;
+                    if (seed % 4 == 0) {
+                        stub.deleteRow(DeleteRowRequest.newBuilder().setTableIndex(0).setRowIndex(rowIndex).build());
+                    } else if (seed % 4 == 1) {
+                        stub.addRow(AddRowRequest.newBuilder().setTableIndex(0).addValues("1").addValues("1").build());
+                    } else {
+                        // May miss when deletes shrink the table, but must never fail the call
+                        stub.editCell(EditCellRequest.newBuilder()
+                                .setTableIndex(0).setColumnIndex(1).setRowIndex(rowIndex).setValue("7").build());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(2, TimeUnit.MINUTES);
+        }
+        Table table = DatabaseManager.database.tables.get(0);
+        int rowCount = table.readLocked(table::getRowCount);
+        GetRowsResponse rows = stub.getRows(GetRowsRequest.newBuilder().setTableIndex(0).build());
+        assertEquals(rowCount, rows.getTotalRows());
+        assertEquals(rowCount, rows.getRowsCount());
+        assertEquals(rowCount, new HashSet<>(rows.getRowsList().stream().map(Row::getId).toList()).size());
+    }
+
+    @Test
+    void getInstanceReturnsOneManagerAcrossThreads() throws Exception {
+        List<Future<DatabaseManager>> instances = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            instances.add(workers.submit(DatabaseManager::getInstance));
+        }
+        for (Future<DatabaseManager> instance : instances) {
+            assertSame(DatabaseManager.getInstance(), instance.get());
+        }
+    }
+
+    private long columnId(int columnIndex) {
+        return stub.getColumns(GetColumnsRequest.newBuilder().setTableId(tableId).build()).getColumns(columnIndex).getId();
+    }
+}
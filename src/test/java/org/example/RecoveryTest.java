@@ -0,0 +1,130 @@
+package org.example;
+
+import org.example.component.Row;
+import org.example.component.Table;
+import org.example.persistence.Mutation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A database rebuilt from its write-ahead log, with or without checkpoints along the
+ * way, matches the one that wrote the log: tables, columns, cells and row IDs.
+ */
+class RecoveryTest {
+    private final DatabaseManager manager = DatabaseManager.getInstance();
+
+    @AfterEach
+    void closeLog() throws IOException {
+        manager.closeLog();
+    }
+
+    @Test
+    void replayingTheLogRebuildsTheDatabase(@TempDir Path dir) throws IOException {
+        assertEquals(reopen(dir, 0), recover(dir, 0));
+    }
+
+    @Test
+    void checkpointsAndTheLogAfterThemRebuildTheDatabase(@TempDir Path dir) throws IOException {
+        // A one-byte threshold checkpoints after every group commit
+        assertEquals(reopen(dir, 1), recover(dir, 1));
+    }
+
+    @Test
+    void aTornLastFrameIsDropped(@TempDir Path dir) throws IOException {
+        List<String> written = reopen(dir, 0);
+        try (FileChannel out = FileChannel.open(dir.resolve(DatabaseManager.LOG_FILE), StandardOpenOption.APPEND)) {
+            out.write(ByteBuffer.allocate(20).putInt(64).putLong(Long.MAX_VALUE).flip());
+        }
+        assertEquals(written, recover(dir, 0));
+    }
+
+    // Writes a database through the logged operations, closes the log and returns the state written
+    private List<String> reopen(Path dir, long checkpointBytes) throws IOException {
+        DatabaseManager.database = null;
+        assertFalse(manager.openLog(dir, 0, checkpointBytes));
+        manager.createDB("recovery");
+        manager.addTable("people");
+        manager.addTable("scratch");
+        manager.addColumn(0, "id", ColumnType.INT);
+        manager.addColumn(0, "name", ColumnType.STRING);
+        manager.addColumn(0, "balance", ColumnType.MONEY);
+        manager.addColumn(0, "limit", ColumnType.MONEY_INVL, "0", "100");
+        manager.addColumn(0, "score", ColumnType.REAL);
+        manager.addColumn(0, "grade", ColumnType.CHAR);
+        for (int i = 0; i < 50; i++) {
+            Row row = new Row();
+            row.values.addAll(List.of(Integer.toString(i), "name" + i % 7, "1," + i + "00.00", i % 2 == 0 ? "" : "50.00",
+                    i + ".50", String.valueOf((char) ('A' + i % 5))));
+            assertTrue(manager.addRow(0, row));
+        }
+        manager.createIndex(0, 1, IndexType.HASH);
+        assertTrue(manager.updateCellValue(" 7.25 ", 0, 4, 3));
+        assertFalse(manager.updateCellValue("not a number", 0, 0, 4));
+        assertTrue(manager.deleteRow(0, 10));
+        manager.applyBatch(0, List.of(
+                Mutation.addRow(0, List.of("100", "batch")),
+                Mutation.updateCell(0, 0, 1, "edited"),
+                Mutation.deleteRow(0, 5)), true);
+        manager.renameTable(1, "renamed");
+        manager.addColumn(1, "copy", ColumnType.STRING);
+        for (int i = 0; i < 3; i++) {
+            Row row = new Row();
+            row.values.add("same");
+            manager.addRow(1, row);
+        }
+        manager.deleteDuplicateRows(1);
+        manager.renameColumn(0, 4, "rating");
+        long transaction = manager.beginTransaction();
+        manager.addRowInTransaction(transaction, 1, List.of("committed"));
+        manager.updateCellInTransaction(transaction, "0.00", 0, 2, 0, 0, 0, 0);
+        assertEquals(DatabaseManager.CommitResult.COMMITTED, manager.commitTransaction(transaction));
+        manager.deleteTable(1);
+        manager.addTable("last");
+
+        List<String> written = dump();
+        manager.closeLog();
+        return written;
+    }
+
+    // Rebuilds the database from the directory alone and returns its state
+    private List<String> recover(Path dir, long checkpointBytes) throws IOException {
+        DatabaseManager.database = null;
+        assertTrue(manager.openLog(dir, 0, checkpointBytes));
+        return dump();
+    }
+
+    private static List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        lines.add("database " + DatabaseManager.database.name);
+        for (Table table : DatabaseManager.database.tables) {
+            table.readLocked(() -> {
+                StringBuilder columns = new StringBuilder("table " + table.getId() + " " + table.name);
+                table.getColumns().forEach(column -> columns.append(' ').append(column.name).append(':').append(column.type));
+                lines.add(columns.toString());
+                for (int row = 0; row < table.getRowCount(); row++) {
+                    StringBuilder line = new StringBuilder("row " + table.getRowId(table.slotOf(row)));
+                    for (int c = 0; c < table.getColumnCount(); c++) {
+                        line.append(" [").append(table.getValue(row, c)).append(']');
+                    }
+                    lines.add(line.toString());
+                }
+                return null;
+            });
+        }
+        return lines;
+    }
+}
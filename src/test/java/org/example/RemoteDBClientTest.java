@@ -0,0 +1,114 @@
+package org.example;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * An aborted transaction is rolled back and runs again from a reset state, a bounded
+ * number of times, and any other failure ends it at once.
+ */
+class RemoteDBClientTest {
+    private Server server;
+    private RemoteDBClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        HelloWorldServer.dbManager.createDB("client");
+        HelloWorldServer.dbManager.addTable("accounts");
+        HelloWorldServer.dbManager.addColumn(0, "balance", ColumnType.INT);
+        org.example.component.Row row = new org.example.component.Row();
+        row.values.add("0");
+        HelloWorldServer.dbManager.addRow(0, row);
+        server = Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create())
+                .addService(new HelloWorldServer.GreeterImpl())
+                .build()
+                .start();
+        client = new RemoteDBClient(new DefaultApplicationArguments(), "localhost:" + server.getPort(), "", false);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        client.shutdown();
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private EditCellRequest.Builder edit(String value) {
+        return EditCellRequest.newBuilder().setTableIndex(0).setColumnIndex(0).setRowIndex(0).setValue(value);
+    }
+
+    private String balance() {
+        return HelloWorldServer.dbManager.database.tables.get(0).getValue(0, 0);
+    }
+
+    @Test
+    void conflictingCommitsRunAgainFromAResetState() {
+        List<Long> transactions = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        assertTrue(client.inTransaction(written::clear, transactionId -> {
+            transactions.add(transactionId);
+            assertTrue(client.blockingStub().editCell(edit("1").setTransactionId(transactionId).build()).getSuccess());
+            written.add("1");
+            if (transactions.size() < 3) {
+                // Another client changes the row first, so this commit conflicts
+                assertTrue(client.blockingStub().editCell(edit("-" + transactions.size()).build()).getSuccess());
+            }
+        }, 5));
+        assertEquals(3, transactions.size());
+        assertEquals(List.of("1"), written);
+        assertEquals("1", balance());
+    }
+
+    @Test
+    void workThatIsAbortedIsRolledBack() {
+        List<Long> transactions = new ArrayList<>();
+        assertTrue(client.inTransaction(transactionId -> {
+            transactions.add(transactionId);
+            assertTrue(client.blockingStub().editCell(edit(Integer.toString(transactions.size())).setTransactionId(transactionId).build()).getSuccess());
+            if (transactions.size() == 1) {
+                throw Status.ABORTED.withDescription("Retry").asRuntimeException();
+            }
+        }, 2));
+        assertEquals("2", balance());
+        // Neither transaction is still open on the server
+        for (long transactionId : transactions) {
+            assertFalse(HelloWorldServer.dbManager.rollbackTransaction(transactionId));
+        }
+    }
+
+    @Test
+    void attemptsAreCappedAndOtherFailuresAreNotRetried() {
+        List<Long> transactions = new ArrayList<>();
+        assertFalse(client.inTransaction(transactionId -> {
+            transactions.add(transactionId);
+            client.blockingStub().editCell(edit("1").setTransactionId(transactionId).build());
+            client.blockingStub().editCell(edit("2").build());
+        }, Integer.MAX_VALUE));
+        assertEquals(RemoteDBClient.MAX_TRANSACTION_ATTEMPTS, transactions.size());
+
+        transactions.clear();
+        StatusRuntimeException failure = assertThrows(StatusRuntimeException.class, () -> client.inTransaction(transactionId -> {
+            transactions.add(transactionId);
+            throw Status.INVALID_ARGUMENT.asRuntimeException();
+        }, 5));
+        assertEquals(Status.Code.INVALID_ARGUMENT, failure.getStatus().getCode());
+        assertEquals(1, transactions.size());
+        assertFalse(HelloWorldServer.dbManager.rollbackTransaction(transactions.get(0)));
+    }
+}
@@ -0,0 +1,413 @@
+package org.example;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a cluster of three server processes behind a {@link ShardRouter} and checks
+ * that the router answers like a single server: the same calls go to the router and
+ * to an in-process reference server, and the rows and results must match, apart from
+ * the order of rows, which differs as the router lists shard 0's rows first. How
+ * throughput changes with the number of shards is for {@code ShardScalingBenchmark}
+ * to measure, not for a test to assert.
+ */
+class ShardRouterTest {
+    private static final int SHARDS = 3;
+
+    private static final List<Process> servers = new ArrayList<>();
+    private static final List<Path> walDirs = new ArrayList<>();
+    private static final List<String> targets = new ArrayList<>();
+    private static RemoteDBClient client;
+    private static RemoteDBGrpc.RemoteDBBlockingStub router;
+
+    private Server referenceServer;
+    private ManagedChannel referenceChannel;
+    private RemoteDBGrpc.RemoteDBBlockingStub reference;
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            Path walDir = Files.createTempDirectory("shard-" + shard);
+            walDirs.add(walDir);
+            servers.add(new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    HelloWorldServer.class.getName(),
+                    "--port=" + port,
+                    "--shard=" + shard,
+                    "--wal-dir=" + walDir)
+                    .redirectErrorStream(true)
+                    .redirectOutput(walDir.resolve("server.log").toFile())
+                    .start());
+            targets.add("localhost:" + port);
+        }
+        client = new RemoteDBClient(new DefaultApplicationArguments(), "", String.join(",", targets), false);
+        router = client.blockingStub();
+        // The router fails calls until every server listens
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60); ; Thread.sleep(100)) {
+            try {
+                router.getTablesData(GetTablesDataRequest.getDefaultInstance());
+                break;
+            } catch (StatusRuntimeException e) {
+                if (e.getStatus().getCode() != Status.Code.UNAVAILABLE || System.nanoTime() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() throws IOException, InterruptedException {
+        client.shutdown();
+        for (Process server : servers) {
+            server.destroy();
+        }
+        for (Process server : servers) {
+            server.waitFor(10, TimeUnit.SECONDS);
+        }
+        for (Path walDir : walDirs) {
+            try (Stream<Path> files = Files.walk(walDir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @BeforeEach
+    void startReference() throws IOException {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        HelloWorldServer.dbManager.createDB("reference");
+        String name = InProcessServerBuilder.generateName();
+        referenceServer = InProcessServerBuilder.forName(name)
+                .executor(Executors.newFixedThreadPool(4))
+                .addService(new HelloWorldServer.GreeterImpl())
+                .build()
+                .start();
+        referenceChannel = InProcessChannelBuilder.forName(name).build();
+        reference = RemoteDBGrpc.newBlockingStub(referenceChannel);
+    }
+
+    @AfterEach
+    void stopReference() throws InterruptedException {
+        referenceChannel.shutdownNow();
+        referenceServer.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void pointOpsScansAndAggregatesMatchOneServer() {
+        int routed = createTable(router);
+        int single = createTable(reference);
+        for (int i = 0; i < 60; i++) {
+            AddRowRequest row = AddRowRequest.newBuilder()
+                    .addValues(Integer.toString(i))
+                    .addValues(i + ".5")
+                    .addValues(i + ".25")
+                    .addValues(Character.toString('a' + i % 3))
+                    .build();
+            assertTrue(router.addRow(row.toBuilder().setTableIndex(routed).build()).getSuccess());
+            assertTrue(reference.addRow(row.toBuilder().setTableIndex(single).build()).getSuccess());
+        }
+        assertEquals(SHARDS, rows(router, routed).stream().map(row -> ShardMap.shardOfRowId(row.getId())).distinct().count());
+
+        // Positional changes hit the row the router lists at that index
+        for (int rowIndex : new int[]{0, 19, 20, 21, 59}) {
+            Row target = rows(router, routed).get(rowIndex);
+            assertTrue(router.editCell(EditCellRequest.newBuilder()
+                    .setTableIndex(routed).setRowIndex(rowIndex).setColumnIndex(1).setValue("-1.5").build()).getSuccess());
+            assertEquals("-1.5", rows(router, routed).get(rowIndex).getValues(1));
+            assertEquals(target.getId(), rows(router, routed).get(rowIndex).getId());
+            assertTrue(reference.editCell(EditCellRequest.newBuilder()
+                    .setTableIndex(single).setRowIndex(indexOf(reference, single, target)).setColumnIndex(1).setValue("-1.5").build()).getSuccess());
+        }
+        for (int rowIndex : new int[]{58, 30, 10, 0}) {
+            Row target = rows(router, routed).get(rowIndex);
+            int singleIndex = indexOf(reference, single, target);
+            assertTrue(router.deleteRow(DeleteRowRequest.newBuilder().setTableIndex(routed).setRowIndex(rowIndex).build()).getSuccess());
+            assertFalse(rows(router, routed).stream().anyMatch(row -> row.getId() == target.getId()));
+            assertTrue(reference.deleteRow(DeleteRowRequest.newBuilder().setTableIndex(single).setRowIndex(singleIndex).build()).getSuccess());
+        }
+        assertFalse(router.editCell(EditCellRequest.newBuilder()
+                .setTableIndex(routed).setRowIndex(56).setColumnIndex(1).setValue("1").build()).getSuccess());
+
+        // Changes by ID go to the shard that owns the row
+        long tableId = tableId(router, routed);
+        long columnId = router.getColumns(GetColumnsRequest.newBuilder().setTableId(tableId).build()).getColumns(2).getId();
+        for (Row row : rows(router, routed)) {
+            if (Integer.parseInt(row.getValues(0)) % 7 == 0) {
+                assertTrue(router.editCell(EditCellRequest.newBuilder()
+                        .setTableId(tableId).setColumnId(columnId).setRowId(row.getId()).setValue("7.00").build()).getSuccess());
+                assertTrue(reference.editCell(EditCellRequest.newBuilder()
+                        .setTableIndex(single).setRowIndex(indexOf(reference, single, row)).setColumnIndex(2).setValue("7.00").build()).getSuccess());
+            }
+        }
+        assertEquals(valueCounts(rows(reference, single)), valueCounts(rows(router, routed)));
+
+        // Pages and streams cut the global order the same way
+        List<Row> all = rows(router, routed);
+        List<Row> paged = new ArrayList<>();
+        for (int offset = 0; offset < all.size(); offset += 13) {
+            paged.addAll(router.getRows(GetRowsRequest.newBuilder().setTableIndex(routed).setOffset(offset).setLimit(13).build()).getRowsList());
+        }
+        assertEquals(all, paged);
+        List<Row> streamed = new ArrayList<>();
+        router.streamRows(GetRowsRequest.newBuilder().setTableIndex(routed).setOffset(5).setLimit(40).setChunkSize(7).build())
+                .forEachRemaining(chunk -> streamed.addAll(chunk.getRowsList()));
+        assertEquals(all.subList(5, 45), streamed);
+
+        QueryRowsRequest query = QueryRowsRequest.newBuilder()
+                .addPredicates(Predicate.newBuilder().setColumnIndex(0).setOperator(">=").setValue("25"))
+                .build();
+        QueryRowsResponse routedQuery = router.queryRows(query.toBuilder().setTableIndex(routed).build());
+        QueryRowsResponse singleQuery = reference.queryRows(query.toBuilder().setTableIndex(single).build());
+        assertEquals(valueCounts(singleQuery.getRowsList()), valueCounts(routedQuery.getRowsList()));
+        for (int i = 0; i < routedQuery.getRowsCount(); i++) {
+            assertEquals(routedQuery.getRows(i).getValuesList(), all.get(routedQuery.getRowIndexes(i)).getValuesList());
+        }
+
+        AggregateRequest.Builder aggregate = AggregateRequest.newBuilder().setGrouped(true).setGroupByColumnIndex(3);
+        for (int column = 0; column < 3; column++) {
+            for (AggregateFunction function : new AggregateFunction[]{
+                    AggregateFunction.COUNT, AggregateFunction.SUM, AggregateFunction.MIN, AggregateFunction.MAX, AggregateFunction.AVG}) {
+                aggregate.addAggregations(Aggregation.newBuilder().setFunction(function).setColumnIndex(column));
+            }
+        }
+        assertEquals(groups(reference.aggregate(aggregate.setTableIndex(single).build())),
+                groups(router.aggregate(aggregate.setTableIndex(routed).build())));
+        aggregate.setGrouped(false).addPredicates(Predicate.newBuilder().setColumnIndex(0).setOperator("<").setValue("40"));
+        assertEquals(groups(reference.aggregate(aggregate.setTableIndex(single).build())),
+                groups(router.aggregate(aggregate.setTableIndex(routed).build())));
+    }
+
+    @Test
+    void duplicatesOnDifferentShardsAreRemoved() {
+        assertDuplicatesRemoved(router);
+    }
+
+    @Test
+    void duplicatesAreRemovedInSeveralPassesWhenTheRowsExceedTheBudget() throws IOException, InterruptedException {
+        ShardRouter smallRouter = new ShardRouter(ShardMap.parse(String.join(",", targets)), null);
+        smallRouter.dedupRowsPerPass = 4;
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).directExecutor().addService(smallRouter).build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        try {
+            assertDuplicatesRemoved(RemoteDBGrpc.newBlockingStub(channel));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            smallRouter.shutdown();
+        }
+    }
+
+    @Test
+    void testTableRowsAreSpreadOverTheShards() {
+        assertTrue(router.createTestTable(CreateTestTableRequest.getDefaultInstance()).getSuccess());
+        assertTrue(reference.createTestTable(CreateTestTableRequest.getDefaultInstance()).getSuccess());
+        int routed = router.getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataCount() - 1;
+        int single = reference.getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataCount() - 1;
+        assertEquals(reference.getColumns(GetColumnsRequest.newBuilder().setTableIndex(single).build()).getColumnsList().stream()
+                        .map(column -> column.toBuilder().clearId().build()).toList(),
+                router.getColumns(GetColumnsRequest.newBuilder().setTableIndex(routed).build()).getColumnsList().stream()
+                        .map(column -> column.toBuilder().clearId().build()).toList());
+        List<Row> rows = rows(router, routed);
+        assertEquals(valueCounts(rows(reference, single)), valueCounts(rows));
+        assertEquals(rows.size(), rows.stream().map(row -> ShardMap.shardOfRowId(row.getId())).distinct().count());
+        // The shards were started with --shard, so none added test tables of its own
+        for (TableData table : router.getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataList()) {
+            if (table.getName().equals("testTable")) {
+                assertEquals(rows.size(), rows(router, table.getIndex()).size());
+            }
+        }
+    }
+
+    private void assertDuplicatesRemoved(RemoteDBGrpc.RemoteDBBlockingStub sharded) {
+        int routed = createTable(sharded);
+        int single = createTable(reference);
+        // Empty rows, as the web pages add them, and repeated values land on every shard
+        for (int i = 0; i < 30; i++) {
+            AddRowRequest.Builder row = AddRowRequest.newBuilder();
+            if (i % 5 != 0) {
+                row.addValues(Integer.toString(i % 4)).addValues("1.5");
+            }
+            sharded.addRow(row.setTableIndex(routed).build());
+            reference.addRow(row.setTableIndex(single).build());
+        }
+        assertEquals(SHARDS, rows(sharded, routed).stream()
+                .filter(row -> row.getValues(0).isEmpty())
+                .map(row -> ShardMap.shardOfRowId(row.getId()))
+                .distinct()
+                .count());
+
+        DeleteDuplicateRowsResponse singleRemoved = reference.deleteDuplicateRows(DeleteDuplicateRowsRequest.newBuilder().setTableIndex(single).build());
+        DeleteDuplicateRowsResponse routedRemoved = sharded.deleteDuplicateRows(DeleteDuplicateRowsRequest.newBuilder().setTableIndex(routed).build());
+        assertEquals(singleRemoved, routedRemoved);
+        assertEquals(valueCounts(rows(reference, single)), valueCounts(rows(sharded, routed)));
+        assertEquals(5, rows(sharded, routed).size());
+    }
+
+    @Test
+    void insertRowsDealsRowsOutAndMergesAcknowledgements() throws Exception {
+        int routed = createTable(router);
+        int single = createTable(reference);
+        List<InsertRowsRequest> messages = new ArrayList<>();
+        for (int m = 0; m < 10; m++) {
+            InsertRowsRequest.Builder message = InsertRowsRequest.newBuilder().setAckInterval(m == 0 ? 20 : 0);
+            for (int i = m * 25; i < (m + 1) * 25; i++) {
+                message.addRows(Row.newBuilder()
+                        .addValues(i % 17 == 0 ? "not a number" : Integer.toString(i))
+                        .addValues(i + ".5"));
+            }
+            messages.add(message.build());
+        }
+        List<InsertRowsResponse> singleResponses = insert(RemoteDBGrpc.newStub(referenceChannel), single, messages);
+        List<InsertRowsResponse> routedResponses = insert(client.asyncStub(), routed, messages);
+
+        InsertRowsResponse singleLast = singleResponses.get(singleResponses.size() - 1);
+        InsertRowsResponse routedLast = routedResponses.get(routedResponses.size() - 1);
+        assertTrue(routedLast.getDone());
+        assertEquals(singleLast.getInsertedRows(), routedLast.getInsertedRows());
+        assertEquals(singleLast.getRejectedRows(), routedLast.getRejectedRows());
+        assertEquals(rejectedRows(singleResponses), rejectedRows(routedResponses));
+        assertEquals(valueCounts(rows(reference, single)), valueCounts(rows(router, routed)));
+        assertEquals(SHARDS, rows(router, routed).stream().map(row -> ShardMap.shardOfRowId(row.getId())).distinct().count());
+    }
+
+    @Test
+    void callsThatCannotSpanShardsFailWithFailedPrecondition() {
+        int routed = createTable(router);
+        router.addRow(AddRowRequest.newBuilder().setTableIndex(routed).addValues("1").build());
+        assertFailedPrecondition(() -> router.sortRows(SortRowsRequest.newBuilder()
+                .setTableIndex(routed).addKeys(SortKey.newBuilder().setColumnIndex(0)).build()).hasNext());
+        assertFailedPrecondition(() -> router.watchTable(WatchTableRequest.newBuilder().setTableIndex(routed).build()).hasNext());
+        assertFailedPrecondition(() -> router.beginTransaction(BeginTransactionRequest.getDefaultInstance()));
+        assertFailedPrecondition(() -> router.commit(CommitRequest.newBuilder().setTransactionId(1).build()));
+        assertFailedPrecondition(() -> router.rollback(RollbackRequest.newBuilder().setTransactionId(1).build()));
+        assertFailedPrecondition(() -> router.addRow(AddRowRequest.newBuilder().setTableIndex(routed).setTransactionId(1).build()));
+        assertFailedPrecondition(() -> router.editCell(EditCellRequest.newBuilder()
+                .setTableIndex(routed).setColumnIndex(0).setValue("2").setTransactionId(1).build()));
+        assertFailedPrecondition(() -> router.applyBatch(ApplyBatchRequest.newBuilder()
+                .setTableIndex(routed)
+                .addOperations(BatchOperation.newBuilder().setDeleteRow(DeleteRowOperation.newBuilder().setRowIndex(0)))
+                .build()));
+        assertEquals(1, rows(router, routed).size());
+    }
+
+    @Test
+    void columnsThatDifferBetweenShardsFailGetColumns() throws InterruptedException {
+        int routed = createTable(router);
+        ManagedChannel channel = Grpc.newChannelBuilder(targets.get(SHARDS - 1), InsecureChannelCredentials.create()).build();
+        try {
+            RemoteDBGrpc.RemoteDBBlockingStub lastShard = RemoteDBGrpc.newBlockingStub(channel);
+            assertTrue(lastShard.addColumn(AddColumnRequest.newBuilder()
+                    .setTableIndex(routed).setName("extra").setColumnType(ColumnType.INT).build()).getSuccess());
+            assertFailedPrecondition(() -> router.getColumns(GetColumnsRequest.newBuilder().setTableIndex(routed).build()));
+            assertTrue(lastShard.deleteColumn(DeleteColumnRequest.newBuilder().setTableIndex(routed).setColumnIndex(4).build()).getSuccess());
+            assertEquals(4, router.getColumns(GetColumnsRequest.newBuilder().setTableIndex(routed).build()).getColumnsCount());
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    // A table with INT, REAL, MONEY and CHAR columns; returns its index
+    private static int createTable(RemoteDBGrpc.RemoteDBBlockingStub stub) {
+        assertTrue(stub.createTable(CreateTableRequest.newBuilder().setName("sharded").build()).getSuccess());
+        int tableIndex = stub.getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesDataCount() - 1;
+        ColumnType[] types = {ColumnType.INT, ColumnType.REAL, ColumnType.MONEY, ColumnType.CHAR};
+        for (int c = 0; c < types.length; c++) {
+            assertTrue(stub.addColumn(AddColumnRequest.newBuilder()
+                    .setTableIndex(tableIndex).setName("c" + c).setColumnType(types[c]).build()).getSuccess());
+        }
+        return tableIndex;
+    }
+
+    private static long tableId(RemoteDBGrpc.RemoteDBBlockingStub stub, int tableIndex) {
+        return stub.getTablesData(GetTablesDataRequest.getDefaultInstance()).getTablesData(tableIndex).getId();
+    }
+
+    private static List<Row> rows(RemoteDBGrpc.RemoteDBBlockingStub stub, int tableIndex) {
+        return stub.getRows(GetRowsRequest.newBuilder().setTableIndex(tableIndex).build()).getRowsList();
+    }
+
+    // Index of the first row with the values of row; the tests keep the first column unique where it matters
+    private static int indexOf(RemoteDBGrpc.RemoteDBBlockingStub stub, int tableIndex, Row row) {
+        List<Row> rows = rows(stub, tableIndex);
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).getValues(0).equals(row.getValues(0))) {
+                return i;
+            }
+        }
+        throw new AssertionError("No row " + row.getValuesList());
+    }
+
+    private static Map<List<String>, Long> valueCounts(List<Row> rows) {
+        return rows.stream().collect(Collectors.groupingBy(Row::getValuesList, Collectors.counting()));
+    }
+
+    private static Map<String, AggregateGroup> groups(AggregateResponse response) {
+        return response.getGroupsList().stream().collect(Collectors.toMap(AggregateGroup::getKey, Function.identity()));
+    }
+
+    private static Set<RejectedRow> rejectedRows(List<InsertRowsResponse> responses) {
+        Set<RejectedRow> rejected = new HashSet<>();
+        for (InsertRowsResponse response : responses) {
+            rejected.addAll(response.getRejectedList());
+        }
+        return rejected;
+    }
+
+    private static List<InsertRowsResponse> insert(RemoteDBGrpc.RemoteDBStub stub, int tableIndex, List<InsertRowsRequest> messages)
+            throws Exception {
+        RemoteDBClient.StreamCollector<InsertRowsResponse> responses = RemoteDBClient.collect();
+        StreamObserver<InsertRowsRequest> requests = stub.insertRows(responses);
+        for (int m = 0; m < messages.size(); m++) {
+            requests.onNext(m == 0 ? messages.get(m).toBuilder().setTableIndex(tableIndex).build() : messages.get(m));
+        }
+        requests.onCompleted();
+        CompletableFuture<List<InsertRowsResponse>> result = responses.result();
+        return result.get(1, TimeUnit.MINUTES);
+    }
+
+    private static void assertFailedPrecondition(Runnable call) {
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, call::run);
+        assertEquals(Status.Code.FAILED_PRECONDITION, e.getStatus().getCode(), e.getStatus().toString());
+    }
+}
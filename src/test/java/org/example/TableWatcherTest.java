@@ -0,0 +1,107 @@
+package org.example;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A watcher's copy shows the table as it was when the call started, however the table
+ * changes while the chunks go out, and the changes follow the copy.
+ */
+class TableWatcherTest {
+    private static final int ROWS = 1000;
+    private static final int CHUNK = 64;
+
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HelloWorldServer.dbManager = DatabaseManager.getInstance();
+        HelloWorldServer.dbManager.createDB("watch");
+        HelloWorldServer.dbManager.addTable("watched");
+        HelloWorldServer.dbManager.addColumn(0, "value", ColumnType.INT);
+        for (int i = 0; i < ROWS; i++) {
+            org.example.component.Row row = new org.example.component.Row();
+            row.values.add(Integer.toString(i));
+            HelloWorldServer.dbManager.addRow(0, row);
+        }
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .executor(Executors.newFixedThreadPool(4))
+                .addService(new HelloWorldServer.GreeterImpl())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void copyIsSentInChunksAsOfTheStartAndChangesFollowIt() {
+        Iterator<TableUpdate> updates = RemoteDBGrpc.newBlockingStub(channel)
+                .watchTable(WatchTableRequest.newBuilder().setChunkSize(CHUNK).build());
+        TableUpdate first = updates.next();
+        assertTrue(first.getReset());
+        assertEquals("watched", first.getTable().getName());
+
+        // Changed while the rest of the copy is still to be sent
+        DatabaseManager manager = HelloWorldServer.dbManager;
+        assertTrue(manager.updateCellValue("-1", 0, 0, ROWS - 1));
+        assertTrue(manager.deleteRow(0, ROWS / 2));
+        org.example.component.Row added = new org.example.component.Row();
+        added.values.add("new");
+        assertFalse(manager.addRow(0, added));
+        added.values.set(0, "12345");
+        assertTrue(manager.addRow(0, added));
+
+        List<Row> copied = new ArrayList<>(first.getRowsList());
+        TableUpdate update = first;
+        while (!update.getComplete()) {
+            assertTrue(update.getRowsCount() <= CHUNK);
+            update = updates.next();
+            assertFalse(update.getReset());
+            assertEquals(first.getVersion(), update.getVersion());
+            copied.addAll(update.getRowsList());
+        }
+        assertEquals(ROWS, copied.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(Integer.toString(i), copied.get(i).getValues(0));
+        }
+
+        List<TableChange> changes = new ArrayList<>();
+        while (changes.size() < 3) {
+            update = updates.next();
+            assertTrue(update.getVersion() > first.getVersion());
+            changes.addAll(update.getChangesList());
+        }
+        assertEquals("-1", changes.get(0).getCellUpdated().getValue());
+        assertEquals(copied.get(ROWS - 1).getId(), changes.get(0).getCellUpdated().getRowId());
+        assertEquals(copied.get(ROWS / 2).getId(), changes.get(1).getRowDeleted());
+        assertEquals("12345", changes.get(2).getRowInserted().getValues(0));
+
+        manager.deleteTable(0);
+        while (!update.getDropped()) {
+            update = updates.next();
+        }
+        assertFalse(updates.hasNext());
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.component;
+
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.StringColumn;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Random adds, deletes, edits, compactions and duplicate removals leave a table's
+ * positions, slots and row IDs agreeing with a plain list of the rows.
+ */
+class RowSlotsTest {
+
+    private record Expected(long id, List<String> values) {
+    }
+
+    @Test
+    void randomChangesMatchAReferenceList() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            Table table = new Table("slots");
+            table.addColumn(new IntegerColumn("int"));
+            table.addColumn(new StringColumn("string"));
+            List<Expected> expected = new ArrayList<>();
+            List<Long> deleted = new ArrayList<>();
+            int mostRows = 0;
+            for (int step = 0; step < 1500; step++) {
+                int op = random.nextInt(100);
+                String context = "seed " + seed + " step " + step;
+                if (op < 50 || expected.isEmpty()) {
+                    Row row = new Row();
+                    row.values.add(intValue(random));
+                    row.values.add(random.nextBoolean() ? "" : "s" + random.nextInt(3));
+                    long id = table.addRow(row);
+                    expected.add(new Expected(id, new ArrayList<>(row.values)));
+                } else if (op < 75) {
+                    int position = random.nextInt(expected.size());
+                    table.deleteRow(position);
+                    deleted.add(expected.remove(position).id());
+                } else if (op < 93) {
+                    int position = random.nextInt(expected.size());
+                    int column = random.nextInt(2);
+                    String value = column == 0 ? intValue(random) : "s" + random.nextInt(3);
+                    table.setValue(position, column, value);
+                    expected.get(position).values().set(column, value);
+                } else if (op < 97) {
+                    assertEquals(table.getSlotCount() != table.getRowCount(), table.compact(), context);
+                } else {
+                    Set<List<String>> seen = new HashSet<>();
+                    int before = expected.size();
+                    expected.removeIf(row -> {
+                        if (seen.add(row.values())) {
+                            return false;
+                        }
+                        deleted.add(row.id());
+                        return true;
+                    });
+                    assertEquals(before - expected.size(), table.deleteDuplicateRows(random.nextBoolean()), context);
+                }
+                assertMatches(table, expected, deleted, context);
+                mostRows = Math.max(mostRows, expected.size());
+            }
+            // The rows spanned several bitmap words
+            assertTrue(mostRows > 128, "seed " + seed);
+        }
+    }
+
+    // Some values repeat often, so that duplicate removal has work to do
+    private static String intValue(Random random) {
+        return Integer.toString(random.nextInt(4) == 0 ? random.nextInt(8) : random.nextInt(100_000));
+    }
+
+    private static void assertMatches(Table table, List<Expected> expected, List<Long> deleted, String context) {
+        assertEquals(expected.size(), table.getRowCount(), context);
+        int slot = table.nextLiveSlot(0);
+        for (int position = 0; position < expected.size(); position++, slot = table.nextLiveSlot(slot + 1)) {
+            Expected row = expected.get(position);
+            assertEquals(slot, table.slotOf(position), context);
+            assertEquals(position, table.rowIndexOf(slot), context);
+            assertEquals(row.id(), table.getRowId(slot), context);
+            assertEquals(slot, table.slotOfRowId(row.id()), context);
+            assertEquals(position, table.rowIndexOfRowId(row.id()), context);
+            assertEquals(row.values(), table.getRow(position).values, context);
+        }
+        assertEquals(table.getSlotCount(), slot, context);
+        // The rows deleted last, and the first ever deleted, are gone by ID too
+        for (int i = Math.max(0, deleted.size() - 8); i < deleted.size(); i++) {
+            assertEquals(-1, table.slotOfRowId(deleted.get(i)), context);
+        }
+        if (!deleted.isEmpty()) {
+            assertEquals(-1, table.rowIndexOfRowId(deleted.get(0)), context);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.component.column;
+
+import org.example.component.Column;
+import org.example.component.storage.RealColumnStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The scanners accept exactly what the JDK parsers they replace accept, and the
+ * columns return the parsed value their stores keep.
+ */
+class CellParserTest {
+
+    private static final List<String> NUMBERS = List.of("", "0", "7", "-7", "+7", "-", "+", "007", "-0",
+            "2147483647", "2147483648", "-2147483648", "-2147483649", "99999999999999999999", " 1", "1 ", "1a", "1.5",
+            ".5", "5.", ".", "1e3", "1E-3", "1e", "1e+", "-1.5e+10", "3f", "3D", "3.0d", "1x", "NaN", "-Infinity",
+            "+Infinity", "Infinityx", " NaN ", " -2.5 ", "1,000");
+
+    @Test
+    void parseIntMatchesIntegerParseInt() {
+        for (String value : NUMBERS) {
+            long expected;
+            try {
+                expected = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                expected = CellParser.INVALID;
+            }
+            assertEquals(expected, CellParser.parseInt(value), value);
+        }
+    }
+
+    @Test
+    void isRealMatchesDoubleParseDouble() {
+        for (String value : NUMBERS) {
+            boolean expected;
+            try {
+                Double.parseDouble(value);
+                expected = true;
+            } catch (NumberFormatException e) {
+                expected = false;
+            }
+            assertEquals(expected, CellParser.isReal(value), value);
+        }
+        // Hexadecimal literals are the one form parseDouble takes and a cell does not
+        assertFalse(CellParser.isReal("0x1p3"));
+    }
+
+    @Test
+    void parseMoneyNeedsExactlyTwoDecimals() {
+        assertEquals(123450, CellParser.parseMoney("1,234.50"));
+        assertEquals(99, CellParser.parseMoney(".99"));
+        assertEquals(-1, CellParser.parseMoney("-0.01"));
+        assertEquals(1200, CellParser.parseMoney(" +12.00 "));
+        assertEquals(100000, CellParser.parseMoney("1,0,00.00"));
+        for (String value : List.of("", "12", "1.5", "1.505", "1.2.3", "-", "1a.00", "$1.00", "99999999999999999999.00")) {
+            assertEquals(CellParser.INVALID, CellParser.parseMoney(value), value);
+        }
+    }
+
+    @Test
+    void columnsReturnTheValueTheirStoreKeeps() {
+        IntegerColumn ints = new IntegerColumn("int");
+        assertEquals(-42, ints.parse("-42"));
+        assertEquals(CellParser.INVALID, ints.parse(" 42"));
+
+        RealColumn reals = new RealColumn("real");
+        assertEquals(RealColumnStore.sortableKey(-2.5), reals.parse(" -2.5 "));
+        assertEquals(RealColumnStore.sortableKey(-0.0), reals.parse("-0.0"));
+        assertEquals(CellParser.INVALID, reals.parse("0x1p3"));
+
+        MoneyColumn money = new MoneyColumn("money");
+        assertEquals(123450, money.parse("1,234.50"));
+        assertEquals(CellParser.MAX_MONEY_CENTS, money.parse("10,000,000,000,000.00"));
+        assertEquals(CellParser.INVALID, money.parse("10000000000000.01"));
+        assertEquals(CellParser.INVALID, money.parse("-0.01"));
+
+        // Bounds with more than two decimals round towards the inside of the interval
+        MoneyInvlColumn interval = new MoneyInvlColumn("interval", "0.005", "10.999");
+        assertEquals(CellParser.INVALID, interval.parse("0.00"));
+        assertEquals(1, interval.parse("0.01"));
+        assertEquals(1099, interval.parse("10.99"));
+        assertEquals(CellParser.INVALID, interval.parse("11.00"));
+        assertFalse(new MoneyInvlColumn("none", "2.00", "1.00").validate("1.50"));
+        assertFalse(new MoneyInvlColumn("bad", "x", "1.00").validate("0.50"));
+
+        CharColumn chars = new CharColumn("char");
+        assertEquals('x', chars.parse("x"));
+        assertEquals(CellParser.INVALID, chars.parse("xy"));
+
+        // Every column takes an empty cell, and a string column takes anything
+        for (Column column : List.of(ints, reals, money, interval, chars, new StringColumn("string"))) {
+            assertTrue(column.validate(""), column.type);
+            assertTrue(column.validate(null), column.type);
+        }
+        assertTrue(new StringColumn("string").validate("anything at all"));
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.component.query;
+
+import org.example.component.Row;
+import org.example.component.Table;
+import org.example.component.column.CharColumn;
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.MoneyColumn;
+import org.example.component.column.RealColumn;
+import org.example.component.column.StringColumn;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Aggregates over the typed stores agree with the same computation over the cells'
+ * text, skip empty cells, and keep money exact to the cent.
+ */
+class AggregatorTest {
+
+    private static final List<Aggregation> ALL = List.of(
+            new Aggregation(AggregateFunction.COUNT, 0), new Aggregation(AggregateFunction.SUM, 0),
+            new Aggregation(AggregateFunction.MIN, 0), new Aggregation(AggregateFunction.MAX, 0),
+            new Aggregation(AggregateFunction.AVG, 0),
+            new Aggregation(AggregateFunction.SUM, 1), new Aggregation(AggregateFunction.AVG, 1),
+            new Aggregation(AggregateFunction.MIN, 1), new Aggregation(AggregateFunction.MAX, 1),
+            new Aggregation(AggregateFunction.SUM, 2), new Aggregation(AggregateFunction.AVG, 2),
+            new Aggregation(AggregateFunction.MIN, 3), new Aggregation(AggregateFunction.MAX, 3),
+            new Aggregation(AggregateFunction.COUNT, 4));
+
+    // Rows i = 0..n-1: an int, an amount, a real, a letter and a group; some cells empty
+    private static Table table(int rows) {
+        Table table = new Table("aggregate");
+        table.addColumn(new IntegerColumn("int"));
+        table.addColumn(new MoneyColumn("money"));
+        table.addColumn(new RealColumn("real"));
+        table.addColumn(new CharColumn("char"));
+        table.addColumn(new StringColumn("group"));
+        for (int i = 0; i < rows; i++) {
+            Row row = new Row();
+            row.values.add(i % 7 == 6 ? "" : Integer.toString(i * 3 - 50));
+            // A third of a dollar does not divide into cents, so the average must round
+            row.values.add(i % 5 == 4 ? "" : i % 2 == 0 ? "0.10" : "1,000.33");
+            row.values.add(i + ".25");
+            row.values.add(String.valueOf((char) ('a' + i % 26)));
+            row.values.add(i % 11 == 10 ? "" : "g" + i % 3);
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    // The results for the rows whose group is `group`, or for all rows when it is null
+    private static String[] expected(Table table, String group) {
+        long count = 0, intSum = 0, intMin = Long.MAX_VALUE, intMax = Long.MIN_VALUE;
+        long moneyCount = 0, cents = 0, centsMin = Long.MAX_VALUE, centsMax = Long.MIN_VALUE;
+        double realSum = 0;
+        long realCount = 0, groupCount = 0;
+        char charMin = Character.MAX_VALUE, charMax = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (group != null && !table.getValue(row, 4).equals(group)) {
+                continue;
+            }
+            String value = table.getValue(row, 0);
+            if (!value.isEmpty()) {
+                count++;
+                intSum += Long.parseLong(value);
+                intMin = Math.min(intMin, Long.parseLong(value));
+                intMax = Math.max(intMax, Long.parseLong(value));
+            }
+            String amount = table.getValue(row, 1);
+            if (!amount.isEmpty()) {
+                long c = new BigDecimal(amount.replace(",", "")).movePointRight(2).longValueExact();
+                moneyCount++;
+                cents += c;
+                centsMin = Math.min(centsMin, c);
+                centsMax = Math.max(centsMax, c);
+            }
+            realSum += Double.parseDouble(table.getValue(row, 2));
+            realCount++;
+            charMin = (char) Math.min(charMin, table.getValue(row, 3).charAt(0));
+            charMax = (char) Math.max(charMax, table.getValue(row, 3).charAt(0));
+            if (!table.getValue(row, 4).isEmpty()) {
+                groupCount++;
+            }
+        }
+        return new String[]{
+                Long.toString(count), Long.toString(intSum), Long.toString(intMin), Long.toString(intMax),
+                Double.toString((double) intSum / count),
+                money(cents), money(BigDecimal.valueOf(cents).divide(BigDecimal.valueOf(moneyCount), 0, RoundingMode.HALF_EVEN).longValueExact()),
+                money(centsMin), money(centsMax),
+                Double.toString(realSum), Double.toString(realSum / realCount),
+                String.valueOf(charMin), String.valueOf(charMax),
+                Long.toString(groupCount)};
+    }
+
+    private static String money(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    @Test
+    void aggregatesMatchTheCellsWithAndWithoutFullWords() {
+        // The letters have no empty cells, so 200 of them fill whole 64-slot words, which take the single-group fast path
+        for (int rows : new int[]{1, 63, 200}) {
+            Table table = table(rows);
+            List<Aggregator.Group> groups = Aggregator.aggregate(table, List.of(), -1, ALL);
+            assertEquals(1, groups.size());
+            assertEquals("", groups.get(0).key);
+            assertEquals(rows, groups.get(0).rowCount);
+            assertArrayEquals(expected(table, null), groups.get(0).values, rows + " rows");
+        }
+    }
+
+    @Test
+    void groupsFollowFirstAppearanceAndEmptyCellsGroupTogether() {
+        Table table = table(200);
+        List<Aggregator.Group> groups = Aggregator.aggregate(table, List.of(), 4, ALL);
+        assertEquals(List.of("g0", "g1", "g2", ""), groups.stream().map(group -> group.key).toList());
+        long rows = 0;
+        for (Aggregator.Group group : groups) {
+            assertArrayEquals(expected(table, group.key), group.values, group.key);
+            rows += group.rowCount;
+        }
+        assertEquals(200, rows);
+    }
+
+    @Test
+    void conditionsSelectTheRowsAndEmptySelectionsYieldNoValue() {
+        Table table = table(100);
+        List<Aggregator.Group> groups = Aggregator.aggregate(table, List.of(new Condition(2, Operator.LT, "10")), -1,
+                List.of(new Aggregation(AggregateFunction.COUNT, 2), new Aggregation(AggregateFunction.SUM, 1)));
+        // Rows 0..9, of which 4 and 9 have no amount: four times 0.10 and four times 1,000.33
+        assertArrayEquals(new String[]{"10", "4001.72"}, groups.get(0).values);
+
+        groups = Aggregator.aggregate(table, List.of(new Condition(2, Operator.LT, "0")), -1,
+                List.of(new Aggregation(AggregateFunction.COUNT, 0), new Aggregation(AggregateFunction.SUM, 1),
+                        new Aggregation(AggregateFunction.MAX, 2)));
+        assertEquals(0, groups.get(0).rowCount);
+        assertArrayEquals(new String[]{"0", "", ""}, groups.get(0).values);
+    }
+
+    @Test
+    void unsupportedColumnsAndOverflowingSumsAreRejected() {
+        Table table = table(10);
+        assertThrows(IllegalArgumentException.class,
+                () -> Aggregator.aggregate(table, List.of(), -1, List.of(new Aggregation(AggregateFunction.SUM, 4))));
+        assertThrows(IllegalArgumentException.class,
+                () -> Aggregator.aggregate(table, List.of(), -1, List.of(new Aggregation(AggregateFunction.AVG, 3))));
+        assertThrows(IllegalArgumentException.class,
+                () -> Aggregator.aggregate(table, List.of(), 5, List.of(new Aggregation(AggregateFunction.COUNT, 0))));
+
+        Table large = new Table("large");
+        large.addColumn(new MoneyColumn("money"));
+        for (int i = 0; i < 10_000; i++) {
+            Row row = new Row();
+            row.values.add("10,000,000,000,000.00");
+            large.addRow(row);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> Aggregator.aggregate(large, List.of(), -1, List.of(new Aggregation(AggregateFunction.SUM, 0))));
+    }
+}
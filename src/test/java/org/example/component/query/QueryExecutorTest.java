@@ -0,0 +1,83 @@
+package org.example.component.query;
+
+import org.example.component.Row;
+import org.example.component.Table;
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.MoneyColumn;
+import org.example.component.column.RealColumn;
+import org.example.component.index.IndexType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A query accepts the same operands, and finds the same rows, whether or not its
+ * column is indexed.
+ */
+class QueryExecutorTest {
+
+    private static Table table() {
+        Table table = new Table("query");
+        table.addColumn(new IntegerColumn("int"));
+        table.addColumn(new RealColumn("real"));
+        table.addColumn(new MoneyColumn("money"));
+        for (int i = 0; i < 20; i++) {
+            Row row = new Row();
+            row.values.add(Integer.toString(i));
+            row.values.add(i + ".5");
+            // Padded amounts pass validation, so they must be typed like any other
+            row.values.add(i % 2 == 0 ? i + ".25" : " " + i + ".25 ");
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    @Test
+    void operandsParseAlikeWithAndWithoutIndex() {
+        List<List<Condition>> queries = List.of(
+                List.of(new Condition(0, Operator.LT, " 7 ")),
+                List.of(new Condition(1, Operator.GE, "3.5d")),
+                List.of(new Condition(1, Operator.EQ, "12.5")),
+                List.of(new Condition(2, Operator.LE, " 4.25")),
+                List.of(new Condition(2, Operator.EQ, "13.25")),
+                List.of(new Condition(2, Operator.GT, "1,0.00")));
+        Table plain = table();
+        Table indexed = table();
+        for (int c = 0; c < 3; c++) {
+            indexed.createIndex(c, IndexType.SORTED);
+        }
+        for (List<Condition> query : queries) {
+            assertArrayEquals(QueryExecutor.findRows(plain, query, Integer.MAX_VALUE),
+                    QueryExecutor.findRows(indexed, query, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void paddedMoneyCellsMatchTheirAmount() {
+        Table table = table();
+        assertArrayEquals(new int[]{13}, QueryExecutor.findRows(table, List.of(new Condition(2, Operator.EQ, "13.25")), Integer.MAX_VALUE));
+        assertEquals(5, QueryExecutor.findRows(table, List.of(new Condition(2, Operator.LT, "5.00")), Integer.MAX_VALUE).length);
+    }
+
+    @Test
+    void invalidOperandsFailWithAndWithoutIndex() {
+        List<Condition> invalid = List.of(
+                new Condition(0, Operator.EQ, "١"),
+                new Condition(1, Operator.EQ, "0x1p3"),
+                new Condition(2, Operator.EQ, "12"),
+                new Condition(2, Operator.EQ, "12.5"));
+        Table plain = table();
+        Table indexed = table();
+        for (int c = 0; c < 3; c++) {
+            indexed.createIndex(c, IndexType.HASH);
+        }
+        for (Condition condition : invalid) {
+            assertThrows(IllegalArgumentException.class, () -> QueryExecutor.findRows(plain, List.of(condition), Integer.MAX_VALUE));
+            assertThrows(IllegalArgumentException.class, () -> QueryExecutor.findRows(indexed, List.of(condition), Integer.MAX_VALUE));
+        }
+    }
+}
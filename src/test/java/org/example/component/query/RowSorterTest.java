@@ -0,0 +1,117 @@
+package org.example.component.query;
+
+import org.example.component.Row;
+import org.example.component.Table;
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.StringColumn;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A sort that spills runs to disk returns the same order as one in memory, keeps
+ * equal rows in table order across runs, and leaves no run files behind.
+ */
+class RowSorterTest {
+
+    private static final List<SortKey> KEYS = List.of(new SortKey(0, false), new SortKey(1, true));
+
+    // Few distinct values per column, so most rows tie with rows in other runs; some cells empty
+    private static Table table(int rows) {
+        Table table = new Table("sort");
+        table.addColumn(new StringColumn("group"));
+        table.addColumn(new IntegerColumn("int"));
+        for (int i = 0; i < rows; i++) {
+            Row row = new Row();
+            row.values.add(i % 7 == 3 ? "" : "g" + (i * 31 % 5));
+            row.values.add(i % 11 == 5 ? "" : Integer.toString(i * 17 % 9 - 4));
+            table.addRow(row);
+        }
+        // Deleted rows must not show up in any run
+        for (int row = rows - 1; row >= 0; row -= 13) {
+            table.deleteRow(row);
+        }
+        return table;
+    }
+
+    // The row IDs in the order KEYS gives, by a stable sort of the cells' text
+    private static long[] expected(Table table) {
+        List<Integer> positions = new ArrayList<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            positions.add(row);
+        }
+        // Empty cells are smaller than any value, so they come last in descending order
+        Comparator<Integer> byGroup = Comparator.comparing(row -> table.getValue(row, 0));
+        Comparator<Integer> byInt = Comparator.comparingLong(row -> table.getValue(row, 1).isEmpty()
+                ? Long.MAX_VALUE : -Long.parseLong(table.getValue(row, 1)));
+        positions.sort(byGroup.thenComparing(byInt));
+        return positions.stream().mapToLong(row -> table.getRowId(table.slotOf(row))).toArray();
+    }
+
+    private static long[] readAll(SortedRows rows) throws IOException {
+        long[] ids = new long[rows.size()];
+        long[] chunk = new long[1000];
+        int read = 0;
+        for (int count; (count = rows.next(chunk)) > 0; read += count) {
+            System.arraycopy(chunk, 0, ids, read, count);
+        }
+        assertEquals(ids.length, read);
+        return ids;
+    }
+
+    private static List<Path> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void spilledRunsMergeInTheOrderOfAnInMemorySort(@TempDir Path dir) throws IOException {
+        Table table = table(20_000);
+        long[] inMemory;
+        try (SortedRows rows = RowSorter.sort(table, List.of(), KEYS, RowSorter.DEFAULT_MEMORY_BUDGET, dir)) {
+            assertTrue(files(dir).isEmpty());
+            inMemory = readAll(rows);
+        }
+        assertArrayEquals(expected(table), inMemory);
+
+        // A budget this small still sorts runs of the minimum size, about 1024 rows each
+        try (SortedRows rows = RowSorter.sort(table, List.of(), KEYS, 1, dir)) {
+            assertTrue(files(dir).size() > 10, files(dir).size() + " runs");
+            assertEquals(table.getRowCount(), rows.size());
+            assertArrayEquals(inMemory, readAll(rows));
+        }
+        assertEquals(List.of(), files(dir));
+
+        // Closing before the end removes the runs too
+        try (SortedRows rows = RowSorter.sort(table, List.of(new Condition(0, Operator.NE, "")), KEYS, 1, dir)) {
+            long[] first = new long[10];
+            assertEquals(10, rows.next(first));
+            assertArrayEquals(Arrays.copyOfRange(inMemory, inMemory.length - rows.size(), inMemory.length - rows.size() + 10), first);
+        }
+        assertEquals(List.of(), files(dir));
+    }
+
+    @Test
+    void runsBeyondTheMergeWidthAreMergedAheadAndCleanedUp(@TempDir Path dir) throws IOException {
+        // More runs of the minimum size than one merge takes, so the oldest are merged first
+        Table table = table(1024 * (RowSorter.MAX_MERGE_WAYS + 8));
+        try (SortedRows rows = RowSorter.sort(table, List.of(), KEYS, 1, dir)) {
+            assertTrue(files(dir).size() <= RowSorter.MAX_MERGE_WAYS, files(dir).size() + " runs");
+            assertArrayEquals(expected(table), readAll(rows));
+        }
+        assertEquals(List.of(), files(dir));
+    }
+}
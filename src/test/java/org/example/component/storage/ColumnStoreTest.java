@@ -0,0 +1,129 @@
+package org.example.component.storage;
+
+import org.example.component.Column;
+import org.example.component.column.CharColumn;
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.MoneyColumn;
+import org.example.component.column.RealColumn;
+import org.example.component.column.StringColumn;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every store reads back exactly the text it was given: empty cells through the null
+ * bitmap, and text the typed value would not reproduce through the verbatim array.
+ */
+class ColumnStoreTest {
+
+    @Test
+    void emptyCellsAreNullsAndOnlyValuesGrowTheStore() {
+        IntColumnStore store = new IntColumnStore();
+        store.set(3, "");
+        assertEquals(0, store.size());
+        assertTrue(store.isNull(3));
+
+        store.set(40, "7");
+        assertEquals(41, store.size());
+        for (int row = 0; row < 40; row++) {
+            assertTrue(store.isNull(row));
+            assertEquals("", store.get(row));
+        }
+        assertFalse(store.isNull(40));
+        assertEquals(7, store.getInt(40));
+
+        store.set(40, "");
+        assertTrue(store.isNull(40));
+        assertEquals(41, store.size());
+    }
+
+    @Test
+    void textTheTypedValueDoesNotReproduceIsKeptVerbatim() {
+        MoneyColumnStore money = new MoneyColumnStore();
+        money.append("1,000.00");
+        money.append("1000.00");
+        money.append("not money");
+        assertEquals("1,000.00", money.get(0));
+        assertEquals("1,000.00", money.getVerbatim(0));
+        assertEquals(100000, money.getCents(0));
+        assertNull(money.getVerbatim(1));
+        assertEquals("1000.00", money.get(1));
+        assertEquals("not money", money.get(2));
+        // Equal amounts written differently are different cells
+        assertFalse(money.cellEquals(0, 1));
+        assertNotEquals(money.hash(0), money.hash(1));
+
+        IntColumnStore ints = new IntColumnStore();
+        ints.append("+5");
+        ints.append("007");
+        ints.append("-0");
+        ints.append("5");
+        assertEquals(List.of("+5", "007", "-0", "5"), List.of(ints.get(0), ints.get(1), ints.get(2), ints.get(3)));
+        assertNull(ints.getVerbatim(3));
+
+        RealColumnStore reals = new RealColumnStore();
+        reals.append("1.50");
+        reals.append("1.5");
+        assertEquals("1.50", reals.getVerbatim(0));
+        assertNull(reals.getVerbatim(1));
+        assertEquals(reals.getDouble(0), reals.getDouble(1));
+
+        // Overwriting a verbatim cell with canonical text drops the override
+        money.set(0, "5.00");
+        assertNull(money.getVerbatim(0));
+        assertEquals("5.00", money.get(0));
+    }
+
+    @Test
+    void removeAllKeepsNullsAndVerbatimCellsWithTheirRows() {
+        MoneyColumnStore store = new MoneyColumnStore();
+        for (int row = 0; row < 130; row++) {
+            store.append(row % 3 == 0 ? "" : row % 3 == 1 ? row + ".00" : "1," + row + ".00");
+        }
+        long[] removed = new long[Bitmap.words(130) + 1];
+        for (int row = 0; row < 130; row += 2) {
+            Bitmap.set(removed, row, true);
+        }
+        store.removeAll(removed);
+
+        assertEquals(65, store.size());
+        for (int i = 0; i < 65; i++) {
+            int row = 2 * i + 1;
+            String expected = row % 3 == 0 ? "" : row % 3 == 1 ? row + ".00" : "1," + row + ".00";
+            assertEquals(expected, store.get(i));
+            assertEquals(row % 3 == 0, store.isNull(i));
+        }
+    }
+
+    @Test
+    void parsedKeysStoreTheSameCellsAsParsingAgain() {
+        List<Column> columns = List.of(new IntegerColumn("int"), new RealColumn("real"), new MoneyColumn("money"),
+                new CharColumn("char"), new StringColumn("string"));
+        List<List<String>> values = List.of(
+                List.of("0", "-17", "+5", "2147483647", "-2147483648"),
+                List.of("1.5", "-0.0", " 2.50 ", "1e3", "NaN", "-Infinity", "3d"),
+                List.of("0.00", "1,234.56", " 7.10 ", "10000000000000.00"),
+                List.of("a", "7"),
+                List.of("text", " padded "));
+        for (int c = 0; c < columns.size(); c++) {
+            Column column = columns.get(c);
+            ColumnStore parsed = ColumnStore.forColumn(column);
+            ColumnStore reparsed = ColumnStore.forColumn(column);
+            for (String value : values.get(c)) {
+                parsed.append("");
+                parsed.set(parsed.size() - 1, value, column.parse(value));
+                reparsed.append(value);
+            }
+            for (int row = 0; row < reparsed.size(); row++) {
+                assertEquals(reparsed.get(row), parsed.get(row), column.type);
+                assertEquals(reparsed.key(row), parsed.key(row), column.type + " " + reparsed.get(row));
+            }
+        }
+    }
+}
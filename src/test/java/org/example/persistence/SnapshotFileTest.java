@@ -0,0 +1,133 @@
+package org.example.persistence;
+
+import org.example.component.Database;
+import org.example.component.Row;
+import org.example.component.Table;
+import org.example.component.column.CharColumn;
+import org.example.component.column.IntegerColumn;
+import org.example.component.column.MoneyColumn;
+import org.example.component.column.MoneyInvlColumn;
+import org.example.component.column.RealColumn;
+import org.example.component.column.StringColumn;
+import org.example.component.index.IndexType;
+import org.example.component.query.Condition;
+import org.example.component.query.Operator;
+import org.example.component.query.QueryExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * A database read back from a snapshot has the same tables, columns, cells, row IDs,
+ * indexes and ID counters as the one written, whether or not its tables were compacted.
+ */
+class SnapshotFileTest {
+
+    // Every column type; cells that are empty, kept verbatim or not valid for the column at all
+    private static final String[][] CELLS = {
+            {"1", "-2147483648", "", "+7", "007", "x"},
+            {"1.5", "-0.0", "", "2.50", "NaN", "1e3"},
+            {"word", "", " padded ", "word", "ünïcode", "x"},
+            {"a", "", "Z", "7", "ab", " "},
+            {"0.00", "1,234.56", "", "99.99", "12", "10000000000000.00"},
+            {"5.00", "", "0.50", "1,0.00", "20.00", "9.99"}};
+
+    private static Database database() {
+        Database database = new Database("snapshot");
+        Table table = new Table("cells");
+        table.addColumn(new IntegerColumn("int"));
+        table.addColumn(new RealColumn("real"));
+        table.addColumn(new StringColumn("string"));
+        table.addColumn(new CharColumn("char"));
+        table.addColumn(new MoneyColumn("money"));
+        table.addColumn(new MoneyInvlColumn("interval", "0.50", "10"));
+        for (int i = 0; i < 150; i++) {
+            Row row = new Row();
+            for (String[] column : CELLS) {
+                row.values.add(column[i % column.length]);
+            }
+            table.addRow(row);
+        }
+        table.createIndex(0, IndexType.SORTED);
+        table.createIndex(2, IndexType.HASH);
+        database.addTable(table);
+        database.addTable(new Table("empty"));
+        return database;
+    }
+
+    @Test
+    void everyColumnTypeRoundTrips(@TempDir Path dir) throws IOException {
+        Database written = database();
+        SnapshotFile.write(dir.resolve("snapshot.bin"), written, 42);
+        SnapshotFile read = SnapshotFile.read(dir.resolve("snapshot.bin"));
+
+        assertEquals(42, read.lsn);
+        assertSameDatabase(written, read.database);
+        // The verbatim cells came back as verbatim cells, not as reformatted values
+        assertEquals("+7", read.database.tables.get(0).getValue(3, 0));
+        assertEquals("2.50", read.database.tables.get(0).getStore(1).getVerbatim(3));
+        assertNull(read.database.tables.get(0).getStore(4).getVerbatim(0));
+    }
+
+    @Test
+    void deletedRowsAreLeftOutOfTablesThatWereNotCompacted(@TempDir Path dir) throws IOException {
+        Database written = database();
+        Table table = written.tables.get(0);
+        for (int row = table.getRowCount() - 1; row >= 0; row -= 3) {
+            table.deleteRow(row);
+        }
+        table.deleteRow(0);
+        assertEquals(150, table.getSlotCount());
+
+        SnapshotFile.write(dir.resolve("snapshot.bin"), written, 0);
+        Database read = SnapshotFile.read(dir.resolve("snapshot.bin")).database;
+
+        assertEquals(table.getRowCount(), read.tables.get(0).getSlotCount());
+        assertSameDatabase(written, read);
+        // The indexes were rebuilt over the live rows only
+        for (Condition condition : List.of(new Condition(0, Operator.EQ, "1"), new Condition(0, Operator.LT, "8"),
+                new Condition(2, Operator.EQ, "word"))) {
+            assertEquals(QueryExecutor.findRows(table, List.of(condition), Integer.MAX_VALUE).length,
+                    QueryExecutor.findRows(read.tables.get(0), List.of(condition), Integer.MAX_VALUE).length);
+        }
+    }
+
+    private static void assertSameDatabase(Database expected, Database actual) {
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.getNextTableId(), actual.getNextTableId());
+        assertEquals(expected.tables.size(), actual.tables.size());
+        for (int t = 0; t < expected.tables.size(); t++) {
+            Table a = expected.tables.get(t);
+            Table b = actual.tables.get(t);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.name, b.name);
+            assertEquals(a.getNextRowId(), b.getNextRowId());
+            assertEquals(a.getNextColumnId(), b.getNextColumnId());
+            assertEquals(a.getColumnCount(), b.getColumnCount());
+            for (int c = 0; c < a.getColumnCount(); c++) {
+                assertEquals(a.getColumn(c).id, b.getColumn(c).id);
+                assertEquals(a.getColumn(c).name, b.getColumn(c).name);
+                assertEquals(a.getColumn(c).type, b.getColumn(c).type);
+                assertEquals(a.getIndex(c) == null ? null : a.getIndex(c).getType(), b.getIndex(c) == null ? null : b.getIndex(c).getType());
+                if (a.getColumn(c) instanceof MoneyInvlColumn interval) {
+                    assertEquals(interval.getMin(), ((MoneyInvlColumn) b.getColumn(c)).getMin());
+                    assertEquals(interval.getMax(), ((MoneyInvlColumn) b.getColumn(c)).getMax());
+                }
+            }
+            assertEquals(a.getRowCount(), b.getRowCount());
+            for (int row = 0; row < a.getRowCount(); row++) {
+                assertEquals(a.getRowId(a.slotOf(row)), b.getRowId(b.slotOf(row)));
+                for (int c = 0; c < a.getColumnCount(); c++) {
+                    assertEquals(a.getValue(row, c), b.getValue(row, c), a.name + " row " + row + " column " + c);
+                    assertEquals(a.getStore(c).getVerbatim(a.slotOf(row)), b.getStore(c).getVerbatim(b.slotOf(row)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * The log hands back exactly the frames that reached the disk, and a flusher that
+ * dies fails everyone waiting on it instead of leaving them blocked.
+ */
+class WriteAheadLogTest {
+
+    @Test
+    void replayReturnsTheLoggedMutationsAndCutsATornTail(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("wal.log");
+        try (WriteAheadLog log = new WriteAheadLog(path, 0, 0, 0, null)) {
+            for (int i = 0; i < 100; i++) {
+                log.awaitDurable(log.append(Mutation.addRow(i % 3, List.of("row", Integer.toString(i)))));
+            }
+        }
+        long intact = Files.size(path);
+        // Half a frame, as a crash in the middle of a write leaves it
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            out.write(ByteBuffer.allocate(12).putInt(1000).putLong(101).flip());
+        }
+
+        List<Mutation> replayed = new ArrayList<>();
+        assertEquals(100, WriteAheadLog.replay(path, 0, replayed::add));
+        assertEquals(intact, Files.size(path));
+        assertEquals(100, replayed.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Mutation.Type.ADD_ROW, replayed.get(i).type);
+            assertEquals(i % 3, replayed.get(i).tableIndex);
+            assertEquals(List.of("row", Integer.toString(i)), replayed.get(i).values);
+        }
+
+        // Frames a checkpoint already covers are skipped, and appending continues after the last LSN
+        replayed.clear();
+        assertEquals(100, WriteAheadLog.replay(path, 90, replayed::add));
+        assertEquals(10, replayed.size());
+        try (WriteAheadLog log = new WriteAheadLog(path, 100, 0, 0, null)) {
+            assertEquals(101, log.append(Mutation.deleteRow(0, 0)));
+            log.awaitDurable(101);
+        }
+        assertEquals(101, WriteAheadLog.replay(path, 100, mutation -> assertEquals(Mutation.Type.DELETE_ROW, mutation.type)));
+    }
+
+    @Test
+    void aFailingCheckpointerFailsWaitersInsteadOfHangingThem(@TempDir Path dir) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(dir.resolve("wal.log"), 0, 0, 0, () -> {
+            throw new IllegalStateException("checkpoint failed");
+        });
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IOException failure = assertThrows(IOException.class, log::checkpoint);
+            // The log records the checkpointer's exception as its failure
+            assertInstanceOf(IllegalStateException.class, failure.getCause().getCause());
+            // The flusher is gone, so nothing appended after it died becomes durable
+            long lsn = log.append(Mutation.addTable("late"));
+            assertThrows(UncheckedIOException.class, () -> log.awaitDurable(lsn));
+            assertThrows(IOException.class, log::checkpoint);
+        });
+        log.close();
+    }
+
+    @Test
+    void waitersFailOnceTheLogIsClosed(@TempDir Path dir) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(dir.resolve("wal.log"), 0, 0, 0, () -> 0);
+        log.awaitDurable(log.append(Mutation.addTable("table")));
+        log.close();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertThrows(IOException.class, log::checkpoint);
+            assertThrows(IllegalStateException.class, () -> log.append(Mutation.addTable("closed")));
+        });
+    }
+}